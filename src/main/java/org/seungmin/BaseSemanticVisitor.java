@@ -2,6 +2,8 @@ package org.seungmin;
 
 
 import org.seungmin.SemanticVisitor;
+import org.seungmin.util.Diagnostic;
+import org.seungmin.util.Diagnostics;
 
 /**
  * 
@@ -10,18 +12,23 @@ import org.seungmin.SemanticVisitor;
  */
 public abstract class BaseSemanticVisitor<T> implements SemanticVisitor<T> {
 	private int errors;
+	private Diagnostics diagnostics = Diagnostics.CONSOLE;
 	
 	
 	public BaseSemanticVisitor() {
 		errors = 0;
 	}
 	
+	public void setDiagnostics(Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
 	public int getErrorCount() {
 		return errors;
 	}
 	
 	protected void error(String message) {
-		System.err.println("semantic error: " + message);
+		diagnostics.report(new Diagnostic(Diagnostic.Kind.SEMANTIC, message, null));
 		errors++;
 	}
 }
@@ -0,0 +1,148 @@
+package org.seungmin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Compiles many files in one JVM, in parallel on a ForkJoinPool.
+ *
+ * Every file goes through the same pipeline as Main, with its messages and diagnostics buffered
+ * and printed in input order once all files are done, followed by the exit status of each file
+ * and the aggregate wall time.
+ */
+public class BatchMain {
+
+    /*
+     * Outcome of the compilation of one file.
+     */
+    public static class Result {
+        public final File input;
+        public final int status;
+        public final String output;
+        public final long nanos;
+
+        Result(File input, int status, String output, long nanos) {
+            this.input = input;
+            this.status = status;
+            this.output = output;
+            this.nanos = nanos;
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java "+BatchMain.class.getSimpleName()+" [options] pass outputdir input...");
+        System.out.println("where pass is either: -java.lexer, -java.parser, -java.ast, -java.sem, -java.ir, -java.liveness or -java.gen,");
+        System.out.println("inputs are .c files or directories containing them, and options are those of Main plus:");
+        System.out.println("  --threads=N      compile on N threads (default: number of processors)");
+        System.exit(-1);
+    }
+
+    public static void main(String[] args) {
+        Main.Options options = new Main.Options();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int argi = 0;
+        for (; argi < args.length && args[argi].startsWith("--"); argi++) {
+            if (args[argi].startsWith("--threads=")) {
+                long n = Main.number(args[argi], "--threads=", 1, Integer.MAX_VALUE);
+                if (n < 0)
+                    usage();
+                threads = (int) n;
+            } else if (!options.parse(args[argi])) {
+                usage();
+            }
+        }
+        args = Arrays.copyOfRange(args, argi, args.length);
+
+        if (args.length < 3)
+            usage();
+        Compiler.Stage mode = Main.parseMode(args[0]);
+        if (mode == null)
+            usage();
+        File outputDir = new File(args[1]);
+        outputDir.mkdirs();
+        List<File> inputs = collectInputs(Arrays.copyOfRange(args, 2, args.length));
+
+        long start = System.nanoTime();
+        List<Result> results = compileAll(mode, options, inputs, outputDir, threads);
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        for (Result r : results) {
+            System.out.println("== " + r.input);
+            System.out.print(r.output);
+        }
+        for (Result r : results) {
+            System.out.printf("%-40s %3d  %8.3f ms%n", r.input, r.status, r.nanos / 1e6);
+            if (r.status != Main.PASS)
+                failed++;
+        }
+        double seconds = elapsed / 1e9;
+        System.out.printf("%d files (%d failed) in %.3f s on %d threads, %.1f files/sec%n",
+                results.size(), failed, seconds, threads, results.size() / seconds);
+        if (options.cache() != null)
+            System.out.println(options.cache());
+        System.exit(failed == 0 ? Main.PASS : 1);
+    }
+
+    /*
+     * Expands directories to the .c files they contain, in name order.
+     */
+    static List<File> collectInputs(String[] paths) {
+        List<File> inputs = new ArrayList<>();
+        for (String path : paths) {
+            File f = new File(path);
+            File[] children = f.isDirectory() ? f.listFiles((d, name) -> name.endsWith(".c")) : null;
+            if (children != null) {
+                Arrays.sort(children);
+                inputs.addAll(Arrays.asList(children));
+            } else {
+                inputs.add(f);
+            }
+        }
+        return inputs;
+    }
+
+    /*
+     * Compiles every input and returns the results in input order. Generated code is written to
+     * outputDir, one file per input named after it.
+     */
+    static List<Result> compileAll(Compiler.Stage mode, Main.Options options, List<File> inputs, File outputDir, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+            for (File input : inputs) {
+                File output = new File(outputDir, input.getName().replaceFirst("\\.c$", "") + ".asm");
+                tasks.add(pool.submit(() -> compile(mode, options, input, output)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (ForkJoinTask<Result> task : tasks)
+                results.add(task.join());
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Result compile(Compiler.Stage mode, Main.Options options, File input, File output) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true);
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = Main.compile(mode, options, input, output, out, out);
+        } catch (RuntimeException | StackOverflowError e) {
+            // one broken file must not take the whole batch down
+            e.printStackTrace(out);
+            status = Main.MODE_FAIL;
+        }
+        long nanos = System.nanoTime() - start;
+        out.flush();
+        return new Result(input, status, buffer.toString(), nanos);
+    }
+}
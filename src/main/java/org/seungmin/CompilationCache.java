@@ -0,0 +1,310 @@
+package org.seungmin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of compilation outcomes, keyed by content rather than by file name.
+ *
+ * The key is a SHA-256 hash of the compiler build, the stage, the source and the contents of
+ * every header it #includes (transitively, resolved next to the including file), so an entry is
+ * reused whenever the same text is compiled again, wherever it lives. An entry holds the exit
+ * status, what was printed on stdout and stderr (the diagnostics) and the generated code.
+ *
+ * Entries are files named after their key. The cache is bounded in bytes; the least recently
+ * used entries are deleted first, recency surviving restarts through the files' modification
+ * time. Caches are shared by all the compilations of a JVM, one per directory, and all methods
+ * are thread-safe.
+ */
+public class CompilationCache {
+
+    /*
+     * Only the stages whose result is worth keeping are cached.
+     */
+    static boolean caches(Compiler.Stage stage) {
+        return stage == Compiler.Stage.SEMANTICANALYSIS || stage == Compiler.Stage.GEN;
+    }
+
+    public static class Entry {
+        public final int status;
+        public final String out;
+        public final String err;
+        public final String product;
+
+        public Entry(int status, String out, String err, String product) {
+            this.status = status;
+            this.out = out;
+            this.err = err;
+            this.product = product;
+        }
+    }
+
+    private static final Pattern INCLUDE = Pattern.compile("#include\\s*\"([^\"]*)\"");
+    private static final String SUFFIX = ".entry";
+    private static final Map<File, CompilationCache> open = new ConcurrentHashMap<>();
+
+    /*
+     * The hash of the compiler build, computed on first use.
+     */
+    private static final class Build {
+        static final byte[] HASH = hashBuild();
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    // entry name to size in bytes, in access order: the eldest is the least recently used
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private CompilationCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        directory.mkdirs();
+        File[] files = directory.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File f : files) {
+                entries.put(f.getName(), f.length());
+                totalBytes += f.length();
+            }
+        }
+    }
+
+    /*
+     * The cache of the given directory, shared by every caller in this JVM.
+     * The size bound is the one given by the first caller.
+     */
+    public static CompilationCache open(File directory, long maxBytes) {
+        return open.computeIfAbsent(directory.getAbsoluteFile(), d -> new CompilationCache(d, maxBytes));
+    }
+
+    /*
+     * Hashes everything the outcome of compiling the source depends on. If source is null the
+     * input file is read; its directory is where #included headers are looked up either way.
+     */
+    public String key(Compiler.Stage stage, File inputFile, CharSequence source) throws IOException {
+        return key(stage, "", inputFile, source);
+    }
+
+    /*
+     * As above, for a stage whose output also depends on options, summed up by variant.
+     */
+    public String key(Compiler.Stage stage, String variant, File inputFile, CharSequence source) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = source != null ? source.toString().getBytes(StandardCharsets.UTF_8) : Files.readAllBytes(inputFile.toPath());
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(inputFile.toString());
+        }
+
+        MessageDigest digest = sha256();
+        update(digest, Build.HASH);
+        update(digest, stage.name().getBytes(StandardCharsets.UTF_8));
+        update(digest, variant.getBytes(StandardCharsets.UTF_8));
+        update(digest, bytes);
+
+        // headers, breadth first, each one once
+        File dir = inputFile.getAbsoluteFile().getParentFile();
+        Deque<String> pending = new ArrayDeque<>(includes(bytes));
+        Set<String> seen = new HashSet<>();
+        while (!pending.isEmpty()) {
+            String name = pending.poll();
+            if (!seen.add(name))
+                continue;
+            update(digest, name.getBytes(StandardCharsets.UTF_8));
+            File header = new File(dir, name);
+            if (header.isFile()) {
+                byte[] content = Files.readAllBytes(header.toPath());
+                update(digest, content);
+                pending.addAll(includes(content));
+            } else {
+                update(digest, new byte[0]); // missing header, hashed by name alone
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /*
+     * Hashes the compiler's class files, so that a build which lexes, checks or generates
+     * differently never reads the entries of another. Should they be out of reach, entries are
+     * only reused within this JVM.
+     */
+    private static byte[] hashBuild() {
+        try {
+            return hashBuild(Paths.get(CompilationCache.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /*
+     * Hashes the jar, or every class file under the directory, the classes were loaded from.
+     */
+    public static byte[] hashBuild(Path location) throws IOException {
+        MessageDigest digest = sha256();
+        if (!Files.isDirectory(location)) {
+            update(digest, Files.readAllBytes(location));
+            return digest.digest();
+        }
+        List<Path> classes;
+        try (Stream<Path> files = Files.walk(location)) {
+            classes = files.filter(f -> f.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+        }
+        for (Path f : classes) {
+            update(digest, location.relativize(f).toString().getBytes(StandardCharsets.UTF_8));
+            update(digest, Files.readAllBytes(f));
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, byte[] bytes) {
+        // length prefixed, so that concatenations cannot collide
+        digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length});
+        digest.update(bytes);
+    }
+
+    private static Deque<String> includes(byte[] source) {
+        Deque<String> names = new ArrayDeque<>();
+        Matcher m = INCLUDE.matcher(new String(source, StandardCharsets.UTF_8));
+        while (m.find())
+            names.add(m.group(1));
+        return names;
+    }
+
+    /*
+     * Returns the entry stored under the key, or null on a miss.
+     */
+    public synchronized Entry get(String key) {
+        String name = key + SUFFIX;
+        if (entries.get(name) != null) {
+            File file = new File(directory, name);
+            try {
+                Entry entry = read(Files.readAllBytes(file.toPath()));
+                file.setLastModified(System.currentTimeMillis());
+                hits++;
+                return entry;
+            } catch (IOException e) {
+                // deleted or truncated behind our back, treat as a miss
+                remove(name);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String key, Entry entry) throws IOException {
+        String name = key + SUFFIX;
+        byte[] bytes = write(entry);
+        File file = new File(directory, name);
+        File tmp = File.createTempFile("entry", ".tmp", directory);
+        Files.write(tmp.toPath(), bytes);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Long previous = entries.put(name, (long) bytes.length);
+        totalBytes += bytes.length - (previous == null ? 0 : previous);
+        while (totalBytes > maxBytes && entries.size() > 1) {
+            String eldest = entries.keySet().iterator().next();
+            remove(eldest);
+            evictions++;
+        }
+    }
+
+    private void remove(String name) {
+        Long size = entries.remove(name);
+        if (size != null)
+            totalBytes -= size;
+        new File(directory, name).delete();
+    }
+
+    private static byte[] write(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entry.status);
+        for (String s : new String[]{entry.out, entry.err, entry.product}) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry read(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int status = in.readInt();
+        String[] s = new String[3];
+        for (int i = 0; i < s.length; i++) {
+            byte[] b = new byte[in.readInt()];
+            in.readFully(b);
+            s[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        return new Entry(status, s[0], s[1], s[2]);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "cache " + directory + ": " + hits + " hits, " + misses + " misses, " + evictions + " evictions, "
+                + entries.size() + " entries (" + totalBytes + " bytes)";
+    }
+}
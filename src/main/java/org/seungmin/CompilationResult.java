@@ -0,0 +1,34 @@
+package org.seungmin;
+
+import org.seungmin.ast.Program;
+
+/**
+ * Outcome of one Compiler.compile call.
+ */
+public class CompilationResult {
+
+    public final Compiler.Stage requested;
+    public final Compiler.Stage reached;  // last stage that ran, the one that failed if errors > 0
+    public final int errors;              // errors reported by the reached stage
+    public final Program program;         // null if the pipeline stopped before building the AST
+
+    // -1 when the input was not tokenised up front (or parsing did not run)
+    public final int tokenCount;
+    public final long lexingNanos;
+    public final long parsingNanos;
+
+    CompilationResult(Compiler.Stage requested, Compiler.Stage reached, int errors, Program program,
+                      int tokenCount, long lexingNanos, long parsingNanos) {
+        this.requested = requested;
+        this.reached = reached;
+        this.errors = errors;
+        this.program = program;
+        this.tokenCount = tokenCount;
+        this.lexingNanos = lexingNanos;
+        this.parsingNanos = parsingNanos;
+    }
+
+    public boolean succeeded() {
+        return errors == 0;
+    }
+}
@@ -0,0 +1,118 @@
+package org.seungmin;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+
+/**
+ * Thin front end to CompileServer, taking the same arguments as Main:
+ *
+ *   java org.seungmin.CompileClient [--server-port=N] [options] pass inputfile outputfile
+ *
+ * An inputfile of - sends the source read from stdin. When no server is listening the file is
+ * compiled in-process instead, so scripts keep working without one.
+ */
+public class CompileClient {
+
+    // the options of Main naming a file or directory
+    private static final String[] PATH_OPTIONS = {"--cache="};
+
+    public static void main(String[] args) throws IOException {
+        int port = CompileServer.DEFAULT_PORT;
+        if (args.length > 0 && args[0].startsWith("--server-port=")) {
+            long n = Main.number(args[0], "--server-port=", 1, 65535);
+            if (n < 0) {
+                System.out.println("Usage: java "+CompileClient.class.getSimpleName()+" [--server-port=N] [options] pass inputfile outputfile");
+                System.out.println("where N is a port from 1 to 65535 and the rest are the arguments of Main");
+                System.exit(-1);
+            }
+            port = (int) n;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        args = absolutePaths(args);
+        String source = null;
+        int argi = 0;
+        while (argi < args.length && args[argi].startsWith("--"))
+            argi++;
+        if (args.length - argi == 3 && args[argi + 1].equals("-"))
+            source = new String(System.in.readAllBytes(), StandardCharsets.UTF_8);
+
+        int status;
+        try {
+            status = request(port, args, source, System.out, System.err);
+        } catch (ConnectException | NoSuchFileException e) {
+            status = Main.run(args, source, System.out, System.err);
+        }
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /*
+     * The server may run in another directory, input and output files and the paths given to
+     * options are sent as absolute paths.
+     */
+    static String[] absolutePaths(String[] args) {
+        String[] resolved = args.clone();
+        int argi = 0;
+        for (; argi < args.length && args[argi].startsWith("--"); argi++) {
+            for (String option : PATH_OPTIONS)
+                if (args[argi].startsWith(option))
+                    resolved[argi] = option + new File(args[argi].substring(option.length())).getAbsolutePath();
+        }
+        if (args.length - argi == 3) {
+            for (int i = argi + 1; i < args.length; i++)
+                if (!args[i].equals("-"))
+                    resolved[i] = new File(args[i]).getAbsolutePath();
+        }
+        return resolved;
+    }
+
+    /*
+     * Sends one request and copies the response to out and err; returns the exit status.
+     * Throws NoSuchFileException when no server of this user has written its token for port.
+     */
+    public static int request(int port, String[] args, CharSequence source, OutputStream out, OutputStream err) throws IOException {
+        String token = new String(Files.readAllBytes(CompileServer.tokenFile(port)), StandardCharsets.UTF_8);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeUTF(token);
+            request.writeInt(args.length);
+            for (String arg : args)
+                request.writeUTF(arg);
+            request.writeBoolean(source != null);
+            if (source != null) {
+                byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+                request.writeInt(bytes.length);
+                request.write(bytes);
+            }
+            request.flush();
+
+            DataInputStream response = new DataInputStream(socket.getInputStream());
+            byte[] buffer = new byte[8192];
+            while (true) {
+                byte channel = response.readByte();
+                if (channel == CompileServer.EXIT)
+                    return response.readInt();
+                OutputStream target = channel == CompileServer.STDOUT ? out : err;
+                for (int remaining = response.readInt(); remaining > 0; ) {
+                    int n = response.read(buffer, 0, Math.min(buffer.length, remaining));
+                    if (n < 0)
+                        throw new IOException("connection closed by the compile server");
+                    target.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            }
+        }
+    }
+}
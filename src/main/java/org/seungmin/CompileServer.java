@@ -0,0 +1,233 @@
+package org.seungmin;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived compiler process, so that JVM startup, class loading and JIT warm-up are paid once
+ * rather than by every compilation. CompileClient is the thin command line front end.
+ *
+ * The server listens on a loopback port. Each connection carries one request: the arguments
+ * of Main, paths made absolute by the client, optionally followed by the source itself. The
+ * server runs Main.run in-process and streams back what Main would have printed on stdout and
+ * stderr, then the exit status.
+ *
+ * Any local user can connect to a loopback port, so every request starts with a secret token
+ * the server draws at startup and writes to tokenFile(port), readable by its owner only; a
+ * request without it is refused. The token is the only protection: a client holding it can
+ * have the server read and write any file its user can, like Main. A connection must send its
+ * request within READ_TIMEOUT_MILLIS, so that idle connections cannot hold on to the workers,
+ * and a request whose lengths are out of bounds is answered with MODE_FAIL.
+ *
+ * Request:  UTF token, int argc, argc * UTF arg, boolean inline, [int length, length * byte UTF-8 source]
+ * Response: frames of byte channel (STDOUT or STDERR), int length, length * byte,
+ *           terminated by byte EXIT, int status
+ */
+public class CompileServer implements AutoCloseable {
+
+    static final int DEFAULT_PORT = 7151;
+    static final int READ_TIMEOUT_MILLIS = 10_000;
+    static final int MAX_ARGS = 1024;
+    static final int MAX_SOURCE_BYTES = 64 << 20;
+
+    static final byte EXIT = 0;
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+
+    private final ServerSocket socket;
+    private final ExecutorService workers;
+    private final byte[] token;
+    private final Path tokenFile;
+
+    public CompileServer(int port, int threads) throws IOException {
+        socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        token = HexFormat.of().formatHex(secret).getBytes(StandardCharsets.UTF_8);
+        tokenFile = tokenFile(getPort());
+        try {
+            writeToken(tokenFile, token);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /*
+     * Where the server listening on port keeps its token, in the home directory of its user.
+     */
+    static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".compile-server-" + port);
+    }
+
+    /*
+     * Creates the file afresh, so that it never exists with looser permissions than its owner's.
+     */
+    private static void writeToken(Path file, byte[] token) throws IOException {
+        Files.deleteIfExists(file);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        else
+            Files.createFile(file);
+        Files.write(file, token);
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /*
+     * Accepts connections until the server is closed.
+     */
+    public void serve() throws IOException {
+        while (true) {
+            Socket connection;
+            try {
+                connection = socket.accept();
+            } catch (SocketException e) {
+                if (socket.isClosed())
+                    return;
+                throw e;
+            }
+            workers.execute(() -> handle(connection));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        workers.shutdown();
+        Files.deleteIfExists(tokenFile);
+    }
+
+    private void handle(Socket connection) {
+        try (connection) {
+            connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(connection.getInputStream());
+            byte[] given = in.readUTF().getBytes(StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(token, given))
+                return; // not a client of this user, nothing else is read or run
+
+            DataOutputStream response = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            PrintStream out = new PrintStream(new BufferedOutputStream(new Frames(response, STDOUT)));
+            PrintStream err = new PrintStream(new BufferedOutputStream(new Frames(response, STDERR)));
+            int status;
+            try {
+                String[] args = new String[length(in.readInt(), MAX_ARGS, "argument count")];
+                for (int i = 0; i < args.length; i++)
+                    args[i] = in.readUTF();
+                String source = null;
+                if (in.readBoolean()) {
+                    byte[] bytes = in.readNBytes(length(in.readInt(), MAX_SOURCE_BYTES, "source length"));
+                    source = new String(bytes, StandardCharsets.UTF_8);
+                }
+                status = Main.run(args, source, out, err);
+            } catch (ProtocolException e) {
+                err.println("compile server: " + e.getMessage());
+                status = Main.MODE_FAIL;
+            } catch (RuntimeException | StackOverflowError e) {
+                // a bad request must not bring the server down
+                e.printStackTrace(err);
+                status = Main.MODE_FAIL;
+            }
+            out.flush();
+            err.flush();
+            synchronized (response) {
+                response.writeByte(EXIT);
+                response.writeInt(status);
+                response.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("compile server: " + e.getMessage());
+        }
+    }
+
+    /*
+     * A length read from the request, refused unless between 0 and max.
+     */
+    private static int length(int length, int max, String what) throws ProtocolException {
+        if (length < 0 || length > max)
+            throw new ProtocolException("bad request, " + what + " " + length);
+        return length;
+    }
+
+    /*
+     * Turns writes into frames of the given channel, stdout and stderr share one connection.
+     */
+    private static class Frames extends OutputStream {
+        private final DataOutputStream response;
+        private final byte channel;
+
+        Frames(DataOutputStream response, byte channel) {
+            this.response = response;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (response) {
+                response.writeByte(channel);
+                response.writeInt(len);
+                response.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (response) {
+                response.flush();
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java "+CompileServer.class.getSimpleName()+" [--port=N] [--threads=N]");
+        System.out.println("listens on the loopback interface, port "+DEFAULT_PORT+" by default");
+        System.exit(-1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            long n = -1;
+            if (arg.startsWith("--port="))
+                port = (int) (n = Main.number(arg, "--port=", 0, 65535));
+            else if (arg.startsWith("--threads="))
+                threads = (int) (n = Main.number(arg, "--threads=", 1, Integer.MAX_VALUE));
+            if (n < 0)
+                usage();
+        }
+
+        try (CompileServer server = new CompileServer(port, threads)) {
+            System.out.println("Compile server listening on port " + server.getPort());
+            server.serve();
+        }
+    }
+}
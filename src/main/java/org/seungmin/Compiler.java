@@ -0,0 +1,175 @@
+package org.seungmin;
+
+import org.seungmin.ast.ASTPrinter;
+import org.seungmin.ast.Program;
+import org.seungmin.gen.CodeGenerator;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.Inliner;
+import org.seungmin.ir.LiveVariables;
+import org.seungmin.lexer.Scanner;
+import org.seungmin.lexer.TableTokeniser;
+import org.seungmin.lexer.Token;
+import org.seungmin.lexer.TokenStream;
+import org.seungmin.lexer.Tokeniser;
+import org.seungmin.parser.Parser;
+import org.seungmin.parser.ParserPart1;
+import org.seungmin.util.Diagnostics;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Library entry point to the compiler pipeline.
+ *
+ * Every compilation runs the stages up to the selected one on fresh objects, reports errors to
+ * the diagnostics sink and writes what the stage produces to an Appendable: the tokens for
+ * LEXER, the printed AST for AST, the printed IR for IR, the sets of LiveVariables for LIVENESS
+ * and the assembly for GEN. Nothing is printed and the JVM is never exited, so a single Compiler can be kept around and shared by
+ * threads, as long as its diagnostics sink is thread-safe.
+ */
+public class Compiler {
+
+    public enum Stage {
+        LEXER, PARSER, AST, SEMANTICANALYSIS, IR, LIVENESS, GEN
+    }
+
+    public static class Options {
+        public boolean tableLexer = false;   // use the TableTokeniser
+        public boolean prelex = false;       // tokenise the whole input before parsing
+        public boolean recogniseOnly = false; // parse with ParserPart1, no AST, up to PARSER only
+        public SemanticAnalyzer.Mode semantics = SemanticAnalyzer.Mode.SEPARATE;
+        public CodeGenerator.Allocator allocator = CodeGenerator.Allocator.GRAPH_COLORING;
+        public boolean optimize = true;      // SSA constant propagation and peephole optimisation
+        public boolean tailCalls = true;     // self-recursive calls in tail position become jumps
+        public int inlineSize = Inliner.DEFAULT_SIZE;     // largest function inlined, 0 for none
+        public int inlineGrowth = Inliner.DEFAULT_GROWTH; // percent a function may grow by inlining
+
+        /*
+         * The options the output of stage depends on, besides the source. The lexer, the parser
+         * and the semantic analysis decide which diagnostics every stage reports, the others only
+         * change what follows the semantic analysis.
+         */
+        public String variant(Stage stage) {
+            String variant = (tableLexer ? "table" : "default") + (prelex ? ",prelex" : "")
+                    + (recogniseOnly ? ",recognise" : "") + ",sem=" + semantics.name();
+            if (stage.compareTo(Stage.SEMANTICANALYSIS) <= 0)
+                return variant;
+            return variant + "," + allocator.name()
+                    + (optimize ? ",inline=" + inlineSize + "/" + inlineGrowth + (tailCalls ? "" : ",notail") : ",noopt");
+        }
+    }
+
+    private final Options options;
+    private final Diagnostics diagnostics;
+
+    public Compiler(Options options, Diagnostics diagnostics) {
+        this.options = options;
+        this.diagnostics = diagnostics;
+    }
+
+    public Compiler() {
+        this(new Options(), Diagnostics.CONSOLE);
+    }
+
+    public CompilationResult compile(Stage stage, CharSequence source, Appendable out) throws IOException {
+        return compile(stage, new Scanner(source), out);
+    }
+
+    public CompilationResult compile(Stage stage, File source, Appendable out) throws IOException {
+        return compile(stage, new Scanner(source), out);
+    }
+
+    private CompilationResult compile(Stage stage, Scanner scanner, Appendable out) throws IOException {
+        if (options.recogniseOnly && stage.compareTo(Stage.PARSER) > 0)
+            throw new IllegalArgumentException(stage + " needs an AST, which ParserPart1 does not build");
+
+        Tokeniser tokeniser = options.tableLexer ? new TableTokeniser(scanner) : new Tokeniser(scanner);
+        tokeniser.setDiagnostics(diagnostics);
+        if (stage == Stage.LEXER) {
+            for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken())
+                out.append(t.toString()).append('\n');
+            return new CompilationResult(stage, Stage.LEXER, tokeniser.getErrorCount(), null, -1, -1, -1);
+        }
+
+        int tokenCount = -1;
+        long lexingNanos = -1;
+        TokenStream tokens = null;
+        if (options.prelex) {
+            long start = System.nanoTime();
+            tokens = TokenStream.lex(tokeniser);
+            lexingNanos = System.nanoTime() - start;
+            tokenCount = tokens.size();
+        }
+
+        long start = System.nanoTime();
+        Program program = null;
+        int parseErrors;
+        if (options.recogniseOnly) {
+            ParserPart1 parser = tokens == null ? new ParserPart1(tokeniser) : new ParserPart1(tokens);
+            parser.setDiagnostics(diagnostics);
+            parser.parse();
+            parseErrors = parser.getErrorCount();
+        } else {
+            Parser parser = tokens == null ? new Parser(tokeniser) : new Parser(tokens);
+            parser.setDiagnostics(diagnostics);
+            program = parser.parse();
+            parseErrors = parser.getErrorCount();
+        }
+        long parsingNanos = System.nanoTime() - start;
+        if (parseErrors > 0 || stage == Stage.PARSER)
+            return new CompilationResult(stage, Stage.PARSER, parseErrors, program, tokenCount, lexingNanos, parsingNanos);
+
+        if (stage == Stage.AST) {
+            PrintWriter writer = writerFor(out);
+            program.accept(new ASTPrinter(writer));
+            writer.flush();
+            return new CompilationResult(stage, Stage.AST, 0, program, tokenCount, lexingNanos, parsingNanos);
+        }
+
+        int semErrors = new SemanticAnalyzer(options.semantics).analyze(program, diagnostics);
+        if (semErrors > 0 || stage == Stage.SEMANTICANALYSIS)
+            return new CompilationResult(stage, Stage.SEMANTICANALYSIS, semErrors, program, tokenCount, lexingNanos, parsingNanos);
+
+        CodeGenerator generator = new CodeGenerator(options.allocator, options.optimize, options.tailCalls, options.inlineSize, options.inlineGrowth);
+        if (stage == Stage.IR) {
+            PrintWriter writer = writerFor(out);
+            generator.lower(program).print(writer);
+            writer.flush();
+            return new CompilationResult(stage, Stage.IR, 0, program, tokenCount, lexingNanos, parsingNanos);
+        }
+        if (stage == Stage.LIVENESS) {
+            PrintWriter writer = writerFor(out);
+            for (Function f : generator.lower(program).functions)
+                new LiveVariables(f).print(writer);
+            writer.flush();
+            return new CompilationResult(stage, Stage.LIVENESS, 0, program, tokenCount, lexingNanos, parsingNanos);
+        }
+        generator.emitProgram(program, writerFor(out));
+        return new CompilationResult(stage, Stage.GEN, 0, program, tokenCount, lexingNanos, parsingNanos);
+    }
+
+    private static PrintWriter writerFor(Appendable out) {
+        if (out instanceof PrintWriter)
+            return (PrintWriter) out;
+        if (out instanceof Writer)
+            return new PrintWriter((Writer) out);
+        return new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                out.append(CharBuffer.wrap(cbuf, off, len));
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+}
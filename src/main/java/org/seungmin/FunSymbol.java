@@ -0,0 +1,12 @@
+package org.seungmin;
+
+import org.seungmin.ast.FunDecl;
+
+public class FunSymbol extends Symbol {
+	public final FunDecl fd;
+
+	public FunSymbol(FunDecl fd) {
+		super(fd.name);
+		this.fd = fd;
+	}
+}
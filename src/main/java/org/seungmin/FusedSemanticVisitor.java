@@ -0,0 +1,204 @@
+package org.seungmin;
+
+import org.seungmin.ast.*;
+import org.seungmin.util.Diagnostic;
+import org.seungmin.util.Diagnostics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Name analysis and type checking in a single traversal of the AST.
+ *
+ * Names are resolved on the way down, as in NameAnalysisVisitor, and every node is typed on the
+ * way back up with the rules of TypeCheckVisitor, by which time the names and types of its
+ * children are known. The two kinds of errors are buffered and reported once the program has
+ * been visited, name errors first, so the output is the same as running the two visitors one
+ * after the other.
+ */
+public class FusedSemanticVisitor extends NameAnalysisVisitor {
+
+	private final TypeCheckVisitor types;
+	private final List<Diagnostic> nameErrors = new ArrayList<>();
+	private final List<Diagnostic> typeErrors = new ArrayList<>();
+	private Diagnostics diagnostics = Diagnostics.CONSOLE;
+
+	public FusedSemanticVisitor() {
+		types = new TypeCheckVisitor();
+		super.setDiagnostics(nameErrors::add);
+		types.setDiagnostics(typeErrors::add);
+	}
+
+	/*
+	 * A visitor for a single function, see NameAnalysisVisitor(NameAnalysisVisitor, int).
+	 * Its errors are left in the buffers for the caller to merge.
+	 */
+	FusedSemanticVisitor(FusedSemanticVisitor globals, int position) {
+		super(globals, position);
+		types = new TypeCheckVisitor(globals.types);
+		super.setDiagnostics(nameErrors::add);
+		types.setDiagnostics(typeErrors::add);
+	}
+
+	List<Diagnostic> nameErrors() {
+		return nameErrors;
+	}
+
+	List<Diagnostic> typeErrors() {
+		return typeErrors;
+	}
+
+	@Override
+	public void setDiagnostics(Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
+	@Override
+	public int getErrorCount() {
+		return super.getErrorCount() + types.getErrorCount();
+	}
+
+	@Override
+	public Void visitProgram(Program p) {
+		super.visitProgram(p);
+		for (Diagnostic d : nameErrors)
+			diagnostics.report(d);
+		for (Diagnostic d : typeErrors)
+			diagnostics.report(d);
+		nameErrors.clear();
+		typeErrors.clear();
+		return null;
+	}
+
+	@Override
+	void visitGlobalDecls(Program p) {
+		types.beginProgram(p);
+		super.visitGlobalDecls(p);
+	}
+
+	@Override
+	public Void visitStructTypeDecl(StructTypeDecl st) {
+		super.visitStructTypeDecl(st);
+		// name analysis only visits the types of the fields, not the fields themselves
+		for (VarDecl vd : st.varDecls)
+			types.checkVarDecl(vd);
+		types.checkStructTypeDecl(st);
+		return null;
+	}
+
+	@Override
+	public Void visitFunDecl(FunDecl p) {
+		types.beginFunction(p);
+		return super.visitFunDecl(p);
+	}
+
+	@Override
+	public Void visitVarDecl(VarDecl vd) {
+		super.visitVarDecl(vd);
+		types.checkVarDecl(vd);
+		return null;
+	}
+
+	@Override
+	public Void visitVarExpr(VarExpr v) {
+		super.visitVarExpr(v);
+		types.typeVarExpr(v);
+		return null;
+	}
+
+	@Override
+	public Void visitIntLiteral(IntLiteral il) {
+		types.typeIntLiteral(il);
+		return null;
+	}
+
+	@Override
+	public Void visitStrLiteral(StrLiteral sl) {
+		types.typeStrLiteral(sl);
+		return null;
+	}
+
+	@Override
+	public Void visitChrLiteral(ChrLiteral cl) {
+		types.typeChrLiteral(cl);
+		return null;
+	}
+
+	@Override
+	public Void visitFunCallExpr(FunCallExpr fce) {
+		super.visitFunCallExpr(fce);
+		types.typeFunCallExpr(fce);
+		return null;
+	}
+
+	@Override
+	public Void visitBinOp(BinOp bo) {
+		super.visitBinOp(bo);
+		types.typeBinOp(bo);
+		return null;
+	}
+
+	@Override
+	public Void visitArrayAccessExpr(ArrayAccessExpr aae) {
+		super.visitArrayAccessExpr(aae);
+		types.typeArrayAccessExpr(aae);
+		return null;
+	}
+
+	@Override
+	public Void visitFieldAccessExpr(FieldAccessExpr fae) {
+		super.visitFieldAccessExpr(fae);
+		types.typeFieldAccessExpr(fae);
+		return null;
+	}
+
+	@Override
+	public Void visitValueAtExpr(ValueAtExpr vae) {
+		super.visitValueAtExpr(vae);
+		types.typeValueAtExpr(vae);
+		return null;
+	}
+
+	@Override
+	public Void visitSizeOfExpr(SizeOfExpr soe) {
+		super.visitSizeOfExpr(soe);
+		types.typeSizeOfExpr(soe);
+		return null;
+	}
+
+	@Override
+	public Void visitTypecastExpr(TypecastExpr te) {
+		super.visitTypecastExpr(te);
+		types.typeTypecastExpr(te);
+		return null;
+	}
+
+	@Override
+	public Void visitWhile(While w) {
+		super.visitWhile(w);
+		types.checkCondition("while", w.cond);
+		return null;
+	}
+
+	@Override
+	public Void visitIf(If i) {
+		super.visitIf(i);
+		types.checkCondition("if", i.cond);
+		return null;
+	}
+
+	@Override
+	public Void visitAssign(Assign a) {
+		super.visitAssign(a);
+		types.checkAssign(a);
+		return null;
+	}
+
+	@Override
+	public Void visitReturn(Return r) {
+		super.visitReturn(r);
+		types.checkReturn(r);
+		return null;
+	}
+
+}
@@ -1,18 +1,16 @@
 package org.seungmin;
 
-import org.seungmin.ast.ASTPrinter;
-import org.seungmin.ast.Program;
+import org.seungmin.Compiler.Stage;
 import org.seungmin.gen.CodeGenerator;
-import org.seungmin.lexer.Scanner;
-import org.seungmin.lexer.Token;
-import org.seungmin.lexer.Tokeniser;
-import org.seungmin.parser.Parser;
-import org.seungmin.SemanticAnalyzer;
+import org.seungmin.util.Diagnostics;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.util.Arrays;
 
 
 /**
@@ -22,118 +20,281 @@ import java.io.StringWriter;
  *     which returns the total number of lexing errors.
  */
 public class Main {
-	private static final int FILE_NOT_FOUND = 2;
-    private static final int MODE_FAIL      = 254;
-    private static final int LEXER_FAIL     = 250;
-    private static final int PARSER_FAIL    = 245;
-    private static final int SEM_FAIL       = 240;
-    private static final int PASS           = 0;
-    
-    private enum Mode {
-        LEXER, PARSER, AST, SEMANTICANALYSIS, GEN
+	static final int FILE_NOT_FOUND = 2;
+    static final int MODE_FAIL      = 254;
+    static final int LEXER_FAIL     = 250;
+    static final int PARSER_FAIL    = 245;
+    static final int SEM_FAIL       = 240;
+    static final int PASS           = 0;
+
+    /*
+     * The leading --options, shared with BatchMain.
+     */
+    static class Options {
+        final Compiler.Options compiler = new Compiler.Options();
+        boolean timings = false;
+        File cacheDir = null;
+        long cacheBytes = 64L << 20;
+
+        // returns false if the option is not recognised
+        boolean parse(String option) {
+            if (option.startsWith("--cache=")) {
+                cacheDir = new File(option.substring("--cache=".length()));
+                return true;
+            }
+            if (option.startsWith("--cache-size=")) {
+                long megabytes = number(option, "--cache-size=", 1, Long.MAX_VALUE >> 20);
+                if (megabytes < 0)
+                    return false;
+                cacheBytes = megabytes << 20;
+                return true;
+            }
+            if (option.startsWith("--inline=")) {
+                long size = number(option, "--inline=", 0, Integer.MAX_VALUE);
+                if (size < 0)
+                    return false;
+                compiler.inlineSize = (int) size;
+                return true;
+            }
+            if (option.startsWith("--inline-growth=")) {
+                long growth = number(option, "--inline-growth=", 0, Integer.MAX_VALUE);
+                if (growth < 0)
+                    return false;
+                compiler.inlineGrowth = (int) growth;
+                return true;
+            }
+            switch (option) {
+                case "--lexer=table":   compiler.tableLexer = true; return true;
+                case "--lexer=default": compiler.tableLexer = false; return true;
+                case "--prelex":        compiler.prelex = true; return true;
+                case "--timings":       timings = true; return true;
+                case "--sem=separate":  compiler.semantics = SemanticAnalyzer.Mode.SEPARATE; return true;
+                case "--sem=fused":     compiler.semantics = SemanticAnalyzer.Mode.FUSED; return true;
+                case "--sem=parallel":  compiler.semantics = SemanticAnalyzer.Mode.PARALLEL; return true;
+                case "--regalloc=coloring": compiler.allocator = CodeGenerator.Allocator.GRAPH_COLORING; return true;
+                case "--regalloc=stack":    compiler.allocator = CodeGenerator.Allocator.FREE_STACK; return true;
+                case "--regalloc=linear":   compiler.allocator = CodeGenerator.Allocator.LINEAR_SCAN; return true;
+                case "--no-opt":            compiler.optimize = false; return true;
+                case "--no-tail-calls":     compiler.tailCalls = false; return true;
+                default:                return false;
+            }
+        }
+
+        // null unless --cache was given
+        CompilationCache cache() {
+            return cacheDir == null ? null : CompilationCache.open(cacheDir, cacheBytes);
+        }
     }
 
-    private static void usage() {
-        System.out.println("Usage: java "+Main.class.getSimpleName()+" pass inputfile outputfile");
-        System.out.println("where pass is either: -java.lexer, -java.parser, -java.ast, -java.sem or -java.gen");
-        System.exit(-1);
+    /*
+     * The value of a numeric option, or -1 if it is not a number between min and max, min >= 0.
+     */
+    static long number(String option, String prefix, long min, long max) {
+        try {
+            long value = Long.parseLong(option.substring(prefix.length()));
+            return value >= min && value <= max ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int usage(PrintStream out) {
+        out.println("Usage: java "+Main.class.getSimpleName()+" [options] pass inputfile outputfile");
+        out.println("where pass is either: -java.lexer, -java.parser, -java.ast, -java.sem, -java.ir, -java.liveness or -java.gen");
+        out.println("and options are:");
+        out.println("  --lexer=table    use the table-driven tokeniser");
+        out.println("  --prelex         tokenise the whole file before parsing");
+        out.println("  --sem=fused      resolve names and check types in a single traversal");
+        out.println("  --sem=parallel   same, analysing the functions concurrently");
+        out.println("  --regalloc=stack allocate registers from the free register stack, variables in memory");
+        out.println("  --regalloc=linear allocate registers by linear scan, faster than graph coloring");
+        out.println("  --no-opt         skip constant propagation over the SSA form and peephole optimisation");
+        out.println("  --no-tail-calls  keep self-recursive calls in tail position as calls");
+        out.println("  --inline=N       inline functions of up to N IR instructions, 40 by default, 0 for none");
+        out.println("  --inline-growth=PERCENT  bound on the growth of a function by inlining, 100 by default");
+        out.println("  --timings        report the time spent lexing and parsing on stderr");
+        out.println("  --cache=DIR      reuse the results of -java.sem and -java.gen cached in DIR");
+        out.println("  --cache-size=MB  bound of the cache, 64MB by default");
+        out.println("an outputfile of - prints the generated code on stdout");
+        return -1;
+    }
+
+    // returns null if the pass is not recognised
+    static Stage parseMode(String pass) {
+        switch (pass) {
+            case "-java.lexer": return Stage.LEXER;	case "-java.parser": return Stage.PARSER;
+            case "-java.ast":   return Stage.AST;		case "-java.sem":    return Stage.SEMANTICANALYSIS;
+            case "-java.ir":    return Stage.IR;		case "-java.gen":    return Stage.GEN;
+            case "-java.liveness": return Stage.LIVENESS;
+            default:            return null;
+        }
     }
 
     public static void main(String[] args) {
         //args = new String[]{"-java.parser", "tests/fibonacci.c", "tests/test"};
+        System.exit(run(args, null, System.out, System.err));
+    }
+
+    /*
+     * Parses the command line and compiles, returning the exit status instead of exiting.
+     * If source is not null it is compiled in place of the input file, see compile.
+     */
+    static int run(String[] args, CharSequence source, PrintStream out, PrintStream err) {
+        Options options = new Options();
+        int argi = 0;
+        for (; argi < args.length && args[argi].startsWith("--"); argi++) {
+            if (!options.parse(args[argi]))
+                return usage(out);
+        }
+        args = Arrays.copyOfRange(args, argi, args.length);
 
         if (args.length != 3)
-            usage();
+            return usage(out);
 
-        Mode mode = null;
-        switch (args[0]) {
-            case "-java.lexer": mode = Mode.LEXER; break;	case "-java.parser": mode = Mode.PARSER; break;
-            case "-java.ast":   mode = Mode.AST; break;		case "-java.sem":    mode = Mode.SEMANTICANALYSIS; break;
-            case "-java.gen":   mode = Mode.GEN; break;
-            default:
-                usage();
-                break;
+        Stage mode = parseMode(args[0]);
+        if (mode == null)
+            return usage(out);
+
+        File outputFile = args[2].equals("-") ? null : new File(args[2]);
+        return compile(mode, options, new File(args[1]), source, outputFile, out, err);
+    }
+
+    /*
+     * Compiles one file up to the given stage, printing the pass/fail lines on out, diagnostics on
+     * out and err as the stages used to, and timings on err. Returns the exit status.
+     */
+    static int compile(Stage mode, Options options, File inputFile, File outputFile, PrintStream out, PrintStream err) {
+        return compile(mode, options, inputFile, null, outputFile, out, err);
+    }
+
+    /*
+     * As above, but if source is not null it is compiled instead of the contents of inputFile,
+     * and if outputFile is null the assembly is printed on out. Used by the compile server.
+     */
+    static int compile(Stage mode, Options options, File inputFile, CharSequence source, File outputFile,
+                       PrintStream out, PrintStream err) {
+        CompilationCache cache = options.cache();
+        int status;
+        String product;
+        // timings would be stale, those runs always compile
+        if (cache != null && CompilationCache.caches(mode) && !options.timings) {
+            String key;
+            try {
+                key = cache.key(mode, options.compiler.variant(mode), inputFile, source);
+            } catch (FileNotFoundException e) {
+                out.println("File "+inputFile.toString()+" does not exist.");
+                return FILE_NOT_FOUND;
+            } catch (IOException e) {
+                e.printStackTrace(err);
+                return MODE_FAIL;
+            }
+            CompilationCache.Entry entry = cache.get(key);
+            if (entry == null) {
+                ByteArrayOutputStream bufferedOut = new ByteArrayOutputStream();
+                ByteArrayOutputStream bufferedErr = new ByteArrayOutputStream();
+                StringBuilder generated = new StringBuilder();
+                status = runPipeline(mode, options, inputFile, source, generated, new PrintStream(bufferedOut, true), new PrintStream(bufferedErr, true));
+                entry = new CompilationCache.Entry(status, bufferedOut.toString(), bufferedErr.toString(), generated.toString());
+                try {
+                    cache.put(key, entry);
+                } catch (IOException e) {
+                    err.println("Could not write to the cache: " + e.getMessage());
+                }
+            }
+            err.print(entry.err);
+            out.print(entry.out);
+            status = entry.status;
+            product = entry.product;
+        } else {
+            StringBuilder generated = new StringBuilder();
+            status = runPipeline(mode, options, inputFile, source, generated, out, err);
+            product = generated.toString();
+        }
+
+        if (mode != Stage.GEN || status != PASS)
+            return status;
+        if (outputFile == null) {
+            out.print(product);
+            return PASS;
+        }
+        try (PrintWriter writer = new PrintWriter(outputFile)) {
+            writer.print(product);
+        } catch (FileNotFoundException e) {
+            out.println("File "+outputFile.toString()+" does not exist.");
+            return FILE_NOT_FOUND;
         }
+        return PASS;
+    }
 
-        File inputFile = new File(args[1]);
-        File outputFile = new File(args[2]);
-        Scanner scanner;
+    /*
+     * Runs the pipeline; the assembly is left in product for the caller to write out.
+     */
+    private static int runPipeline(Stage mode, Options options, File inputFile, CharSequence source, StringBuilder product,
+                                   PrintStream out, PrintStream err) {
+        Compiler compiler = new Compiler(options.compiler, Diagnostics.printingTo(out, err));
+        // the AST is printed after the pass line and the assembly only written on success
+        Appendable productOut = mode == Stage.LEXER ? out : product;
+        CompilationResult result;
         try {
-            scanner = new Scanner(inputFile);
+            if (source != null)
+                result = compiler.compile(mode, source, productOut);
+            else
+                result = compiler.compile(mode, inputFile, productOut);
         } catch (FileNotFoundException e) {
-            System.out.println("File "+inputFile.toString()+" does not exist.");
-            System.exit(FILE_NOT_FOUND);
-            return;
+            out.println("File "+inputFile.toString()+" does not exist.");
+            return FILE_NOT_FOUND;
+        } catch (IOException e) {
+            e.printStackTrace(err);
+            return MODE_FAIL;
         }
 
-        Tokeniser tokeniser = new Tokeniser(scanner);
-        if (mode == Mode.LEXER) {
-            for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken()) 
-            	System.out.println(t);
-            if (tokeniser.getErrorCount() == 0)
-        		System.out.println("Lexing: pass");
-    	    else
-        		System.out.println("Lexing: failed ("+tokeniser.getErrorCount()+" errors)");	
-            System.exit(tokeniser.getErrorCount() == 0 ? PASS : LEXER_FAIL);
-        } else if (mode == Mode.PARSER) {
-		    Parser parser = new Parser(tokeniser);
-		    parser.parse();
-		    if (parser.getErrorCount() == 0)
-		    	System.out.println("Parsing: pass");
-		    else
-		    	System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-		    System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
-        }  else if (mode == Mode.AST) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
-            if (parser.getErrorCount() == 0) {
-                System.out.println("Parsing: pass");
-                System.out.println("Printing out AST:");
-                PrintWriter writer;
-                StringWriter sw = new StringWriter();
-                try {
-                    writer = new PrintWriter(sw);
-                    programAst.accept(new ASTPrinter(writer));
-                    writer.flush();
-                    System.out.print(sw.toString());
-                    writer.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            } else
-                System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-            System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
-        } else if (mode == Mode.SEMANTICANALYSIS) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
-            if (parser.getErrorCount() == 0) {
-                SemanticAnalyzer sem = new SemanticAnalyzer();
-                int errors = sem.analyze(programAst);
-                if (errors == 0)
-                    System.out.println("Semantic analysis: Pass");
+        if (options.timings) {
+            if (result.lexingNanos >= 0)
+                err.printf("Lexing: %d tokens in %.3f ms%n", result.tokenCount, result.lexingNanos / 1e6);
+            if (result.parsingNanos >= 0)
+                err.printf("Parsing: %.3f ms%n", result.parsingNanos / 1e6);
+        }
+
+        switch (result.reached) {
+            case LEXER:
+                if (result.succeeded())
+                    out.println("Lexing: pass");
                 else
-                    System.out.println("Semantic analysis: Failed (" + errors + ")");
-                System.exit(errors == 0 ? PASS : SEM_FAIL);
-            } else
-                System.exit(PARSER_FAIL);
-        } else if (mode == Mode.GEN) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
-            if (parser.getErrorCount() > 0)
-                System.exit(PARSER_FAIL);
-            SemanticAnalyzer sem = new SemanticAnalyzer();
-            int errors = sem.analyze(programAst);
-            if (errors > 0)
-                System.exit(SEM_FAIL);
-            CodeGenerator codegen = new CodeGenerator();
-            try {
-                codegen.emitProgram(programAst, outputFile);
-            } catch (FileNotFoundException e) {
-                System.out.println("File "+outputFile.toString()+" does not exist.");
-                System.exit(FILE_NOT_FOUND);
-            }
-        } else {
-        	System.exit(MODE_FAIL);
+                    out.println("Lexing: failed ("+result.errors+" errors)");
+                return result.succeeded() ? PASS : LEXER_FAIL;
+            case PARSER:
+                if (mode == Stage.PARSER || mode == Stage.AST) {
+                    if (result.succeeded())
+                        out.println("Parsing: pass");
+                    else
+                        out.println("Parsing: failed ("+result.errors+" errors)");
+                }
+                return result.succeeded() ? PASS : PARSER_FAIL;
+            case AST:
+                out.println("Parsing: pass");
+                out.println("Printing out AST:");
+                out.print(product);
+                return PASS;
+            case SEMANTICANALYSIS:
+                if (mode == Stage.SEMANTICANALYSIS) {
+                    if (result.succeeded())
+                        out.println("Semantic analysis: Pass");
+                    else
+                        out.println("Semantic analysis: Failed (" + result.errors + ")");
+                }
+                return result.succeeded() ? PASS : SEM_FAIL;
+            case IR:
+                out.println("Printing out IR:");
+                out.print(product);
+                return PASS;
+            case LIVENESS:
+                out.println("Printing out liveness:");
+                out.print(product);
+                return PASS;
+            case GEN:
+                return PASS;
+            default:
+                return MODE_FAIL;
         }
     }
-}
\ No newline at end of file
+}
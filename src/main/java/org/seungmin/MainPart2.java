@@ -1,17 +1,11 @@
 package org.seungmin;
 
-import org.seungmin.ast.ASTPrinter;
-import org.seungmin.ast.Program;
+import org.seungmin.Compiler.Stage;
 import org.seungmin.lexer.Scanner;
-import org.seungmin.lexer.Token;
-import org.seungmin.lexer.Tokeniser;
-import org.seungmin.parser.Parser;
-import org.seungmin.SemanticAnalyzer;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.IOException;
 
 
 /**
@@ -21,16 +15,6 @@ import java.io.StringWriter;
  *     which returns the total number of lexing errors.
  */
 public class MainPart2 {
-	private static final int FILE_NOT_FOUND = 2;
-    private static final int MODE_FAIL      = 254;
-    private static final int LEXER_FAIL     = 250;
-    private static final int PARSER_FAIL    = 245;
-    private static final int SEM_FAIL       = 240;
-    private static final int PASS           = 0;
-    
-    private enum Mode {
-        LEXER, PARSER, AST, SEMANTICANALYSIS, GEN
-    }
 
     private static void usage() {
         System.out.println("Usage: java "+Main.class.getSimpleName()+" pass inputfile outputfile");
@@ -38,81 +22,55 @@ public class MainPart2 {
         System.exit(-1);
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         if (args.length != 3)
             usage();
 
-        Mode mode = null;
-        switch (args[0]) {
-            case "-java.lexer": mode = Mode.LEXER; break;	case "-java.parser": mode = Mode.PARSER; break;
-            case "-java.ast":   mode = Mode.AST; break;		case "-java.sem":    mode = Mode.SEMANTICANALYSIS; break;
-            case "-java.gen":   mode = Mode.GEN; break;
-            default:
-                usage();
-                break;
-        }
+        Stage mode = Main.parseMode(args[0]);
+        if (mode == null)
+            usage();
 
         File inputFile = new File(args[1]);
-        File outputFile = new File(args[2]);
-
-        Scanner scanner;
+        StringBuilder ast = new StringBuilder();
+        CompilationResult result;
         try {
-            scanner = new Scanner(inputFile);
+            if (mode == Stage.GEN) {
+                // code generation is not part 2, only check that the input exists
+                new Scanner(inputFile).close();
+                System.exit(Main.MODE_FAIL);
+            }
+            result = new Compiler().compile(mode, inputFile, mode == Stage.LEXER ? System.out : ast);
         } catch (FileNotFoundException e) {
             System.out.println("File "+inputFile.toString()+" does not exist.");
-            System.exit(FILE_NOT_FOUND);
+            System.exit(Main.FILE_NOT_FOUND);
             return;
         }
 
-        Tokeniser tokeniser = new Tokeniser(scanner);
-        if (mode == Mode.LEXER) {
-            for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken()) 
-            	System.out.println(t);
-            if (tokeniser.getErrorCount() != 0)
-        		System.out.println("Lexing: failed ("+tokeniser.getErrorCount()+" errors)");
-            System.exit(tokeniser.getErrorCount() == 0 ? PASS : LEXER_FAIL);
-        } else if (mode == Mode.PARSER) {
-		    Parser parser = new Parser(tokeniser);
-		    parser.parse();
-		    if (parser.getErrorCount() != 0)
-		    	System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-		    System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
-        }  else if (mode == Mode.AST) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
-            if (parser.getErrorCount() == 0) {                
-                PrintWriter writer;
-                StringWriter sw = new StringWriter();
-                try {
-                    writer = new PrintWriter(sw);
-                    programAst.accept(new ASTPrinter(writer));
-                    writer.flush();
-                    System.out.print(sw.toString());
-                    writer.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            } else
-                System.out.println("Parsing: failed ("+parser.getErrorCount()+" errors)");
-            System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
-        } else if (mode == Mode.SEMANTICANALYSIS) {
-            Parser parser = new Parser(tokeniser);
-            Program programAst = parser.parse();
-            if (parser.getErrorCount() == 0) {
-                SemanticAnalyzer sem = new SemanticAnalyzer();
-                int errors = sem.analyze(programAst);
-                if (errors == 0)
+        // unlike Main, only failures are reported, and the AST is printed on its own
+        int status;
+        switch (result.reached) {
+            case LEXER:
+                if (!result.succeeded())
+                    System.out.println("Lexing: failed ("+result.errors+" errors)");
+                status = result.succeeded() ? Main.PASS : Main.LEXER_FAIL;
+                break;
+            case PARSER:
+                if (!result.succeeded() && mode != Stage.SEMANTICANALYSIS)
+                    System.out.println("Parsing: failed ("+result.errors+" errors)");
+                status = result.succeeded() ? Main.PASS : Main.PARSER_FAIL;
+                break;
+            case AST:
+                System.out.print(ast);
+                status = Main.PASS;
+                break;
+            default:
+                if (result.succeeded())
                     System.out.println("Semantic analysis: Pass");
                 else
-                    System.out.println("Semantic analysis: Failed (" + errors + ")");
-                System.exit(errors == 0 ? PASS : SEM_FAIL);
-            } else
-                System.exit(PARSER_FAIL);
-        } else if (mode == Mode.GEN) {
-            System.exit(MODE_FAIL);
-        } else {
-        	System.exit(MODE_FAIL);
+                    System.out.println("Semantic analysis: Failed (" + result.errors + ")");
+                status = result.succeeded() ? Main.PASS : Main.SEM_FAIL;
         }
+        System.exit(status);
     }
 }
@@ -2,52 +2,306 @@ package org.seungmin;
 
 import org.seungmin.ast.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class NameAnalysisVisitor extends BaseSemanticVisitor<Void> {
 
+	private final Scope scope = new Scope();
+	// struct types live in a namespace of their own, and are all global
+	private final Map<String, StructTypeDecl> structs;
+
+	// index of every function in Program.funDecls, set by declareFunctions
+	private final Map<FunDecl, Integer> positions = new IdentityHashMap<>();
+
+	// when analysing a single function: the visitor holding the global scope, only read from,
+	// and the index of the function
+	private final NameAnalysisVisitor globals;
+	private final int position;
+
+	public NameAnalysisVisitor() {
+		this.structs = new HashMap<>();
+		this.globals = null;
+		this.position = -1;
+	}
+
+	/*
+	 * A visitor for the function at the given index of a program whose global declarations
+	 * have been visited by globals, see SemanticAnalyzer. It sees the global scope as it is
+	 * when that function is declared, so it reports what visitProgram would for the function.
+	 */
+	public NameAnalysisVisitor(NameAnalysisVisitor globals, int position) {
+		this.structs = globals.structs;
+		this.globals = globals;
+		this.position = position;
+	}
+
+	/*
+	 * The functions of minic-stdlib.h, which every program can call without declaring them.
+	 */
+	static List<FunDecl> builtinFunctions(TypeFactory types) {
+		List<FunDecl> fds = new ArrayList<>();
+		fds.add(builtin(BaseType.VOID, "print_s", types.pointer(BaseType.CHAR)));
+		fds.add(builtin(BaseType.VOID, "print_i", BaseType.INT));
+		fds.add(builtin(BaseType.VOID, "print_c", BaseType.CHAR));
+		fds.add(builtin(BaseType.CHAR, "read_c", null));
+		fds.add(builtin(BaseType.INT, "read_i", null));
+		fds.add(builtin(types.pointer(BaseType.VOID), "mcmalloc", BaseType.INT));
+		return fds;
+	}
+
+	private static FunDecl builtin(Type type, String name, Type paramType) {
+		List<VarDecl> params = paramType == null ? Collections.emptyList()
+				: Collections.singletonList(new VarDecl(paramType, "arg"));
+		return new FunDecl(type, name, params, null);
+	}
+
 	@Override
 	public Void visitBaseType(BaseType bt) {
-		// To be completed...
 		return null;
 	}
 
 	@Override
 	public Void visitStructTypeDecl(StructTypeDecl sts) {
-		// To be completed...
+		String name = sts.structType.structName;
+		if (structs.containsKey(name))
+			error("struct " + name + " already declared");
+		else
+			structs.put(name, sts);
+
+		Set<String> fields = new HashSet<>();
+		for (VarDecl vd : sts.varDecls) {
+			if (!fields.add(vd.varName))
+				error("field " + vd.varName + " already declared in struct " + name);
+			vd.type.accept(this);
+		}
 		return null;
 	}
 
 	@Override
 	public Void visitBlock(Block b) {
-		// To be completed...
+		scope.enter();
+		visitBlockContents(b);
+		scope.exit();
 		return null;
 	}
 
+	private void visitBlockContents(Block b) {
+		for (VarDecl vd : b.vds)
+			vd.accept(this);
+		for (Stmt s : b.stmts)
+			s.accept(this);
+	}
+
 	@Override
 	public Void visitFunDecl(FunDecl p) {
-		// To be completed...
+		p.type.accept(this);
+		if (!declareFunction(p)) // before the body, so that it can call itself
+			error("function " + p.name + " already declared");
+
+		// the parameters and the outermost block of the body share one scope
+		scope.enter();
+		for (VarDecl vd : p.params)
+			vd.accept(this);
+		visitBlockContents(p.block);
+		scope.exit();
 		return null;
 	}
 
 
+	private boolean declareFunction(FunDecl p) {
+		if (globals != null) {
+			// declareFunctions kept the first declaration of every name
+			Symbol s = globals.scope.lookupCurrent(p.name);
+			return s instanceof FunSymbol && ((FunSymbol) s).fd == p;
+		}
+		if (scope.lookupCurrent(p.name) != null)
+			return false;
+		scope.put(new FunSymbol(p));
+		return true;
+	}
+
+	private Symbol lookup(String name) {
+		Symbol s = scope.lookup(name);
+		if (s != null || globals == null)
+			return s;
+		s = globals.scope.lookup(name);
+		// functions declared after this one are not in scope yet
+		if (s instanceof FunSymbol && globals.positions.getOrDefault(((FunSymbol) s).fd, -1) > position)
+			return null;
+		return s;
+	}
+
 	@Override
 	public Void visitProgram(Program p) {
-		// To be completed...
+		visitGlobalDecls(p);
+		for (FunDecl fd : p.funDecls)
+			fd.accept(this);
 		return null;
 	}
 
+	/*
+	 * The builtin functions, struct types and global variables.
+	 */
+	void visitGlobalDecls(Program p) {
+		for (FunDecl fd : builtinFunctions(p.types))
+			scope.put(new FunSymbol(fd));
+		for (StructTypeDecl std : p.structTypeDecls)
+			std.accept(this);
+		for (VarDecl vd : p.varDecls)
+			vd.accept(this);
+	}
+
+	/*
+	 * Puts the functions in the global scope without visiting them, nor reporting anything:
+	 * that is left to the visitor of each function.
+	 */
+	void declareFunctions(Program p) {
+		for (int i = 0; i < p.funDecls.size(); i++) {
+			FunDecl fd = p.funDecls.get(i);
+			positions.put(fd, i);
+			if (scope.lookupCurrent(fd.name) == null)
+				scope.put(new FunSymbol(fd));
+		}
+	}
+
 	@Override
 	public Void visitVarDecl(VarDecl vd) {
-		// To be completed...
+		vd.type.accept(this);
+		if (scope.lookupCurrent(vd.varName) != null)
+			error("variable " + vd.varName + " already declared");
+		else
+			scope.put(new VarSymbol(vd));
 		return null;
 	}
 
 	@Override
 	public Void visitVarExpr(VarExpr v) {
-		// To be completed...
+		Symbol s = lookup(v.name);
+		if (s instanceof VarSymbol)
+			v.vd = ((VarSymbol) s).vd;
+		else
+			error("variable " + v.name + " not declared");
 		return null;
 	}
 
-	// To be completed...
+	@Override
+	public Void visitPointerType(PointerType pt) {
+		return pt.elemType.accept(this);
+	}
+
+	@Override
+	public Void visitStructType(StructType st) {
+		if (!structs.containsKey(st.structName))
+			error("struct " + st.structName + " not declared");
+		return null;
+	}
+
+	@Override
+	public Void visitArrayType(ArrayType at) {
+		return at.elemType.accept(this);
+	}
 
+	@Override
+	public Void visitIntLiteral(IntLiteral il) {
+		return null;
+	}
+
+	@Override
+	public Void visitStrLiteral(StrLiteral sl) {
+		return null;
+	}
+
+	@Override
+	public Void visitChrLiteral(ChrLiteral cl) {
+		return null;
+	}
+
+	@Override
+	public Void visitFunCallExpr(FunCallExpr fce) {
+		Symbol s = lookup(fce.name);
+		if (s instanceof FunSymbol)
+			fce.fd = ((FunSymbol) s).fd;
+		else
+			error("function " + fce.name + " not declared");
+		for (Expr arg : fce.args)
+			arg.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitBinOp(BinOp bo) {
+		bo.lhs.accept(this);
+		bo.rhs.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitArrayAccessExpr(ArrayAccessExpr aae) {
+		aae.array.accept(this);
+		aae.index.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitFieldAccessExpr(FieldAccessExpr fae) {
+		// the field can only be resolved once the type of the structure is known
+		return fae.structure.accept(this);
+	}
+
+	@Override
+	public Void visitValueAtExpr(ValueAtExpr vae) {
+		return vae.expr.accept(this);
+	}
+
+	@Override
+	public Void visitSizeOfExpr(SizeOfExpr soe) {
+		return soe.type.accept(this);
+	}
+
+	@Override
+	public Void visitTypecastExpr(TypecastExpr te) {
+		te.castType.accept(this);
+		return te.expr.accept(this);
+	}
+
+	@Override
+	public Void visitExprStmt(ExprStmt es) {
+		return es.expr.accept(this);
+	}
+
+	@Override
+	public Void visitWhile(While w) {
+		w.cond.accept(this);
+		return w.body.accept(this);
+	}
+
+	@Override
+	public Void visitIf(If i) {
+		i.cond.accept(this);
+		i.thenStmt.accept(this);
+		if (i.elseStmt != null)
+			i.elseStmt.accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitAssign(Assign a) {
+		a.lhs.accept(this);
+		return a.rhs.accept(this);
+	}
+
+	@Override
+	public Void visitReturn(Return r) {
+		if (r.expr != null)
+			r.expr.accept(this);
+		return null;
+	}
 
 }
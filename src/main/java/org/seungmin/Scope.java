@@ -1,28 +1,98 @@
 package org.seungmin;
 
-import java.util.Map;
+import org.seungmin.lexer.SymbolTable;
 
+import java.util.Arrays;
+
+/**
+ * All the nested scopes of a traversal in one flat table.
+ *
+ * Names are interned to dense ids by a SymbolTable, and the innermost symbol bound to each id,
+ * with the level of the scope that declared it, is kept in arrays indexed by id. Declaring a
+ * name shadowing an outer one pushes the outer binding on an undo log, which exit() replays
+ * to restore the enclosing scope. So lookup and lookupCurrent are a single probe whatever the
+ * nesting depth, and leaving a scope costs one step per symbol declared in it.
+ */
 public class Scope {
-	private Scope outer;
-	private Map<String, Symbol> symbolTable;
-	
-	public Scope(Scope outer) { 
-		this.outer = outer; 
+	private final SymbolTable names = new SymbolTable();
+	private Symbol[] symbols = new Symbol[64];
+	private int[] levels = new int[64];
+
+	// undo log: id, shadowed symbol and its level for every put, in order
+	private int[] undoIds = new int[64];
+	private Symbol[] undoSymbols = new Symbol[64];
+	private int[] undoLevels = new int[64];
+	private int undoSize = 0;
+
+	// undo log size when each open scope was entered
+	private int[] marks = new int[16];
+	private int level = 0;
+
+	public Scope() {
+		marks[0] = 0;
+	}
+
+	/*
+	 * Nesting depth of the current scope, 0 is the global scope.
+	 */
+	public int depth() {
+		return level;
+	}
+
+	/*
+	 * Opens a scope nested in the current one.
+	 */
+	public void enter() {
+		if (++level == marks.length)
+			marks = Arrays.copyOf(marks, level * 2);
+		marks[level] = undoSize;
+	}
+
+	/*
+	 * Leaves the current scope, every symbol it declared goes out of scope.
+	 */
+	public void exit() {
+		if (level == 0)
+			throw new IllegalStateException("cannot leave the global scope");
+		int mark = marks[level--];
+		while (undoSize > mark) {
+			undoSize--;
+			int id = undoIds[undoSize];
+			symbols[id] = undoSymbols[undoSize];
+			levels[id] = undoLevels[undoSize];
+			undoSymbols[undoSize] = null;
+		}
 	}
-	
-	public Scope() { this(null); }
-	
+
 	public Symbol lookup(String name) {
-		// To be completed...
-		return null;
+		int id = names.lookup(name);
+		return id < 0 || id >= symbols.length ? null : symbols[id];
 	}
-	
+
 	public Symbol lookupCurrent(String name) {
-		// To be completed...
-		return null;
+		int id = names.lookup(name);
+		if (id < 0 || id >= symbols.length || levels[id] != level)
+			return null;
+		return symbols[id];
 	}
-	
+
 	public void put(Symbol sym) {
-		symbolTable.put(sym.name, sym);
+		int id = names.intern(sym.name);
+		if (id >= symbols.length) {
+			symbols = Arrays.copyOf(symbols, Math.max(id + 1, symbols.length * 2));
+			levels = Arrays.copyOf(levels, symbols.length);
+		}
+		if (undoSize == undoIds.length) {
+			undoIds = Arrays.copyOf(undoIds, undoSize * 2);
+			undoSymbols = Arrays.copyOf(undoSymbols, undoSize * 2);
+			undoLevels = Arrays.copyOf(undoLevels, undoSize * 2);
+		}
+		undoIds[undoSize] = id;
+		undoSymbols[undoSize] = symbols[id];
+		undoLevels[undoSize] = levels[id];
+		undoSize++;
+
+		symbols[id] = sym;
+		levels[id] = level;
 	}
 }
@@ -2,21 +2,55 @@ package org.seungmin;
 
 import org.seungmin.SemanticVisitor;
 import org.seungmin.ast.Program;
+import org.seungmin.util.Diagnostic;
+import org.seungmin.util.Diagnostics;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class SemanticAnalyzer {
+
+	public enum Mode {
+		SEPARATE, // one traversal per visitor
+		FUSED,    // names and types in one traversal
+		PARALLEL  // fused, the functions on a fork-join pool once the global scope is built
+	}
+
+	private final Mode mode;
+
+	public SemanticAnalyzer() {
+		this(Mode.SEPARATE);
+	}
+
+	public SemanticAnalyzer(Mode mode) {
+		this.mode = mode;
+	}
 	
 	public int analyze(Program prog) {
+		return analyze(prog, Diagnostics.CONSOLE);
+	}
+
+	public int analyze(Program prog, Diagnostics diagnostics) {
+		if (mode == Mode.PARALLEL)
+			return analyzeParallel(prog, diagnostics);
+
 		// List of visitors
-		ArrayList<SemanticVisitor> visitors = new ArrayList<SemanticVisitor>() {{
-			add(new NameAnalysisVisitor());
+		ArrayList<BaseSemanticVisitor<?>> visitors = new ArrayList<BaseSemanticVisitor<?>>() {{
+			if (mode == Mode.FUSED) {
+				add(new FusedSemanticVisitor());
+			} else {
+				add(new NameAnalysisVisitor());
+				add(new TypeCheckVisitor());
+			}
 		}};
 		// Error accumulator
 		int errors = 0;
 		
 		// Apply each visitor to the AST
-		for (SemanticVisitor v : visitors) {
+		for (BaseSemanticVisitor<?> v : visitors) {
+			v.setDiagnostics(diagnostics);
 			prog.accept(v);
 			errors += v.getErrorCount();
 		}
@@ -24,4 +58,50 @@ public class SemanticAnalyzer {
 		// Return the number of errors.
 		return errors;
 	}
+
+	/*
+	 * The global declarations are visited first, then every function by a visitor of its own,
+	 * concurrently. Each visitor buffers its errors, which are reported once all are done, in
+	 * the order of the other modes: all name errors, then all type errors, in source order.
+	 */
+	private int analyzeParallel(Program prog, Diagnostics diagnostics) {
+		FusedSemanticVisitor globals = new FusedSemanticVisitor();
+		globals.visitGlobalDecls(prog);
+		globals.declareFunctions(prog);
+
+		// a few runs of consecutive functions per thread, one task per function costs more than
+		// analysing a small function
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		int functions = prog.funDecls.size();
+		int chunks = Math.min(functions, 4 * pool.getParallelism());
+		List<ForkJoinTask<List<FusedSemanticVisitor>>> tasks = new ArrayList<>();
+		for (int c = 0; c < chunks; c++) {
+			int from = (int) ((long) functions * c / chunks);
+			int to = (int) ((long) functions * (c + 1) / chunks);
+			tasks.add(pool.submit(() -> {
+				List<FusedSemanticVisitor> chunk = new ArrayList<>();
+				for (int position = from; position < to; position++) {
+					FusedSemanticVisitor v = new FusedSemanticVisitor(globals, position);
+					prog.funDecls.get(position).accept(v);
+					chunk.add(v);
+				}
+				return chunk;
+			}));
+		}
+		List<FusedSemanticVisitor> visitors = new ArrayList<>();
+		visitors.add(globals);
+		for (ForkJoinTask<List<FusedSemanticVisitor>> task : tasks)
+			visitors.addAll(task.join());
+
+		int errors = 0;
+		for (FusedSemanticVisitor v : visitors) {
+			for (Diagnostic d : v.nameErrors())
+				diagnostics.report(d);
+			errors += v.getErrorCount();
+		}
+		for (FusedSemanticVisitor v : visitors)
+			for (Diagnostic d : v.typeErrors())
+				diagnostics.report(d);
+		return errors;
+	}
 }
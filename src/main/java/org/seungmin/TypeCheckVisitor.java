@@ -2,52 +2,383 @@ package org.seungmin;
 
 import org.seungmin.ast.*;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Every visit method visits the children first, in the order NameAnalysisVisitor does, then
+ * applies the rule of the node itself. The rules only look at the types already inferred for
+ * the children, so FusedSemanticVisitor can apply them during name analysis.
+ * A null type means that it could not be inferred, which has already been reported.
+ * All the types come from the TypeFactory of the program, so they are compared with ==.
+ */
 public class TypeCheckVisitor extends BaseSemanticVisitor<Type> {
 
+	private final Map<String, StructTypeDecl> structs;
+	private TypeFactory typeFactory;
+	private FunDecl currentFunction;
+
+	public TypeCheckVisitor() {
+		this.structs = new HashMap<>();
+	}
+
+	/*
+	 * Shares the struct types already checked by globals, which are only read from.
+	 */
+	TypeCheckVisitor(TypeCheckVisitor globals) {
+		this.structs = globals.structs;
+		this.typeFactory = globals.typeFactory;
+	}
+
 	@Override
 	public Type visitBaseType(BaseType bt) {
-		// To be completed...
-		return null;
+		return bt;
 	}
 
 	@Override
 	public Type visitStructTypeDecl(StructTypeDecl st) {
-		// To be completed...
+		for (VarDecl vd : st.varDecls)
+			vd.accept(this);
+		checkStructTypeDecl(st);
 		return null;
 	}
 
 	@Override
 	public Type visitBlock(Block b) {
-		// To be completed...
+		for (VarDecl vd : b.vds)
+			vd.accept(this);
+		for (Stmt s : b.stmts)
+			s.accept(this);
 		return null;
 	}
 
 	@Override
 	public Type visitFunDecl(FunDecl p) {
-		// To be completed...
+		beginFunction(p);
+		p.type.accept(this);
+		for (VarDecl vd : p.params)
+			vd.accept(this);
+		p.block.accept(this);
 		return null;
 	}
 
 
 	@Override
 	public Type visitProgram(Program p) {
-		// To be completed...
+		beginProgram(p);
+		for (StructTypeDecl std : p.structTypeDecls)
+			std.accept(this);
+		for (VarDecl vd : p.varDecls)
+			vd.accept(this);
+		for (FunDecl fd : p.funDecls)
+			fd.accept(this);
 		return null;
 	}
 
 	@Override
 	public Type visitVarDecl(VarDecl vd) {
-		// To be completed...
+		vd.type.accept(this);
+		checkVarDecl(vd);
 		return null;
 	}
 
 	@Override
 	public Type visitVarExpr(VarExpr v) {
-		// To be completed...
+		return typeVarExpr(v);
+	}
+
+	@Override
+	public Type visitPointerType(PointerType pt) {
+		pt.elemType.accept(this);
+		return pt;
+	}
+
+	@Override
+	public Type visitStructType(StructType st) {
+		return st;
+	}
+
+	@Override
+	public Type visitArrayType(ArrayType at) {
+		at.elemType.accept(this);
+		return at;
+	}
+
+	@Override
+	public Type visitIntLiteral(IntLiteral il) {
+		return typeIntLiteral(il);
+	}
+
+	@Override
+	public Type visitStrLiteral(StrLiteral sl) {
+		return typeStrLiteral(sl);
+	}
+
+	@Override
+	public Type visitChrLiteral(ChrLiteral cl) {
+		return typeChrLiteral(cl);
+	}
+
+	@Override
+	public Type visitFunCallExpr(FunCallExpr fce) {
+		for (Expr arg : fce.args)
+			arg.accept(this);
+		return typeFunCallExpr(fce);
+	}
+
+	@Override
+	public Type visitBinOp(BinOp bo) {
+		bo.lhs.accept(this);
+		bo.rhs.accept(this);
+		return typeBinOp(bo);
+	}
+
+	@Override
+	public Type visitArrayAccessExpr(ArrayAccessExpr aae) {
+		aae.array.accept(this);
+		aae.index.accept(this);
+		return typeArrayAccessExpr(aae);
+	}
+
+	@Override
+	public Type visitFieldAccessExpr(FieldAccessExpr fae) {
+		fae.structure.accept(this);
+		return typeFieldAccessExpr(fae);
+	}
+
+	@Override
+	public Type visitValueAtExpr(ValueAtExpr vae) {
+		vae.expr.accept(this);
+		return typeValueAtExpr(vae);
+	}
+
+	@Override
+	public Type visitSizeOfExpr(SizeOfExpr soe) {
+		soe.type.accept(this);
+		return typeSizeOfExpr(soe);
+	}
+
+	@Override
+	public Type visitTypecastExpr(TypecastExpr te) {
+		te.castType.accept(this);
+		te.expr.accept(this);
+		return typeTypecastExpr(te);
+	}
+
+	@Override
+	public Type visitExprStmt(ExprStmt es) {
+		es.expr.accept(this);
+		return null;
+	}
+
+	@Override
+	public Type visitWhile(While w) {
+		w.cond.accept(this);
+		w.body.accept(this);
+		checkCondition("while", w.cond);
+		return null;
+	}
+
+	@Override
+	public Type visitIf(If i) {
+		i.cond.accept(this);
+		i.thenStmt.accept(this);
+		if (i.elseStmt != null)
+			i.elseStmt.accept(this);
+		checkCondition("if", i.cond);
+		return null;
+	}
+
+	@Override
+	public Type visitAssign(Assign a) {
+		a.lhs.accept(this);
+		a.rhs.accept(this);
+		checkAssign(a);
+		return null;
+	}
+
+	@Override
+	public Type visitReturn(Return r) {
+		if (r.expr != null)
+			r.expr.accept(this);
+		checkReturn(r);
 		return null;
 	}
 
-	// To be completed...
+	/*
+	 * The rules, one per node.
+	 */
+
+	void beginProgram(Program p) {
+		typeFactory = p.types;
+	}
+
+	void checkStructTypeDecl(StructTypeDecl st) {
+		structs.putIfAbsent(st.structType.structName, st);
+	}
+
+	void beginFunction(FunDecl fd) {
+		currentFunction = fd;
+	}
+
+	void checkVarDecl(VarDecl vd) {
+		if (vd.type == BaseType.VOID)
+			error("variable " + vd.varName + " declared void");
+	}
+
+	Type typeVarExpr(VarExpr v) {
+		v.type = v.vd == null ? null : v.vd.type;
+		return v.type;
+	}
+
+	Type typeIntLiteral(IntLiteral il) {
+		return il.type = BaseType.INT;
+	}
 
+	Type typeChrLiteral(ChrLiteral cl) {
+		return cl.type = BaseType.CHAR;
+	}
+
+	Type typeStrLiteral(StrLiteral sl) {
+		// escape sequences are kept as written, each one is a single character
+		int length = 0;
+		for (int i = 0; i < sl.value.length(); i++, length++)
+			if (sl.value.charAt(i) == '\\')
+				i++;
+		return sl.type = typeFactory.array(BaseType.CHAR, length + 1);
+	}
+
+	Type typeFunCallExpr(FunCallExpr fce) {
+		if (fce.fd == null)
+			return fce.type = null;
+		List<VarDecl> params = fce.fd.params;
+		if (params.size() != fce.args.size()) {
+			error("function " + fce.name + " expects " + params.size() + " arguments, found " + fce.args.size());
+		} else {
+			for (int i = 0; i < params.size(); i++) {
+				Type argType = fce.args.get(i).type;
+				if (argType != null && argType != params.get(i).type)
+					error("argument " + (i + 1) + " of " + fce.name + " has type " + show(argType)
+							+ ", expected " + show(params.get(i).type));
+			}
+		}
+		return fce.type = fce.fd.type;
+	}
+
+	Type typeBinOp(BinOp bo) {
+		Type lhs = bo.lhs.type;
+		Type rhs = bo.rhs.type;
+		if (lhs == null || rhs == null)
+			return bo.type = null;
+		if (bo.op == Op.EQ || bo.op == Op.NE) {
+			if (lhs != rhs || lhs instanceof StructType || lhs instanceof ArrayType || lhs == BaseType.VOID)
+				error("cannot compare " + show(lhs) + " and " + show(rhs) + " with " + bo.op);
+		} else if (lhs != BaseType.INT || rhs != BaseType.INT) {
+			error("operator " + bo.op + " expects int operands, found " + show(lhs) + " and " + show(rhs));
+		}
+		return bo.type = BaseType.INT;
+	}
+
+	Type typeArrayAccessExpr(ArrayAccessExpr aae) {
+		Type array = aae.array.type;
+		Type index = aae.index.type;
+		if (index != null && index != BaseType.INT)
+			error("array index has type " + show(index) + ", expected INT");
+		if (array instanceof ArrayType)
+			return aae.type = ((ArrayType) array).elemType;
+		if (array instanceof PointerType)
+			return aae.type = ((PointerType) array).elemType;
+		if (array != null)
+			error("cannot index a value of type " + show(array));
+		return aae.type = null;
+	}
+
+	Type typeFieldAccessExpr(FieldAccessExpr fae) {
+		Type structure = fae.structure.type;
+		if (structure == null)
+			return fae.type = null;
+		if (!(structure instanceof StructType)) {
+			error("cannot access field " + fae.fieldName + " of a value of type " + show(structure));
+			return fae.type = null;
+		}
+		StructTypeDecl std = structs.get(((StructType) structure).structName);
+		if (std != null) {
+			for (VarDecl field : std.varDecls)
+				if (field.varName.equals(fae.fieldName))
+					return fae.type = field.type;
+			error("struct " + std.structType.structName + " has no field " + fae.fieldName);
+		}
+		return fae.type = null;
+	}
+
+	Type typeValueAtExpr(ValueAtExpr vae) {
+		Type pointer = vae.expr.type;
+		if (pointer instanceof PointerType)
+			return vae.type = ((PointerType) pointer).elemType;
+		if (pointer != null)
+			error("cannot dereference a value of type " + show(pointer));
+		return vae.type = null;
+	}
+
+	Type typeSizeOfExpr(SizeOfExpr soe) {
+		// soe.type is the operand, the field of Expr is hidden
+		return ((Expr) soe).type = BaseType.INT;
+	}
+
+	Type typeTypecastExpr(TypecastExpr te) {
+		Type from = te.expr.type;
+		Type to = te.castType;
+		if (from == null)
+			return te.type = to;
+		boolean valid = (from == BaseType.CHAR && to == BaseType.INT)
+				|| (from instanceof ArrayType && to instanceof PointerType
+					&& ((ArrayType) from).elemType == ((PointerType) to).elemType)
+				|| (from instanceof PointerType && to instanceof PointerType);
+		if (!valid)
+			error("cannot cast " + show(from) + " to " + show(to));
+		return te.type = to;
+	}
+
+	void checkCondition(String statement, Expr cond) {
+		if (cond.type != null && cond.type != BaseType.INT)
+			error(statement + " condition has type " + show(cond.type) + ", expected INT");
+	}
+
+	void checkAssign(Assign a) {
+		if (!(a.lhs instanceof VarExpr || a.lhs instanceof FieldAccessExpr
+				|| a.lhs instanceof ArrayAccessExpr || a.lhs instanceof ValueAtExpr)) {
+			error("cannot assign to this expression");
+			return;
+		}
+		Type lhs = a.lhs.type;
+		Type rhs = a.rhs.type;
+		if (lhs == null || rhs == null)
+			return;
+		if (lhs == BaseType.VOID || lhs instanceof ArrayType)
+			error("cannot assign to a value of type " + show(lhs));
+		else if (lhs != rhs)
+			error("cannot assign " + show(rhs) + " to " + show(lhs));
+	}
+
+	void checkReturn(Return r) {
+		Type expected = currentFunction.type;
+		if (r.expr == null) {
+			if (expected != BaseType.VOID)
+				error("function " + currentFunction.name + " must return " + show(expected));
+		} else if (r.expr.type != null && r.expr.type != expected) {
+			error("function " + currentFunction.name + " returns " + show(expected) + ", found " + show(r.expr.type));
+		}
+	}
+
+	private static String show(Type t) {
+		if (t instanceof PointerType)
+			return show(((PointerType) t).elemType) + "*";
+		if (t instanceof ArrayType)
+			return show(((ArrayType) t).elemType) + "[" + ((ArrayType) t).numElements + "]";
+		if (t instanceof StructType)
+			return "struct " + ((StructType) t).structName;
+		return String.valueOf(t);
+	}
 
 }
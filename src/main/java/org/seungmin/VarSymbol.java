@@ -0,0 +1,12 @@
+package org.seungmin;
+
+import org.seungmin.ast.VarDecl;
+
+public class VarSymbol extends Symbol {
+	public final VarDecl vd;
+
+	public VarSymbol(VarDecl vd) {
+		super(vd.varName);
+		this.vd = vd;
+	}
+}
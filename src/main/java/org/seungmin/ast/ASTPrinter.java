@@ -1,6 +1,7 @@
 package org.seungmin.ast;
 
 import java.io.PrintWriter;
+import java.util.List;
 
 public class ASTPrinter implements ASTVisitor<Void> {
 
@@ -10,10 +11,30 @@ public class ASTPrinter implements ASTVisitor<Void> {
             this.writer = writer;
     }
 
+    /*
+     * Prints the nodes separated by commas, starting with a comma if there is at least one node.
+     */
+    private void printList(List<? extends ASTNode> nodes) {
+        for (ASTNode n : nodes) {
+            writer.print(",");
+            n.accept(this);
+        }
+    }
+
     @Override
     public Void visitBlock(Block b) {
         writer.print("Block(");
-        // to complete
+        String delimiter = "";
+        for (VarDecl vd : b.vds) {
+            writer.print(delimiter);
+            delimiter = ",";
+            vd.accept(this);
+        }
+        for (Stmt s : b.stmts) {
+            writer.print(delimiter);
+            delimiter = ",";
+            s.accept(this);
+        }
         writer.print(")");
         return null;
     }
@@ -75,17 +96,170 @@ public class ASTPrinter implements ASTVisitor<Void> {
 
     @Override
     public Void visitBaseType(BaseType bt) {
-        // to complete ...
+        writer.print(bt);
+        return null;
+    }
+
+    @Override
+    public Void visitPointerType(PointerType pt) {
+        writer.print("PointerType(");
+        pt.elemType.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitStructType(StructType st) {
+        writer.print("StructType(" + st.structName + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitArrayType(ArrayType at) {
+        writer.print("ArrayType(");
+        at.elemType.accept(this);
+        writer.print("," + at.numElements + ")");
         return null;
     }
 
     @Override
     public Void visitStructTypeDecl(StructTypeDecl st) {
-        // to complete ...
+        writer.print("StructTypeDecl(");
+        st.structType.accept(this);
+        printList(st.varDecls);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitIntLiteral(IntLiteral il) {
+        writer.print("IntLiteral(" + il.value + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitStrLiteral(StrLiteral sl) {
+        writer.print("StrLiteral(" + sl.value + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitChrLiteral(ChrLiteral cl) {
+        writer.print("ChrLiteral(" + cl.value + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitFunCallExpr(FunCallExpr fce) {
+        writer.print("FunCallExpr(" + fce.name);
+        printList(fce.args);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitBinOp(BinOp bo) {
+        writer.print("BinOp(");
+        bo.lhs.accept(this);
+        writer.print("," + bo.op + ",");
+        bo.rhs.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitArrayAccessExpr(ArrayAccessExpr aae) {
+        writer.print("ArrayAccessExpr(");
+        aae.array.accept(this);
+        writer.print(",");
+        aae.index.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitFieldAccessExpr(FieldAccessExpr fae) {
+        writer.print("FieldAccessExpr(");
+        fae.structure.accept(this);
+        writer.print("," + fae.fieldName + ")");
+        return null;
+    }
+
+    @Override
+    public Void visitValueAtExpr(ValueAtExpr vae) {
+        writer.print("ValueAtExpr(");
+        vae.expr.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitSizeOfExpr(SizeOfExpr soe) {
+        writer.print("SizeOfExpr(");
+        soe.type.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitTypecastExpr(TypecastExpr te) {
+        writer.print("TypecastExpr(");
+        te.castType.accept(this);
+        writer.print(",");
+        te.expr.accept(this);
+        writer.print(")");
+        return null;
+    }
 
+    @Override
+    public Void visitExprStmt(ExprStmt es) {
+        writer.print("ExprStmt(");
+        es.expr.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(While w) {
+        writer.print("While(");
+        w.cond.accept(this);
+        writer.print(",");
+        w.body.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitIf(If i) {
+        writer.print("If(");
+        i.cond.accept(this);
+        writer.print(",");
+        i.thenStmt.accept(this);
+        if (i.elseStmt != null) {
+            writer.print(",");
+            i.elseStmt.accept(this);
+        }
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitAssign(Assign a) {
+        writer.print("Assign(");
+        a.lhs.accept(this);
+        writer.print(",");
+        a.rhs.accept(this);
+        writer.print(")");
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Return r) {
+        writer.print("Return(");
+        if (r.expr != null)
+            r.expr.accept(this);
+        writer.print(")");
         return null;
     }
 
-    // to complete ...
-    
 }
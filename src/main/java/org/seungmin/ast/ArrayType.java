@@ -0,0 +1,15 @@
+package org.seungmin.ast;
+
+public class ArrayType implements Type {
+    public final Type elemType;
+    public final int numElements;
+
+    ArrayType(Type elemType, int numElements) {
+        this.elemType = elemType;
+        this.numElements = numElements;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitArrayType(this);
+    }
+}
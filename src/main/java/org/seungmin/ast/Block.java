@@ -1,8 +1,16 @@
 package org.seungmin.ast;
 
+import java.util.List;
+
 public class Block extends Stmt {
 
-    // to complete ...
+    public final List<VarDecl> vds;
+    public final List<Stmt> stmts;
+
+    public Block(List<VarDecl> vds, List<Stmt> stmts) {
+        this.vds = vds;
+        this.stmts = stmts;
+    }
 
     public <T> T accept(ASTVisitor<T> v) {
 	    return v.visitBlock(this);
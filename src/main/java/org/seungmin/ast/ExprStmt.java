@@ -0,0 +1,13 @@
+package org.seungmin.ast;
+
+public class ExprStmt extends Stmt {
+    public final Expr expr;
+
+    public ExprStmt(Expr expr) {
+        this.expr = expr;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitExprStmt(this);
+    }
+}
@@ -0,0 +1,15 @@
+package org.seungmin.ast;
+
+public class FieldAccessExpr extends Expr {
+    public final Expr structure;
+    public final String fieldName;
+
+    public FieldAccessExpr(Expr structure, String fieldName) {
+        this.structure = structure;
+        this.fieldName = fieldName;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitFieldAccessExpr(this);
+    }
+}
@@ -0,0 +1,17 @@
+package org.seungmin.ast;
+
+public class If extends Stmt {
+    public final Expr cond;
+    public final Stmt thenStmt;
+    public final Stmt elseStmt; // null if there is no else branch
+
+    public If(Expr cond, Stmt thenStmt, Stmt elseStmt) {
+        this.cond = cond;
+        this.thenStmt = thenStmt;
+        this.elseStmt = elseStmt;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitIf(this);
+    }
+}
@@ -0,0 +1,5 @@
+package org.seungmin.ast;
+
+public enum Op {
+    ADD, SUB, MUL, DIV, MOD, GT, LT, GE, LE, NE, EQ, OR, AND
+}
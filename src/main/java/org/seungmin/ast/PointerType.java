@@ -0,0 +1,13 @@
+package org.seungmin.ast;
+
+public class PointerType implements Type {
+    public final Type elemType;
+
+    PointerType(Type elemType) {
+        this.elemType = elemType;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitPointerType(this);
+    }
+}
@@ -7,11 +7,13 @@ public class Program implements ASTNode {
     public final List<StructTypeDecl> structTypeDecls;
     public final List<VarDecl> varDecls;
     public final List<FunDecl> funDecls;
+    public final TypeFactory types; // where all the types of the program come from
 
-    public Program(List<StructTypeDecl> structTypeDecls, List<VarDecl> varDecls, List<FunDecl> funDecls) {
+    public Program(List<StructTypeDecl> structTypeDecls, List<VarDecl> varDecls, List<FunDecl> funDecls, TypeFactory types) {
         this.structTypeDecls = structTypeDecls;
 	    this.varDecls = varDecls;
 	    this.funDecls = funDecls;
+	    this.types = types;
     }
 
     public <T> T accept(ASTVisitor<T> v) {
@@ -0,0 +1,13 @@
+package org.seungmin.ast;
+
+public class Return extends Stmt {
+    public final Expr expr; // null for a plain "return;"
+
+    public Return(Expr expr) {
+        this.expr = expr;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitReturn(this);
+    }
+}
@@ -0,0 +1,13 @@
+package org.seungmin.ast;
+
+public class StructType implements Type {
+    public final String structName;
+
+    StructType(String structName) {
+        this.structName = structName;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitStructType(this);
+    }
+}
@@ -1,9 +1,16 @@
 package org.seungmin.ast;
 
+import java.util.List;
+
 public class StructTypeDecl implements ASTNode {
 
+    public final StructType structType;
+    public final List<VarDecl> varDecls;
 
-    // to be completed
+    public StructTypeDecl(StructType structType, List<VarDecl> varDecls) {
+        this.structType = structType;
+        this.varDecls = varDecls;
+    }
 
     public <T> T accept(ASTVisitor<T> v) {
         return v.visitStructTypeDecl(this);
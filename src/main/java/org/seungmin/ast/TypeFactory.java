@@ -0,0 +1,91 @@
+package org.seungmin.ast;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out the pointer, array and struct types of a compilation, one instance per distinct
+ * type: two types are the same if and only if they are the same object, so they can be
+ * compared with ==. Element types are themselves unique, which lets the tables be keyed by
+ * identity of the element type alone.
+ *
+ * The parser creates the types of a program through the factory stored in Program, and the
+ * semantic analysis asks the same factory for the types it infers, possibly from several
+ * threads at once.
+ */
+public class TypeFactory {
+
+    private final ConcurrentHashMap<Type, PointerType> pointers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, ConcurrentHashMap<Integer, ArrayType>> arrays = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, StructType> structs = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+
+    public PointerType pointer(Type elemType) {
+        requests.incrementAndGet();
+        PointerType t = pointers.get(elemType);
+        if (t == null) {
+            PointerType fresh = new PointerType(elemType);
+            t = pointers.putIfAbsent(elemType, fresh);
+            if (t == null) {
+                allocations.incrementAndGet();
+                t = fresh;
+            }
+        }
+        return t;
+    }
+
+    public ArrayType array(Type elemType, int numElements) {
+        requests.incrementAndGet();
+        ConcurrentHashMap<Integer, ArrayType> sizes = arrays.get(elemType);
+        if (sizes == null) {
+            sizes = new ConcurrentHashMap<>();
+            ConcurrentHashMap<Integer, ArrayType> previous = arrays.putIfAbsent(elemType, sizes);
+            if (previous != null)
+                sizes = previous;
+        }
+        ArrayType t = sizes.get(numElements);
+        if (t == null) {
+            ArrayType fresh = new ArrayType(elemType, numElements);
+            t = sizes.putIfAbsent(numElements, fresh);
+            if (t == null) {
+                allocations.incrementAndGet();
+                t = fresh;
+            }
+        }
+        return t;
+    }
+
+    /*
+     * A null name, left by a parse error, gets a type of its own that equals no other.
+     */
+    public StructType struct(String structName) {
+        requests.incrementAndGet();
+        if (structName == null) {
+            allocations.incrementAndGet();
+            return new StructType(null);
+        }
+        StructType t = structs.get(structName);
+        if (t == null) {
+            StructType fresh = new StructType(structName);
+            t = structs.putIfAbsent(structName, fresh);
+            if (t == null) {
+                allocations.incrementAndGet();
+                t = fresh;
+            }
+        }
+        return t;
+    }
+
+    /*
+     * Number of types asked for so far, and of the instances actually created for them.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getAllocations() {
+        return allocations.get();
+    }
+}
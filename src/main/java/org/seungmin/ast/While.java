@@ -0,0 +1,15 @@
+package org.seungmin.ast;
+
+public class While extends Stmt {
+    public final Expr cond;
+    public final Stmt body;
+
+    public While(Expr cond, Stmt body) {
+        this.cond = cond;
+        this.body = body;
+    }
+
+    public <T> T accept(ASTVisitor<T> v) {
+        return v.visitWhile(this);
+    }
+}
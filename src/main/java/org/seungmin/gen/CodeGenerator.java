@@ -1,91 +1,454 @@
 package org.seungmin.gen;
 
-import org.seungmin.ast.*;
+import org.seungmin.ast.Op;
+import org.seungmin.ast.Program;
+import org.seungmin.gen.Instruction.Opcode;
+import org.seungmin.ir.*;
+import org.seungmin.ir.Module;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.EmptyStackException;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-public class CodeGenerator implements ASTVisitor<Register> {
+/**
+ * Generates MIPS assembly for the MARS simulator from the IR of a program.
+ *
+ * Every function is first translated to a list of instructions over virtual registers, one per
+ * temporary plus a few scratch ones, which an allocator then maps to Register.tmpRegs before
+ * the function is printed with its prologue and epilogue. Functions take their first four
+ * arguments in Register.paramRegs and the others on the stack, return in $v0, and save the
+ * registers they use, so values survive calls without the caller having to do anything.
+ *
+ * Blocks are emitted in the order of the function, a jump to the block that follows being left
+ * out. With the FREE_STACK allocator the program is lowered with every variable in memory, as
+ * that allocator cannot spill. With the other allocators and optimize set, TailCalls first turns
+ * self-recursive calls in tail position into jumps, unless tailCalls is cleared, the Inliner
+ * copies small functions into their callers, then every function goes through SSA form and
+ * ConstantPropagation, then DeadCodeElimination, before it is emitted;
+ * FREE_STACK cannot keep a value in a register from one block to the next, so its IR is never
+ * optimised. With optimize set the instructions of every function also go through the Peephole
+ * optimiser, whatever the allocator.
+ */
+public class CodeGenerator implements InstrVisitor<Void> {
+
+    public enum Allocator {
+        FREE_STACK,     // StackAllocator, the free register stack
+        GRAPH_COLORING, // GraphColoringAllocator
+        LINEAR_SCAN     // LinearScanAllocator, faster to run, slower code
+    }
+
+    private final Allocator allocator;
+    private final boolean optimize;
+    private final boolean tailCalls;
+    private final int inlineSize;   // see Inliner, 0 to inline nothing
+    private final int inlineGrowth;
+
+    public CodeGenerator() {
+        this(Allocator.GRAPH_COLORING);
+    }
+
+    public CodeGenerator(Allocator allocator) {
+        this(allocator, true);
+    }
+
+    public CodeGenerator(Allocator allocator, boolean optimize) {
+        this(allocator, optimize, true, Inliner.DEFAULT_SIZE, Inliner.DEFAULT_GROWTH);
+    }
+
+    public CodeGenerator(Allocator allocator, boolean optimize, boolean tailCalls, int inlineSize, int inlineGrowth) {
+        this.allocator = allocator;
+        this.optimize = optimize;
+        this.tailCalls = tailCalls;
+        this.inlineSize = inlineSize;
+        this.inlineGrowth = inlineGrowth;
+    }
+
+    private RegisterAllocator newAllocator() {
+        switch (allocator) {
+            case FREE_STACK:  return new StackAllocator();
+            case LINEAR_SCAN: return new LinearScanAllocator();
+            default:          return new GraphColoringAllocator();
+        }
+    }
+
+
+    private PrintWriter writer; // use this writer to output the assembly instructions
+
+    // the function being generated
+    private FunctionCode code;
+    private Function function;
+    private Register[] temps;
+    private final Map<FrameSlot, Integer> slots = new HashMap<>();
+    private BasicBlock next; // the block laid out after the current one, null after the last
+
+
+    public void emitProgram(Program program, File outputFile) throws FileNotFoundException {
+        PrintWriter writer = new PrintWriter(outputFile);
+        emitProgram(program, writer);
+        writer.close();
+    }
+
+    public void emitProgram(Program program, PrintWriter writer) {
+        emitModule(lower(program), writer);
+    }
 
     /*
-     * Simple register allocator.
+     * The IR this generator expects for the program.
      */
+    public Module lower(Program program) {
+        Module module = new Lowering(allocator == Allocator.FREE_STACK).lower(program);
+        if (optimize && allocator != Allocator.FREE_STACK) {
+            if (tailCalls)
+                for (Function f : module.functions)
+                    TailCalls.run(f);
+            if (inlineSize > 0)
+                new Inliner(inlineSize, inlineGrowth).run(module);
+            for (Function f : module.functions) {
+                SSA.construct(f);
+                ConstantPropagation.run(f);
+                SSA.destruct(f);
+                DeadCodeElimination.run(f);
+            }
+        }
+        return module;
+    }
 
-    // contains all the free temporary registers
-    private Stack<Register> freeRegs = new Stack<Register>();
+    public void emitModule(Module module, PrintWriter writer) {
+        this.writer = writer;
+        List<FunctionCode> functions = new ArrayList<>();
+        RegisterAllocator registerAllocator = newAllocator();
+        for (Function f : module.functions) {
+            FunctionCode fc = generate(f);
+            if (optimize)
+                Peephole.beforeAllocation(fc);
+            registerAllocator.allocate(fc);
+            if (optimize)
+                Peephole.afterAllocation(fc);
+            functions.add(fc);
+        }
 
-    public CodeGenerator() {
-        freeRegs.addAll(Register.tmpRegs);
+        writer.println("\t.data");
+        for (Global g : module.globals) {
+            if (g.string != null) {
+                writer.println(g.name + ":\t.asciiz \"" + g.string + "\"");
+            } else {
+                writer.println("\t.align 2");
+                writer.println(g.name + ":\t.space " + g.size);
+            }
+        }
+        writer.println();
+        writer.println("\t.text");
+        writer.println("\t.globl main");
+        writer.println("main:");
+        writer.println("\tjal fun_main");
+        writer.println("\tli $v0, 10");
+        writer.println("\tsyscall");
+        for (FunctionCode f : functions)
+            emit(f);
+        writer.flush();
     }
 
-    private class RegisterAllocationError extends Error {}
+    private FunctionCode generate(Function f) {
+        code = new FunctionCode(f.name);
+        function = f;
+        temps = new Register[f.tempCount()];
+        slots.clear();
+        for (FrameSlot slot : f.slots)
+            slots.put(slot, code.newSlot(slot.size));
 
-    private Register getRegister() {
-        try {
-            return freeRegs.pop();
-        } catch (EmptyStackException ese) {
-            throw new RegisterAllocationError(); // no more free registers, bad luck!
+        for (int i = 0; i < f.params.size(); i++) {
+            if (i < Register.paramRegs.length)
+                emit(Instruction.op(Opcode.MOVE, reg(f.params.get(i)), Register.paramRegs[i]));
+            else
+                emit(Instruction.load(Opcode.LW, reg(f.params.get(i)), 8 + 4 * (i - Register.paramRegs.length), Register.fp));
         }
+        for (int i = 0; i < f.blocks.size(); i++) {
+            BasicBlock b = f.blocks.get(i);
+            next = i + 1 < f.blocks.size() ? f.blocks.get(i + 1) : null;
+            if (i > 0 || !b.predecessors.isEmpty())
+                code.add(Instruction.label(b.label));
+            for (Instr in : b.instructions)
+                in.accept(this);
+            b.terminator.accept(this);
+        }
+        code.add(Instruction.label(returnLabel()));
+        return code;
     }
 
-    private void freeRegister(Register reg) {
-        freeRegs.push(reg);
+    /*
+     * Prints the function with the prologue and epilogue saving $ra, $fp and the registers
+     * the body uses.
+     */
+    private void emit(FunctionCode f) {
+        List<Integer> saveSlots = new ArrayList<>();
+        for (Register r : f.usedRegisters)
+            saveSlots.add(f.newSlot(4));
+
+        writer.println();
+        writer.println("fun_" + f.name + ":");
+        writer.println("\taddi $sp, $sp, -8");
+        writer.println("\tsw $ra, 4($sp)");
+        writer.println("\tsw $fp, 0($sp)");
+        writer.println("\tmove $fp, $sp");
+        if (f.frameBytes() > 0)
+            writer.println("\taddi $sp, $sp, -" + f.frameBytes());
+        int i = 0;
+        for (Register r : f.usedRegisters)
+            writer.println("\tsw " + r + ", " + saveSlots.get(i++) + "($fp)");
+
+        for (Instruction in : f.instructions)
+            writer.println(in);
+
+        i = 0;
+        for (Register r : f.usedRegisters)
+            writer.println("\tlw " + r + ", " + saveSlots.get(i++) + "($fp)");
+        writer.println("\tmove $sp, $fp");
+        writer.println("\tlw $fp, 0($sp)");
+        writer.println("\tlw $ra, 4($sp)");
+        writer.println("\taddi $sp, $sp, 8");
+        writer.println("\tjr $ra");
     }
 
+    private String returnLabel() {
+        return "ret_" + function.name;
+    }
 
+    private void emit(Instruction in) {
+        code.add(in);
+    }
 
+    private void emit(Opcode opcode, Register def, Register... uses) {
+        code.add(Instruction.op(opcode, def, uses));
+    }
 
+    private void emit(Opcode opcode, int imm, Register def, Register... uses) {
+        code.add(Instruction.op(opcode, imm, def, uses));
+    }
 
-    private PrintWriter writer; // use this writer to output the assembly instructions
+    private Register reg(Temp t) {
+        if (temps[t.id] == null)
+            temps[t.id] = code.newVirtual();
+        return temps[t.id];
+    }
+
+    /*
+     * A register holding the value: its temporary, $zero, or a scratch register loaded with
+     * the constant.
+     */
+    private Register use(Value v) {
+        if (v instanceof Temp)
+            return reg((Temp) v);
+        int c = ((Constant) v).value;
+        if (c == 0)
+            return Register.zero;
+        Register r = code.newVirtual();
+        emit(Opcode.LI, c, r);
+        return r;
+    }
 
+    private static boolean isImmediate(Value v) {
+        return v instanceof Constant && ((Constant) v).value >= -32768 && ((Constant) v).value < 32768;
+    }
 
-    public void emitProgram(Program program, File outputFile) throws FileNotFoundException {
-        writer = new PrintWriter(outputFile);
+    @Override
+    public Void visitBinary(Binary b) {
+        Register r = reg(b.dest);
+        Value lhs = b.lhs;
+        Value rhs = b.rhs;
+        if ((b.op == Op.ADD || b.op == Op.MUL || b.op == Op.EQ || b.op == Op.NE) && lhs instanceof Constant) {
+            lhs = b.rhs;
+            rhs = b.lhs;
+        }
+        int c = rhs instanceof Constant ? ((Constant) rhs).value : 0;
 
-        visitProgram(program);
-        writer.close();
+        // forms with an immediate operand
+        if (isImmediate(rhs) && !(lhs instanceof Constant)) {
+            switch (b.op) {
+                case ADD: emit(Opcode.ADDI, c, r, use(lhs)); return null;
+                case SUB:
+                    if (c != -32768) {
+                        emit(Opcode.ADDI, -c, r, use(lhs));
+                        return null;
+                    }
+                    break;
+                case LT: emit(Opcode.SLTI, c, r, use(lhs)); return null;
+                case EQ:
+                    if (c == 0) {
+                        emit(Opcode.SLTIU, 1, r, use(lhs));
+                        return null;
+                    }
+                    break;
+                case NE:
+                    if (c == 0) {
+                        emit(Opcode.SLTU, r, Register.zero, use(lhs));
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Register x = use(lhs);
+        Register y = use(rhs);
+        switch (b.op) {
+            case ADD: emit(Opcode.ADD, r, x, y); break;
+            case SUB: emit(Opcode.SUB, r, x, y); break;
+            case MUL: emit(Opcode.MUL, r, x, y); break;
+            case DIV:
+                emit(Opcode.DIV, null, x, y);
+                emit(Opcode.MFLO, r);
+                break;
+            case MOD:
+                emit(Opcode.DIV, null, x, y);
+                emit(Opcode.MFHI, r);
+                break;
+            case LT: emit(Opcode.SLT, r, x, y); break;
+            case GT: emit(Opcode.SLT, r, y, x); break;
+            case GE:
+                emit(Opcode.SLT, r, x, y);
+                emit(Opcode.XORI, 1, r, r);
+                break;
+            case LE:
+                emit(Opcode.SLT, r, y, x);
+                emit(Opcode.XORI, 1, r, r);
+                break;
+            case EQ:
+                emit(Opcode.XOR, r, x, y);
+                emit(Opcode.SLTIU, 1, r, r);
+                break;
+            case NE:
+                emit(Opcode.XOR, r, x, y);
+                emit(Opcode.SLTU, r, Register.zero, r);
+                break;
+            default:
+                throw new IllegalArgumentException(b.op.toString());
+        }
+        return null;
     }
 
     @Override
-    public Register visitBaseType(BaseType bt) {
+    public Void visitCopy(Copy c) {
+        if (c.source instanceof Constant)
+            emit(Opcode.LI, ((Constant) c.source).value, reg(c.dest));
+        else
+            emit(Opcode.MOVE, reg(c.dest), use(c.source));
         return null;
     }
 
     @Override
-    public Register visitStructTypeDecl(StructTypeDecl st) {
+    public Void visitAddressOf(AddressOf a) {
+        if (a.storage instanceof Global)
+            emit(Instruction.symbol(Opcode.LA, a.storage.name, reg(a.dest)));
+        else
+            emit(Opcode.ADDI, slots.get((FrameSlot) a.storage), reg(a.dest), Register.fp);
         return null;
     }
 
     @Override
-    public Register visitBlock(Block b) {
-        // TODO: to complete
+    public Void visitLoad(Load l) {
+        emit(Instruction.load(l.width == Width.BYTE ? Opcode.LB : Opcode.LW, reg(l.dest), l.offset, use(l.address)));
         return null;
     }
 
     @Override
-    public Register visitFunDecl(FunDecl p) {
-        // TODO: to complete
+    public Void visitStore(Store s) {
+        Register value = use(s.value);
+        emit(Instruction.store(s.width == Width.BYTE ? Opcode.SB : Opcode.SW, value, s.offset, use(s.address)));
         return null;
     }
 
     @Override
-    public Register visitProgram(Program p) {
-        // TODO: to complete
+    public Void visitCall(Call c) {
+        List<Register> args = new ArrayList<>();
+        for (Value arg : c.args)
+            args.add(use(arg));
+
+        if (c.builtin) {
+            builtin(c.function, args);
+        } else {
+            int onStack = Math.max(0, args.size() - Register.paramRegs.length);
+            if (onStack > 0) {
+                emit(Instruction.op(Opcode.ADDI, "$sp, $sp, {i}", -4 * onStack, null));
+                for (int i = Register.paramRegs.length; i < args.size(); i++)
+                    emit(Instruction.store(Opcode.SW, args.get(i), 4 * (i - Register.paramRegs.length), Register.sp));
+            }
+            for (int i = 0; i < args.size() && i < Register.paramRegs.length; i++)
+                emit(Instruction.op(Opcode.MOVE, Register.paramRegs[i] + ", {0}", 0, null, args.get(i)));
+            emit(Instruction.symbol(Opcode.JAL, "fun_" + c.function, null));
+            if (onStack > 0)
+                emit(Instruction.op(Opcode.ADDI, "$sp, $sp, {i}", 4 * onStack, null));
+        }
+        if (c.dest != null)
+            emit(Opcode.MOVE, reg(c.dest), Register.v0);
+        return null;
+    }
+
+    /*
+     * The functions of minic-stdlib.h, as system calls.
+     */
+    private void builtin(String name, List<Register> args) {
+        if (!args.isEmpty())
+            emit(Instruction.op(Opcode.MOVE, "$a0, {0}", 0, null, args.get(0)));
+        int service;
+        switch (name) {
+            case "print_i":  service = 1; break;
+            case "print_s":  service = 4; break;
+            case "print_c":  service = 11; break;
+            case "read_i":   service = 5; break;
+            case "read_c":   service = 12; break;
+            case "mcmalloc": service = 9; break;
+            default: throw new IllegalArgumentException("no builtin function " + name);
+        }
+        emit(Instruction.op(Opcode.LI, "$v0, {i}", service, null));
+        emit(Opcode.SYSCALL, null);
+    }
+
+    private void jump(String label, BasicBlock target) {
+        if (target != next)
+            code.add(Instruction.jump(label));
+    }
+
+    @Override
+    public Void visitJump(Jump j) {
+        jump(j.target.label, j.target);
         return null;
     }
 
     @Override
-    public Register visitVarDecl(VarDecl vd) {
-        // TODO: to complete
+    public Void visitBranch(Branch b) {
+        if (b.cond instanceof Constant) {
+            BasicBlock target = ((Constant) b.cond).value != 0 ? b.ifTrue : b.ifFalse;
+            jump(target.label, target);
+            return null;
+        }
+        Register cond = use(b.cond);
+        if (b.ifFalse == next) {
+            code.add(Instruction.branch(Opcode.BNEZ, b.ifTrue.label, cond));
+        } else {
+            code.add(Instruction.branch(Opcode.BEQZ, b.ifFalse.label, cond));
+            jump(b.ifTrue.label, b.ifTrue);
+        }
         return null;
     }
 
     @Override
-    public Register visitVarExpr(VarExpr v) {
-        // TODO: to complete
+    public Void visitReturn(Return r) {
+        if (r.value instanceof Constant)
+            emit(Instruction.op(Opcode.LI, "$v0, {i}", ((Constant) r.value).value, null));
+        else if (r.value != null)
+            emit(Instruction.op(Opcode.MOVE, "$v0, {0}", 0, null, use(r.value)));
+        // the epilogue follows the last block
+        if (next != null)
+            code.add(Instruction.jump(returnLabel()));
         return null;
     }
+
+    public Void visitPhi(Phi p) {
+        throw new IllegalStateException("phi left in " + function.name);
+    }
 }
@@ -0,0 +1,118 @@
+package org.seungmin.gen;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The body of one function between code generation and emission: its instructions, over
+ * virtual registers until an allocator has run, and the layout of its frame.
+ *
+ * The frame grows downwards from $fp, which points at the saved $fp with the saved $ra above
+ * it; locals, spill slots and the registers saved by the prologue all live below.
+ */
+public class FunctionCode {
+
+    public final String name;
+    public List<Instruction> instructions = new ArrayList<>();
+
+    private final List<Register> virtuals = new ArrayList<>();
+    private int frameBytes = 0;
+
+    // the tmpRegs written by the body once allocated, saved and restored around it
+    public final Set<Register> usedRegisters = new LinkedHashSet<>();
+
+    public FunctionCode(String name) {
+        this.name = name;
+    }
+
+    public Register newVirtual() {
+        Register r = Register.virtual(virtuals.size());
+        virtuals.add(r);
+        return r;
+    }
+
+    public int virtualCount() {
+        return virtuals.size();
+    }
+
+    public Register virtual(int id) {
+        return virtuals.get(id);
+    }
+
+    /*
+     * Reserves bytes in the frame, word aligned, and returns their offset from $fp.
+     */
+    public int newSlot(int bytes) {
+        frameBytes += (bytes + 3) & ~3;
+        return -frameBytes;
+    }
+
+    public int frameBytes() {
+        return frameBytes;
+    }
+
+    public void add(Instruction i) {
+        instructions.add(i);
+    }
+
+    /*
+     * Replaces every virtual register by the tmpRegs at the index given for it, drops the
+     * moves left with the same register at both ends and records the registers written.
+     */
+    public void assign(int[] registers) {
+        List<Instruction> renamed = new ArrayList<>(instructions.size());
+        for (Instruction in : instructions) {
+            Instruction r = in.rename(reg -> reg.isVirtual() ? Register.tmpRegs.get(registers[reg.virtualId()]) : reg);
+            if (r.isMove() && r.def == r.uses[0])
+                continue;
+            if (r.def != null)
+                usedRegisters.add(r.def);
+            renamed.add(r);
+        }
+        instructions = renamed;
+    }
+
+    /*
+     * Moves the spilled virtual registers to slots of the frame: each instruction using one
+     * reloads it first and each instruction defining one stores it right after, through fresh
+     * virtual registers that live for a single instruction and are added to spillTemps.
+     */
+    public void spill(BitSet spilled, BitSet spillTemps) {
+        int[] slots = new int[virtualCount()];
+        for (int v = spilled.nextSetBit(0); v >= 0; v = spilled.nextSetBit(v + 1))
+            slots[v] = newSlot(4);
+
+        List<Instruction> rewritten = new ArrayList<>(instructions.size());
+        for (Instruction in : instructions) {
+            Register[] uses = in.uses.clone();
+            for (int i = 0; i < uses.length; i++) {
+                Register u = in.uses[i];
+                if (!u.isVirtual() || !spilled.get(u.virtualId()))
+                    continue;
+                Register t = null;
+                for (int j = 0; j < i; j++)
+                    if (in.uses[j] == u)
+                        t = uses[j];
+                if (t == null) {
+                    t = newVirtual();
+                    spillTemps.set(t.virtualId());
+                    rewritten.add(Instruction.load(Instruction.Opcode.LW, t, slots[u.virtualId()], Register.fp));
+                }
+                uses[i] = t;
+            }
+            Register def = in.def;
+            if (def != null && spilled.get(def.virtualId())) {
+                Register t = newVirtual();
+                spillTemps.set(t.virtualId());
+                rewritten.add(in.withRegisters(t, uses));
+                rewritten.add(Instruction.store(Instruction.Opcode.SW, t, slots[def.virtualId()], Register.fp));
+            } else {
+                rewritten.add(in.withRegisters(def, uses));
+            }
+        }
+        instructions = rewritten;
+    }
+}
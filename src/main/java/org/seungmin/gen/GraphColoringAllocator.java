@@ -0,0 +1,151 @@
+package org.seungmin.gen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Chaitin-Briggs allocation: an interference graph built from liveness, simplified by removing
+ * nodes of degree lower than the number of registers, optimistically when none is left, then
+ * colored in reverse order of removal. A node that finds no color is spilled to a slot of the
+ * frame: every use reloads it and every definition stores it through a fresh short-lived
+ * register, and the whole process starts over on the rewritten code.
+ *
+ * Spill candidates are chosen by cost over degree, the cost of a node being its uses and
+ * definitions weighted by 10 to the power of their loop depth. Moves are honoured when
+ * possible by preferring the color of the other end of the move.
+ */
+public class GraphColoringAllocator implements RegisterAllocator {
+
+    private static final int K = Register.tmpRegs.size();
+
+    @Override
+    public void allocate(FunctionCode f) {
+        BitSet spillTemps = new BitSet();
+        while (true) {
+            int[] colors = color(f, spillTemps);
+            BitSet spilled = new BitSet();
+            for (int v = 0; v < colors.length; v++)
+                if (colors[v] < 0)
+                    spilled.set(v);
+            if (spilled.isEmpty()) {
+                f.assign(colors);
+                return;
+            }
+            f.spill(spilled, spillTemps);
+        }
+    }
+
+    /*
+     * Returns the color of every virtual register, -1 for those to be spilled.
+     */
+    private static int[] color(FunctionCode f, BitSet spillTemps) {
+        int n = f.virtualCount();
+        BitSet[] adjacent = new BitSet[n];
+        for (int v = 0; v < n; v++)
+            adjacent[v] = new BitSet();
+        int[] partner = new int[n];
+        Arrays.fill(partner, -1);
+
+        Liveness liveness = new Liveness(f);
+        liveness.forEachInstruction((index, in, liveAfter) -> {
+            if (in.def == null)
+                return;
+            int d = in.def.virtualId();
+            int source = in.isMove() && in.uses[0].isVirtual() ? in.uses[0].virtualId() : -1;
+            if (source >= 0) {
+                partner[d] = source;
+                partner[source] = d;
+            }
+            for (int v = liveAfter.nextSetBit(0); v >= 0; v = liveAfter.nextSetBit(v + 1)) {
+                // the source of a move may share the register of its destination
+                if (v != d && v != source) {
+                    adjacent[d].set(v);
+                    adjacent[v].set(d);
+                }
+            }
+        });
+        // values live on entry (parameters moved in, uninitialised variables) all interfere
+        BitSet entry = liveness.liveAtEntry();
+        for (int v = entry.nextSetBit(0); v >= 0; v = entry.nextSetBit(v + 1)) {
+            adjacent[v].or(entry);
+            adjacent[v].clear(v);
+        }
+
+        double[] cost = new double[n];
+        int[] depth = Liveness.loopDepths(f.instructions);
+        for (int i = 0; i < f.instructions.size(); i++) {
+            Instruction in = f.instructions.get(i);
+            double weight = Math.pow(10, Math.min(depth[i], 8));
+            if (in.def != null)
+                cost[in.def.virtualId()] += weight;
+            for (Register u : in.uses)
+                if (u.isVirtual())
+                    cost[u.virtualId()] += weight;
+        }
+        for (int v = spillTemps.nextSetBit(0); v >= 0; v = spillTemps.nextSetBit(v + 1))
+            cost[v] = Double.POSITIVE_INFINITY;
+
+        // simplify
+        int[] degree = new int[n];
+        for (int v = 0; v < n; v++)
+            degree[v] = adjacent[v].cardinality();
+        boolean[] removed = new boolean[n];
+        int[] stack = new int[n];
+        int top = 0;
+        List<Integer> lowDegree = new ArrayList<>();
+        for (int v = 0; v < n; v++)
+            if (degree[v] < K)
+                lowDegree.add(v);
+        while (top < n) {
+            int v = -1;
+            while (!lowDegree.isEmpty()) {
+                int candidate = lowDegree.remove(lowDegree.size() - 1);
+                if (!removed[candidate]) {
+                    v = candidate;
+                    break;
+                }
+            }
+            if (v < 0) {
+                // blocked: remove the cheapest node to spill, optimistically
+                double best = Double.POSITIVE_INFINITY;
+                for (int u = 0; u < n; u++) {
+                    if (removed[u])
+                        continue;
+                    double c = cost[u] / (degree[u] + 1);
+                    if (v < 0 || c < best) {
+                        best = c;
+                        v = u;
+                    }
+                }
+            }
+            removed[v] = true;
+            stack[top++] = v;
+            for (int u = adjacent[v].nextSetBit(0); u >= 0; u = adjacent[v].nextSetBit(u + 1))
+                if (!removed[u] && --degree[u] == K - 1)
+                    lowDegree.add(u);
+        }
+
+        // select
+        int[] colors = new int[n];
+        Arrays.fill(colors, -1);
+        boolean[] colored = new boolean[n];
+        BitSet taken = new BitSet(K);
+        while (top > 0) {
+            int v = stack[--top];
+            taken.clear();
+            for (int u = adjacent[v].nextSetBit(0); u >= 0; u = adjacent[v].nextSetBit(u + 1))
+                if (colored[u] && colors[u] >= 0)
+                    taken.set(colors[u]);
+            int c = -1;
+            if (partner[v] >= 0 && colored[partner[v]] && colors[partner[v]] >= 0 && !taken.get(colors[partner[v]]))
+                c = colors[partner[v]];
+            else if (taken.nextClearBit(0) < K)
+                c = taken.nextClearBit(0);
+            colors[v] = c;
+            colored[v] = true;
+        }
+        return colors;
+    }
+}
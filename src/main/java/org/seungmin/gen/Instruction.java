@@ -0,0 +1,204 @@
+package org.seungmin.gen;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * One line of assembly: an opcode and its operands, the registers it reads and writes kept
+ * apart from the rest.
+ *
+ * The operands are printed from a format where {d} stands for the register defined, {0}, {1}...
+ * for the registers used, {i} for the immediate and {l} for the label, so the allocator can
+ * rename registers and the peephole optimiser rewrite instructions without parsing assembly.
+ * Every opcode has a standard format; the few instructions writing a register that no allocator
+ * hands out ($a0, $v0, $sp) name it literally in a format of their own, and it is not tracked.
+ * Registers read are always listed in uses, physical ones like $fp and $zero included.
+ */
+public final class Instruction {
+
+    public enum Kind {
+        OP,     // falls through to the next instruction
+        LABEL,  // a branch target, label is its name
+        JUMP,   // always goes to label
+        BRANCH  // goes to label or falls through
+    }
+
+    public enum Opcode {
+        ADD("{d}, {0}, {1}"),
+        ADDI("{d}, {0}, {i}"),
+        SUB("{d}, {0}, {1}"),
+        MUL("{d}, {0}, {1}"),
+        DIV("{0}, {1}"),
+        MFLO("{d}"),
+        MFHI("{d}"),
+        SLT("{d}, {0}, {1}"),
+        SLTI("{d}, {0}, {i}"),
+        SLTU("{d}, {0}, {1}"),
+        SLTIU("{d}, {0}, {i}"),
+        XOR("{d}, {0}, {1}"),
+        XORI("{d}, {0}, {i}"),
+        SLL("{d}, {0}, {i}"),
+        SRL("{d}, {0}, {i}"),
+        SRA("{d}, {0}, {i}"),
+        LI("{d}, {i}"),
+        LA("{d}, {l}"),
+        MOVE("{d}, {0}"),
+        LW("{d}, {i}({0})"),
+        LB("{d}, {i}({0})"),
+        SW("{0}, {i}({1})"),
+        SB("{0}, {i}({1})"),
+        JAL("{l}"),
+        SYSCALL(""),
+        J("{l}"),
+        BEQZ("{0}, {l}"),
+        BNEZ("{0}, {l}"),
+        LABEL("{l}:");
+
+        public final String mnemonic = name().toLowerCase();
+        public final String operands;
+
+        Opcode(String operands) {
+            this.operands = operands;
+        }
+
+        public boolean isLoad() {
+            return this == LW || this == LB;
+        }
+
+        public boolean isStore() {
+            return this == SW || this == SB;
+        }
+    }
+
+    public final Kind kind;
+    public final Opcode opcode;
+    public final String operands;
+    public final Register def;     // null if the instruction writes no tracked register
+    public final Register[] uses;
+    public final int imm;
+    public final String label;     // LABEL: its name, JUMP and BRANCH: the target, LA and JAL: the symbol
+
+    private Instruction(Opcode opcode, String operands, int imm, String label, Register def, Register... uses) {
+        switch (opcode) {
+            case LABEL:       kind = Kind.LABEL; break;
+            case J:           kind = Kind.JUMP; break;
+            case BEQZ:
+            case BNEZ:        kind = Kind.BRANCH; break;
+            default:          kind = Kind.OP; break;
+        }
+        this.opcode = opcode;
+        this.operands = operands;
+        this.imm = imm;
+        this.label = label;
+        this.def = def;
+        this.uses = uses;
+    }
+
+    public static Instruction op(Opcode opcode, Register def, Register... uses) {
+        return new Instruction(opcode, opcode.operands, 0, null, def, uses);
+    }
+
+    public static Instruction op(Opcode opcode, int imm, Register def, Register... uses) {
+        return new Instruction(opcode, opcode.operands, imm, null, def, uses);
+    }
+
+    /*
+     * An instruction whose operands do not follow the standard format of its opcode, to name
+     * the untracked register it writes.
+     */
+    public static Instruction op(Opcode opcode, String operands, int imm, Register def, Register... uses) {
+        return new Instruction(opcode, operands, imm, null, def, uses);
+    }
+
+    /*
+     * LA or JAL, with the symbol they name.
+     */
+    public static Instruction symbol(Opcode opcode, String symbol, Register def) {
+        return new Instruction(opcode, opcode.operands, 0, symbol, def);
+    }
+
+    public static Instruction load(Opcode opcode, Register dest, int offset, Register base) {
+        return new Instruction(opcode, opcode.operands, offset, null, dest, base);
+    }
+
+    public static Instruction store(Opcode opcode, Register value, int offset, Register base) {
+        return new Instruction(opcode, opcode.operands, offset, null, null, value, base);
+    }
+
+    public static Instruction label(String name) {
+        return new Instruction(Opcode.LABEL, Opcode.LABEL.operands, 0, name, null);
+    }
+
+    public static Instruction jump(String target) {
+        return new Instruction(Opcode.J, Opcode.J.operands, 0, target, null);
+    }
+
+    public static Instruction branch(Opcode opcode, String target, Register cond) {
+        return new Instruction(opcode, opcode.operands, 0, target, null, cond);
+    }
+
+    /*
+     * Whether the operands follow the format of the opcode, so that every register written is
+     * the def.
+     */
+    public boolean isStandard() {
+        return operands == opcode.operands || operands.equals(opcode.operands);
+    }
+
+    public boolean isMove() {
+        return opcode == Opcode.MOVE && def != null && isStandard();
+    }
+
+    /*
+     * The base register of a load or a store.
+     */
+    public Register base() {
+        return uses[opcode.isLoad() ? 0 : 1];
+    }
+
+    /*
+     * The same instruction with every tracked register replaced by map(register).
+     */
+    public Instruction rename(UnaryOperator<Register> map) {
+        Register[] renamed = new Register[uses.length];
+        for (int i = 0; i < uses.length; i++)
+            renamed[i] = map.apply(uses[i]);
+        return new Instruction(opcode, operands, imm, label, def == null ? null : map.apply(def), renamed);
+    }
+
+    public Instruction withRegisters(Register def, Register... uses) {
+        return new Instruction(opcode, operands, imm, label, def, uses);
+    }
+
+    /*
+     * The same instruction writing the untracked register named instead of its def.
+     */
+    public Instruction writing(String register) {
+        return new Instruction(opcode, operands.replace("{d}", register), imm, label, null, uses);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (kind != Kind.LABEL) {
+            sb.append('\t').append(opcode.mnemonic);
+            if (!operands.isEmpty())
+                sb.append(' ');
+        }
+        for (int i = 0; i < operands.length(); i++) {
+            char c = operands.charAt(i);
+            int close = c == '{' ? operands.indexOf('}', i) : -1;
+            if (close < 0) {
+                sb.append(c);
+                continue;
+            }
+            switch (operands.charAt(i + 1)) {
+                case 'd': sb.append(def); break;
+                case 'l': sb.append(label); break;
+                case 'i': sb.append(imm); break;
+                default:  sb.append(uses[operands.charAt(i + 1) - '0']); break;
+            }
+            i = close;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,183 @@
+package org.seungmin.gen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Linear scan allocation, after Poletto and Sarkar: every virtual register gets a single live
+ * interval over the instructions in program order, and the intervals are given registers in
+ * order of their start, a register coming back as soon as the interval holding it has ended.
+ * When none is free, the interval among the active ones and the new one whose next use is the
+ * furthest away is spilled, the same way GraphColoringAllocator does, and the scan starts over
+ * on the rewritten code.
+ *
+ * Intervals are built from the live sets of the blocks rather than of every instruction, so a
+ * scan is linear in the size of the code plus the number of intervals times the number of
+ * registers. They are coarser than the interference graph, which costs some spills and moves.
+ *
+ * Positions are doubled: instruction i reads its operands at 2i and writes its result at 2i+1,
+ * so a value used for the last time by an instruction may share its register with the result.
+ */
+public class LinearScanAllocator implements RegisterAllocator {
+
+    private static final int K = Register.tmpRegs.size();
+
+    @Override
+    public void allocate(FunctionCode f) {
+        BitSet spillTemps = new BitSet();
+        while (true) {
+            int[] registers = new int[f.virtualCount()];
+            BitSet spilled = scan(f, spillTemps, registers);
+            if (spilled.isEmpty()) {
+                f.assign(registers);
+                return;
+            }
+            f.spill(spilled, spillTemps);
+        }
+    }
+
+    /*
+     * Fills registers with the index in tmpRegs of every virtual register and returns those
+     * that have to be spilled instead.
+     */
+    private static BitSet scan(FunctionCode f, BitSet spillTemps, int[] registers) {
+        int n = f.virtualCount();
+        List<Instruction> code = f.instructions;
+        int[] start = new int[n];
+        int[] end = new int[n];
+        Arrays.fill(start, Integer.MAX_VALUE);
+        Arrays.fill(end, -1);
+        int[] hint = new int[n];   // the source of the move defining a register, if any
+        Arrays.fill(hint, -1);
+
+        // positions of the uses of every register, in order, for the next use queries
+        int[] useCount = new int[n + 1];
+        for (Instruction in : code)
+            for (Register u : in.uses)
+                if (u.isVirtual())
+                    useCount[u.virtualId() + 1]++;
+        for (int v = 0; v < n; v++)
+            useCount[v + 1] += useCount[v];
+        int[] usesFrom = useCount.clone();
+        int[] usePositions = new int[useCount[n]];
+
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            for (Register u : in.uses)
+                if (u.isVirtual()) {
+                    int v = u.virtualId();
+                    usePositions[usesFrom[v]++] = 2 * i;
+                    extend(start, end, v, 2 * i);
+                }
+            if (in.def != null && in.def.isVirtual()) {
+                int d = in.def.virtualId();
+                extend(start, end, d, 2 * i + 1);
+                if (in.isMove() && in.uses[0].isVirtual())
+                    hint[d] = in.uses[0].virtualId();
+            }
+        }
+        Liveness liveness = new Liveness(f);
+        for (int b = 0; b < liveness.blockCount(); b++) {
+            BitSet in = liveness.liveIn(b);
+            for (int v = in.nextSetBit(0); v >= 0; v = in.nextSetBit(v + 1))
+                extend(start, end, v, 2 * liveness.blockStart(b));
+            BitSet out = liveness.liveOut(b);
+            for (int v = out.nextSetBit(0); v >= 0; v = out.nextSetBit(v + 1))
+                extend(start, end, v, 2 * liveness.blockStart(b + 1));
+        }
+
+        List<Integer> order = new ArrayList<>(n);
+        for (int v = 0; v < n; v++)
+            if (end[v] >= 0)
+                order.add(v);
+        order.sort((a, b) -> Integer.compare(start[a], start[b]));
+
+        BitSet spilled = new BitSet();
+        Deque<Integer> free = new ArrayDeque<>();
+        for (int r = K - 1; r >= 0; r--)
+            free.push(r);
+        boolean[] taken = new boolean[K];
+        List<Integer> active = new ArrayList<>();  // by increasing end
+        Arrays.fill(registers, -1);
+
+        for (int v : order) {
+            // expire
+            int kept = 0;
+            for (int a : active) {
+                if (end[a] < start[v]) {
+                    free.push(registers[a]);
+                    taken[registers[a]] = false;
+                } else {
+                    active.set(kept++, a);
+                }
+            }
+            active.subList(kept, active.size()).clear();
+
+            if (!free.isEmpty()) {
+                int h = hint[v] >= 0 ? registers[hint[v]] : -1;
+                if (h >= 0 && !taken[h])
+                    free.remove(h);
+                else
+                    h = free.pop();
+                registers[v] = h;
+                taken[h] = true;
+                insert(active, end, v);
+                continue;
+            }
+
+            // spill whichever of the active intervals and v is needed the latest
+            int victim = v;
+            int furthest = spillTemps.get(v) ? -1 : nextUse(usePositions, useCount, v, start[v]);
+            for (int a : active) {
+                if (spillTemps.get(a))
+                    continue;
+                int next = nextUse(usePositions, useCount, a, start[v]);
+                if (next > furthest) {
+                    furthest = next;
+                    victim = a;
+                }
+            }
+            spilled.set(victim);
+            if (victim != v) {
+                registers[v] = registers[victim];
+                registers[victim] = -1;
+                active.remove((Integer) victim);
+                insert(active, end, v);
+            }
+        }
+        return spilled;
+    }
+
+    private static void extend(int[] start, int[] end, int v, int position) {
+        if (position < start[v])
+            start[v] = position;
+        if (position > end[v])
+            end[v] = position;
+    }
+
+    private static void insert(List<Integer> active, int[] end, int v) {
+        int i = active.size();
+        while (i > 0 && end[active.get(i - 1)] > end[v])
+            i--;
+        active.add(i, v);
+    }
+
+    /*
+     * The first use of v at or after position, Integer.MAX_VALUE if there is none.
+     */
+    private static int nextUse(int[] usePositions, int[] useCount, int v, int position) {
+        int lo = useCount[v], hi = useCount[v + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (usePositions[mid] < position)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo < useCount[v + 1] ? usePositions[lo] : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,200 @@
+package org.seungmin.gen;
+
+import org.seungmin.ir.Bits;
+import org.seungmin.ir.Dataflow;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live virtual registers of a FunctionCode, by backward dataflow over its basic blocks.
+ *
+ * Blocks start at labels and after jumps and branches. The sets, indexed by virtual register
+ * id, are solved per block by Dataflow over the graph of the blocks, then replayed one
+ * instruction at a time by forEachInstruction for whoever needs them finer grained.
+ */
+public class Liveness {
+
+    /*
+     * Receives an instruction and the registers live right after it. The set is reused from
+     * one call to the next and must not be modified.
+     */
+    public interface InstructionVisitor {
+        void visit(int index, Instruction instruction, BitSet liveAfter);
+    }
+
+    private final List<Instruction> code;
+    private final int[] blockStart;      // index of the first instruction of each block
+    private final int[][] successors;
+    private final BitSet[] liveIn;
+    private final BitSet[] liveOut;
+
+    public Liveness(FunctionCode f) {
+        code = f.instructions;
+        List<Integer> starts = new ArrayList<>();
+        Map<String, Integer> blockOfLabel = new HashMap<>();
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            boolean leader = i == 0 || in.kind == Instruction.Kind.LABEL
+                    || code.get(i - 1).kind == Instruction.Kind.JUMP || code.get(i - 1).kind == Instruction.Kind.BRANCH;
+            if (leader && (starts.isEmpty() || starts.get(starts.size() - 1) != i))
+                starts.add(i);
+            if (in.kind == Instruction.Kind.LABEL)
+                blockOfLabel.put(in.label, starts.size() - 1);
+        }
+        int blocks = starts.size();
+        blockStart = new int[blocks + 1];
+        for (int b = 0; b < blocks; b++)
+            blockStart[b] = starts.get(b);
+        blockStart[blocks] = code.size();
+
+        successors = new int[blocks][];
+        int registers = f.virtualCount();
+        long[][] use = new long[blocks][];
+        long[][] def = new long[blocks][];
+        int[] predecessorCount = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            use[b] = Bits.of(registers);
+            def[b] = Bits.of(registers);
+            for (int i = blockStart[b]; i < blockStart[b + 1]; i++) {
+                Instruction in = code.get(i);
+                for (Register u : in.uses)
+                    if (u.isVirtual() && !Bits.get(def[b], u.virtualId()))
+                        Bits.set(use[b], u.virtualId());
+                if (in.def != null && in.def.isVirtual())
+                    Bits.set(def[b], in.def.virtualId());
+            }
+            Instruction last = code.get(blockStart[b + 1] - 1);
+            boolean fallsThrough = last.kind != Instruction.Kind.JUMP && b + 1 < blocks;
+            Integer target = last.kind == Instruction.Kind.JUMP || last.kind == Instruction.Kind.BRANCH
+                    ? blockOfLabel.get(last.label) : null;
+            if (target != null && fallsThrough)
+                successors[b] = new int[]{target, b + 1};
+            else if (target != null)
+                successors[b] = new int[]{target};
+            else if (fallsThrough)
+                successors[b] = new int[]{b + 1};
+            else
+                successors[b] = new int[0];
+            for (int s : successors[b])
+                predecessorCount[s]++;
+        }
+        int[][] predecessors = new int[blocks][];
+        for (int b = 0; b < blocks; b++)
+            predecessors[b] = new int[predecessorCount[b]];
+        int[] filled = new int[blocks];
+        for (int b = 0; b < blocks; b++)
+            for (int s : successors[b])
+                predecessors[s][filled[s]++] = b;
+
+        // in = use | out & ~def, out = union of the ins of the successors
+        Dataflow dataflow = new Dataflow(new Dataflow.Graph() {
+            public int nodes() {
+                return blocks;
+            }
+
+            public int[] successors(int node) {
+                return successors[node];
+            }
+
+            public int[] predecessors(int node) {
+                return predecessors[node];
+            }
+        }, new Dataflow.GraphProblem() {
+            public Dataflow.Direction direction() {
+                return Dataflow.Direction.BACKWARD;
+            }
+
+            public Dataflow.Meet meet() {
+                return Dataflow.Meet.UNION;
+            }
+
+            public int size() {
+                return registers;
+            }
+
+            public void transfer(int b, long[] out, long[] in) {
+                System.arraycopy(use[b], 0, in, 0, in.length);
+                Bits.orAndNot(in, out, def[b]);
+            }
+        });
+
+        liveIn = new BitSet[blocks];
+        liveOut = new BitSet[blocks];
+        for (int b = 0; b < blocks; b++) {
+            liveIn[b] = BitSet.valueOf(dataflow.in(b));
+            liveOut[b] = BitSet.valueOf(dataflow.out(b));
+        }
+    }
+
+    public int blockCount() {
+        return liveIn.length;
+    }
+
+    /*
+     * Index of the first instruction of block b; blockStart(blockCount()) is the code size.
+     */
+    public int blockStart(int b) {
+        return blockStart[b];
+    }
+
+    public BitSet liveIn(int b) {
+        return liveIn[b];
+    }
+
+    public BitSet liveOut(int b) {
+        return liveOut[b];
+    }
+
+    public BitSet liveAtEntry() {
+        return liveIn.length == 0 ? new BitSet() : liveIn[0];
+    }
+
+    /*
+     * Visits the instructions from the last one to the first one.
+     */
+    public void forEachInstruction(InstructionVisitor visitor) {
+        BitSet live = new BitSet();
+        for (int b = liveOut.length - 1; b >= 0; b--) {
+            live.clear();
+            live.or(liveOut[b]);
+            for (int i = blockStart[b + 1] - 1; i >= blockStart[b]; i--) {
+                Instruction in = code.get(i);
+                visitor.visit(i, in, live);
+                if (in.def != null && in.def.isVirtual())
+                    live.clear(in.def.virtualId());
+                for (Register u : in.uses)
+                    if (u.isVirtual())
+                        live.set(u.virtualId());
+            }
+        }
+    }
+
+    /*
+     * Loop nesting depth of every instruction, from the backward jumps and branches of the
+     * structured code the generator emits: a loop spans from a label to the last jump to it.
+     */
+    public static int[] loopDepths(List<Instruction> code) {
+        Map<String, Integer> labels = new HashMap<>();
+        int[] delta = new int[code.size() + 1];
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            if (in.kind == Instruction.Kind.LABEL) {
+                labels.put(in.label, i);
+            } else if (in.label != null && labels.containsKey(in.label)) {
+                delta[labels.get(in.label)]++;
+                delta[i + 1]--;
+            }
+        }
+        int[] depth = new int[code.size()];
+        int d = 0;
+        for (int i = 0; i < code.size(); i++) {
+            d += delta[i];
+            depth[i] = d;
+        }
+        return depth;
+    }
+}
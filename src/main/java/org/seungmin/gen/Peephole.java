@@ -0,0 +1,463 @@
+package org.seungmin.gen;
+
+import org.seungmin.gen.Instruction.Kind;
+import org.seungmin.gen.Instruction.Opcode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Peephole optimisations over the instructions of a FunctionCode, run once before and once
+ * after register allocation.
+ *
+ * Before allocation every virtual register is known by the instructions defining and using it,
+ * so the value of one set by an li or an addi can be folded into the instructions that read it:
+ * addi chains and address computations become a single offset, comparisons with a constant an
+ * slti, multiplications and divisions by a power of two shifts, and what is no longer read is
+ * deleted. A value computed only to be moved to $a0 or $v0 is computed there directly.
+ *
+ * After allocation the code is scanned forward in windows that run from one label to the next,
+ * keeping which registers hold the words of the frame at $fp and which are copies of each other:
+ * a load of a word already in a register becomes a move or goes, as do a store of the value the
+ * word already holds and a move between registers already equal. Jumps and branches to the next
+ * instruction are deleted, branches over a jump inverted, jumps to jumps threaded, code after a
+ * jump that no label leads to deleted, and labels no longer targeted dropped so that the windows
+ * grow.
+ */
+public final class Peephole {
+
+    private Peephole() {
+    }
+
+    private static boolean fitsImmediate(long value) {
+        return value >= -32768 && value < 32768;
+    }
+
+    /*
+     * Instructions that only write their def, deleted when that is never read.
+     */
+    private static boolean isPure(Instruction in) {
+        switch (in.opcode) {
+            case ADD: case ADDI: case SUB: case MUL: case MFLO: case MFHI:
+            case SLT: case SLTI: case SLTU: case SLTIU: case XOR: case XORI:
+            case SLL: case SRL: case SRA: case LI: case LA: case MOVE:
+                return in.def != null && in.def.isVirtual() && in.isStandard();
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * Registers written only as the def of an instruction, so that what is known of them can be
+     * forgotten in time.
+     */
+    private static boolean isTracked(Register r) {
+        return r.isVirtual() || r == Register.zero || Register.tmpRegs.contains(r);
+    }
+
+    /*
+     * Registers whose value never changes in the body of a function.
+     */
+    private static boolean isFixed(Register r) {
+        return r == Register.fp || r == Register.zero;
+    }
+
+    // ---------------------------------------------------------------- before allocation
+
+    public static void beforeAllocation(FunctionCode f) {
+        while (fold(f))
+            removeDead(f);
+    }
+
+    /*
+     * Rewrites the instructions reading a register set by an li, or by an addi to a register
+     * that has not changed since, with the constant folded in. Returns whether any was.
+     */
+    private static boolean fold(FunctionCode f) {
+        int n = f.virtualCount();
+        int[] defs = new int[n];
+        int[] uses = new int[n];
+        Instruction[] global = new Instruction[n];   // the only definition, when always valid
+        for (Instruction in : f.instructions) {
+            if (in.def != null && in.def.isVirtual())
+                defs[in.def.virtualId()]++;
+            for (Register u : in.uses)
+                if (u.isVirtual())
+                    uses[u.virtualId()]++;
+        }
+        for (Instruction in : f.instructions)
+            if (in.def != null && in.def.isVirtual() && defs[in.def.virtualId()] == 1 && in.isStandard()
+                    && (in.opcode == Opcode.LI || in.opcode == Opcode.ADDI && isFixed(in.uses[0])))
+                global[in.def.virtualId()] = in;
+
+        Instruction[] local = new Instruction[n];     // valid from their definition to the next label
+        List<Integer> active = new ArrayList<>();
+        boolean changed = false;
+        List<Instruction> code = f.instructions;
+        List<Instruction> out = new ArrayList<>(code.size());
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            if (in.kind == Kind.LABEL) {
+                for (int v : active)
+                    local[v] = null;
+                active.clear();
+            }
+            Instruction folded = in.isStandard() ? fold(in, global, local) : null;
+            if (folded == null && in.opcode == Opcode.DIV && i + 1 < code.size()
+                    && code.get(i + 1).opcode == Opcode.MFLO && code.get(i + 1).isStandard()) {
+                List<Instruction> shifts = divide(f, in, code.get(i + 1).def, global, local);
+                if (shifts != null) {
+                    for (Instruction s : shifts)
+                        out.add(s);
+                    i++;
+                    in = shifts.get(shifts.size() - 1);
+                    changed = true;
+                    kill(in.def, local, active);
+                    continue;
+                }
+            }
+            // li t, k; slt d, t, x; xori d, d, 1  becomes  slti d, x, k + 1
+            Instruction next = i + 1 < code.size() ? code.get(i + 1) : null;
+            Instruction constant = folded == null && in.opcode == Opcode.SLT && in.isStandard()
+                    ? known(in.uses[0], global, local) : null;
+            if (constant != null && constant.opcode == Opcode.LI && fitsImmediate((long) constant.imm + 1)
+                    && next != null && next.opcode == Opcode.XORI && next.isStandard() && next.imm == 1
+                    && next.def == in.def && next.uses[0] == in.def) {
+                folded = Instruction.op(Opcode.SLTI, constant.imm + 1, in.def, in.uses[1]);
+                i++;
+            }
+            // x = ...; move $a0, x  becomes  $a0 = ...
+            if (in.opcode == Opcode.MOVE && !in.isStandard() && in.uses[0].isVirtual()
+                    && uses[in.uses[0].virtualId()] == 1 && !out.isEmpty()) {
+                Instruction previous = out.get(out.size() - 1);
+                if (isPure(previous) && previous.def == in.uses[0]) {
+                    out.set(out.size() - 1, previous.writing(in.operands.substring(0, in.operands.indexOf(','))));
+                    changed = true;
+                    continue;
+                }
+            }
+            if (folded != null) {
+                in = folded;
+                changed = true;
+            }
+            out.add(in);
+            if (in.def != null && in.def.isVirtual()) {
+                kill(in.def, local, active);
+                if (in.isStandard() && (in.opcode == Opcode.LI || in.opcode == Opcode.ADDI && in.uses[0] != in.def)) {
+                    local[in.def.virtualId()] = in;
+                    active.add(in.def.virtualId());
+                }
+            }
+        }
+        f.instructions = out;
+        return changed;
+    }
+
+    /*
+     * Forgets what was known of r and of the registers computed from it.
+     */
+    private static void kill(Register r, Instruction[] local, List<Integer> active) {
+        local[r.virtualId()] = null;
+        for (int v : active)
+            if (local[v] != null && local[v].opcode == Opcode.ADDI && local[v].uses[0] == r)
+                local[v] = null;
+    }
+
+    private static Instruction known(Register r, Instruction[] global, Instruction[] local) {
+        if (!r.isVirtual())
+            return null;
+        Instruction in = global[r.virtualId()];
+        return in != null ? in : local[r.virtualId()];
+    }
+
+    private static int powerOfTwo(Instruction li) {
+        return li != null && li.opcode == Opcode.LI && li.imm > 0 && (li.imm & (li.imm - 1)) == 0
+                ? Integer.numberOfTrailingZeros(li.imm) : -1;
+    }
+
+    private static Instruction fold(Instruction in, Instruction[] global, Instruction[] local) {
+        switch (in.opcode) {
+            case ADDI: {
+                Instruction source = known(in.uses[0], global, local);
+                if (source != null && source.opcode == Opcode.LI && fitsImmediate((long) source.imm + in.imm))
+                    return Instruction.op(Opcode.LI, source.imm + in.imm, in.def);
+                if (source != null && source.opcode == Opcode.ADDI && fitsImmediate((long) source.imm + in.imm))
+                    return Instruction.op(Opcode.ADDI, source.imm + in.imm, in.def, source.uses[0]);
+                if (in.imm == 0)
+                    return Instruction.op(Opcode.MOVE, in.def, in.uses[0]);
+                return null;
+            }
+            case LW: case LB: case SW: case SB: {
+                Instruction address = known(in.base(), global, local);
+                if (address == null || address.opcode != Opcode.ADDI || !fitsImmediate((long) address.imm + in.imm))
+                    return null;
+                int offset = address.imm + in.imm;
+                return in.opcode.isLoad()
+                        ? Instruction.load(in.opcode, in.def, offset, address.uses[0])
+                        : Instruction.store(in.opcode, in.uses[0], offset, address.uses[0]);
+            }
+            case SLT: {
+                Instruction constant = known(in.uses[1], global, local);
+                if (constant != null && constant.opcode == Opcode.LI && fitsImmediate(constant.imm))
+                    return Instruction.op(Opcode.SLTI, constant.imm, in.def, in.uses[0]);
+                return null;
+            }
+            case MUL: {
+                for (int k = 0; k < 2; k++) {
+                    int shift = powerOfTwo(known(in.uses[k], global, local));
+                    if (shift == 0)
+                        return Instruction.op(Opcode.MOVE, in.def, in.uses[1 - k]);
+                    if (shift > 0)
+                        return Instruction.op(Opcode.SLL, shift, in.def, in.uses[1 - k]);
+                }
+                return null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * div x, 2^k followed by mflo d as shifts. An arithmetic shift rounds towards minus
+     * infinity, so negative dividends are first biased by 2^k - 1 to round towards zero as div
+     * does; that costs as many instructions as the li, div and mflo for k = 1 and one more
+     * otherwise, but saves the dozens of cycles a division takes.
+     */
+    private static List<Instruction> divide(FunctionCode f, Instruction div, Register d,
+                                            Instruction[] global, Instruction[] local) {
+        int k = powerOfTwo(known(div.uses[1], global, local));
+        if (k < 1 || !div.isStandard())
+            return null;
+        Register x = div.uses[0];
+        Register t = f.newVirtual();
+        List<Instruction> shifts = new ArrayList<>();
+        if (k == 1) {
+            shifts.add(Instruction.op(Opcode.SRL, 31, t, x));
+        } else {
+            shifts.add(Instruction.op(Opcode.SRA, 31, t, x));
+            shifts.add(Instruction.op(Opcode.SRL, 32 - k, t, t));
+        }
+        shifts.add(Instruction.op(Opcode.ADD, t, x, t));
+        shifts.add(Instruction.op(Opcode.SRA, k, d, t));
+        return shifts;
+    }
+
+    /*
+     * Deletes the pure instructions whose result is never read, until there are none.
+     */
+    private static void removeDead(FunctionCode f) {
+        boolean removed = true;
+        while (removed) {
+            int[] uses = new int[f.virtualCount()];
+            for (Instruction in : f.instructions)
+                for (Register u : in.uses)
+                    if (u.isVirtual())
+                        uses[u.virtualId()]++;
+            removed = f.instructions.removeIf(in -> isPure(in) && uses[in.def.virtualId()] == 0);
+        }
+    }
+
+    // ---------------------------------------------------------------- after allocation
+
+    public static void afterAllocation(FunctionCode f) {
+        List<Instruction> code = f.instructions;
+        while (simplifyJumps(code))
+            code.removeIf(in -> in == null);
+        removeUnusedLabels(code);
+        forwardValues(code);
+        code.removeIf(in -> in == null);
+    }
+
+    /*
+     * Index of the first instruction that is not a label from i on.
+     */
+    private static int skipLabels(List<Instruction> code, int i) {
+        while (i < code.size() && (code.get(i) == null || code.get(i).kind == Kind.LABEL))
+            i++;
+        return i;
+    }
+
+    /*
+     * Whether label is one of those between i and the next instruction.
+     */
+    private static boolean labelsAhead(List<Instruction> code, int i, String label) {
+        for (; i < code.size() && (code.get(i) == null || code.get(i).kind == Kind.LABEL); i++)
+            if (code.get(i) != null && code.get(i).label.equals(label))
+                return true;
+        return false;
+    }
+
+    /*
+     * One round of jump simplification, leaving null in place of what it deletes. Returns
+     * whether anything changed.
+     */
+    private static boolean simplifyJumps(List<Instruction> code) {
+        boolean changed = removeUnreachable(code);
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < code.size(); i++)
+            if (code.get(i) != null && code.get(i).kind == Kind.LABEL)
+                position.put(code.get(i).label, i);
+
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            if (in == null || (in.kind != Kind.JUMP && in.kind != Kind.BRANCH))
+                continue;
+            // a jump to a jump goes straight to the final target
+            String label = finalTarget(code, position, in.label);
+            if (!label.equals(in.label)) {
+                in = in.kind == Kind.JUMP ? Instruction.jump(label) : Instruction.branch(in.opcode, label, in.uses[0]);
+                code.set(i, in);
+                changed = true;
+            }
+            if (labelsAhead(code, i + 1, in.label)) {
+                code.set(i, null);
+                changed = true;
+                continue;
+            }
+            // beqz r, L; j M; L:  becomes  bnez r, M; L:
+            Instruction next = i + 1 < code.size() ? code.get(i + 1) : null;
+            if (in.kind == Kind.BRANCH && next != null && next.kind == Kind.JUMP && labelsAhead(code, i + 2, in.label)) {
+                Opcode inverse = in.opcode == Opcode.BEQZ ? Opcode.BNEZ : Opcode.BEQZ;
+                code.set(i, Instruction.branch(inverse, next.label, in.uses[0]));
+                code.set(i + 1, null);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /*
+     * Deletes what follows a jump up to the next label some jump or branch targets.
+     */
+    private static boolean removeUnreachable(List<Instruction> code) {
+        Set<String> targets = targets(code);
+        boolean changed = false;
+        boolean reachable = true;
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            if (in.kind == Kind.LABEL && targets.contains(in.label))
+                reachable = true;
+            if (!reachable) {
+                code.set(i, null);
+                changed = true;
+            } else if (in.kind == Kind.JUMP) {
+                reachable = false;
+            }
+        }
+        return changed;
+    }
+
+    private static Set<String> targets(List<Instruction> code) {
+        Set<String> targets = new HashSet<>();
+        for (Instruction in : code)
+            if (in != null && (in.kind == Kind.JUMP || in.kind == Kind.BRANCH))
+                targets.add(in.label);
+        return targets;
+    }
+
+    /*
+     * The label reached by following the jumps found at label, label itself if they loop.
+     */
+    private static String finalTarget(List<Instruction> code, Map<String, Integer> position, String label) {
+        Set<String> seen = new HashSet<>();
+        String target = label;
+        while (seen.add(target)) {
+            Integer at = position.get(target);
+            int first = at == null ? code.size() : skipLabels(code, at);
+            if (first == code.size() || code.get(first).kind != Kind.JUMP)
+                return target;
+            target = code.get(first).label;
+        }
+        return label;
+    }
+
+    private static void removeUnusedLabels(List<Instruction> code) {
+        Set<String> targets = targets(code);
+        code.removeIf(in -> in.kind == Kind.LABEL && !targets.contains(in.label));
+    }
+
+    /*
+     * Deletes, or turns into moves, the loads, stores and moves of values already where they
+     * are wanted, leaving null in place of what it deletes.
+     */
+    private static void forwardValues(List<Instruction> code) {
+        Map<Integer, Register> frame = new HashMap<>();                 // word at offset from $fp -> holder
+        Map<Register, Register> copyOf = new IdentityHashMap<>();       // register -> register it equals
+        for (int i = 0; i < code.size(); i++) {
+            Instruction in = code.get(i);
+            if (in.kind == Kind.LABEL) {
+                frame.clear();
+                copyOf.clear();
+                continue;
+            }
+            if (in.opcode == Opcode.JAL) {
+                // the callee may write our frame through a pointer, registers it saves
+                frame.clear();
+                continue;
+            }
+            if (in.opcode.isStore()) {
+                if (in.base() != Register.fp) {
+                    frame.clear();
+                } else if (in.opcode == Opcode.SB) {
+                    frame.remove(in.imm & ~3);
+                } else if (same(frame.get(in.imm), in.uses[0], copyOf)) {
+                    code.set(i, null);
+                } else if (isTracked(in.uses[0])) {
+                    frame.put(in.imm, in.uses[0]);
+                } else {
+                    frame.remove(in.imm);
+                }
+                continue;
+            }
+            if (in.opcode == Opcode.LW && in.base() == Register.fp && in.isStandard()) {
+                Register holder = frame.get(in.imm);
+                if (holder != null && same(holder, in.def, copyOf)) {
+                    code.set(i, null);
+                    continue;
+                }
+                if (holder != null)
+                    in = Instruction.op(Opcode.MOVE, in.def, holder);
+                code.set(i, in);
+            } else if (in.isMove() && same(in.def, in.uses[0], copyOf)) {
+                code.set(i, null);
+                continue;
+            } else if (in.opcode == Opcode.ADDI && in.isStandard() && in.imm == 0 && in.def == in.uses[0]) {
+                code.set(i, null);
+                continue;
+            }
+            // addi r, s, a; addi r, r, b  becomes  addi r, s, a + b
+            Instruction previous = i > 0 ? code.get(i - 1) : null;
+            if (in.opcode == Opcode.ADDI && in.isStandard() && previous != null && previous.opcode == Opcode.ADDI
+                    && previous.isStandard() && previous.def == in.def && in.uses[0] == in.def
+                    && fitsImmediate((long) previous.imm + in.imm)) {
+                code.set(i - 1, null);
+                in = Instruction.op(Opcode.ADDI, previous.imm + in.imm, in.def, previous.uses[0]);
+                code.set(i, in);
+            }
+
+            Register d = in.def;
+            if (d == null)
+                continue;
+            frame.values().removeIf(r -> r == d);
+            copyOf.remove(d);
+            copyOf.values().removeIf(r -> r == d);
+            if (in.opcode == Opcode.LW && in.base() == Register.fp)
+                frame.put(in.imm, d);
+            else if (in.isMove() && in.uses[0] != d && isTracked(in.uses[0]))
+                copyOf.put(d, copyOf.getOrDefault(in.uses[0], in.uses[0]));
+        }
+    }
+
+    private static boolean same(Register a, Register b, Map<Register, Register> copyOf) {
+        if (a == null || b == null)
+            return false;
+        Register ca = copyOf.getOrDefault(a, a);
+        Register cb = copyOf.getOrDefault(b, b);
+        return a == b || ca == b || cb == a || ca == cb;
+    }
+}
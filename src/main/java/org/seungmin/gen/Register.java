@@ -13,6 +13,7 @@ public class Register {
      * definition of registers
      */
 
+    public static final Register zero = new Register(0,"zero");
     public static final Register v0 = new Register(2,"v0");
     public static final Register[] paramRegs = {
             new Register(4,"a0"),
@@ -36,17 +37,41 @@ public class Register {
     public static final Register ra = new Register(31,"ra");
 
 
-    private final int num;      // register number
+    private final int num;      // register number, or -1 for a virtual register
     private final String name;  // register name
+    private final int id;       // number of a virtual register, -1 for the others
 
 
     private Register(int num, String name) {
         this.num = num;
         this.name = name;
+        this.id = -1;
+    }
+
+    private Register(int id) {
+        this.num = -1;
+        this.name = "v" + id;
+        this.id = id;
+    }
+
+    /*
+     * A register standing for a value of the function being generated, until the allocator
+     * maps it to one of the tmpRegs. Virtual registers are numbered from 0 in every function.
+     */
+    public static Register virtual(int id) {
+        return new Register(id);
+    }
+
+    public boolean isVirtual() {
+        return id >= 0;
+    }
+
+    public int virtualId() {
+        return id;
     }
 
     public String toString() {
-        return "$"+name;
+        return isVirtual() ? "%"+name : "$"+name;
     }
 
 }
@@ -0,0 +1,13 @@
+package org.seungmin.gen;
+
+/**
+ * Thrown by the allocators that cannot spill when they run out of registers.
+ */
+public class RegisterAllocationError extends Error {
+
+    private static final long serialVersionUID = 1L;
+
+    public RegisterAllocationError() {
+        super("no more free registers, bad luck!");
+    }
+}
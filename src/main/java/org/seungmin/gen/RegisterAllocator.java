@@ -0,0 +1,13 @@
+package org.seungmin.gen;
+
+/**
+ * Maps the virtual registers of a function to Register.tmpRegs.
+ *
+ * On return every instruction of the function only names physical registers, spill code has
+ * been inserted where needed with its slots reserved in the frame, and usedRegisters holds
+ * the registers the prologue has to save.
+ */
+public interface RegisterAllocator {
+
+    void allocate(FunctionCode f);
+}
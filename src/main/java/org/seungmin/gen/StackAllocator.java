@@ -0,0 +1,69 @@
+package org.seungmin.gen;
+
+import java.util.EmptyStackException;
+import java.util.Stack;
+
+/**
+ * The original allocator: a stack of free registers, a register popped when a value is first
+ * written and pushed back after its last use, in program order. It never spills, so it is only
+ * fit for code whose values are short-lived, which is why CodeGenerator keeps every variable in
+ * memory when it is used.
+ */
+public class StackAllocator implements RegisterAllocator {
+
+    @Override
+    public void allocate(FunctionCode f) {
+        int[] lastUse = new int[f.virtualCount()];
+        for (int i = 0; i < f.instructions.size(); i++) {
+            Instruction in = f.instructions.get(i);
+            if (in.def != null && in.def.isVirtual())
+                lastUse[in.def.virtualId()] = i;
+            for (Register u : in.uses)
+                if (u.isVirtual())
+                    lastUse[u.virtualId()] = i;
+        }
+
+        // contains all the free temporary registers
+        Stack<Register> freeRegs = new Stack<>();
+        freeRegs.addAll(Register.tmpRegs);
+        Register[] assigned = new Register[f.virtualCount()];
+
+        for (int i = 0; i < f.instructions.size(); i++) {
+            Instruction in = f.instructions.get(i);
+            for (Register u : in.uses)
+                if (u.isVirtual() && assigned[u.virtualId()] == null)
+                    assigned[u.virtualId()] = getRegister(freeRegs, f);
+            Register[] uses = new Register[in.uses.length];
+            for (int k = 0; k < uses.length; k++)
+                uses[k] = in.uses[k].isVirtual() ? assigned[in.uses[k].virtualId()] : in.uses[k];
+            for (Register u : in.uses)
+                if (u.isVirtual() && lastUse[u.virtualId()] == i && assigned[u.virtualId()] != null) {
+                    freeRegs.push(assigned[u.virtualId()]);
+                    assigned[u.virtualId()] = null;
+                }
+            Register def = in.def;
+            if (def != null && def.isVirtual()) {
+                int d = def.virtualId();
+                if (assigned[d] == null)
+                    assigned[d] = getRegister(freeRegs, f);
+                def = assigned[d];
+                if (lastUse[d] == i) {
+                    freeRegs.push(assigned[d]);
+                    assigned[d] = null;
+                }
+            }
+            Instruction renamed = in.withRegisters(def, uses);
+            f.instructions.set(i, renamed);
+        }
+    }
+
+    private static Register getRegister(Stack<Register> freeRegs, FunctionCode f) {
+        try {
+            Register r = freeRegs.pop();
+            f.usedRegisters.add(r);
+            return r;
+        } catch (EmptyStackException ese) {
+            throw new RegisterAllocationError(); // no more free registers, bad luck!
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.seungmin.ir;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+public final class AddressOf extends Instr {
+    public final Storage storage;
+
+    public AddressOf(Temp dest, Storage storage) {
+        super(dest);
+        this.storage = storage;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitAddressOf(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = &" + storage;
+    }
+}
@@ -0,0 +1,31 @@
+package org.seungmin.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A straight-line sequence of instructions ended by a terminator.
+ */
+public final class BasicBlock {
+    public final String label;
+    public final List<Instr> instructions = new ArrayList<>(); // the terminator apart
+    public Terminator terminator;
+
+    // filled in by Function.computePredecessors, once per edge
+    public final List<BasicBlock> predecessors = new ArrayList<>();
+    public int index; // position in the layout, also set by Function.computePredecessors
+
+    BasicBlock(String label) {
+        this.label = label;
+    }
+
+    public List<BasicBlock> successors() {
+        return terminator == null ? Collections.emptyList() : terminator.successors();
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,53 @@
+package org.seungmin.ir;
+
+import org.seungmin.ast.Op;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * dest = lhs op rhs, for every operator but AND and OR, which are lowered to branches.
+ * Comparisons give 0 or 1.
+ */
+public final class Binary extends Instr {
+    public Op op;
+    public Value lhs;
+    public Value rhs;
+
+    public Binary(Temp dest, Op op, Value lhs, Value rhs) {
+        super(dest);
+        this.op = op;
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return Arrays.asList(lhs, rhs);
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        lhs = map.apply(lhs);
+        rhs = map.apply(rhs);
+    }
+
+    /*
+     * A division by zero stops the program, so one whose divisor is not known to be nonzero
+     * has to stay.
+     */
+    @Override
+    public boolean hasSideEffects() {
+        return (op == Op.DIV || op == Op.MOD) && !(rhs instanceof Constant && ((Constant) rhs).value != 0);
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitBinary(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = " + op.toString().toLowerCase() + " " + lhs + ", " + rhs;
+    }
+}
@@ -0,0 +1,96 @@
+package org.seungmin.ir;
+
+import java.util.Arrays;
+
+/**
+ * Sets of small non-negative integers as plain long arrays, one bit per element, for the
+ * dataflow analyses: a fixed size chosen up front and no object around the words keeps the
+ * sets of every block of a function in a single long[][].
+ */
+public final class Bits {
+
+    private Bits() {
+    }
+
+    public static long[] of(int size) {
+        return new long[(size + 63) >>> 6];
+    }
+
+    /*
+     * The set of all the elements below size.
+     */
+    public static long[] full(int size) {
+        long[] set = of(size);
+        Arrays.fill(set, -1L);
+        if ((size & 63) != 0)
+            set[set.length - 1] = -1L >>> -size;
+        return set;
+    }
+
+    public static boolean get(long[] set, int i) {
+        return (set[i >>> 6] & 1L << i) != 0;
+    }
+
+    public static void set(long[] set, int i) {
+        set[i >>> 6] |= 1L << i;
+    }
+
+    public static void clear(long[] set, int i) {
+        set[i >>> 6] &= ~(1L << i);
+    }
+
+    /*
+     * set |= other, returning whether set changed.
+     */
+    public static boolean or(long[] set, long[] other) {
+        long changed = 0;
+        for (int w = 0; w < set.length; w++) {
+            long old = set[w];
+            set[w] = old | other[w];
+            changed |= set[w] ^ old;
+        }
+        return changed != 0;
+    }
+
+    /*
+     * set &= other, returning whether set changed.
+     */
+    public static boolean and(long[] set, long[] other) {
+        long changed = 0;
+        for (int w = 0; w < set.length; w++) {
+            long old = set[w];
+            set[w] = old & other[w];
+            changed |= set[w] ^ old;
+        }
+        return changed != 0;
+    }
+
+    /*
+     * set |= other & ~minus, returning whether set changed.
+     */
+    public static boolean orAndNot(long[] set, long[] other, long[] minus) {
+        long changed = 0;
+        for (int w = 0; w < set.length; w++) {
+            long old = set[w];
+            set[w] = old | other[w] & ~minus[w];
+            changed |= set[w] ^ old;
+        }
+        return changed != 0;
+    }
+
+    /*
+     * The first element from i on, -1 if there is none.
+     */
+    public static int next(long[] set, int i) {
+        int w = i >>> 6;
+        if (w >= set.length)
+            return -1;
+        long word = set[w] & -1L << i;
+        while (word == 0) {
+            if (++w == set.length)
+                return -1;
+            word = set[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+}
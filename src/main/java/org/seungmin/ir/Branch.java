@@ -0,0 +1,53 @@
+package org.seungmin.ir;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Goes to ifTrue if cond is not zero, to ifFalse otherwise.
+ */
+public final class Branch extends Terminator {
+    public Value cond;
+    public BasicBlock ifTrue;
+    public BasicBlock ifFalse;
+
+    public Branch(Value cond, BasicBlock ifTrue, BasicBlock ifFalse) {
+        this.cond = cond;
+        this.ifTrue = ifTrue;
+        this.ifFalse = ifFalse;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return Collections.singletonList(cond);
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        cond = map.apply(cond);
+    }
+
+    @Override
+    public List<BasicBlock> successors() {
+        return Arrays.asList(ifTrue, ifFalse);
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock from, BasicBlock to) {
+        if (ifTrue == from)
+            ifTrue = to;
+        if (ifFalse == from)
+            ifFalse = to;
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitBranch(this);
+    }
+
+    @Override
+    public String toString() {
+        return "branch " + cond + ", " + ifTrue.label + ", " + ifFalse.label;
+    }
+}
@@ -0,0 +1,45 @@
+package org.seungmin.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * A call to a function of the program or to one of the builtin functions of minic-stdlib.h.
+ * Functions returning a struct return its address.
+ */
+public final class Call extends Instr {
+    public final String function;
+    public final List<Value> args;
+    public final boolean builtin;
+
+    public Call(Temp dest, String function, List<Value> args, boolean builtin) {
+        super(dest);
+        this.function = function;
+        this.args = args;
+        this.builtin = builtin;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return args;
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        args.replaceAll(map);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitCall(this);
+    }
+
+    @Override
+    public String toString() {
+        return (dest != null ? dest + " = " : "") + "call " + function + "(" + list(args) + ")";
+    }
+}
@@ -0,0 +1,34 @@
+package org.seungmin.ir;
+
+public final class Constant implements Value {
+    public final int value;
+
+    private Constant(int value) {
+        this.value = value;
+    }
+
+    private static final Constant[] SMALL = new Constant[256];
+    static {
+        for (int i = 0; i < SMALL.length; i++)
+            SMALL[i] = new Constant(i - 128);
+    }
+
+    public static Constant of(int value) {
+        return value >= -128 && value < 128 ? SMALL[value + 128] : new Constant(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Constant && ((Constant) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(value);
+    }
+}
@@ -0,0 +1,325 @@
+package org.seungmin.ir;
+
+import org.seungmin.ast.Op;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sparse conditional constant propagation, after Wegman and Zadeck, over a function in SSA
+ * form. Every temporary starts out undefined and only goes down the lattice, undefined, then
+ * a constant, then unknown, as the instructions defining it are evaluated; only the edges out
+ * of a branch its condition allows are followed, so values coming from code that never runs
+ * do not spoil the phis they reach.
+ *
+ * Then the temporaries found constant are replaced by their value, the branches with a
+ * constant condition become jumps, the blocks that were never reached are deleted and those
+ * left with a single predecessor ending in a jump to them are merged into it. Copies,
+ * and phis all of whose incoming values are the same, are propagated in the same pass.
+ */
+public final class ConstantPropagation {
+
+    private static final int UNDEFINED = 0, CONSTANT = 1, UNKNOWN = 2;
+
+    private final Function f;
+    private final int[] state;
+    private final int[] value;
+
+    // the instructions, terminators included, numbered in layout order
+    private final List<Instr> code = new ArrayList<>();
+    private final int[] blockOf;
+    private final int[] userStart;  // the instructions reading temporary t are
+    private final int[] users;      // users[userStart[t]] to users[userStart[t + 1] - 1]
+
+    private final BitSet[] executableFrom; // by block, the predecessors it was reached from
+    private int[] edges = new int[32];     // pending pairs of from and to
+    private int edgeCount;
+    private int[] pending = new int[32];   // instructions to evaluate again
+    private int pendingCount;
+
+    private ConstantPropagation(Function f) {
+        this.f = f;
+        f.computePredecessors();
+        int n = f.tempCount();
+        state = new int[n];
+        value = new int[n];
+        for (Temp p : f.params)
+            state[p.id] = UNKNOWN;
+
+        userStart = new int[n + 1];
+        for (BasicBlock b : f.blocks) {
+            code.addAll(b.instructions);
+            code.add(b.terminator);
+        }
+        blockOf = new int[code.size()];
+        for (Instr in : code)
+            for (Value v : in.uses())
+                if (v instanceof Temp)
+                    userStart[((Temp) v).id + 1]++;
+        for (int t = 0; t < n; t++)
+            userStart[t + 1] += userStart[t];
+        users = new int[userStart[n]];
+        int[] next = userStart.clone();
+        int i = 0;
+        for (BasicBlock b : f.blocks)
+            for (int j = 0; j <= b.instructions.size(); j++, i++) {
+                blockOf[i] = b.index;
+                for (Value v : code.get(i).uses())
+                    if (v instanceof Temp)
+                        users[next[((Temp) v).id]++] = i;
+            }
+        executableFrom = new BitSet[f.blocks.size()];
+    }
+
+    public static void run(Function f) {
+        new ConstantPropagation(f).propagate();
+        propagateCopies(f);
+    }
+
+    private void propagate() {
+        executableFrom[0] = new BitSet();
+        evaluateBlock(f.entry());
+        while (edgeCount > 0 || pendingCount > 0) {
+            while (edgeCount > 0) {
+                edgeCount -= 2;
+                int from = edges[edgeCount], to = edges[edgeCount + 1];
+                if (executableFrom[to] == null) {
+                    executableFrom[to] = new BitSet();
+                    executableFrom[to].set(from);
+                    evaluateBlock(f.blocks.get(to));
+                } else if (!executableFrom[to].get(from)) {
+                    executableFrom[to].set(from);
+                    BasicBlock b = f.blocks.get(to);
+                    for (Instr in : b.instructions) {
+                        if (!(in instanceof Phi))
+                            break;
+                        evaluate(in, b.index);
+                    }
+                }
+            }
+            while (pendingCount > 0) {
+                int i = pending[--pendingCount];
+                if (executableFrom[blockOf[i]] != null)
+                    evaluate(code.get(i), blockOf[i]);
+            }
+        }
+        rewrite();
+    }
+
+    private void evaluateBlock(BasicBlock b) {
+        for (Instr in : b.instructions)
+            evaluate(in, b.index);
+        evaluate(b.terminator, b.index);
+    }
+
+    private void evaluate(Instr in, int block) {
+        if (in instanceof Jump) {
+            addEdge(block, ((Jump) in).target);
+        } else if (in instanceof Branch) {
+            Branch branch = (Branch) in;
+            int s = state(branch.cond);
+            if (s == CONSTANT) {
+                addEdge(block, value(branch.cond) != 0 ? branch.ifTrue : branch.ifFalse);
+            } else if (s == UNKNOWN) {
+                addEdge(block, branch.ifTrue);
+                addEdge(block, branch.ifFalse);
+            }
+        } else if (in instanceof Phi) {
+            BitSet from = executableFrom[block];
+            for (Map.Entry<BasicBlock, Value> e : ((Phi) in).incoming.entrySet())
+                if (from.get(e.getKey().index))
+                    meet(in.dest, state(e.getValue()), value(e.getValue()));
+        } else if (in instanceof Copy) {
+            Value source = ((Copy) in).source;
+            meet(in.dest, state(source), value(source));
+        } else if (in instanceof Binary) {
+            Binary binary = (Binary) in;
+            int l = state(binary.lhs), r = state(binary.rhs);
+            if (l == UNKNOWN || r == UNKNOWN) {
+                meet(in.dest, UNKNOWN, 0);
+            } else if (l == CONSTANT && r == CONSTANT) {
+                Integer folded = fold(binary.op, value(binary.lhs), value(binary.rhs));
+                meet(in.dest, folded == null ? UNKNOWN : CONSTANT, folded == null ? 0 : folded);
+            }
+        } else if (in.dest != null) {
+            meet(in.dest, UNKNOWN, 0);
+        }
+    }
+
+    private void addEdge(int from, BasicBlock to) {
+        if (edgeCount == edges.length)
+            edges = java.util.Arrays.copyOf(edges, 2 * edgeCount);
+        edges[edgeCount++] = from;
+        edges[edgeCount++] = to.index;
+    }
+
+    private int state(Value v) {
+        return v instanceof Constant ? CONSTANT : state[((Temp) v).id];
+    }
+
+    private int value(Value v) {
+        return v instanceof Constant ? ((Constant) v).value : value[((Temp) v).id];
+    }
+
+    private void meet(Temp t, int s, int v) {
+        int old = state[t.id];
+        if (s == UNDEFINED || old == UNKNOWN || (old == CONSTANT && s == CONSTANT && value[t.id] == v))
+            return;
+        if (old == CONSTANT || s == UNKNOWN) {
+            state[t.id] = UNKNOWN;
+        } else {
+            state[t.id] = CONSTANT;
+            value[t.id] = v;
+        }
+        for (int u = userStart[t.id]; u < userStart[t.id + 1]; u++) {
+            if (pendingCount == pending.length)
+                pending = java.util.Arrays.copyOf(pending, 2 * pendingCount);
+            pending[pendingCount++] = users[u];
+        }
+    }
+
+    /*
+     * lhs op rhs as MIPS computes it, null for a division by zero, which is left to run.
+     */
+    static Integer fold(Op op, int lhs, int rhs) {
+        switch (op) {
+            case ADD: return lhs + rhs;
+            case SUB: return lhs - rhs;
+            case MUL: return lhs * rhs;
+            case DIV: return rhs == 0 ? null : lhs / rhs;
+            case MOD: return rhs == 0 ? null : lhs % rhs;
+            case GT: return lhs > rhs ? 1 : 0;
+            case LT: return lhs < rhs ? 1 : 0;
+            case GE: return lhs >= rhs ? 1 : 0;
+            case LE: return lhs <= rhs ? 1 : 0;
+            case NE: return lhs != rhs ? 1 : 0;
+            case EQ: return lhs == rhs ? 1 : 0;
+            default: throw new IllegalArgumentException(op.toString());
+        }
+    }
+
+    private void rewrite() {
+        for (BasicBlock b : f.blocks) {
+            if (executableFrom[b.index] == null)
+                continue;
+            b.instructions.removeIf(in -> in.dest != null && state[in.dest.id] == CONSTANT && !in.hasSideEffects());
+            for (Instr in : b.instructions)
+                in.replaceUses(this::constant);
+            b.terminator.replaceUses(this::constant);
+            if (b.terminator instanceof Branch) {
+                Branch branch = (Branch) b.terminator;
+                BitSet ifTrue = executableFrom[branch.ifTrue.index];
+                BitSet ifFalse = executableFrom[branch.ifFalse.index];
+                boolean takesTrue = ifTrue != null && ifTrue.get(b.index);
+                boolean takesFalse = ifFalse != null && ifFalse.get(b.index);
+                if (!takesTrue || !takesFalse)
+                    b.terminator = new Jump(takesTrue ? branch.ifTrue : branch.ifFalse);
+            }
+        }
+        f.blocks.removeIf(b -> executableFrom[b.index] == null);
+        f.computePredecessors();
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions) {
+                if (!(in instanceof Phi))
+                    break;
+                if (in.uses().size() != b.predecessors.size())
+                    ((Phi) in).incoming.keySet().retainAll(b.predecessors);
+            }
+        mergeBlocks(f);
+    }
+
+    /*
+     * Appends to every block ending with a jump the block it jumps to when that one has no
+     * other predecessor, as happens once branches have been replaced by jumps.
+     */
+    private static void mergeBlocks(Function f) {
+        boolean merged = false;
+        for (BasicBlock b : f.blocks) {
+            if (b.predecessors.isEmpty() && b != f.entry())
+                continue;   // merged into its predecessor already
+            while (b.terminator instanceof Jump) {
+                BasicBlock s = ((Jump) b.terminator).target;
+                if (s == b || s == f.entry() || s.predecessors.size() != 1)
+                    break;
+                for (Instr in : s.instructions)
+                    if (in instanceof Phi)
+                        b.instructions.add(new Copy(in.dest, ((Phi) in).incoming.get(b)));
+                    else
+                        b.instructions.add(in);
+                b.terminator = s.terminator;
+                for (BasicBlock next : s.successors()) {
+                    next.predecessors.replaceAll(p -> p == s ? b : p);
+                    for (Instr in : next.instructions) {
+                        if (!(in instanceof Phi))
+                            break;
+                        Phi phi = (Phi) in;
+                        phi.incoming.put(b, phi.incoming.remove(s));
+                    }
+                }
+                s.predecessors.clear();
+                merged = true;
+            }
+        }
+        if (merged) {
+            f.blocks.removeIf(b -> b.predecessors.isEmpty() && b != f.entry());
+            f.computePredecessors();
+        }
+    }
+
+    private Value constant(Value v) {
+        return v instanceof Temp && state[((Temp) v).id] == CONSTANT ? Constant.of(value[((Temp) v).id]) : v;
+    }
+
+    /*
+     * Replaces the temporaries written by copies, and by phis merging a single value, with what
+     * they hold, which SSA form makes valid at every one of their uses.
+     */
+    static void propagateCopies(Function f) {
+        Value[] replacement = new Value[f.tempCount()];
+        boolean replaced = false;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock b : f.blocks)
+                for (Instr in : b.instructions) {
+                    if (in.dest == null || replacement[in.dest.id] != null)
+                        continue;
+                    Value same = null;
+                    if (in instanceof Copy) {
+                        same = resolve(replacement, ((Copy) in).source);
+                    } else if (in instanceof Phi) {
+                        for (Value v : ((Phi) in).incoming.values()) {
+                            v = resolve(replacement, v);
+                            if (v == in.dest || v.equals(same))
+                                continue;
+                            if (same != null) {
+                                same = null;
+                                break;
+                            }
+                            same = v;
+                        }
+                    }
+                    if (same != null && same != in.dest) {
+                        replacement[in.dest.id] = same;
+                        replaced = changed = true;
+                    }
+                }
+        }
+        if (!replaced)
+            return;
+        for (BasicBlock b : f.blocks) {
+            b.instructions.removeIf(in -> in.dest != null && replacement[in.dest.id] != null);
+            for (Instr in : b.instructions)
+                in.replaceUses(v -> resolve(replacement, v));
+            b.terminator.replaceUses(v -> resolve(replacement, v));
+        }
+    }
+
+    private static Value resolve(Value[] replacement, Value v) {
+        while (v instanceof Temp && replacement[((Temp) v).id] != null)
+            v = replacement[((Temp) v).id];
+        return v;
+    }
+}
@@ -0,0 +1,33 @@
+package org.seungmin.ir;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+public final class Copy extends Instr {
+    public Value source;
+
+    public Copy(Temp dest, Value source) {
+        super(dest);
+        this.source = source;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return Collections.singletonList(source);
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        source = map.apply(source);
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitCopy(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = " + source;
+    }
+}
@@ -0,0 +1,286 @@
+package org.seungmin.ir;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The fixpoint of a dataflow problem over the blocks of a function, the sets being held in long
+ * arrays as by Bits.
+ *
+ * The blocks are visited in reverse postorder for a forward problem and in postorder for a
+ * backward one, so that within a pass a block mostly comes after the ones it depends on. A
+ * worklist, itself a set of positions in that order, makes every pass visit only the blocks
+ * whose input may have changed: a block whose output changes puts back the blocks it flows
+ * into, the ones further down the order to be visited in the same pass and the others, along
+ * the back edges, in the next. Blocks that cannot be reached from the entry are visited last.
+ *
+ * in(b) and out(b) are the sets at the start and the end of b, whatever the direction.
+ *
+ * The solver itself works on a Graph of numbered nodes, so that code not held in BasicBlocks,
+ * like the instructions of the code generator, can use it too; the blocks of a Function are
+ * numbered by their index.
+ */
+public final class Dataflow {
+
+    public enum Direction {
+        FORWARD,  // the input of a block is at its start, met over its predecessors
+        BACKWARD  // the input of a block is at its end, met over its successors
+    }
+
+    public enum Meet {
+        UNION,        // may problems, the sets start empty
+        INTERSECTION  // must problems, the sets start full
+    }
+
+    public interface Problem {
+        Direction direction();
+
+        Meet meet();
+
+        /*
+         * The number of elements the sets can hold.
+         */
+        int size();
+
+        /*
+         * Adds to input what flows into b from outside the blocks met over; it is all of the
+         * input of a block with nothing to meet over, like the entry going forward. Nothing by
+         * default.
+         */
+        default void boundary(BasicBlock b, long[] input) {
+        }
+
+        /*
+         * Sets output to the set at the other end of b from input. Neither may be kept.
+         */
+        void transfer(BasicBlock b, long[] input, long[] output);
+    }
+
+    /*
+     * A control flow graph whose nodes are numbered from 0, the entry.
+     */
+    public interface Graph {
+        int nodes();
+
+        int[] successors(int node);
+
+        int[] predecessors(int node);
+    }
+
+    /*
+     * A Problem over the nodes of a Graph.
+     */
+    public interface GraphProblem {
+        Direction direction();
+
+        Meet meet();
+
+        int size();
+
+        default void boundary(int node, long[] input) {
+        }
+
+        void transfer(int node, long[] input, long[] output);
+    }
+
+    private final long[][] in;
+    private final long[][] out;
+    private int rounds;
+    private int visits;
+
+    public Dataflow(Function f, Problem problem) {
+        this(graph(f), new GraphProblem() {
+            public Direction direction() {
+                return problem.direction();
+            }
+
+            public Meet meet() {
+                return problem.meet();
+            }
+
+            public int size() {
+                return problem.size();
+            }
+
+            public void boundary(int node, long[] input) {
+                problem.boundary(f.blocks.get(node), input);
+            }
+
+            public void transfer(int node, long[] input, long[] output) {
+                problem.transfer(f.blocks.get(node), input, output);
+            }
+        });
+    }
+
+    public Dataflow(Graph graph, GraphProblem problem) {
+        int n = graph.nodes();
+        int size = problem.size();
+        boolean forward = problem.direction() == Direction.FORWARD;
+        boolean union = problem.meet() == Meet.UNION;
+
+        // the order of the visits, and the position of every node in it
+        int[] order = new int[n];
+        int[] position = new int[n];
+        int[] reachable = reversePostorder(graph);
+        boolean[] placed = new boolean[n];
+        int k = 0;
+        for (int i = 0; i < reachable.length; i++) {
+            int b = reachable[forward ? i : reachable.length - 1 - i];
+            placed[b] = true;
+            order[k++] = b;
+        }
+        for (int b = 0; b < n; b++)
+            if (!placed[b])
+                order[k++] = b;
+        for (int i = 0; i < n; i++)
+            position[order[i]] = i;
+
+        in = new long[n][];
+        out = new long[n][];
+        for (int i = 0; i < n; i++) {
+            in[i] = union ? Bits.of(size) : Bits.full(size);
+            out[i] = union ? Bits.of(size) : Bits.full(size);
+        }
+        long[][] input = forward ? in : out;
+        long[][] output = forward ? out : in;
+
+        long[] pending = Bits.of(n);
+        for (int i = 0; i < n; i++)
+            Bits.set(pending, i);
+        long[] result = Bits.of(size);
+        boolean more = n > 0;
+        while (more) {
+            more = false;
+            rounds++;
+            for (int i = Bits.next(pending, 0); i >= 0; i = Bits.next(pending, i + 1)) {
+                Bits.clear(pending, i);
+                visits++;
+                int b = order[i];
+                int[] sources = forward ? graph.predecessors(b) : graph.successors(b);
+                long[] met = input[b];
+                if (sources.length == 0) {
+                    Arrays.fill(met, 0);
+                } else {
+                    System.arraycopy(output[sources[0]], 0, met, 0, met.length);
+                    for (int s = 1; s < sources.length; s++)
+                        if (union)
+                            Bits.or(met, output[sources[s]]);
+                        else
+                            Bits.and(met, output[sources[s]]);
+                }
+                problem.boundary(b, met);
+
+                problem.transfer(b, met, result);
+                long[] old = output[b];
+                if (Arrays.equals(old, result))
+                    continue;
+                System.arraycopy(result, 0, old, 0, old.length);
+                for (int t : forward ? graph.successors(b) : graph.predecessors(b)) {
+                    int p = position[t];
+                    Bits.set(pending, p);
+                    if (p <= i)
+                        more = true;
+                }
+            }
+        }
+    }
+
+    /*
+     * The blocks of f as a Graph, numbered by index.
+     */
+    private static Graph graph(Function f) {
+        f.computePredecessors();
+        int n = f.blocks.size();
+        int[][] successors = new int[n][];
+        int[][] predecessors = new int[n][];
+        for (BasicBlock b : f.blocks) {
+            successors[b.index] = indices(b.successors());
+            predecessors[b.index] = indices(b.predecessors);
+        }
+        return new Graph() {
+            public int nodes() {
+                return n;
+            }
+
+            public int[] successors(int node) {
+                return successors[node];
+            }
+
+            public int[] predecessors(int node) {
+                return predecessors[node];
+            }
+        };
+    }
+
+    private static int[] indices(List<BasicBlock> blocks) {
+        int[] indices = new int[blocks.size()];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = blocks.get(i).index;
+        return indices;
+    }
+
+    /*
+     * The nodes reachable from the entry in reverse postorder, as Function.reversePostorder.
+     */
+    private static int[] reversePostorder(Graph graph) {
+        int n = graph.nodes();
+        if (n == 0)
+            return new int[0];
+        int[] postorder = new int[n];
+        int count = 0;
+        boolean[] seen = new boolean[n];
+        int[] path = new int[n];
+        int[] next = new int[n]; // the next successor to look at of the nodes on the path
+        int depth = 0;
+        seen[0] = true;
+        path[depth++] = 0;
+        while (depth > 0) {
+            int b = path[depth - 1];
+            int[] successors = graph.successors(b);
+            if (next[b] < successors.length) {
+                int s = successors[next[b]++];
+                if (!seen[s]) {
+                    seen[s] = true;
+                    path[depth++] = s;
+                }
+            } else {
+                depth--;
+                postorder[count++] = b;
+            }
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = postorder[count - 1 - i];
+        return order;
+    }
+
+    public long[] in(BasicBlock b) {
+        return in[b.index];
+    }
+
+    public long[] out(BasicBlock b) {
+        return out[b.index];
+    }
+
+    public long[] in(int node) {
+        return in[node];
+    }
+
+    public long[] out(int node) {
+        return out[node];
+    }
+
+    /*
+     * The passes over the blocks it took to reach the fixpoint, the first visiting them all.
+     */
+    public int rounds() {
+        return rounds;
+    }
+
+    /*
+     * The number of times a transfer function was applied.
+     */
+    public int visits() {
+        return visits;
+    }
+}
@@ -0,0 +1,40 @@
+package org.seungmin.ir;
+
+/**
+ * Deletes the instructions writing a temporary that is not live after them and doing nothing
+ * else. Every block is swept backwards with the set live at each point, so a chain of dead
+ * computations within a block goes in a single sweep; the liveness is then computed again
+ * until a sweep deletes nothing, for the chains running across blocks.
+ */
+public final class DeadCodeElimination {
+
+    private DeadCodeElimination() {
+    }
+
+    /*
+     * Returns the number of instructions deleted.
+     */
+    public static int run(Function f) {
+        int total = 0;
+        int removed;
+        do {
+            LiveVariables liveness = new LiveVariables(f);
+            removed = 0;
+            for (BasicBlock b : f.blocks) {
+                long[] live = liveness.liveOut(b).clone();
+                LiveVariables.step(b.terminator, live);
+                for (int i = b.instructions.size() - 1; i >= 0; i--) {
+                    Instr in = b.instructions.get(i);
+                    if (in.dest != null && !in.hasSideEffects() && !Bits.get(live, in.dest.id)) {
+                        b.instructions.remove(i);
+                        removed++;
+                    } else if (!(in instanceof Phi)) {
+                        LiveVariables.step(in, live);
+                    }
+                }
+            }
+            total += removed;
+        } while (removed > 0);
+        return total;
+    }
+}
@@ -0,0 +1,142 @@
+package org.seungmin.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The dominator tree and dominance frontiers of a function whose blocks are all reachable and
+ * whose predecessors are up to date, by the iterative algorithm of Cooper, Harvey and Kennedy
+ * over the blocks in reverse postorder.
+ */
+public final class Dominators {
+
+    private final List<BasicBlock> order; // reverse postorder
+    private final int[] index;      // position in order, by BasicBlock.index
+    private final int[] idom;
+    private final List<List<BasicBlock>> children = new ArrayList<>();
+    private final List<Set<BasicBlock>> frontiers = new ArrayList<>();
+    private final int[] preorder;   // numbering of the dominator tree, for dominates
+    private final int[] postorder;
+
+    public Dominators(Function f) {
+        order = f.reversePostorder();
+        int n = order.size();
+        index = new int[f.blocks.size()];
+        Arrays.fill(index, -1);
+        for (int i = 0; i < n; i++) {
+            index[order.get(i).index] = i;
+            children.add(new ArrayList<>());
+            frontiers.add(new LinkedHashSet<>());
+        }
+
+        int[][] predecessors = new int[n][];
+        for (int b = 0; b < n; b++) {
+            List<BasicBlock> preds = order.get(b).predecessors;
+            predecessors[b] = new int[preds.size()];
+            for (int i = 0; i < preds.size(); i++)
+                predecessors[b][i] = index[preds.get(i).index];
+        }
+        idom = new int[n];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = 1; b < n; b++) {
+                int newIdom = -1;
+                for (int p : predecessors[b]) {
+                    if (p < 0 || idom[p] < 0)
+                        continue;
+                    newIdom = newIdom < 0 ? p : intersect(p, newIdom);
+                }
+                if (newIdom != idom[b]) {
+                    idom[b] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        for (int b = 1; b < n; b++)
+            children.get(idom[b]).add(order.get(b));
+
+        preorder = new int[n];
+        postorder = new int[n];
+        int pre = 0, post = 0;
+        Deque<Integer> walk = new ArrayDeque<>();
+        walk.push(0);
+        while (!walk.isEmpty()) {
+            int b = walk.pop();
+            if (b < 0) {
+                postorder[~b] = post++;
+                continue;
+            }
+            preorder[b] = pre++;
+            walk.push(~b);
+            for (BasicBlock c : children.get(b))
+                walk.push(index[c.index]);
+        }
+
+        for (int b = 0; b < n; b++) {
+            if (predecessors[b].length < 2)
+                continue;
+            for (int runner : predecessors[b]) {
+                while (runner >= 0 && runner != idom[b]) {
+                    frontiers.get(runner).add(order.get(b));
+                    runner = runner == 0 ? -1 : idom[runner];
+                }
+            }
+        }
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (a > b)
+                a = idom[a];
+            while (b > a)
+                b = idom[b];
+        }
+        return a;
+    }
+
+    public List<BasicBlock> reversePostorder() {
+        return order;
+    }
+
+    /*
+     * The immediate dominator of b, null for the entry.
+     */
+    public BasicBlock idom(BasicBlock b) {
+        int i = index[b.index];
+        return i == 0 ? null : order.get(idom[i]);
+    }
+
+    public List<BasicBlock> children(BasicBlock b) {
+        return children.get(index[b.index]);
+    }
+
+    public Set<BasicBlock> frontier(BasicBlock b) {
+        return frontiers.get(index[b.index]);
+    }
+
+    public boolean dominates(BasicBlock a, BasicBlock b) {
+        int ai = index[a.index];
+        int bi = index[b.index];
+        return preorder[ai] <= preorder[bi] && postorder[bi] <= postorder[ai];
+    }
+
+    /*
+     * The numbers of b in a preorder and a postorder walk of the dominator tree: a dominates b
+     * if and only if it comes first in the former and last in the latter.
+     */
+    int preorder(BasicBlock b) {
+        return preorder[index[b.index]];
+    }
+
+    int postorder(BasicBlock b) {
+        return postorder[index[b.index]];
+    }
+}
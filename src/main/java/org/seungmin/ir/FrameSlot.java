@@ -0,0 +1,8 @@
+package org.seungmin.ir;
+
+public final class FrameSlot extends Storage {
+
+    FrameSlot(String name, int size) {
+        super(name, size);
+    }
+}
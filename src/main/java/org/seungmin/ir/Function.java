@@ -0,0 +1,140 @@
+package org.seungmin.ir;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The control flow graph of one function: its blocks, the entry first, in the order they are
+ * laid out, with the temporaries and frame slots they use. Parameters arrive in temporaries.
+ */
+public final class Function {
+    public final String name;
+    public final boolean returnsValue;
+    public final List<Temp> params = new ArrayList<>();
+    public final List<BasicBlock> blocks = new ArrayList<>();
+    public final List<FrameSlot> slots = new ArrayList<>();
+
+    private final List<Temp> temps = new ArrayList<>();
+
+    public Function(String name, boolean returnsValue) {
+        this.name = name;
+        this.returnsValue = returnsValue;
+    }
+
+    public Temp newTemp(String name) {
+        Temp t = new Temp(temps.size(), name);
+        temps.add(t);
+        return t;
+    }
+
+    public int tempCount() {
+        return temps.size();
+    }
+
+    public Temp temp(int id) {
+        return temps.get(id);
+    }
+
+    public FrameSlot newSlot(String name, int size) {
+        FrameSlot slot = new FrameSlot(name, size);
+        slots.add(slot);
+        return slot;
+    }
+
+    /*
+     * Appends a new block to the layout.
+     */
+    public BasicBlock newBlock(String label) {
+        BasicBlock b = new BasicBlock(label);
+        blocks.add(b);
+        return b;
+    }
+
+    public BasicBlock entry() {
+        return blocks.get(0);
+    }
+
+    /*
+     * Fills in the predecessors of every block and numbers the blocks in layout order, which
+     * lets passes keep what they know of the blocks in arrays.
+     */
+    public void computePredecessors() {
+        for (int i = 0; i < blocks.size(); i++) {
+            blocks.get(i).predecessors.clear();
+            blocks.get(i).index = i;
+        }
+        for (BasicBlock b : blocks)
+            for (BasicBlock s : b.successors())
+                s.predecessors.add(b);
+    }
+
+    /*
+     * The blocks reachable from the entry in reverse postorder, where every block comes before
+     * its successors but along the back edges of loops. The predecessors must be up to date.
+     */
+    public List<BasicBlock> reversePostorder() {
+        // iteratively: a block is finished once all its successors have been seen
+        List<BasicBlock> order = new ArrayList<>();
+        boolean[] seen = new boolean[blocks.size()];
+        Deque<Iterator<BasicBlock>> stack = new ArrayDeque<>();
+        Deque<BasicBlock> path = new ArrayDeque<>();
+        seen[entry().index] = true;
+        path.push(entry());
+        stack.push(entry().successors().iterator());
+        while (!stack.isEmpty()) {
+            Iterator<BasicBlock> it = stack.peek();
+            if (it.hasNext()) {
+                BasicBlock s = it.next();
+                if (!seen[s.index]) {
+                    seen[s.index] = true;
+                    path.push(s);
+                    stack.push(s.successors().iterator());
+                }
+            } else {
+                stack.pop();
+                order.add(path.pop());
+            }
+        }
+        Collections.reverse(order);
+        return order;
+    }
+
+    /*
+     * Drops the blocks that cannot be reached from the entry, such as the code following a
+     * return, and recomputes the predecessors.
+     */
+    public void removeUnreachableBlocks() {
+        Set<BasicBlock> reached = new HashSet<>();
+        Deque<BasicBlock> pending = new ArrayDeque<>();
+        pending.push(entry());
+        reached.add(entry());
+        while (!pending.isEmpty())
+            for (BasicBlock s : pending.pop().successors())
+                if (reached.add(s))
+                    pending.push(s);
+        blocks.removeIf(b -> !reached.contains(b));
+        computePredecessors();
+    }
+
+    public void print(PrintWriter writer) {
+        StringBuilder header = new StringBuilder("function " + name + "(");
+        for (int i = 0; i < params.size(); i++)
+            header.append(i > 0 ? ", " : "").append(params.get(i));
+        writer.println(header.append(")"));
+        for (FrameSlot slot : slots)
+            writer.println("\tframe " + slot + " " + slot.size);
+        for (BasicBlock b : blocks) {
+            writer.println(b.label + ":");
+            for (Instr in : b.instructions)
+                writer.println("\t" + in);
+            writer.println("\t" + b.terminator);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.seungmin.ir;
+
+public final class Global extends Storage {
+    public final String string; // the characters of a string literal, escaped as written, or null
+
+    Global(String name, int size, String string) {
+        super(name, size);
+        this.string = string;
+    }
+}
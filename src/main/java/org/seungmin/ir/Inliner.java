@@ -0,0 +1,314 @@
+package org.seungmin.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces the calls to small functions of the program by a copy of their body, sparing the
+ * prologue, the epilogue and the moves through the argument registers of every call.
+ *
+ * The functions are taken from the leaves of the call graph up, its strongly connected
+ * components in reverse topological order, so that the body copied into a caller already has
+ * its own calls inlined. A function calling itself or part of a cycle of calls is never
+ * inlined, although the calls it makes to others can be. A call is inlined when the size of
+ * the callee, in instructions, is at most maxSize and the caller stays within maxGrowth percent
+ * of the size it had before; the calls to the smallest functions are taken first, as they save
+ * the most per instruction added. Functions left without any call but main are dropped.
+ *
+ * Parameters become temporaries of the caller copied from the arguments, frame slots become
+ * slots of the caller, and returns a copy to the result of the call and a jump to the code
+ * that followed it, which starts a block of its own. It runs before SSA.construct: the
+ * functions must not have phis.
+ */
+public final class Inliner {
+
+    public static final int DEFAULT_SIZE = 40;
+    public static final int DEFAULT_GROWTH = 100;
+
+    private final int maxSize;
+    private final int maxGrowth;
+    private int copies = 0; // numbers the labels of the copies
+
+    public Inliner() {
+        this(DEFAULT_SIZE, DEFAULT_GROWTH);
+    }
+
+    public Inliner(int maxSize, int maxGrowth) {
+        this.maxSize = maxSize;
+        this.maxGrowth = maxGrowth;
+    }
+
+    /*
+     * Returns the number of calls inlined.
+     */
+    public int run(Module module) {
+        Map<String, Function> byName = new HashMap<>();
+        for (Function f : module.functions)
+            byName.put(f.name, f);
+        Map<Function, List<Function>> callees = new HashMap<>();
+        for (Function f : module.functions) {
+            List<Function> called = new ArrayList<>();
+            for (BasicBlock b : f.blocks)
+                for (Instr in : b.instructions)
+                    if (in instanceof Call && !((Call) in).builtin)
+                        called.add(byName.get(((Call) in).function));
+            callees.put(f, called);
+        }
+
+        Set<Function> recursive = new HashSet<>();
+        int inlined = 0;
+        for (List<Function> component : components(module.functions, callees)) {
+            if (component.size() > 1 || callees.get(component.get(0)).contains(component.get(0)))
+                recursive.addAll(component);
+            for (Function f : component)
+                inlined += inlineCalls(f, byName, recursive);
+        }
+
+        // drop the functions no longer called, and those they alone called
+        boolean removed = true;
+        while (removed) {
+            Set<String> called = new HashSet<>();
+            called.add("main");
+            for (Function f : module.functions)
+                for (BasicBlock b : f.blocks)
+                    for (Instr in : b.instructions)
+                        if (in instanceof Call && !((Call) in).builtin && !((Call) in).function.equals(f.name))
+                            called.add(((Call) in).function);
+            removed = module.functions.removeIf(f -> !called.contains(f.name));
+        }
+        return inlined;
+    }
+
+    /*
+     * The strongly connected components of the call graph, every one after those it calls, by
+     * the algorithm of Tarjan without recursion, as programs may have very long chains of calls.
+     */
+    private static List<List<Function>> components(List<Function> functions, Map<Function, List<Function>> callees) {
+        List<List<Function>> components = new ArrayList<>();
+        Map<Function, Integer> index = new IdentityHashMap<>();
+        Map<Function, Integer> lowLink = new IdentityHashMap<>();
+        Set<Function> onStack = new HashSet<>();
+        Deque<Function> stack = new ArrayDeque<>();
+        Deque<Function> path = new ArrayDeque<>();
+        Deque<Iterator<Function>> edges = new ArrayDeque<>();
+        for (Function root : functions) {
+            if (index.containsKey(root))
+                continue;
+            path.push(root);
+            edges.push(callees.get(root).iterator());
+            index.put(root, index.size());
+            lowLink.put(root, index.get(root));
+            stack.push(root);
+            onStack.add(root);
+            while (!path.isEmpty()) {
+                Function f = path.peek();
+                Iterator<Function> it = edges.peek();
+                if (it.hasNext()) {
+                    Function g = it.next();
+                    if (!index.containsKey(g)) {
+                        path.push(g);
+                        edges.push(callees.get(g).iterator());
+                        index.put(g, index.size());
+                        lowLink.put(g, index.get(g));
+                        stack.push(g);
+                        onStack.add(g);
+                    } else if (onStack.contains(g)) {
+                        lowLink.put(f, Math.min(lowLink.get(f), index.get(g)));
+                    }
+                    continue;
+                }
+                path.pop();
+                edges.pop();
+                if (!path.isEmpty())
+                    lowLink.put(path.peek(), Math.min(lowLink.get(path.peek()), lowLink.get(f)));
+                if (lowLink.get(f).equals(index.get(f))) {
+                    List<Function> component = new ArrayList<>();
+                    Function g;
+                    do {
+                        g = stack.pop();
+                        onStack.remove(g);
+                        component.add(g);
+                    } while (g != f);
+                    components.add(component);
+                }
+            }
+        }
+        return components;
+    }
+
+    private static int size(Function f) {
+        int size = 0;
+        for (BasicBlock b : f.blocks)
+            size += b.instructions.size() + 1;
+        return size;
+    }
+
+    private int inlineCalls(Function f, Map<String, Function> byName, Set<Function> recursive) {
+        List<Call> calls = new ArrayList<>();
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions)
+                if (in instanceof Call && !((Call) in).builtin) {
+                    Function callee = byName.get(((Call) in).function);
+                    if (!recursive.contains(callee) && size(callee) <= maxSize)
+                        calls.add((Call) in);
+                }
+        calls.sort(Comparator.comparingInt(c -> size(byName.get(c.function))));
+
+        int size = size(f);
+        int budget = size + (int) ((long) size * maxGrowth / 100);
+        int inlined = 0;
+        for (Call call : calls) {
+            Function callee = byName.get(call.function);
+            if (size + size(callee) > budget)
+                break;
+            size += size(callee);
+            found:
+            for (int i = 0; i < f.blocks.size(); i++) {
+                List<Instr> instructions = f.blocks.get(i).instructions;
+                for (int k = 0; k < instructions.size(); k++)
+                    if (instructions.get(k) == call) {
+                        inline(f, i, k, call, callee);
+                        break found;
+                    }
+            }
+            inlined++;
+        }
+        if (inlined > 0)
+            f.removeUnreachableBlocks(); // what followed a call to a function that never returns
+        return inlined;
+    }
+
+    /*
+     * Replaces the call, instruction k of block i of f, by a copy of callee.
+     */
+    private void inline(Function f, int i, int k, Call call, Function callee) {
+        String prefix = "inline" + copies++ + "_";
+        BasicBlock b = f.blocks.get(i);
+        BasicBlock after = new BasicBlock(prefix + "after_" + b.label);
+        List<Instr> following = b.instructions.subList(k + 1, b.instructions.size());
+        after.instructions.addAll(following);
+        following.clear();
+        b.instructions.remove(k);
+        after.terminator = b.terminator;
+
+        Map<Temp, Temp> temps = new HashMap<>();
+        Map<FrameSlot, FrameSlot> slots = new HashMap<>();
+        Map<BasicBlock, BasicBlock> blocks = new HashMap<>();
+        for (FrameSlot slot : callee.slots)
+            slots.put(slot, f.newSlot(slot.name, slot.size));
+        for (BasicBlock cb : callee.blocks)
+            blocks.put(cb, new BasicBlock(prefix + cb.label));
+        Copier copier = new Copier(f, temps, slots, blocks, call.dest, after);
+
+        for (int p = 0; p < callee.params.size(); p++)
+            b.instructions.add(new Copy(copier.temp(callee.params.get(p)), call.args.get(p)));
+        b.terminator = new Jump(blocks.get(callee.entry()));
+
+        List<BasicBlock> inserted = new ArrayList<>();
+        for (BasicBlock cb : callee.blocks) {
+            BasicBlock copy = blocks.get(cb);
+            for (Instr in : cb.instructions) {
+                if (in instanceof Phi)
+                    throw new IllegalStateException("cannot inline " + callee.name + " in SSA form");
+                copy.instructions.add(in.accept(copier));
+            }
+            Instr terminator = cb.terminator.accept(copier);
+            if (terminator instanceof Terminator) {
+                copy.terminator = (Terminator) terminator;
+            } else {
+                // the copy of the result of a return
+                copy.instructions.add(terminator);
+                copy.terminator = new Jump(after);
+            }
+            inserted.add(copy);
+        }
+        inserted.add(after);
+        f.blocks.addAll(i + 1, inserted);
+    }
+
+    /*
+     * Copies the instructions of the callee with its temporaries, slots and blocks replaced by
+     * those of the caller. A return becomes a jump to after, preceded by the copy of its value
+     * to result, which is what is returned in place of the jump when there is one.
+     */
+    private static final class Copier implements InstrVisitor<Instr> {
+        private final Function f;
+        private final Map<Temp, Temp> temps;
+        private final Map<FrameSlot, FrameSlot> slots;
+        private final Map<BasicBlock, BasicBlock> blocks;
+        private final Temp result;
+        private final BasicBlock after;
+
+        Copier(Function f, Map<Temp, Temp> temps, Map<FrameSlot, FrameSlot> slots, Map<BasicBlock, BasicBlock> blocks,
+               Temp result, BasicBlock after) {
+            this.f = f;
+            this.temps = temps;
+            this.slots = slots;
+            this.blocks = blocks;
+            this.result = result;
+            this.after = after;
+        }
+
+        Temp temp(Temp t) {
+            return t == null ? null : temps.computeIfAbsent(t, x -> f.newTemp(x.name));
+        }
+
+        private Value value(Value v) {
+            return v instanceof Temp ? temp((Temp) v) : v;
+        }
+
+        public Instr visitBinary(Binary b) {
+            return new Binary(temp(b.dest), b.op, value(b.lhs), value(b.rhs));
+        }
+
+        public Instr visitCopy(Copy c) {
+            return new Copy(temp(c.dest), value(c.source));
+        }
+
+        public Instr visitAddressOf(AddressOf a) {
+            return new AddressOf(temp(a.dest), a.storage instanceof FrameSlot ? slots.get(a.storage) : a.storage);
+        }
+
+        public Instr visitLoad(Load l) {
+            return new Load(temp(l.dest), value(l.address), l.offset, l.width);
+        }
+
+        public Instr visitStore(Store s) {
+            return new Store(value(s.address), s.offset, value(s.value), s.width);
+        }
+
+        public Instr visitCall(Call c) {
+            List<Value> args = new ArrayList<>();
+            for (Value arg : c.args)
+                args.add(value(arg));
+            return new Call(temp(c.dest), c.function, args, c.builtin);
+        }
+
+        public Instr visitJump(Jump j) {
+            return new Jump(blocks.get(j.target));
+        }
+
+        public Instr visitBranch(Branch b) {
+            return new Branch(value(b.cond), blocks.get(b.ifTrue), blocks.get(b.ifFalse));
+        }
+
+        public Instr visitReturn(Return r) {
+            if (result != null && r.value != null)
+                return new Copy(result, value(r.value));
+            return new Jump(after);
+        }
+
+        public Instr visitPhi(Phi p) {
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.seungmin.ir;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * A three-address instruction: at most one temporary written, dest, and operands that are
+ * temporaries or constants. Instructions are mutable so that passes can rewrite them in place.
+ */
+public abstract class Instr {
+    public Temp dest; // null if nothing is written
+
+    protected Instr(Temp dest) {
+        this.dest = dest;
+    }
+
+    public abstract List<Value> uses();
+
+    /*
+     * Replaces every operand by map(operand).
+     */
+    public abstract void replaceUses(UnaryOperator<Value> map);
+
+    /*
+     * Whether the instruction does anything besides writing dest, so that it has to stay even
+     * when dest is never read.
+     */
+    public boolean hasSideEffects() {
+        return false;
+    }
+
+    public abstract <T> T accept(InstrVisitor<T> v);
+
+    static String list(List<Value> values) {
+        StringBuilder sb = new StringBuilder();
+        for (Value v : values) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(v);
+        }
+        return sb.toString();
+    }
+}
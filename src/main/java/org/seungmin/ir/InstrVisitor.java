@@ -0,0 +1,14 @@
+package org.seungmin.ir;
+
+public interface InstrVisitor<T> {
+    public T visitBinary(Binary b);
+    public T visitCopy(Copy c);
+    public T visitAddressOf(AddressOf a);
+    public T visitLoad(Load l);
+    public T visitStore(Store s);
+    public T visitCall(Call c);
+    public T visitJump(Jump j);
+    public T visitBranch(Branch b);
+    public T visitReturn(Return r);
+    public T visitPhi(Phi p);
+}
@@ -0,0 +1,42 @@
+package org.seungmin.ir;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+public final class Jump extends Terminator {
+    public BasicBlock target;
+
+    public Jump(BasicBlock target) {
+        this.target = target;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+    }
+
+    @Override
+    public List<BasicBlock> successors() {
+        return Collections.singletonList(target);
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock from, BasicBlock to) {
+        if (target == from)
+            target = to;
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitJump(this);
+    }
+
+    @Override
+    public String toString() {
+        return "jump " + target.label;
+    }
+}
@@ -0,0 +1,73 @@
+package org.seungmin.ir;
+
+import org.seungmin.ast.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sizes of the types of a program in memory, and offsets of struct fields.
+ *
+ * A char takes one byte and everything else is made of words: ints and pointers take four
+ * bytes, and struct fields are aligned to their own size, the struct being padded to a whole
+ * number of words.
+ */
+public class Layout {
+
+    private final Map<String, StructTypeDecl> structs = new HashMap<>();
+    private final Map<String, Map<String, Integer>> offsets = new HashMap<>();
+    private final Map<String, Integer> structSizes = new HashMap<>();
+
+    public Layout(Program p) {
+        for (StructTypeDecl std : p.structTypeDecls)
+            structs.putIfAbsent(std.structType.structName, std);
+    }
+
+    public int sizeOf(Type t) {
+        if (t == BaseType.CHAR)
+            return 1;
+        if (t instanceof ArrayType)
+            return sizeOf(((ArrayType) t).elemType) * ((ArrayType) t).numElements;
+        if (t instanceof StructType)
+            return structSize(((StructType) t).structName);
+        return 4;
+    }
+
+    public int fieldOffset(StructType st, String field) {
+        structSize(st.structName);
+        return offsets.get(st.structName).get(field);
+    }
+
+    private int structSize(String name) {
+        Integer size = structSizes.get(name);
+        if (size != null)
+            return size;
+        Map<String, Integer> fields = new HashMap<>();
+        int offset = 0;
+        for (VarDecl vd : structs.get(name).varDecls) {
+            if (alignment(vd.type) == 4)
+                offset = (offset + 3) & ~3;
+            fields.put(vd.varName, offset);
+            offset += sizeOf(vd.type);
+        }
+        size = (offset + 3) & ~3;
+        offsets.put(name, fields);
+        structSizes.put(name, size);
+        return size;
+    }
+
+    private static int alignment(Type t) {
+        if (t == BaseType.CHAR)
+            return 1;
+        if (t instanceof ArrayType)
+            return alignment(((ArrayType) t).elemType);
+        return 4;
+    }
+
+    /*
+     * Whether values of the type are held in registers, the others are manipulated by address.
+     */
+    public static boolean isScalar(Type t) {
+        return !(t instanceof ArrayType || t instanceof StructType);
+    }
+}
@@ -0,0 +1,174 @@
+package org.seungmin.ir;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * The temporaries live at the start and end of every block of a function, as a backward
+ * Dataflow problem over sets of temporary ids, and at every instruction by walking a block back
+ * from its end.
+ *
+ * Phis follow the usual SSA convention: their uses are live at the end of the predecessor the
+ * value comes from, not at the start of their block, and what they define is defined before
+ * the first other instruction of the block.
+ */
+public final class LiveVariables {
+
+    public interface InstructionVisitor {
+        /*
+         * The set is reused from one call to the next and must not be modified.
+         */
+        void visit(Instr instruction, long[] liveAfter);
+    }
+
+    private final Function f;
+    private final Dataflow dataflow;
+
+    public LiveVariables(Function f) {
+        this.f = f;
+        f.computePredecessors();
+        int n = f.blocks.size();
+        int temps = f.tempCount();
+        long[][] use = new long[n][];   // read before any write in the block
+        long[][] def = new long[n][];
+        long[][] phiUse = new long[n][]; // read by the phis of the successors, from this block
+        for (BasicBlock b : f.blocks) {
+            int i = b.index;
+            use[i] = Bits.of(temps);
+            def[i] = Bits.of(temps);
+            phiUse[i] = Bits.of(temps);
+            for (Instr in : b.instructions) {
+                if (!(in instanceof Phi))
+                    addUses(in, use[i], def[i]);
+                if (in.dest != null)
+                    Bits.set(def[i], in.dest.id);
+            }
+            addUses(b.terminator, use[i], def[i]);
+        }
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions) {
+                if (!(in instanceof Phi))
+                    break;
+                for (Map.Entry<BasicBlock, Value> e : ((Phi) in).incoming.entrySet())
+                    if (e.getValue() instanceof Temp)
+                        Bits.set(phiUse[e.getKey().index], ((Temp) e.getValue()).id);
+            }
+
+        // in = use | out & ~def, out = union of the ins of the successors
+        dataflow = new Dataflow(f, new Dataflow.Problem() {
+            public Dataflow.Direction direction() {
+                return Dataflow.Direction.BACKWARD;
+            }
+
+            public Dataflow.Meet meet() {
+                return Dataflow.Meet.UNION;
+            }
+
+            public int size() {
+                return temps;
+            }
+
+            public void boundary(BasicBlock b, long[] out) {
+                Bits.or(out, phiUse[b.index]);
+            }
+
+            public void transfer(BasicBlock b, long[] out, long[] in) {
+                System.arraycopy(use[b.index], 0, in, 0, in.length);
+                Bits.orAndNot(in, out, def[b.index]);
+            }
+        });
+    }
+
+    private static void addUses(Instr in, long[] use, long[] def) {
+        for (Value v : in.uses())
+            if (v instanceof Temp && !Bits.get(def, ((Temp) v).id))
+                Bits.set(use, ((Temp) v).id);
+    }
+
+    public long[] liveIn(BasicBlock b) {
+        return dataflow.in(b);
+    }
+
+    public long[] liveOut(BasicBlock b) {
+        return dataflow.out(b);
+    }
+
+    public int rounds() {
+        return dataflow.rounds();
+    }
+
+    /*
+     * Visits the instructions of b from its terminator back to its first instruction that is
+     * not a phi, with the temporaries live right after each.
+     */
+    public void forEachInstruction(BasicBlock b, InstructionVisitor visitor) {
+        long[] live = liveOut(b).clone();
+        visitor.visit(b.terminator, live);
+        step(b.terminator, live);
+        for (int i = b.instructions.size() - 1; i >= 0; i--) {
+            Instr in = b.instructions.get(i);
+            if (in instanceof Phi)
+                break;
+            visitor.visit(in, live);
+            step(in, live);
+        }
+    }
+
+    /*
+     * From the set live after in to the one live before it.
+     */
+    static void step(Instr in, long[] live) {
+        if (in.dest != null)
+            Bits.clear(live, in.dest.id);
+        for (Value v : in.uses())
+            if (v instanceof Temp)
+                Bits.set(live, ((Temp) v).id);
+    }
+
+    /*
+     * Prints the set live before every instruction that is not a phi, in the format of
+     * MyPass::printLiveness in the LLVM pass, so that both can be compared: one {...} line per
+     * instruction, the temporaries in order of id, then {} for the end of the function.
+     */
+    public void print(PrintWriter writer) {
+        Temp[] temps = new Temp[f.tempCount()];
+        for (Temp p : f.params)
+            temps[p.id] = p;
+        for (BasicBlock b : f.blocks) {
+            for (Instr in : b.instructions)
+                record(in, temps);
+            record(b.terminator, temps);
+        }
+        for (BasicBlock b : f.blocks) {
+            int count = 1;
+            for (Instr in : b.instructions)
+                if (!(in instanceof Phi))
+                    count++;
+            long[][] before = new long[count][];
+            int[] next = { count };
+            forEachInstruction(b, (in, liveAfter) -> {
+                long[] live = liveAfter.clone();
+                step(in, live);
+                before[--next[0]] = live;
+            });
+            for (long[] live : before) {
+                writer.print('{');
+                for (int t = Bits.next(live, 0), k = 0; t >= 0; t = Bits.next(live, t + 1), k++) {
+                    if (k > 0)
+                        writer.print(", ");
+                    writer.print("%" + temps[t]);
+                }
+                writer.println('}');
+            }
+        }
+        writer.println("{}");
+    }
+
+    private static void record(Instr in, Temp[] temps) {
+        if (in.dest != null)
+            temps[in.dest.id] = in.dest;
+        for (Value v : in.uses())
+            if (v instanceof Temp)
+                temps[((Temp) v).id] = (Temp) v;
+    }
+}
@@ -0,0 +1,40 @@
+package org.seungmin.ir;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * dest = the byte or word at address + offset, bytes being sign extended.
+ */
+public final class Load extends Instr {
+    public Value address;
+    public int offset;
+    public final Width width;
+
+    public Load(Temp dest, Value address, int offset, Width width) {
+        super(dest);
+        this.address = address;
+        this.offset = offset;
+        this.width = width;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return Collections.singletonList(address);
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        address = map.apply(address);
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitLoad(this);
+    }
+
+    @Override
+    public String toString() {
+        return dest + " = load." + (width == Width.BYTE ? "b" : "w") + " [" + address + (offset != 0 ? " + " + offset : "") + "]";
+    }
+}
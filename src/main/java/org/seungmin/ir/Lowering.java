@@ -0,0 +1,414 @@
+package org.seungmin.ir;
+
+import org.seungmin.ast.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers a program that passed semantic analysis to the IR, one Function per FunDecl.
+ *
+ * Variables of scalar types become temporaries, unless variablesInMemory is set, in which case
+ * they get a frame slot like arrays and structs; globals go to the data segment. Values of
+ * struct and array types are handled by address: passing or assigning them copies them word
+ * by word, and functions return their struct in a static area of their own.
+ *
+ * Blocks are laid out in the order of the source, so that a backend falling through from one
+ * block to the next gets back the usual shape of structured code.
+ */
+public class Lowering implements ASTVisitor<Value> {
+
+    // an address known as a base value plus a constant offset
+    private static final class Address {
+        final Value base;
+        final int offset;
+
+        Address(Value base, int offset) {
+            this.base = base;
+            this.offset = offset;
+        }
+    }
+
+    private final boolean variablesInMemory;
+
+    private Layout layout;
+    private Module module;
+    private int labels = 0;
+    private int strings = 0;
+
+    // where variables live: a global, a frame slot or a temporary of the current function
+    private final Map<VarDecl, Global> globals = new HashMap<>();
+    private final Map<VarDecl, FrameSlot> slots = new HashMap<>();
+    private final Map<VarDecl, Temp> variables = new HashMap<>();
+    private final Map<String, Global> returnAreas = new HashMap<>();
+
+    // the function being lowered, and the block instructions are added to
+    private Function function;
+    private FunDecl funDecl;
+    private BasicBlock current;
+
+    public Lowering() {
+        this(false);
+    }
+
+    public Lowering(boolean variablesInMemory) {
+        this.variablesInMemory = variablesInMemory;
+    }
+
+    public Module lower(Program program) {
+        module = new Module();
+        program.accept(this);
+        return module;
+    }
+
+    private String newLabel(String prefix) {
+        return prefix + "_" + labels++;
+    }
+
+    private Temp newTemp() {
+        return function.newTemp(null);
+    }
+
+    private void emit(Instr in) {
+        current.instructions.add(in);
+    }
+
+    /*
+     * Ends the current block. Code that follows a return goes to a new block that nothing
+     * jumps to, removed once the function is complete.
+     */
+    private void terminate(Terminator t) {
+        current.terminator = t;
+        if (t instanceof Return)
+            start(new BasicBlock(newLabel("dead")));
+    }
+
+    private void start(BasicBlock b) {
+        function.blocks.add(b);
+        current = b;
+    }
+
+    @Override
+    public Value visitProgram(Program p) {
+        layout = new Layout(p);
+        for (VarDecl vd : p.varDecls)
+            globals.put(vd, module.newGlobal("g_" + vd.varName, Math.max(layout.sizeOf(vd.type), 4)));
+        for (FunDecl fd : p.funDecls)
+            module.functions.add(lower(fd));
+        return null;
+    }
+
+    private Function lower(FunDecl fd) {
+        function = new Function(fd.name, fd.type != BaseType.VOID);
+        funDecl = fd;
+        variables.clear();
+        slots.clear();
+        start(new BasicBlock("entry_" + fd.name));
+
+        for (VarDecl vd : fd.params) {
+            Temp p = function.newTemp(vd.varName);
+            function.params.add(p);
+            if (!Layout.isScalar(vd.type)) {
+                // passed by address, copied into the frame
+                FrameSlot slot = function.newSlot(vd.varName, layout.sizeOf(vd.type));
+                slots.put(vd, slot);
+                copy(p, new Address(addressOf(slot), 0), layout.sizeOf(vd.type));
+            } else if (variablesInMemory) {
+                FrameSlot slot = function.newSlot(vd.varName, 4);
+                slots.put(vd, slot);
+                store(p, new Address(addressOf(slot), 0), vd.type);
+            } else {
+                variables.put(vd, p);
+            }
+        }
+        fd.block.accept(this);
+        if (current.terminator == null)
+            terminate(new Return(null));
+        function.removeUnreachableBlocks();
+        return function;
+    }
+
+    /*
+     * Memory accesses, by type: chars are bytes, aggregates are copied word by word.
+     */
+
+    private Temp addressOf(Storage storage) {
+        Temp t = newTemp();
+        emit(new AddressOf(t, storage));
+        return t;
+    }
+
+    private Value materialize(Address a) {
+        if (a.offset == 0)
+            return a.base;
+        Temp t = newTemp();
+        emit(new Binary(t, Op.ADD, a.base, Constant.of(a.offset)));
+        return t;
+    }
+
+    private static Width width(Type type) {
+        return type == BaseType.CHAR ? Width.BYTE : Width.WORD;
+    }
+
+    private Value load(Address address, Type type) {
+        if (!Layout.isScalar(type))
+            return materialize(address);
+        Temp t = newTemp();
+        emit(new Load(t, address.base, address.offset, width(type)));
+        return t;
+    }
+
+    private void store(Value value, Address address, Type type) {
+        if (!Layout.isScalar(type))
+            copy(value, address, layout.sizeOf(type));
+        else
+            emit(new Store(address.base, address.offset, value, width(type)));
+    }
+
+    private void copy(Value from, Address to, int bytes) {
+        for (int offset = 0; offset < bytes; offset += 4) {
+            Temp word = newTemp();
+            emit(new Load(word, from, offset, Width.WORD));
+            emit(new Store(to.base, to.offset + offset, word, Width.WORD));
+        }
+    }
+
+    private static boolean isLvalue(Expr e) {
+        return e instanceof VarExpr || e instanceof ArrayAccessExpr || e instanceof FieldAccessExpr || e instanceof ValueAtExpr;
+    }
+
+    /*
+     * The address of a variable, an array element, a field or a pointed value.
+     */
+    private Address address(Expr e) {
+        if (e instanceof VarExpr) {
+            VarDecl vd = ((VarExpr) e).vd;
+            Storage storage = globals.containsKey(vd) ? globals.get(vd) : slots.get(vd);
+            return new Address(addressOf(storage), 0);
+        } else if (e instanceof ArrayAccessExpr) {
+            ArrayAccessExpr aae = (ArrayAccessExpr) e;
+            Value base = aae.array.accept(this);
+            Value index = aae.index.accept(this);
+            Type elemType = aae.array.type instanceof ArrayType ? ((ArrayType) aae.array.type).elemType
+                    : ((PointerType) aae.array.type).elemType;
+            int size = layout.sizeOf(elemType);
+            if (index instanceof Constant)
+                return new Address(base, ((Constant) index).value * size);
+            if (size != 1) {
+                Temp scaled = newTemp();
+                emit(new Binary(scaled, Op.MUL, index, Constant.of(size)));
+                index = scaled;
+            }
+            Temp t = newTemp();
+            emit(new Binary(t, Op.ADD, base, index));
+            return new Address(t, 0);
+        } else if (e instanceof FieldAccessExpr) {
+            FieldAccessExpr fae = (FieldAccessExpr) e;
+            Address base = isLvalue(fae.structure) ? address(fae.structure) : new Address(fae.structure.accept(this), 0);
+            return new Address(base.base, base.offset + layout.fieldOffset((StructType) fae.structure.type, fae.fieldName));
+        } else {
+            return new Address(((ValueAtExpr) e).expr.accept(this), 0);
+        }
+    }
+
+    @Override
+    public Value visitBaseType(BaseType bt) {
+        return null;
+    }
+
+    @Override
+    public Value visitStructTypeDecl(StructTypeDecl st) {
+        return null;
+    }
+
+    @Override
+    public Value visitBlock(Block b) {
+        for (VarDecl vd : b.vds)
+            vd.accept(this);
+        for (Stmt s : b.stmts)
+            s.accept(this);
+        return null;
+    }
+
+    @Override
+    public Value visitFunDecl(FunDecl p) {
+        return null;
+    }
+
+    @Override
+    public Value visitVarDecl(VarDecl vd) {
+        // locals only, globals are laid out by visitProgram
+        if (Layout.isScalar(vd.type) && !variablesInMemory)
+            variables.put(vd, function.newTemp(vd.varName));
+        else
+            slots.put(vd, function.newSlot(vd.varName, Layout.isScalar(vd.type) ? 4 : layout.sizeOf(vd.type)));
+        return null;
+    }
+
+    @Override
+    public Value visitVarExpr(VarExpr v) {
+        Temp t = variables.get(v.vd);
+        if (t != null)
+            return t;
+        return load(address(v), v.vd.type);
+    }
+
+    @Override
+    public Value visitPointerType(PointerType pt) {
+        return null;
+    }
+
+    @Override
+    public Value visitStructType(StructType st) {
+        return null;
+    }
+
+    @Override
+    public Value visitArrayType(ArrayType at) {
+        return null;
+    }
+
+    @Override
+    public Value visitIntLiteral(IntLiteral il) {
+        return Constant.of(il.value);
+    }
+
+    @Override
+    public Value visitStrLiteral(StrLiteral sl) {
+        return addressOf(module.newString("str_" + strings++, sl.value));
+    }
+
+    @Override
+    public Value visitChrLiteral(ChrLiteral cl) {
+        return Constant.of(cl.value);
+    }
+
+    @Override
+    public Value visitFunCallExpr(FunCallExpr fce) {
+        List<Value> args = new ArrayList<>();
+        for (Expr arg : fce.args)
+            args.add(arg.accept(this));
+        Temp result = fce.fd.type == BaseType.VOID ? null : newTemp();
+        emit(new Call(result, fce.name, args, fce.fd.block == null));
+        return result;
+    }
+
+    @Override
+    public Value visitBinOp(BinOp bo) {
+        if (bo.op == Op.AND || bo.op == Op.OR) {
+            // short-circuit, the result is normalised to 0 or 1
+            Temp r = newTemp();
+            BasicBlock rhs = new BasicBlock(newLabel(bo.op == Op.AND ? "and" : "or"));
+            BasicBlock end = new BasicBlock(newLabel(bo.op == Op.AND ? "endand" : "endor"));
+            emit(new Binary(r, Op.NE, bo.lhs.accept(this), Constant.of(0)));
+            terminate(bo.op == Op.AND ? new Branch(r, rhs, end) : new Branch(r, end, rhs));
+            start(rhs);
+            emit(new Binary(r, Op.NE, bo.rhs.accept(this), Constant.of(0)));
+            terminate(new Jump(end));
+            start(end);
+            return r;
+        }
+        Value lhs = bo.lhs.accept(this);
+        Value rhs = bo.rhs.accept(this);
+        Temp r = newTemp();
+        emit(new Binary(r, bo.op, lhs, rhs));
+        return r;
+    }
+
+    @Override
+    public Value visitArrayAccessExpr(ArrayAccessExpr aae) {
+        return load(address(aae), aae.type);
+    }
+
+    @Override
+    public Value visitFieldAccessExpr(FieldAccessExpr fae) {
+        return load(address(fae), fae.type);
+    }
+
+    @Override
+    public Value visitValueAtExpr(ValueAtExpr vae) {
+        return load(address(vae), vae.type);
+    }
+
+    @Override
+    public Value visitSizeOfExpr(SizeOfExpr soe) {
+        return Constant.of(layout.sizeOf(soe.type));
+    }
+
+    @Override
+    public Value visitTypecastExpr(TypecastExpr te) {
+        // chars are already ints in registers, and arrays evaluate to their address
+        return te.expr.accept(this);
+    }
+
+    @Override
+    public Value visitExprStmt(ExprStmt es) {
+        es.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Value visitWhile(While w) {
+        BasicBlock test = new BasicBlock(newLabel("while"));
+        BasicBlock body = new BasicBlock(newLabel("do"));
+        BasicBlock end = new BasicBlock(newLabel("endwhile"));
+        terminate(new Jump(test));
+        start(test);
+        terminate(new Branch(w.cond.accept(this), body, end));
+        start(body);
+        w.body.accept(this);
+        terminate(new Jump(test));
+        start(end);
+        return null;
+    }
+
+    @Override
+    public Value visitIf(If i) {
+        BasicBlock then = new BasicBlock(newLabel("then"));
+        BasicBlock otherwise = i.elseStmt != null ? new BasicBlock(newLabel("else")) : null;
+        BasicBlock end = new BasicBlock(newLabel("endif"));
+        terminate(new Branch(i.cond.accept(this), then, otherwise != null ? otherwise : end));
+        start(then);
+        i.thenStmt.accept(this);
+        terminate(new Jump(end));
+        if (otherwise != null) {
+            start(otherwise);
+            i.elseStmt.accept(this);
+            terminate(new Jump(end));
+        }
+        start(end);
+        return null;
+    }
+
+    @Override
+    public Value visitAssign(Assign a) {
+        Temp variable = a.lhs instanceof VarExpr ? variables.get(((VarExpr) a.lhs).vd) : null;
+        if (variable != null) {
+            emit(new Copy(variable, a.rhs.accept(this)));
+        } else {
+            Address address = address(a.lhs);
+            store(a.rhs.accept(this), address, a.lhs.type);
+        }
+        return null;
+    }
+
+    @Override
+    public Value visitReturn(org.seungmin.ast.Return r) {
+        Value value = null;
+        if (r.expr != null) {
+            value = r.expr.accept(this);
+            if (!Layout.isScalar(funDecl.type)) {
+                // aggregates are returned by address, from a static area of the function
+                int size = layout.sizeOf(funDecl.type);
+                Global area = returnAreas.computeIfAbsent(funDecl.name, name -> module.newGlobal("retval_" + name, size));
+                Temp address = addressOf(area);
+                copy(value, new Address(address, 0), size);
+                value = address;
+            }
+        }
+        terminate(new Return(value));
+        return null;
+    }
+}
@@ -0,0 +1,37 @@
+package org.seungmin.ir;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The IR of a whole program: its globals, string literals included, and its functions.
+ */
+public final class Module {
+    public final List<Global> globals = new ArrayList<>();
+    public final List<Function> functions = new ArrayList<>();
+
+    public Global newGlobal(String name, int size) {
+        Global g = new Global(name, size, null);
+        globals.add(g);
+        return g;
+    }
+
+    /*
+     * A global holding a string literal, value being its characters escaped as in the source.
+     */
+    public Global newString(String name, String value) {
+        Global g = new Global(name, 0, value);
+        globals.add(g);
+        return g;
+    }
+
+    public void print(PrintWriter writer) {
+        for (Global g : globals)
+            writer.println("global " + g + " " + (g.string != null ? "\"" + g.string + "\"" : Integer.toString(g.size)));
+        for (Function f : functions) {
+            writer.println();
+            f.print(writer);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.seungmin.ir;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * dest = the value coming from the predecessor control arrived from. Only found at the start of
+ * blocks, between SSA.construct and SSA.destruct.
+ */
+public final class Phi extends Instr {
+    public final Map<BasicBlock, Value> incoming = new LinkedHashMap<>();
+
+    public Phi(Temp dest) {
+        super(dest);
+    }
+
+    @Override
+    public List<Value> uses() {
+        return new ArrayList<>(incoming.values());
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        incoming.replaceAll((b, v) -> map.apply(v));
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitPhi(this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(dest + " = phi ");
+        String delimiter = "";
+        for (Map.Entry<BasicBlock, Value> e : incoming.entrySet()) {
+            sb.append(delimiter).append("[").append(e.getKey().label).append(": ").append(e.getValue()).append("]");
+            delimiter = ", ";
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package org.seungmin.ir;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+public final class Return extends Terminator {
+    public Value value; // null in functions returning void
+
+    public Return(Value value) {
+        this.value = value;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return value == null ? Collections.emptyList() : Collections.singletonList(value);
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        if (value != null)
+            value = map.apply(value);
+    }
+
+    @Override
+    public List<BasicBlock> successors() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock from, BasicBlock to) {
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitReturn(this);
+    }
+
+    @Override
+    public String toString() {
+        return value == null ? "return" : "return " + value;
+    }
+}
@@ -0,0 +1,549 @@
+package org.seungmin.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Puts a function in static single assignment form and takes it back out.
+ *
+ * Construction follows Cytron et al.: phis for a variable are placed on the iterated dominance
+ * frontier of the blocks assigning it, then every definition gets a temporary of its own while
+ * walking the dominator tree. Only the temporaries read in some block before being written in
+ * it get phis (semi-pruned form), the other ones never cross a block boundary. Reading a
+ * variable that was never assigned reads 0. Phis nothing ends up reading are deleted again.
+ *
+ * Destruction first gives the temporaries a phi merges a single name wherever their live
+ * ranges do not overlap, which makes most phis copies of a temporary to itself. The phis left
+ * are replaced by copies at the end of the predecessors, splitting the edges coming from blocks
+ * with several successors so that the copies only run on the edge they belong to, and ordering
+ * the copies of an edge so that none overwrites a value another one still has to read.
+ */
+public final class SSA {
+
+    private SSA() {
+    }
+
+    public static void construct(Function f) {
+        f.computePredecessors();
+        Dominators dominators = new Dominators(f);
+        List<BasicBlock> blocks = dominators.reversePostorder();
+        int n = f.tempCount();
+
+        // which temporaries to rename: variables and those assigned more than once
+        int[] definitions = new int[n];
+        List<List<BasicBlock>> definedIn = new ArrayList<>(n);
+        for (int t = 0; t < n; t++)
+            definedIn.add(new ArrayList<>());
+        for (Temp p : f.params) {
+            definitions[p.id]++;
+            definedIn.get(p.id).add(f.entry());
+        }
+        BitSet global = new BitSet(n);
+        BitSet written = new BitSet(n);
+        for (BasicBlock b : blocks) {
+            written.clear();
+            for (Instr in : b.instructions) {
+                for (Value v : in.uses())
+                    if (v instanceof Temp && !written.get(((Temp) v).id))
+                        global.set(((Temp) v).id);
+                if (in.dest != null) {
+                    written.set(in.dest.id);
+                    definitions[in.dest.id]++;
+                    List<BasicBlock> blocksOf = definedIn.get(in.dest.id);
+                    if (blocksOf.isEmpty() || blocksOf.get(blocksOf.size() - 1) != b)
+                        blocksOf.add(b);
+                }
+            }
+            for (Value v : b.terminator.uses())
+                if (v instanceof Temp && !written.get(((Temp) v).id))
+                    global.set(((Temp) v).id);
+        }
+        BitSet renamed = new BitSet(n);
+        for (int t = 0; t < n; t++)
+            if (definitions[t] > 1 || (definitions[t] == 1 && f.temp(t).name != null))
+                renamed.set(t);
+
+        // phis on the iterated dominance frontiers
+        Map<Phi, Temp> variableOf = new IdentityHashMap<>();
+        int[] hasPhi = new int[f.blocks.size()];     // the last variable given a phi there
+        int[] onWorklist = new int[f.blocks.size()];
+        Arrays.fill(hasPhi, -1);
+        Arrays.fill(onWorklist, -1);
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        for (int t = renamed.nextSetBit(0); t >= 0; t = renamed.nextSetBit(t + 1)) {
+            if (!global.get(t))
+                continue;
+            Temp variable = f.temp(t);
+            for (BasicBlock b : definedIn.get(t)) {
+                onWorklist[b.index] = t;
+                worklist.add(b);
+            }
+            while (!worklist.isEmpty()) {
+                for (BasicBlock y : dominators.frontier(worklist.pop())) {
+                    if (hasPhi[y.index] == t)
+                        continue;
+                    hasPhi[y.index] = t;
+                    Phi phi = new Phi(variable);
+                    variableOf.put(phi, variable);
+                    y.instructions.add(0, phi);
+                    if (onWorklist[y.index] != t) {
+                        onWorklist[y.index] = t;
+                        worklist.add(y);
+                    }
+                }
+            }
+        }
+
+        // renaming, walking the dominator tree with an explicit stack; current holds the
+        // latest name of every variable, undo what it held before the blocks being walked
+        Value[] current = new Value[n];
+        for (Temp p : f.params)
+            current[p.id] = p;
+        List<Temp> undo = new ArrayList<>();
+        List<Value> undoValues = new ArrayList<>();
+        Deque<Object> walk = new ArrayDeque<>();  // blocks to enter, and undo sizes to go back to
+        walk.push(f.entry());
+        while (!walk.isEmpty()) {
+            Object top = walk.pop();
+            if (top instanceof Integer) {
+                for (int i = undo.size() - 1; i >= (Integer) top; i--) {
+                    current[undo.get(i).id] = undoValues.get(i);
+                    undo.remove(i);
+                    undoValues.remove(i);
+                }
+                continue;
+            }
+            BasicBlock b = (BasicBlock) top;
+            walk.push(undo.size());
+            for (Instr in : b.instructions) {
+                if (!(in instanceof Phi))
+                    in.replaceUses(v -> lookup(v, renamed, current));
+                if (in.dest != null && renamed.get(in.dest.id)) {
+                    Temp variable = in.dest;
+                    in.dest = f.newTemp(variable.name);
+                    undo.add(variable);
+                    undoValues.add(current[variable.id]);
+                    current[variable.id] = in.dest;
+                }
+            }
+            b.terminator.replaceUses(v -> lookup(v, renamed, current));
+            for (BasicBlock s : b.successors())
+                for (Instr in : s.instructions) {
+                    if (!(in instanceof Phi))
+                        break;
+                    ((Phi) in).incoming.put(b, lookup(variableOf.get(in), renamed, current));
+                }
+            List<BasicBlock> children = dominators.children(b);
+            for (int i = children.size() - 1; i >= 0; i--)
+                walk.push(children.get(i));
+        }
+
+        removeDeadPhis(f, variableOf.keySet());
+    }
+
+    /*
+     * Deletes the phis whose value no instruction but dead phis reads, such as those merging a
+     * variable at a point after which it is always assigned before being read.
+     */
+    private static void removeDeadPhis(Function f, Set<Phi> phis) {
+        Phi[] definedBy = new Phi[f.tempCount()];
+        for (Phi phi : phis)
+            definedBy[phi.dest.id] = phi;
+        Set<Phi> live = new HashSet<>();
+        Deque<Phi> worklist = new ArrayDeque<>();
+        for (BasicBlock b : f.blocks) {
+            for (Instr in : b.instructions)
+                if (!(in instanceof Phi))
+                    markLive(in.uses(), definedBy, live, worklist);
+            markLive(b.terminator.uses(), definedBy, live, worklist);
+        }
+        while (!worklist.isEmpty())
+            markLive(worklist.pop().incoming.values(), definedBy, live, worklist);
+        for (BasicBlock b : f.blocks)
+            if (!b.instructions.isEmpty() && b.instructions.get(0) instanceof Phi)
+                b.instructions.removeIf(in -> in instanceof Phi && !live.contains(in));
+    }
+
+    private static void markLive(Iterable<Value> read, Phi[] definedBy, Set<Phi> live, Deque<Phi> worklist) {
+        for (Value v : read) {
+            Phi phi = v instanceof Temp ? definedBy[((Temp) v).id] : null;
+            if (phi != null && live.add(phi))
+                worklist.add(phi);
+        }
+    }
+
+    private static Value lookup(Value v, BitSet renamed, Value[] current) {
+        if (!(v instanceof Temp) || !renamed.get(((Temp) v).id))
+            return v;
+        Value latest = current[((Temp) v).id];
+        return latest == null ? Constant.of(0) : latest;
+    }
+
+    public static void destruct(Function f) {
+        f.computePredecessors();
+        coalesce(f);
+        for (BasicBlock b : new ArrayList<>(f.blocks)) {
+            List<Phi> phis = new ArrayList<>();
+            for (Instr in : b.instructions) {
+                if (!(in instanceof Phi))
+                    break;
+                phis.add((Phi) in);
+            }
+            if (phis.isEmpty())
+                continue;
+            b.instructions.subList(0, phis.size()).clear();
+
+            for (BasicBlock p : new LinkedHashSet<>(b.predecessors)) {
+                List<Temp> dests = new ArrayList<>();
+                List<Value> sources = new ArrayList<>();
+                for (Phi phi : phis) {
+                    Value source = phi.incoming.get(p);
+                    if (source != phi.dest) {
+                        dests.add(phi.dest);
+                        sources.add(source);
+                    }
+                }
+                if (dests.isEmpty())
+                    continue;
+                BasicBlock at = p;
+                if (p.successors().size() > 1) {
+                    at = new BasicBlock(p.label + "_" + b.label);
+                    at.terminator = new Jump(b);
+                    p.terminator.replaceSuccessor(b, at);
+                    f.blocks.add(f.blocks.indexOf(p) + 1, at);
+                }
+                sequentialize(f, dests, sources, at.instructions);
+            }
+        }
+        f.computePredecessors();
+    }
+
+    /*
+     * Merges every phi with those of its operands it does not interfere with, by the test of
+     * Budimlic et al.: of two SSA temporaries, the one whose definition dominates the other's
+     * must not be live right after that other definition.
+     */
+    private static void coalesce(Function f) {
+        List<Phi> phis = new ArrayList<>();
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions)
+                if (in instanceof Phi)
+                    phis.add((Phi) in);
+        if (phis.isEmpty())
+            return;
+        Interference interference = new Interference(f, phis);
+
+        int n = f.tempCount();
+        int[] representative = new int[n];
+        List<List<Temp>> members = new ArrayList<>(n);
+        for (int t = 0; t < n; t++) {
+            representative[t] = t;
+            members.add(null);
+        }
+        BitSet hasParam = new BitSet(n);
+        for (Temp p : f.params)
+            hasParam.set(p.id);
+        for (Phi phi : phis)
+            for (Value v : phi.incoming.values()) {
+                if (!(v instanceof Temp))
+                    continue;
+                int a = representative[phi.dest.id], b = representative[((Temp) v).id];
+                if (a == b || (hasParam.get(a) && hasParam.get(b)))
+                    continue;
+                List<Temp> as = members.get(a) == null ? List.of(f.temp(a)) : members.get(a);
+                List<Temp> bs = members.get(b) == null ? List.of(f.temp(b)) : members.get(b);
+                List<Temp> merged = interference.merge(as, bs);
+                if (merged == null)
+                    continue;
+                if (hasParam.get(b)) { // parameters keep their temporary
+                    int swap = a; a = b; b = swap;
+                    bs = as;
+                }
+                for (Temp t : bs)
+                    representative[t.id] = a;
+                members.set(a, merged);
+                members.set(b, null);
+            }
+
+        UnaryOperator<Value> rename = v -> v instanceof Temp ? f.temp(representative[((Temp) v).id]) : v;
+        for (BasicBlock b : f.blocks) {
+            for (Instr in : b.instructions) {
+                in.replaceUses(rename);
+                if (in.dest != null)
+                    in.dest = f.temp(representative[in.dest.id]);
+            }
+            b.terminator.replaceUses(rename);
+        }
+    }
+
+    /*
+     * Where the temporaries a phi reads or writes are defined and live, for coalesce. Other
+     * temporaries never take part in the test, so they are left out of the live sets.
+     */
+    private static final class Interference {
+        private final Dominators dominators;
+        private final int[] dense;       // index among the temporaries tracked, -1 for the others
+        private final BasicBlock[] definedIn;
+        private final int[] definedAt;   // index in the block, -1 for phis and parameters
+        private final BitSet[] liveOut;
+        private final int[] useStart;    // the uses of temporary t outside phis are those from
+        private final int[] useBlock;    // useStart[t] to useStart[t + 1], by block
+        private final int[] usePosition;
+        private final int[] preorder;    // of the block defining each temporary
+        private final int[] postorder;
+        private final int[] block;
+
+        Interference(Function f, List<Phi> phis) {
+            dominators = new Dominators(f);
+            dense = new int[f.tempCount()];
+            Arrays.fill(dense, -1);
+            int m = 0;
+            for (Phi phi : phis) {
+                if (dense[phi.dest.id] < 0)
+                    dense[phi.dest.id] = m++;
+                for (Value v : phi.incoming.values())
+                    if (v instanceof Temp && dense[((Temp) v).id] < 0)
+                        dense[((Temp) v).id] = m++;
+            }
+            definedIn = new BasicBlock[m];
+            definedAt = new int[m];
+            for (Temp p : f.params)
+                if (dense[p.id] >= 0)
+                    definedIn[dense[p.id]] = f.entry();
+
+            int blocks = f.blocks.size();
+            BitSet[] gen = new BitSet[blocks];
+            BitSet[] kill = new BitSet[blocks];
+            BitSet[] liveIn = new BitSet[blocks];
+            BitSet[] phiOperands = new BitSet[blocks]; // read by the phis of the successors
+            liveOut = new BitSet[blocks];
+            for (int i = 0; i < blocks; i++) {
+                gen[i] = new BitSet();
+                kill[i] = new BitSet();
+                liveIn[i] = new BitSet();
+                phiOperands[i] = new BitSet();
+                liveOut[i] = new BitSet();
+            }
+            useStart = new int[m + 1];
+            for (BasicBlock b : f.blocks) {
+                for (Instr in : b.instructions)
+                    if (!(in instanceof Phi))
+                        countUses(in);
+                countUses(b.terminator);
+            }
+            for (int t = 0; t < m; t++)
+                useStart[t + 1] += useStart[t];
+            useBlock = new int[useStart[m]];
+            usePosition = new int[useStart[m]];
+            int[] next = Arrays.copyOf(useStart, m);
+
+            for (int i = 0; i < blocks; i++) {
+                BasicBlock b = f.blocks.get(i);
+                for (int j = 0; j <= b.instructions.size(); j++) {
+                    Instr in = j < b.instructions.size() ? b.instructions.get(j) : b.terminator;
+                    if (in instanceof Phi) {
+                        for (Map.Entry<BasicBlock, Value> e : ((Phi) in).incoming.entrySet())
+                            if (e.getValue() instanceof Temp)
+                                phiOperands[e.getKey().index].set(dense[((Temp) e.getValue()).id]);
+                    } else {
+                        for (Value v : in.uses()) {
+                            int t = v instanceof Temp ? dense[((Temp) v).id] : -1;
+                            if (t < 0)
+                                continue;
+                            useBlock[next[t]] = i;
+                            usePosition[next[t]++] = j;
+                            if (!kill[i].get(t))
+                                gen[i].set(t);
+                        }
+                    }
+                    int d = in.dest == null ? -1 : dense[in.dest.id];
+                    if (d >= 0) {
+                        kill[i].set(d);
+                        definedIn[d] = b;
+                        definedAt[d] = in instanceof Phi ? -1 : j;
+                    }
+                }
+            }
+
+            // phi operands count as live out of their predecessor rather than into the block
+            List<BasicBlock> order = dominators.reversePostorder();
+            BitSet scratch = new BitSet(m);
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int k = order.size() - 1; k >= 0; k--) {
+                    BasicBlock b = order.get(k);
+                    int i = b.index;
+                    BitSet out = liveOut[i];
+                    out.or(phiOperands[i]);
+                    for (BasicBlock s : b.successors())
+                        out.or(liveIn[s.index]);
+                    scratch.clear();
+                    scratch.or(out);
+                    scratch.andNot(kill[i]);
+                    scratch.or(gen[i]);
+                    if (!scratch.equals(liveIn[i])) {
+                        liveIn[i].clear();
+                        liveIn[i].or(scratch);
+                        changed = true;
+                    }
+                }
+            }
+
+            preorder = new int[m];
+            postorder = new int[m];
+            block = new int[m];
+            for (int t = 0; t < m; t++)
+                if (definedIn[t] != null) {
+                    preorder[t] = dominators.preorder(definedIn[t]);
+                    postorder[t] = dominators.postorder(definedIn[t]);
+                    block[t] = definedIn[t].index;
+                }
+        }
+
+        private void countUses(Instr in) {
+            for (Value v : in.uses())
+                if (v instanceof Temp && dense[((Temp) v).id] >= 0)
+                    useStart[dense[((Temp) v).id] + 1]++;
+        }
+
+        /*
+         * The temporaries of two classes in dominance order, or null if one of a class
+         * interferes with one of the other. Walking them in that order with a stack of those
+         * dominating the current one builds the dominance forest of Budimlic et al., in which
+         * there is interference if and only if a temporary interferes with its parent.
+         */
+        List<Temp> merge(List<Temp> as, List<Temp> bs) {
+            if (bs.size() == 1 && as.size() > 1)
+                return insert(as, bs.get(0));
+            if (as.size() == 1 && bs.size() > 1)
+                return insert(bs, as.get(0));
+            List<Temp> merged = new ArrayList<>(as.size() + bs.size());
+            int i = 0, j = 0;
+            while (i < as.size() || j < bs.size()) {
+                if (j == bs.size() || (i < as.size() && before(dense[as.get(i).id], dense[bs.get(j).id])))
+                    merged.add(as.get(i++));
+                else
+                    merged.add(bs.get(j++));
+            }
+            int[] stack = new int[merged.size()];
+            int top = 0;
+            for (Temp t : merged) {
+                int c = dense[t.id];
+                if (definedIn[c] == null)
+                    continue;
+                while (top > 0 && !dominates(stack[top - 1], c))
+                    top--;
+                if (top > 0 && liveAfter(stack[top - 1], c))
+                    return null;
+                stack[top++] = c;
+            }
+            return merged;
+        }
+
+        /*
+         * Merges a single temporary into a class, checking it against its parent and its
+         * children in the forest only, the class alone having no interference.
+         */
+        private List<Temp> insert(List<Temp> members, Temp t) {
+            int c = dense[t.id];
+            if (definedIn[c] == null)
+                return null;
+            int lo = 0, hi = members.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (before(dense[members.get(mid).id], c))
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            for (int i = lo - 1; i >= 0; i--) {
+                int parent = dense[members.get(i).id];
+                if (definedIn[parent] != null && dominates(parent, c)) {
+                    if (liveAfter(parent, c))
+                        return null;
+                    break;
+                }
+            }
+            int child = -1;
+            for (int i = lo; i < members.size(); i++) {
+                int d = dense[members.get(i).id];
+                if (definedIn[d] == null)
+                    continue;
+                if (!dominates(c, d))
+                    break;
+                if (child >= 0 && dominates(child, d))
+                    continue;   // a grandchild
+                if (liveAfter(c, d))
+                    return null;
+                child = d;
+            }
+            List<Temp> merged = new ArrayList<>(members.size() + 1);
+            merged.addAll(members.subList(0, lo));
+            merged.add(t);
+            merged.addAll(members.subList(lo, members.size()));
+            return merged;
+        }
+
+        private boolean before(int a, int b) {
+            return preorder[a] != preorder[b] ? preorder[a] < preorder[b] : definedAt[a] < definedAt[b];
+        }
+
+        private boolean dominates(int a, int b) {
+            if (definedIn[a] == definedIn[b])
+                return definedAt[a] <= definedAt[b];
+            return preorder[a] <= preorder[b] && postorder[b] <= postorder[a];
+        }
+
+        /*
+         * Whether a is still needed after the definition of b.
+         */
+        private boolean liveAfter(int a, int b) {
+            if (liveOut[block[b]].get(a))
+                return true;
+            // the last use of a in the block of b, the uses being in order
+            int lo = useStart[a], hi = useStart[a + 1];
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (useBlock[mid] <= block[b])
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo > useStart[a] && useBlock[lo - 1] == block[b] && usePosition[lo - 1] > definedAt[b];
+        }
+    }
+
+    /*
+     * Appends copies doing dests[i] = sources[i] for all i at once.
+     */
+    private static void sequentialize(Function f, List<Temp> dests, List<Value> sources, List<Instr> out) {
+        while (!dests.isEmpty()) {
+            boolean progress = false;
+            for (int i = 0; i < dests.size(); i++) {
+                if (sources.contains(dests.get(i)))
+                    continue;
+                out.add(new Copy(dests.remove(i), sources.remove(i)));
+                i--;
+                progress = true;
+            }
+            if (progress)
+                continue;
+            // only cycles are left: save one of the destinations and read it from there
+            Temp saved = dests.get(0);
+            Temp temp = f.newTemp(null);
+            out.add(new Copy(temp, saved));
+            sources.replaceAll(v -> v == saved ? temp : v);
+        }
+    }
+}
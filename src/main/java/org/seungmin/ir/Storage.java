@@ -0,0 +1,20 @@
+package org.seungmin.ir;
+
+/**
+ * Memory whose address is taken with AddressOf: a global of the data segment or a slot of the
+ * frame of a function.
+ */
+public abstract class Storage {
+    public final String name;
+    public final int size; // in bytes
+
+    Storage(String name, int size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,45 @@
+package org.seungmin.ir;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+public final class Store extends Instr {
+    public Value address;
+    public int offset;
+    public Value value;
+    public final Width width;
+
+    public Store(Value address, int offset, Value value, Width width) {
+        super(null);
+        this.address = address;
+        this.offset = offset;
+        this.value = value;
+        this.width = width;
+    }
+
+    @Override
+    public List<Value> uses() {
+        return Arrays.asList(address, value);
+    }
+
+    @Override
+    public void replaceUses(UnaryOperator<Value> map) {
+        address = map.apply(address);
+        value = map.apply(value);
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    public <T> T accept(InstrVisitor<T> v) {
+        return v.visitStore(this);
+    }
+
+    @Override
+    public String toString() {
+        return "store." + (width == Width.BYTE ? "b" : "w") + " [" + address + (offset != 0 ? " + " + offset : "") + "], " + value;
+    }
+}
@@ -0,0 +1,55 @@
+package org.seungmin.ir;
+
+/**
+ * Turns the calls a function makes to itself in tail position, a call whose result, if any,
+ * is returned right away, into a jump back to its start, so that a tail-recursive function runs
+ * in a single frame.
+ *
+ * The arguments are copied to fresh temporaries first, then to the parameters, as they may
+ * read the parameters they replace. The jump goes to the old entry block, which still copies
+ * the parameters passed by address into the frame; a new empty entry is put before it, as
+ * the entry of a function must have no predecessors. It runs before SSA.construct.
+ */
+public final class TailCalls {
+
+    private TailCalls() {
+    }
+
+    /*
+     * Returns the number of calls replaced.
+     */
+    public static int run(Function f) {
+        BasicBlock start = f.entry();
+        int replaced = 0;
+        for (BasicBlock b : f.blocks) {
+            if (!isTailCall(f, b))
+                continue;
+            Call call = (Call) b.instructions.remove(b.instructions.size() - 1);
+            Temp[] args = new Temp[call.args.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = f.newTemp(null);
+                b.instructions.add(new Copy(args[i], call.args.get(i)));
+            }
+            for (int i = 0; i < args.length; i++)
+                b.instructions.add(new Copy(f.params.get(i), args[i]));
+            b.terminator = new Jump(start);
+            replaced++;
+        }
+        if (replaced > 0) {
+            BasicBlock entry = new BasicBlock("tail_" + f.name);
+            entry.terminator = new Jump(start);
+            f.blocks.add(0, entry);
+            f.computePredecessors();
+        }
+        return replaced;
+    }
+
+    private static boolean isTailCall(Function f, BasicBlock b) {
+        if (b.instructions.isEmpty() || !(b.terminator instanceof Return))
+            return false;
+        Instr last = b.instructions.get(b.instructions.size() - 1);
+        if (!(last instanceof Call) || ((Call) last).builtin || !((Call) last).function.equals(f.name))
+            return false;
+        return ((Return) b.terminator).value == last.dest;
+    }
+}
@@ -0,0 +1,20 @@
+package org.seungmin.ir;
+
+/**
+ * A temporary of a function, numbered from 0. Temporaries holding a variable of the source are
+ * named after it, they may be assigned more than once until the code is put in SSA form.
+ */
+public final class Temp implements Value {
+    public final int id;
+    public final String name; // null for the intermediate results of expressions
+
+    Temp(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name == null ? "t" + id : name + "." + id;
+    }
+}
@@ -0,0 +1,22 @@
+package org.seungmin.ir;
+
+import java.util.List;
+
+/**
+ * The instruction ending a basic block, the only one that transfers control.
+ */
+public abstract class Terminator extends Instr {
+
+    protected Terminator() {
+        super(null);
+    }
+
+    public abstract List<BasicBlock> successors();
+
+    public abstract void replaceSuccessor(BasicBlock from, BasicBlock to);
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+}
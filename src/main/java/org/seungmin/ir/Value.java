@@ -0,0 +1,7 @@
+package org.seungmin.ir;
+
+/**
+ * An operand of an IR instruction: a temporary or an integer constant.
+ */
+public interface Value {
+}
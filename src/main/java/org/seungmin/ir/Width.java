@@ -0,0 +1,5 @@
+package org.seungmin.ir;
+
+public enum Width {
+    BYTE, WORD
+}
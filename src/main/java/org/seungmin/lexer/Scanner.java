@@ -1,20 +1,58 @@
 package org.seungmin.lexer;
 
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
 /**
  * @author cdubach
  */
 public class Scanner {
 
-    private BufferedReader input;
-    private int peeked = -1;
+    /*
+     * Sentinel returned by peekChar() and nextChar() once the whole input has been consumed.
+     */
+    public static final int EOF = -1;
+
+    // the whole source file, decoded once; characters are read with absolute indexing
+    private final CharBuffer input;
+    private final int length;
+    private int index = 0;
 
     private int line = 1;
     private int column = 0;
 
     public Scanner(File source) throws FileNotFoundException {
-        input = new BufferedReader(new FileReader(source));
+        input = map(source);
+        length = input.limit();
+    }
+
+    /*
+     * Reads the source from memory, e.g. a file held by a build daemon.
+     */
+    public Scanner(CharSequence source) {
+        input = CharBuffer.wrap(source);
+        length = input.limit();
+    }
+
+    /*
+     * Memory-maps the source file and decodes it in a single pass with the platform charset,
+     * which is what the FileReader based implementation used to do one character at a time.
+     */
+    private static CharBuffer map(File source) throws FileNotFoundException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Charset.defaultCharset().decode(bytes);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            FileNotFoundException fnf = new FileNotFoundException(source + " could not be read: " + e.getMessage());
+            fnf.initCause(e);
+            throw fnf;
+        }
     }
 
 
@@ -26,31 +64,37 @@ public class Scanner {
         return line;
     }
 
-    public char peek() throws IOException {
-        if (peeked != -1)
-            return (char)peeked;
-
-        int r = input.read();
-        if (r == -1)
-            throw new EOFException();
+    /*
+     * Index in source() of the next character to be read.
+     */
+    public int offset() {
+        return index;
+    }
 
-        peeked = r;
-        return (char) r;
+    /*
+     * The whole decoded input, tokens keep slices of it instead of copies.
+     */
+    public CharSequence source() {
+        return input;
     }
 
+    /*
+     * Returns the next character without consuming it, or EOF at the end of the input.
+     */
+    public int peekChar() {
+        if (index < length)
+            return input.get(index);
+        return EOF;
+    }
 
-    public char next() throws IOException {
-        char r;
-        if (peeked != -1) {
-            r = (char) peeked;
-            peeked = -1;
-        } else {
-            int i = input.read();
-            if (i == -1)
-                throw new EOFException();
-            r = (char) i;
-        }
+    /*
+     * Consumes and returns the next character, or returns EOF at the end of the input.
+     */
+    public int nextChar() {
+        if (index >= length)
+            return EOF;
 
+        char r = input.get(index++);
         if (r == '\n' || r == '\r') {
             line++;
             column =0;
@@ -61,10 +105,7 @@ public class Scanner {
     }
 
     public void close() throws IOException {
-
-
-
-        input.close();
+        // nothing to release, the mapping is dropped once the buffer is decoded
     }
 
 
@@ -0,0 +1,114 @@
+package org.seungmin.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Per-compilation table of interned identifier names.
+ *
+ * Each distinct name gets a dense int id, handed out in order of first appearance, and is
+ * allocated as a String only once. Lookups hash the characters straight from the source
+ * buffer, so interning a name that has already been seen allocates nothing.
+ */
+public class SymbolTable {
+
+    private static final int EMPTY = -1;
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+
+    // open addressing table of ids, always a power of two and at most half full
+    private int[] slots = new int[128];
+
+    public SymbolTable() {
+        Arrays.fill(slots, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Returns the name of the given id.
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /*
+     * Returns the id of the characters text[start, end), adding them to the table if needed.
+     */
+    public int intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + text.charAt(i);
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY) {
+                id = add(text.subSequence(start, end).toString(), hash);
+                slots[slot] = id;
+                if (size * 2 > slots.length)
+                    rehash();
+                return id;
+            }
+            if (hashes[id] == hash && matches(names[id], text, start, end))
+                return id;
+        }
+    }
+
+    /*
+     * Returns the id of the given name, or -1 if it has never been interned.
+     */
+    public int lookup(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY)
+                return -1;
+            if (hashes[id] == hash && names[id].equals(name))
+                return id;
+        }
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            slots[slot] = id;
+        }
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+        for (int i = start; i < end; i++)
+            if (name.charAt(i - start) != text.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
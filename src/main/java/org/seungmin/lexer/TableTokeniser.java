@@ -0,0 +1,290 @@
+package org.seungmin.lexer;
+
+import org.seungmin.lexer.Token.TokenClass;
+import org.seungmin.util.Position;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Table-driven variant of the Tokeniser.
+ *
+ * Every ASCII character is mapped to a character class through a precomputed byte[128] table,
+ * and tokens (operators, delimiters, keywords, identifiers and literals) are recognised by a
+ * single DFA whose transition table is indexed by (state, class). Both tables are built once,
+ * when the class is loaded. Keywords are states of the DFA, so no String is built to tell them
+ * apart from identifiers. A failed match is reported and recovered from exactly like the Tokeniser
+ * does, so both modes produce the same diagnostics.
+ */
+public class TableTokeniser extends Tokeniser {
+
+    // shared character classes, every other significant ASCII character gets a class of its own
+    private static final byte C_OTHER = 0;
+    private static final byte C_WS = 1;
+    private static final byte C_LETTER = 2;
+    private static final byte C_DIGIT = 3;
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+    private static final int CLASSES;
+
+    private static final int DEAD = 0;
+    private static final int START = 1;
+    private static final int COMMENT;
+
+    private static final short[] DELTA;
+    private static final TokenClass[] ACCEPT;
+    // for every state that does not accept, the token a failed match there recovers to
+    private static final TokenClass[] RECOVER;
+
+    // construction state, only used while the tables are built
+    private static final List<TokenClass> acceptBuilder = new ArrayList<>();
+    private static final List<TokenClass> recoverBuilder = new ArrayList<>();
+    private static short[] deltaBuilder;
+
+    static {
+        String significant = "+-*/%=!<>&|.{}()[];,\"'#";
+        for (String kw : KEYWORDS)
+            significant += kw;
+        significant += "include";
+
+        byte next = C_DIGIT + 1;
+        for (int c = 0; c < 128; c++) {
+            if (significant.indexOf(c) >= 0)
+                CHAR_CLASS[c] = next++;
+            else if (Character.isWhitespace(c))
+                CHAR_CLASS[c] = C_WS;
+            else if (Character.isLetter(c) || c == '_')
+                CHAR_CLASS[c] = C_LETTER;
+            else if (Character.isDigit(c))
+                CHAR_CLASS[c] = C_DIGIT;
+            else
+                CHAR_CLASS[c] = C_OTHER;
+        }
+        CLASSES = next;
+
+        deltaBuilder = new short[64 * CLASSES];
+        newState(null); // DEAD
+        newState(null); // START
+
+        // delimiters and single character operators
+        single('{', TokenClass.LBRA);
+        single('}', TokenClass.RBRA);
+        single('(', TokenClass.LPAR);
+        single(')', TokenClass.RPAR);
+        single('[', TokenClass.LSBR);
+        single(']', TokenClass.RSBR);
+        single(';', TokenClass.SC);
+        single(',', TokenClass.COMMA);
+        single('+', TokenClass.PLUS);
+        single('-', TokenClass.MINUS);
+        single('*', TokenClass.ASTERIX);
+        single('%', TokenClass.REM);
+        single('.', TokenClass.DOT);
+
+        // operators sharing a prefix
+        int div = single('/', TokenClass.DIV);
+        COMMENT = newState(null);
+        edge(div, '/', COMMENT);
+        edge(single('=', TokenClass.ASSIGN), '=', newState(TokenClass.EQ));
+        edge(single('<', TokenClass.LT), '=', newState(TokenClass.LE));
+        edge(single('>', TokenClass.GT), '=', newState(TokenClass.GE));
+        edge(recover(single('!', null), TokenClass.NE), '=', newState(TokenClass.NE));
+        edge(recover(single('&', null), TokenClass.AND), '&', newState(TokenClass.AND));
+        edge(recover(single('|', null), TokenClass.OR), '|', newState(TokenClass.OR));
+        for (int state : word("#include", TokenClass.INCLUDE, null))
+            recover(state, TokenClass.INCLUDE);
+
+        // keywords, every prefix of a keyword is an identifier
+        List<Integer> identifierStates = new ArrayList<>();
+        for (int i = 0; i < KEYWORDS.length; i++)
+            identifierStates.addAll(word(KEYWORDS[i], KEYWORD_CLASSES[i], TokenClass.IDENTIFIER));
+
+        // identifiers
+        int ident = newState(TokenClass.IDENTIFIER);
+        identifierStates.add(ident);
+        for (int cls = 0; cls < CLASSES; cls++) {
+            if (!isIdentifierClass(cls))
+                continue;
+            if (cls != C_DIGIT && target(START, cls) == DEAD)
+                setTarget(START, cls, ident);
+            for (int state : identifierStates)
+                if (target(state, cls) == DEAD)
+                    setTarget(state, cls, ident);
+        }
+
+        // int literals
+        int intLiteral = newState(TokenClass.INT_LITERAL);
+        setTarget(START, C_DIGIT, intLiteral);
+        setTarget(intLiteral, C_DIGIT, intLiteral);
+
+        // string literals: anything up to the closing double quote
+        int string = single('"', null);
+        int stringEnd = newState(TokenClass.STRING_LITERAL);
+        for (int cls = 0; cls < CLASSES; cls++)
+            setTarget(string, cls, string);
+        edge(string, '"', stringEnd);
+
+        // char literals: a quote, any character and a closing quote
+        int charStart = recover(single('\'', null), TokenClass.CHAR_LITERAL);
+        int charBody = recover(newState(null), TokenClass.CHAR_LITERAL);
+        for (int cls = 0; cls < CLASSES; cls++)
+            setTarget(charStart, cls, charBody);
+        edge(charBody, '\'', newState(TokenClass.CHAR_LITERAL));
+
+        ACCEPT = acceptBuilder.toArray(new TokenClass[0]);
+        RECOVER = recoverBuilder.toArray(new TokenClass[0]);
+        DELTA = Arrays.copyOf(deltaBuilder, ACCEPT.length * CLASSES);
+        deltaBuilder = null;
+        acceptBuilder.clear();
+        recoverBuilder.clear();
+    }
+
+    private static int newState(TokenClass accepts) {
+        int state = acceptBuilder.size();
+        acceptBuilder.add(accepts);
+        recoverBuilder.add(null);
+        if ((state + 1) * CLASSES > deltaBuilder.length)
+            deltaBuilder = Arrays.copyOf(deltaBuilder, deltaBuilder.length * 2);
+        return state;
+    }
+
+    private static int recover(int state, TokenClass recovers) {
+        recoverBuilder.set(state, recovers);
+        return state;
+    }
+
+    private static int target(int state, int cls) {
+        return deltaBuilder[state * CLASSES + cls];
+    }
+
+    private static void setTarget(int state, int cls, int target) {
+        deltaBuilder[state * CLASSES + cls] = (short) target;
+    }
+
+    private static void edge(int from, char c, int to) {
+        setTarget(from, CHAR_CLASS[c], to);
+    }
+
+    private static int single(char c, TokenClass accepts) {
+        int state = newState(accepts);
+        edge(START, c, state);
+        return state;
+    }
+
+    /*
+     * Adds a path for the given word starting from START, sharing existing prefixes.
+     * Intermediate states accept prefixClass; returns all the states along the path.
+     */
+    private static List<Integer> word(String w, TokenClass accepts, TokenClass prefixClass) {
+        List<Integer> path = new ArrayList<>();
+        int state = START;
+        for (int i = 0; i < w.length(); i++) {
+            int cls = CHAR_CLASS[w.charAt(i)];
+            int next = target(state, cls);
+            if (next == DEAD) {
+                next = newState(prefixClass);
+                setTarget(state, cls, next);
+            }
+            state = next;
+            path.add(state);
+        }
+        acceptBuilder.set(state, accepts);
+        return path;
+    }
+
+    private static boolean isIdentifierClass(int cls) {
+        if (cls == C_LETTER || cls == C_DIGIT)
+            return true;
+        for (int c = 0; c < 128; c++)
+            if (CHAR_CLASS[c] == cls)
+                return Character.isLetterOrDigit(c);
+        return false;
+    }
+
+    private static int classOf(int c) {
+        if (c < 128)
+            return CHAR_CLASS[c];
+        if (Character.isWhitespace(c))
+            return C_WS;
+        if (Character.isLetter(c))
+            return C_LETTER;
+        return C_OTHER;
+    }
+
+    private static boolean isLiteral(TokenClass tokenClass) {
+        return tokenClass == TokenClass.INT_LITERAL
+                || tokenClass == TokenClass.STRING_LITERAL || tokenClass == TokenClass.CHAR_LITERAL;
+    }
+
+
+    public TableTokeniser(Scanner scanner) {
+        super(scanner);
+    }
+
+    public TableTokeniser(Scanner scanner, SymbolTable symbols) {
+        super(scanner, symbols);
+    }
+
+    @Override
+    public Token nextToken() {
+        while (true) {
+            int line = scanner.getLine();
+            int column = scanner.getColumn();
+            int c = scanner.peekChar();
+            if (c == Scanner.EOF)
+                return new Token(TokenClass.EOF, line, column);
+
+            int cls = classOf(c);
+            if (cls == C_WS) {
+                scanner.nextChar();
+                continue;
+            }
+
+            // run the DFA for as long as there is a transition (longest match)
+            int start = scanner.offset();
+            int state = START;
+            while (true) {
+                int next = DELTA[state * CLASSES + cls];
+                if (next == DEAD)
+                    break;
+                scanner.nextChar();
+                state = next;
+                c = scanner.peekChar();
+                if (c == Scanner.EOF)
+                    break;
+                cls = classOf(c);
+            }
+
+            if (state == COMMENT) {
+                do {
+                    c = scanner.nextChar();
+                } while (c != '\n' && c != Scanner.EOF);
+                continue;
+            }
+
+            TokenClass tokenClass = ACCEPT[state];
+            if (tokenClass == TokenClass.IDENTIFIER) {
+                int symbol = symbols.intern(scanner.source(), start, scanner.offset());
+                String name = symbols.name(symbol);
+                return new Token(tokenClass, symbol, name, 0, name.length(), Position.pack(line, column));
+            }
+            if (isLiteral(tokenClass))
+                return new Token(tokenClass, -1, scanner.source(), start, scanner.offset() - start, Position.pack(line, column));
+            if (tokenClass != null)
+                return new Token(tokenClass, line, column);
+
+            // if we reach this point, it means we did not recognise a valid token:
+            // report its first character and consume the offending one, as the Tokeniser does
+            TokenClass recovered = RECOVER[state];
+            if (state == START || (recovered != null && c != Scanner.EOF))
+                scanner.nextChar();
+            error(scanner.source().charAt(start), line, column);
+            if (recovered == null)
+                return new Token(TokenClass.INVALID, line, column);
+            if (isLiteral(recovered))
+                return new Token(recovered, -1, scanner.source(), start, scanner.offset() - start, Position.pack(line, column));
+            return new Token(recovered, line, column);
+        }
+    }
+}
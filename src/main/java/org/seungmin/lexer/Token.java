@@ -76,30 +76,56 @@ public class Token {
 
 
     public final TokenClass tokenClass;
-    public final String data;
-    public final Position position;
+
+    // id of the identifier in the compilation's SymbolTable, -1 for any other token
+    public final int symbol;
+
+    // line and column, packed with Position.pack
+    public final long packedPosition;
+
+    // the token text is text[offset, offset+length): the interned name of an identifier,
+    // or a slice of the source buffer for literals
+    final CharSequence text;
+    final int offset;
+    final int length;
 
     public Token(TokenClass type, int lineNum, int colNum) {
         this(type, "", lineNum, colNum);
     }
 
     public Token (TokenClass tokenClass, String data, int lineNum, int colNum) {
+        this(tokenClass, -1, data, 0, data.length(), Position.pack(lineNum, colNum));
+    }
+
+    public Token(TokenClass tokenClass, int symbol, CharSequence text, int offset, int length, long packedPosition) {
         assert (tokenClass != null);
         this.tokenClass = tokenClass;
-        this.data = data;
-        this.position = new Position(lineNum, colNum);
+        this.symbol = symbol;
+        this.text = text;
+        this.offset = offset;
+        this.length = length;
+        this.packedPosition = packedPosition;
     }
 
+    /*
+     * The token text. Identifiers return their interned name, literals are copied out of the source on demand.
+     */
+    public String data() {
+        if (text instanceof String && offset == 0 && length == text.length())
+            return (String) text;
+        return text.subSequence(offset, offset + length).toString();
+    }
 
+    public Position position() {
+        return new Position(Position.line(packedPosition), Position.column(packedPosition));
+    }
 
     @Override
     public String toString() {
-        if (data.equals(""))
+        if (length == 0)
             return tokenClass.toString();
         else
-            return tokenClass.toString()+"("+data+")";
+            return tokenClass.toString()+"("+data()+")";
     }
 
 }
-
-
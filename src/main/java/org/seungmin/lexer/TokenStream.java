@@ -0,0 +1,140 @@
+package org.seungmin.lexer;
+
+import org.seungmin.lexer.Token.TokenClass;
+
+import java.util.Arrays;
+
+/**
+ * A whole file, tokenised up front into parallel primitive arrays (struct-of-arrays).
+ *
+ * Token i is described by kinds[i] (the TokenClass ordinal), textIds[i] and positions[i]
+ * (Position.pack'ed). The text id of an identifier is its id in the SymbolTable, that of a
+ * literal its index in literalOffsets and literalLengths, which locate its text in the source,
+ * kept apart so that the table only holds names; tokens without text have -1. The last token is
+ * always EOF. Strings and Token objects are only created on demand by text(i) and token(i).
+ */
+public class TokenStream {
+
+    private static final TokenClass[] TOKEN_CLASSES = TokenClass.values();
+
+    private byte[] kinds;
+    private int[] textIds;
+    private long[] positions;
+    private int size = 0;
+
+    private final SymbolTable symbols;
+    private final CharSequence source;
+    private int[] literalOffsets;
+    private int[] literalLengths;
+    private int literalCount = 0;
+    private final int lexErrors;
+
+    private TokenStream(SymbolTable symbols, Tokeniser tokeniser, int capacity) {
+        this.symbols = symbols;
+        source = tokeniser.scanner.source();
+        kinds = new byte[capacity];
+        textIds = new int[capacity];
+        positions = new long[capacity];
+        literalOffsets = new int[capacity / 4];
+        literalLengths = new int[capacity / 4];
+
+        Token t;
+        do {
+            t = tokeniser.nextToken();
+            add(t);
+        } while (t.tokenClass != TokenClass.EOF);
+        lexErrors = tokeniser.getErrorCount();
+    }
+
+    /*
+     * Drains the tokeniser up to and including the EOF token.
+     */
+    public static TokenStream lex(Tokeniser tokeniser) {
+        return new TokenStream(tokeniser.getSymbolTable(), tokeniser, 1024);
+    }
+
+    private void add(Token t) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            textIds = Arrays.copyOf(textIds, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        kinds[size] = (byte) t.tokenClass.ordinal();
+        if (t.symbol >= 0) {
+            textIds[size] = t.symbol;
+        } else if (t.length > 0) {
+            textIds[size] = addLiteral(t);
+        } else {
+            textIds[size] = -1;
+        }
+        positions[size] = t.packedPosition;
+        size++;
+    }
+
+    /*
+     * Literal tokens are slices of the scanner's source, only their bounds are kept.
+     */
+    private int addLiteral(Token t) {
+        assert t.text == source;
+        if (literalCount == literalOffsets.length) {
+            int capacity = literalCount * 2;
+            literalOffsets = Arrays.copyOf(literalOffsets, capacity);
+            literalLengths = Arrays.copyOf(literalLengths, capacity);
+        }
+        literalOffsets[literalCount] = t.offset;
+        literalLengths[literalCount] = t.length;
+        return literalCount++;
+    }
+
+    /*
+     * Number of tokens, including the final EOF.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getErrorCount() {
+        return lexErrors;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /*
+     * Indices past the end refer to the final EOF token.
+     */
+    public TokenClass kind(int i) {
+        return TOKEN_CLASSES[kinds[Math.min(i, size - 1)]];
+    }
+
+    public int textId(int i) {
+        return textIds[Math.min(i, size - 1)];
+    }
+
+    public long position(int i) {
+        return positions[Math.min(i, size - 1)];
+    }
+
+    public String text(int i) {
+        int id = textId(i);
+        if (id < 0)
+            return "";
+        if (kind(i) == TokenClass.IDENTIFIER)
+            return symbols.name(id);
+        return source.subSequence(literalOffsets[id], literalOffsets[id] + literalLengths[id]).toString();
+    }
+
+    /*
+     * Materialises token i as a Token object.
+     */
+    public Token token(int i) {
+        TokenClass kind = kind(i);
+        int id = textId(i);
+        if (id >= 0 && kind != TokenClass.IDENTIFIER)
+            return new Token(kind, -1, source, literalOffsets[id], literalLengths[id], position(i));
+        String text = text(i);
+        return new Token(kind, kind == TokenClass.IDENTIFIER ? id : -1, text, 0, text.length(), position(i));
+    }
+}
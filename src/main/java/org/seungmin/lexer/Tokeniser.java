@@ -1,9 +1,10 @@
 package org.seungmin.lexer;
 
 import org.seungmin.lexer.Token.TokenClass;
+import org.seungmin.util.Diagnostic;
+import org.seungmin.util.Diagnostics;
+import org.seungmin.util.Position;
 
-import java.io.EOFException;
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -13,13 +14,18 @@ import java.util.Map;
  */
 public class Tokeniser {
 
-    private Scanner scanner;
+    static final String[] KEYWORDS = {"int", "void", "char", "if", "else", "while", "return", "struct", "sizeof"};
+    static final TokenClass[] KEYWORD_CLASSES = {TokenClass.INT, TokenClass.VOID, TokenClass.CHAR, TokenClass.IF,
+            TokenClass.ELSE, TokenClass.WHILE, TokenClass.RETURN, TokenClass.STRUCT, TokenClass.SIZEOF};
+
+    protected final Scanner scanner;
+    protected final SymbolTable symbols;
 
     private int error = 0;
+    private Diagnostics diagnostics = Diagnostics.CONSOLE;
     private final Map<Character, TokenClass> delimitersTokenClassMap = new HashMap<>();
     private final Map<Character, TokenClass> singleOperatorTokenClassMap = new HashMap<>();
     private final HashSet<Character> operatorStartChars = new HashSet<>();
-    private final StringBuilder tokenStringBuilder = new StringBuilder();
 
 
 
@@ -28,109 +34,117 @@ public class Tokeniser {
     }
 
     public Tokeniser(Scanner scanner) {
+        this(scanner, new SymbolTable());
+    }
+
+    public Tokeniser(Scanner scanner, SymbolTable symbols) {
         this.scanner = scanner;
+        this.symbols = symbols;
         init();
     }
 
-    private void error(char c, int line, int col) {
-        System.out.println("Lexing error: unrecognised character ("+c+") at "+line+":"+col);
+    /*
+     * The table in which identifiers are interned; Token.symbol indexes into it.
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /*
+     * Errors are reported to Diagnostics.CONSOLE unless another sink is set.
+     */
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    protected void error(char c, int line, int col) {
+        diagnostics.report(new Diagnostic(Diagnostic.Kind.LEXER, "unrecognised character ("+c+")", new Position(line, col)));
         error++;
     }
 
 
     public Token nextToken() {
-        Token result;
         try {
-            result = next();
-        } catch (EOFException eof) {
-            // end of file, nothing to worry about, just return EOF token
-            return new Token(TokenClass.EOF, scanner.getLine(), scanner.getColumn());
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-            // something went horribly wrong, abort
-            System.exit(-1);
-            return null;
+            return next();
         } catch (UnrecognizedCharacterException e) {
             throw new RuntimeException(e);
         }
-        return result;
     }
 
     /*
-     * To be completed
+     * End of input is signalled by Scanner.EOF rather than an exception, so every lookahead
+     * below checks for it inline.
      */
-    private Token next() throws IOException, UnrecognizedCharacterException {
-        int line = scanner.getLine();
-        int column = scanner.getColumn();
-        // get the next character
-        char c = scanner.next();
-
-        // skip white spaces
-        if (Character.isWhitespace(c))
-            return next();
+    private Token next() throws UnrecognizedCharacterException {
+        int line;
+        int column;
+        int next;
+        while (true) {
+            line = scanner.getLine();
+            column = scanner.getColumn();
+            // get the next character
+            next = scanner.nextChar();
+
+            // end of file, nothing to worry about, just return EOF token
+            if (next == Scanner.EOF)
+                return new Token(TokenClass.EOF, line, column);
+
+            // skip white spaces and comments
+            if (Character.isWhitespace(next))
+                continue;
+            if (next == '/' && isComment()) {
+                throwAwayComment();
+                continue;
+            }
+            break;
+        }
+        char c = (char) next;
+        int start = scanner.offset() - 1;
 
         //operators, comparisons, logical_operators, struct member access
         if (isOperatorStartChar(c)) {
-            if(isOperatorChar(c) && c != '/') {
-                clearTokenStringBuilder();
-                return new Token(singleOperatorTokenClassMap.get(c), "", line, column);
-            }
-            if (c == '/') {
-                if(isComment()){
-                    throwAwayComment();
-                    return next();
-                }
-                clearTokenStringBuilder();
+            if(isOperatorChar(c)) {
                 return new Token(singleOperatorTokenClassMap.get(c), "", line, column);
             }
 
             if (c == '&'){
-                expectFullString("&&", c);
-                clearTokenStringBuilder();
+                expectFullString("&&", line, column);
                 return new Token(TokenClass.AND, "", line, column);
             }
 
             if (c == '|'){
-                expectFullString("||", c);
-                clearTokenStringBuilder();
+                expectFullString("||", line, column);
                 return new Token(TokenClass.OR, "", line, column);
             }
 
             if (c == '!'){
-                expectFullString("!=", c);
-                clearTokenStringBuilder();
+                expectFullString("!=", line, column);
                 return new Token(TokenClass.NE, "",line,column);
             }
 
             if (c == '='){
-                boolean matched = isFirstParamToken("=", "==", c);
+                boolean matched = isFirstParamToken("=", "==", c, line, column);
                 if(matched){
-                    clearTokenStringBuilder();
                     return new Token(TokenClass.ASSIGN, "",line,column);
                 } else {
-                    clearTokenStringBuilder();
                     return new Token(TokenClass.EQ, "",line,column);
                 }
             }
 
             if (c == '<'){
-                boolean matched = isFirstParamToken("<","<=", c);
+                boolean matched = isFirstParamToken("<","<=", c, line, column);
                 if(matched){
-                    clearTokenStringBuilder();
                     return new Token(TokenClass.LT, "",line,column);
                 } else {
-                    clearTokenStringBuilder();
                     return new Token(TokenClass.LE, "",line,column);
                 }
             }
 
             if (c == '>'){
-                boolean matched = isFirstParamToken(">",">=", c);
+                boolean matched = isFirstParamToken(">",">=", c, line, column);
                 if(matched){
-                    clearTokenStringBuilder();
                     return new Token(TokenClass.GT,"",line,column);
                 } else {
-                    clearTokenStringBuilder();
                     return new Token(TokenClass.GE,"",line,column);
                 }
             }
@@ -139,41 +153,41 @@ public class Tokeniser {
 
 
         if (c == '.') {
-            clearTokenStringBuilder();
             return new Token(TokenClass.DOT, "", line, column);
         }
 
         // delimiters
         if (isDelimiterChar(c)) {
-            clearTokenStringBuilder();
             return new Token(delimitersTokenClassMap.get(c), "", line, column);
         }
 
         //include
         if (isInclude(c)) {
-            expectFullString("#include", c);
-            clearTokenStringBuilder();
+            expectFullString("#include", line, column);
             return new Token(TokenClass.INCLUDE, "", line, column);
         }
 
         //literals
         if (isStringLiteral(c)) {
-            passStringLiteral(c);
-            return new Token(TokenClass.STRING_LITERAL, getTokenString(), line, column);
+            if (!passStringLiteral()) {
+                // unterminated string literal
+                error(c, line, column);
+                return new Token(TokenClass.INVALID, line, column);
+            }
+            return literal(TokenClass.STRING_LITERAL, start, line, column);
         }
         if (isCharLiteral(c)){
-            passCharLiteral(c);
-            return new Token(TokenClass.CHAR_LITERAL, getTokenString(), line, column);
+            passCharLiteral(line, column);
+            return literal(TokenClass.CHAR_LITERAL, start, line, column);
         }
         if (isIntLiteral(c)) {
-            passIntLiteral(c);
-            return new Token(TokenClass.INT_LITERAL, getTokenString(), line, column);
+            passIntLiteral();
+            return literal(TokenClass.INT_LITERAL, start, line, column);
         }
 
         //types keywords identifier
         if (isIdentifierOrKeyword(c) && !Character.isDigit(c)) {
-            String token = getIdentifierOrKeyword(c);
-            return handleIdentifierOrKeyword(token, line, column);
+            return identifierOrKeyword(start, line, column);
         }
 
 
@@ -183,94 +197,81 @@ public class Tokeniser {
         return new Token(TokenClass.INVALID, line, column);
     }
 
-    private boolean isFirstParamToken(String first, String second, char currentChar) throws IOException, UnrecognizedCharacterException, EOFException {
-        try {
-            if (first.charAt(0) == currentChar && second.charAt(0) == currentChar) {
-                tokenStringBuilder.append(currentChar);
-                currentChar = scanner.next();
-
-                if(second.length() > 1 && second.charAt(1) == currentChar){
-                    tokenStringBuilder.append(currentChar);
-                    return false;
-                }
-
-                return true;
+    /*
+     * Only consumes the second character when it completes the longer token,
+     * so "a=b" no longer swallows the 'b'.
+     */
+    private boolean isFirstParamToken(String first, String second, char currentChar, int line, int column) throws UnrecognizedCharacterException {
+        if (first.charAt(0) == currentChar && second.charAt(0) == currentChar) {
 
-            }else if(first.charAt(0) == currentChar){
-                expectFullString(first, currentChar);
-                return true;
-            } else if (second.charAt(0) == currentChar) {
-                expectFullString(second, currentChar);
+            if(second.length() > 1 && second.charAt(1) == scanner.peekChar()){
+                scanner.nextChar();
                 return false;
-            }else {
-                throw new UnrecognizedCharacterException(first.charAt(0) +" or " + second.charAt(0), currentChar);
             }
-        }catch (EOFException eof) {
+
             return true;
-        }
 
+        }else if(first.charAt(0) == currentChar){
+            expectFullString(first, line, column);
+            return true;
+        } else if (second.charAt(0) == currentChar) {
+            expectFullString(second, line, column);
+            return false;
+        }else {
+            throw new UnrecognizedCharacterException(first.charAt(0) +" or " + second.charAt(0), currentChar);
+        }
     }
 
-    private void throwAwayComment() throws IOException {
-        while (scanner.next() != '\n');
+    private void throwAwayComment() {
+        int c;
+        do {
+            c = scanner.nextChar();
+        } while (c != '\n' && c != Scanner.EOF);
     }
 
-    private boolean isComment() throws IOException {
-        try {return scanner.peek() == '/';}
-        catch (EOFException eof) { return false; }
+    private boolean isComment() {
+        return scanner.peekChar() == '/';
     }
 
     private boolean isOperatorChar(char c) {
         return singleOperatorTokenClassMap.containsKey(c);
     }
 
-    private Token handleIdentifierOrKeyword(String token, int line, int column) {
-        switch (token) {
-            case "int":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.INT, line, column);
-            case "void":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.VOID, line, column);
-            case "char":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.CHAR, line, column);
-            case "if":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.IF, line, column);
-            case "else":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.ELSE, line, column);
-            case "while":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.WHILE, line, column);
-            case "return":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.RETURN, line, column);
-            case "struct":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.STRUCT, line, column);
-            case "sizeof":
-                clearTokenStringBuilder();
-                return new Token(TokenClass.SIZEOF, line, column);
-            default:
-                return new Token(TokenClass.IDENTIFIER, getTokenString(), line, column);
-        }
+    /*
+     * Literal tokens keep a slice of the source instead of a copy of their text.
+     */
+    private Token literal(TokenClass tokenClass, int start, int line, int column) {
+        return new Token(tokenClass, -1, scanner.source(), start, scanner.offset() - start, Position.pack(line, column));
     }
 
-    private String getIdentifierOrKeyword(char currentChar) throws IOException {
-        tokenStringBuilder.append(currentChar);
-        try {
-            char c = scanner.peek();
+    /*
+     * Consumes the rest of an identifier or keyword starting at the given offset. Keywords are
+     * told apart on the source itself, only identifiers are interned.
+     */
+    private Token identifierOrKeyword(int start, int line, int column) {
+        while (isIdentifierOrKeyword(scanner.peekChar()))
+            scanner.nextChar();
+        int end = scanner.offset();
+        TokenClass keyword = keyword(scanner.source(), start, end);
+        if (keyword != null)
+            return new Token(keyword, line, column);
+        int symbol = symbols.intern(scanner.source(), start, end);
+        String name = symbols.name(symbol);
+        return new Token(TokenClass.IDENTIFIER, symbol, name, 0, name.length(), Position.pack(line, column));
+    }
 
-            while (isIdentifierOrKeyword(c)) {
-                tokenStringBuilder.append(scanner.next());
-                c = scanner.peek();
-            }
-            return tokenStringBuilder.toString();
-        }catch (EOFException eof) {
-            return tokenStringBuilder.toString();
+    private static TokenClass keyword(CharSequence source, int start, int end) {
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            String keyword = KEYWORDS[k];
+            if (keyword.length() != end - start)
+                continue;
+            int i = 0;
+            while (i < keyword.length() && keyword.charAt(i) == source.charAt(start + i))
+                i++;
+            if (i == keyword.length())
+                return KEYWORD_CLASSES[k];
         }
+        return null;
     }
 
 
@@ -278,56 +279,40 @@ public class Tokeniser {
         return operatorStartChars.contains(c);
     }
 
-    private boolean isStructMemberAccess(char c) {
-        return c == '.';
-    }
-
-    private boolean isIdentifierOrKeyword(char c) {
+    private boolean isIdentifierOrKeyword(int c) {
         return Character.isLetter(c) || Character.isDigit(c) || c == '_';
     }
 
-    private boolean isCharLiteral(char c) {
+    private boolean isCharLiteral(int c) {
         return c == '\'';
     }
 
-    private void passCharLiteral(char currentChar) throws IOException {
-        char c = scanner.next();
-        tokenStringBuilder.append(currentChar);
-        if(!isCharLiteral(c)) tokenStringBuilder.append(c);
-        c = scanner.next();
-        if(!isCharLiteral(c)) error(c, scanner.getLine(), scanner.getColumn());
-        tokenStringBuilder.append(c);
-    }
-
-    private void passIntLiteral(char c) throws IOException {
-        tokenStringBuilder.append(c);
-        try {
-            while (true) {
-                char nextChar = scanner.peek();
-                if (!Character.isDigit(nextChar)) break;
-                c = scanner.next();
-                tokenStringBuilder.append(c);
-            }
-        }catch (EOFException exception){}
-    }
-
-    private String getTokenString() {
-        final String tokenString = tokenStringBuilder.toString();
-        clearTokenStringBuilder();
-        return tokenString;
+    /*
+     * A malformed char literal is reported at its opening quote, the offending character is consumed.
+     */
+    private void passCharLiteral(int line, int column) {
+        int c = scanner.nextChar();
+        if (c != Scanner.EOF)
+            c = scanner.nextChar();
+        if (!isCharLiteral(c))
+            error('\'', line, column);
     }
 
-    private void clearTokenStringBuilder() {
-        tokenStringBuilder.setLength(0);
+    private void passIntLiteral() {
+        while (Character.isDigit(scanner.peekChar()))
+            scanner.nextChar();
     }
 
-    private void expectFullString(String str, char currentChar) throws IOException {
-        tokenStringBuilder.append(currentChar);
-        for (char c: str.substring(1).toCharArray()) {
-            if (c != scanner.next()) {
-                error(c, scanner.getLine(), scanner.getColumn());
+    /*
+     * Reports a mismatch once, at the first character of the token, and stops after consuming
+     * the offending character; TableTokeniser recovers the same way.
+     */
+    private void expectFullString(String str, int line, int column) {
+        for (int i = 1; i < str.length(); i++) {
+            if (scanner.nextChar() != str.charAt(i)) {
+                error(str.charAt(0), line, column);
+                return;
             }
-            tokenStringBuilder.append(c);
         }
     }
 
@@ -335,17 +320,17 @@ public class Tokeniser {
         return c == '#';
     }
 
-    private void passStringLiteral(char c) throws IOException {
-        tokenStringBuilder.append(c);
+    /*
+     * Returns false if the end of file is reached before the closing quote.
+     */
+    private boolean passStringLiteral() {
         while(true) {
-            final char nextChar = scanner.next();
-            if(nextChar == '"') {
-                tokenStringBuilder.append(nextChar);
-                break;
-            }
-            tokenStringBuilder.append(nextChar);
+            final int nextChar = scanner.nextChar();
+            if (nextChar == Scanner.EOF)
+                return false;
+            if(nextChar == '"')
+                return true;
         }
-
     }
 
     private boolean isStringLiteral(char c) {
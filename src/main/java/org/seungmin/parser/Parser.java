@@ -3,12 +3,15 @@ package org.seungmin.parser;
 import org.seungmin.ast.*;
 
 import org.seungmin.lexer.Token;
+import org.seungmin.lexer.TokenStream;
 import org.seungmin.lexer.Tokeniser;
 import org.seungmin.lexer.Token.TokenClass;
+import org.seungmin.util.Diagnostic;
+import org.seungmin.util.Diagnostics;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Queue;
 
 
 /**
@@ -16,17 +19,84 @@ import java.util.Queue;
  */
 public class Parser {
 
-    private Token token;
+    // class of the current token
+    private TokenClass tokenClass;
 
-    // use for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
-    private Queue<Token> buffer = new LinkedList<>();
+    private final TokenCursor tokens;
 
-    private final Tokeniser tokeniser;
+    // one instance per distinct type, shared by the whole program
+    private final TypeFactory types = new TypeFactory();
 
 
+    // the lengths of the lists, when known from a TokenStream; DEFAULT_SIZE otherwise
+    private static final int DEFAULT_SIZE = 10;
+    private int[] itemsWithin;        // for every {, the number of ; and { directly within it
+    private int[] declarationsWithin; // and the number of the items starting with a type
+    private int structs = DEFAULT_SIZE;
+    private int globals = DEFAULT_SIZE;
+    private int functions = DEFAULT_SIZE;
 
     public Parser(Tokeniser tokeniser) {
-        this.tokeniser = tokeniser;
+        this.tokens = TokenCursor.of(tokeniser);
+    }
+
+    /*
+     * Parses a file that has already been tokenised; lookahead is then a plain array access.
+     */
+    public Parser(TokenStream tokens) {
+        this.tokens = TokenCursor.of(tokens);
+        countItems(tokens);
+    }
+
+    /*
+     * Bounds the length of every list from the tokens, so that they are allocated once: the fields
+     * of a struct and the declarations and statements of a block each end with a ; or are a block
+     * of their own, the declarations being those starting with a type, and at the top level
+     * struct IDENT { starts a struct, ) { a function and a ; not following a } ends a variable.
+     */
+    private void countItems(TokenStream tokens) {
+        itemsWithin = new int[tokens.size()];
+        declarationsWithin = new int[tokens.size()];
+        int[] open = new int[16];
+        int depth = 0;
+        boolean itemStart = false;
+        structs = globals = functions = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenClass kind = tokens.kind(i);
+            if (itemStart && depth > 0 && isTypeToken(kind))
+                declarationsWithin[open[depth - 1]]++;
+            itemStart = kind == TokenClass.LBRA || kind == TokenClass.RBRA || kind == TokenClass.SC;
+            if (kind == TokenClass.LBRA) {
+                if (depth > 0)
+                    itemsWithin[open[depth - 1]]++;
+                else if (i >= 2 && tokens.kind(i - 2) == TokenClass.STRUCT)
+                    structs++;
+                else if (i >= 1 && tokens.kind(i - 1) == TokenClass.RPAR)
+                    functions++;
+                if (depth == open.length)
+                    open = Arrays.copyOf(open, depth * 2);
+                open[depth++] = i;
+            } else if (kind == TokenClass.RBRA) {
+                if (depth > 0)
+                    depth--;
+            } else if (kind == TokenClass.SC) {
+                if (depth > 0)
+                    itemsWithin[open[depth - 1]]++;
+                else if (i == 0 || tokens.kind(i - 1) != TokenClass.RBRA)
+                    globals++;
+            }
+        }
+    }
+
+    /*
+     * Bounds on the declarations and on the statements between the { at token index open and its }.
+     */
+    private int declarationsWithin(int open) {
+        return declarationsWithin == null ? DEFAULT_SIZE : declarationsWithin[open];
+    }
+
+    private int statementsWithin(int open) {
+        return itemsWithin == null ? DEFAULT_SIZE : Math.max(0, itemsWithin[open] - declarationsWithin[open]);
     }
 
     public Program parse() {
@@ -36,16 +106,21 @@ public class Parser {
         return parseProgram();
     }
 
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
     public int getErrorCount() {
         return error;
     }
 
     private int error = 0;
-    private Token lastErrorToken;
+    private Diagnostics diagnostics = Diagnostics.CONSOLE;
+    private int lastErrorIndex = -1;
 
     private void error(TokenClass... expected) {
 
-        if (lastErrorToken == token) {
+        if (lastErrorIndex == tokens.index()) {
             // skip this error, same token causing trouble
             return;
         }
@@ -57,31 +132,32 @@ public class Parser {
             sb.append(e);
             sep = "|";
         }
-        System.out.println("Parsing error: expected ("+sb+") found ("+token+") at "+token.position);
+        Token token = tokens.token(0);
+        diagnostics.report(new Diagnostic(Diagnostic.Kind.PARSER, "expected ("+sb+") found ("+token+")", token.position()));
 
         error++;
-        lastErrorToken = token;
+        lastErrorIndex = tokens.index();
     }
 
     /*
-     * Look ahead the i^th element from the stream of token.
-     * i should be >= 1
+     * The value of an integer literal; one that does not fit in an int is reported and read as 0.
      */
-    private Token lookAhead(int i) {
-        // ensures the buffer has the element we want to look ahead
-        while (buffer.size() < i)
-            buffer.add(tokeniser.nextToken());
-        assert buffer.size() >= i;
-
-        int cnt=1;
-        for (Token t : buffer) {
-            if (cnt == i)
-                return t;
-            cnt++;
+    private int intValue(Token literal) {
+        try {
+            return Integer.parseInt(literal.data());
+        } catch (NumberFormatException e) {
+            diagnostics.report(new Diagnostic(Diagnostic.Kind.PARSER, "integer literal out of range ("+literal.data()+")", literal.position()));
+            error++;
+            return 0;
         }
+    }
 
-        assert false; // should never reach this
-        return null;
+    /*
+     * Look ahead the i^th element from the stream of token.
+     * i should be >= 1
+     */
+    private TokenClass lookAhead(int i) {
+        return tokens.kind(i);
     }
 
 
@@ -89,10 +165,8 @@ public class Parser {
      * Consumes the next token from the tokeniser or the buffer if not empty.
      */
     private void nextToken() {
-        if (!buffer.isEmpty())
-            token = buffer.remove();
-        else
-            token = tokeniser.nextToken();
+        tokens.advance();
+        tokenClass = tokens.kind(0);
     }
 
     /*
@@ -101,8 +175,8 @@ public class Parser {
      */
     private Token expect(TokenClass... expected) {
         for (TokenClass e : expected) {
-            if (e == token.tokenClass) {
-                Token cur = token;
+            if (e == tokenClass) {
+                Token cur = tokens.token(0);
                 nextToken();
                 return cur;
             }
@@ -118,7 +192,7 @@ public class Parser {
     private boolean accept(TokenClass... expected) {
         boolean result = false;
         for (TokenClass e : expected)
-            result |= (e == token.tokenClass);
+            result |= (e == tokenClass);
         return result;
     }
 
@@ -126,36 +200,378 @@ public class Parser {
     private Program parseProgram() {
         parseIncludes();
         List<StructTypeDecl> stds = parseStructDecls();
-        List<VarDecl> vds = parseVarDecls();
+        List<VarDecl> vds = parseVarDecls(globals);
         List<FunDecl> fds = parseFunDecls();
         expect(TokenClass.EOF);
-        return new Program(stds, vds, fds);
+        return new Program(stds, vds, fds, types);
     }
 
+    /*
+     * The list productions below are loops rather than tail recursion, so a file with a very
+     * long list of declarations or statements is parsed in constant stack depth.
+     */
+
     // includes are ignored, so does not need to return an AST node
     private void parseIncludes() {
-        if (accept(TokenClass.INCLUDE)) {
+        while (accept(TokenClass.INCLUDE)) {
             nextToken();
             expect(TokenClass.STRING_LITERAL);
-            parseIncludes();
         }
     }
 
     private List<StructTypeDecl> parseStructDecls() {
-        // to be completed ...
-        return null;
+        List<StructTypeDecl> stds = new ArrayList<>(structs);
+        // struct IDENT { starts a declaration, struct IDENT on its own is the type of a variable
+        while (accept(TokenClass.STRUCT) && lookAhead(2) == TokenClass.LBRA)
+            stds.add(parseStructDecl());
+        return stds;
     }
 
-    private List<VarDecl> parseVarDecls() {
-        // to be completed ...
+    private StructTypeDecl parseStructDecl() {
+        StructType structType = parseStructType();
+        int open = tokens.index();
+        expect(TokenClass.LBRA);
+        List<VarDecl> vds = parseVarDecls(declarationsWithin(open));
+        if (vds.isEmpty())
+            error(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT);
+        expect(TokenClass.RBRA);
+        expect(TokenClass.SC);
+        return new StructTypeDecl(structType, vds);
+    }
 
-        return null;
+    private StructType parseStructType() {
+        expect(TokenClass.STRUCT);
+        Token name = expect(TokenClass.IDENTIFIER);
+        return types.struct(name == null ? null : name.data());
+    }
+
+    private List<VarDecl> parseVarDecls(int size) {
+        List<VarDecl> vds = new ArrayList<>(size);
+        while (isTypeToken() && declarationFollower() != TokenClass.LPAR)
+            vds.add(parseVarDecl());
+        return vds;
+    }
+
+    private VarDecl parseVarDecl() {
+        Type type = parseType();
+        Token name = expect(TokenClass.IDENTIFIER);
+        if (accept(TokenClass.LSBR)) {
+            nextToken();
+            Token size = expect(TokenClass.INT_LITERAL);
+            expect(TokenClass.RSBR);
+            type = types.array(type, size == null ? 0 : intValue(size));
+        }
+        expect(TokenClass.SC);
+        return new VarDecl(type, name == null ? null : name.data());
     }
 
     private List<FunDecl> parseFunDecls() {
-        // to be completed ...
-        return null;
+        List<FunDecl> fds = new ArrayList<>(functions);
+        while (isTypeToken()) {
+            int start = tokens.index();
+            fds.add(parseFunDecl());
+            if (tokens.index() == start)
+                break; // not a declaration at all, the error has already been reported
+        }
+        return fds;
+    }
+
+    private FunDecl parseFunDecl() {
+        Type type = parseType();
+        Token name = expect(TokenClass.IDENTIFIER);
+        expect(TokenClass.LPAR);
+        List<VarDecl> params = parseParams();
+        expect(TokenClass.RPAR);
+        Block block = parseBlock();
+        return new FunDecl(type, name == null ? null : name.data(), params, block);
+    }
+
+    private List<VarDecl> parseParams() {
+        List<VarDecl> params = new ArrayList<>();
+        while (isTypeToken()) {
+            Type type = parseType();
+            Token name = expect(TokenClass.IDENTIFIER);
+            params.add(new VarDecl(type, name == null ? null : name.data()));
+            if (!accept(TokenClass.COMMA))
+                break;
+            nextToken();
+        }
+        return params;
+    }
+
+    private Type parseType() {
+        Type type;
+        switch (tokenClass) {
+            case INT:
+                nextToken();
+                type = BaseType.INT;
+                break;
+            case CHAR:
+                nextToken();
+                type = BaseType.CHAR;
+                break;
+            case VOID:
+                nextToken();
+                type = BaseType.VOID;
+                break;
+            case STRUCT:
+                type = parseStructType();
+                break;
+            default:
+                error(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT);
+                return null;
+        }
+        if (accept(TokenClass.ASTERIX)) {
+            nextToken();
+            type = types.pointer(type);
+        }
+        return type;
+    }
+
+    /*
+     * Class of the token following the identifier of the declaration starting at the current token,
+     * tells variable declarations (; or [) apart from function declarations (.
+     */
+    private TokenClass declarationFollower() {
+        int i = accept(TokenClass.STRUCT) ? 2 : 1;
+        if (lookAhead(i) == TokenClass.ASTERIX)
+            i++;
+        return lookAhead(i + 1);
+    }
+
+    private boolean isTypeToken() {
+        return accept(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT);
+    }
+
+    private static boolean isTypeToken(TokenClass tokenClass) {
+        return tokenClass == TokenClass.INT || tokenClass == TokenClass.CHAR
+                || tokenClass == TokenClass.VOID || tokenClass == TokenClass.STRUCT;
+    }
+
+    private Block parseBlock() {
+        int open = tokens.index();
+        expect(TokenClass.LBRA);
+        List<VarDecl> vds = parseVarDecls(declarationsWithin(open));
+        List<Stmt> stmts = new ArrayList<>(statementsWithin(open));
+        while (!accept(TokenClass.RBRA, TokenClass.EOF)) {
+            int start = tokens.index();
+            stmts.add(parseStmt());
+            if (tokens.index() == start)
+                break; // no statement starts here, the error has already been reported
+        }
+        expect(TokenClass.RBRA);
+        return new Block(vds, stmts);
+    }
+
+    private Stmt parseStmt() {
+        switch (tokenClass) {
+            case LBRA:
+                return parseBlock();
+            case WHILE: {
+                nextToken();
+                expect(TokenClass.LPAR);
+                Expr cond = parseExp();
+                expect(TokenClass.RPAR);
+                return new While(cond, parseStmt());
+            }
+            case IF: {
+                nextToken();
+                expect(TokenClass.LPAR);
+                Expr cond = parseExp();
+                expect(TokenClass.RPAR);
+                Stmt thenStmt = parseStmt();
+                Stmt elseStmt = null;
+                if (accept(TokenClass.ELSE)) {
+                    nextToken();
+                    elseStmt = parseStmt();
+                }
+                return new If(cond, thenStmt, elseStmt);
+            }
+            case RETURN: {
+                nextToken();
+                Expr expr = null;
+                if (!accept(TokenClass.SC))
+                    expr = parseExp();
+                expect(TokenClass.SC);
+                return new Return(expr);
+            }
+            default: {
+                Expr lhs = parseExp();
+                if (accept(TokenClass.ASSIGN)) {
+                    nextToken();
+                    Expr rhs = parseExp();
+                    expect(TokenClass.SC);
+                    return new Assign(lhs, rhs);
+                }
+                expect(TokenClass.SC);
+                return new ExprStmt(lhs);
+            }
+        }
+    }
+
+    /*
+     * Binary operators, from the lowest to the highest binding power:
+     *   ||   &&   == !=   < <= > >=   + -   * / %
+     * All of them are left associative. Tokens that are not binary operators have binding power 0.
+     */
+    private static final int[] BINDING_POWER = new int[TokenClass.values().length];
+    private static final Op[] BINARY_OP = new Op[TokenClass.values().length];
+
+    static {
+        binary(TokenClass.OR, 1, Op.OR);
+        binary(TokenClass.AND, 2, Op.AND);
+        binary(TokenClass.EQ, 3, Op.EQ);
+        binary(TokenClass.NE, 3, Op.NE);
+        binary(TokenClass.LT, 4, Op.LT);
+        binary(TokenClass.LE, 4, Op.LE);
+        binary(TokenClass.GT, 4, Op.GT);
+        binary(TokenClass.GE, 4, Op.GE);
+        binary(TokenClass.PLUS, 5, Op.ADD);
+        binary(TokenClass.MINUS, 5, Op.SUB);
+        binary(TokenClass.ASTERIX, 6, Op.MUL);
+        binary(TokenClass.DIV, 6, Op.DIV);
+        binary(TokenClass.REM, 6, Op.MOD);
+    }
+
+    private static void binary(TokenClass tokenClass, int bindingPower, Op op) {
+        BINDING_POWER[tokenClass.ordinal()] = bindingPower;
+        BINARY_OP[tokenClass.ordinal()] = op;
+    }
+
+    private Expr parseExp() {
+        return parseExp(0);
+    }
+
+    /*
+     * Precedence climbing: parses an expression made of operators binding tighter than minPower.
+     * A chain of operators of the same precedence takes one loop iteration per operator, the
+     * recursion only goes one level deeper for each increase in precedence.
+     */
+    private Expr parseExp(int minPower) {
+        Expr lhs = parseUnary();
+        int power = BINDING_POWER[tokenClass.ordinal()];
+        while (power > minPower) {
+            Op op = BINARY_OP[tokenClass.ordinal()];
+            nextToken();
+            Expr rhs = parseExp(power);
+            lhs = new BinOp(lhs, op, rhs);
+            power = BINDING_POWER[tokenClass.ordinal()];
+        }
+        return lhs;
+    }
+
+    private Expr parseUnary() {
+        switch (tokenClass) {
+            case MINUS:
+                // -e is represented as 0-e
+                nextToken();
+                return new BinOp(new IntLiteral(0), Op.SUB, parseUnary());
+            case ASTERIX:
+                nextToken();
+                return new ValueAtExpr(parseUnary());
+            case SIZEOF: {
+                nextToken();
+                expect(TokenClass.LPAR);
+                Type type = parseType();
+                expect(TokenClass.RPAR);
+                return new SizeOfExpr(type);
+            }
+            case LPAR:
+                if (isTypeToken(lookAhead(1))) {
+                    nextToken();
+                    Type type = parseType();
+                    expect(TokenClass.RPAR);
+                    return new TypecastExpr(type, parseUnary());
+                }
+                return parsePostfix();
+            default:
+                return parsePostfix();
+        }
+    }
+
+    private Expr parsePostfix() {
+        Expr expr = parsePrimary();
+        while (accept(TokenClass.LSBR, TokenClass.DOT)) {
+            if (accept(TokenClass.LSBR)) {
+                nextToken();
+                Expr index = parseExp();
+                expect(TokenClass.RSBR);
+                expr = new ArrayAccessExpr(expr, index);
+            } else {
+                nextToken();
+                Token field = expect(TokenClass.IDENTIFIER);
+                expr = new FieldAccessExpr(expr, field == null ? null : field.data());
+            }
+        }
+        return expr;
     }
 
-    // to be completed ...
+    private Expr parsePrimary() {
+        switch (tokenClass) {
+            case LPAR: {
+                nextToken();
+                Expr expr = parseExp();
+                expect(TokenClass.RPAR);
+                return expr;
+            }
+            case IDENTIFIER: {
+                String name = tokens.token(0).data();
+                nextToken();
+                if (accept(TokenClass.LPAR))
+                    return new FunCallExpr(name, parseArgs());
+                return new VarExpr(name);
+            }
+            case INT_LITERAL: {
+                Token literal = expect(TokenClass.INT_LITERAL);
+                return new IntLiteral(intValue(literal));
+            }
+            case CHAR_LITERAL: {
+                Token literal = expect(TokenClass.CHAR_LITERAL);
+                return new ChrLiteral(charValue(unquote(literal.data())));
+            }
+            case STRING_LITERAL: {
+                Token literal = expect(TokenClass.STRING_LITERAL);
+                return new StrLiteral(unquote(literal.data()));
+            }
+            default:
+                error(TokenClass.LPAR, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL,
+                        TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL);
+                return null;
+        }
+    }
+
+    private List<Expr> parseArgs() {
+        expect(TokenClass.LPAR);
+        List<Expr> args = new ArrayList<>();
+        if (!accept(TokenClass.RPAR)) {
+            args.add(parseExp());
+            while (accept(TokenClass.COMMA)) {
+                nextToken();
+                args.add(parseExp());
+            }
+        }
+        expect(TokenClass.RPAR);
+        return args;
+    }
+
+    /*
+     * Literal tokens keep their quotes, escape sequences are left as written in the source.
+     */
+    private static String unquote(String literal) {
+        return literal.substring(1, literal.length() - 1);
+    }
+
+    private static char charValue(String body) {
+        if (body.length() < 2 || body.charAt(0) != '\\')
+            return body.isEmpty() ? 0 : body.charAt(0);
+        switch (body.charAt(1)) {
+            case 'n': return '\n';
+            case 't': return '\t';
+            case 'r': return '\r';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case '0': return '\0';
+            default: return body.charAt(1);
+        }
+    }
 }
@@ -1,11 +1,12 @@
 package org.seungmin.parser;
 
 import org.seungmin.lexer.Token;
+import org.seungmin.lexer.TokenStream;
 import org.seungmin.lexer.Tokeniser;
 import org.seungmin.lexer.Token.TokenClass;
+import org.seungmin.util.Diagnostic;
+import org.seungmin.util.Diagnostics;
 
-import java.util.LinkedList;
-import java.util.Queue;
 
 
 /**
@@ -13,17 +14,22 @@ import java.util.Queue;
  */
 public class ParserPart1 {
 
-    private Token token;
+    // class of the current token
+    private TokenClass tokenClass;
 
-    // use for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
-    private Queue<Token> buffer = new LinkedList<>();
-
-    private final Tokeniser tokeniser;
+    private final TokenCursor tokens;
 
 
 
     public ParserPart1(Tokeniser tokeniser) {
-        this.tokeniser = tokeniser;
+        this.tokens = TokenCursor.of(tokeniser);
+    }
+
+    /*
+     * Parses a file that has already been tokenised; lookahead is then a plain array access.
+     */
+    public ParserPart1(TokenStream tokens) {
+        this.tokens = TokenCursor.of(tokens);
     }
 
     public void parse() {
@@ -32,16 +38,21 @@ public class ParserPart1 {
         parseProgram();
     }
 
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
     public int getErrorCount() {
         return error;
     }
 
     private int error = 0;
-    private Token lastErrorToken;
+    private Diagnostics diagnostics = Diagnostics.CONSOLE;
+    private int lastErrorIndex = -1;
 
     private void error(TokenClass... expected) {
 
-        if (lastErrorToken == token) {
+        if (lastErrorIndex == tokens.index()) {
             // skip this error, same token causing trouble
             return;
         }
@@ -53,31 +64,19 @@ public class ParserPart1 {
             sb.append(e);
             sep = "|";
         }
-        System.out.println("Parsing error: expected ("+sb+") found ("+token+") at "+token.position);
+        Token token = tokens.token(0);
+        diagnostics.report(new Diagnostic(Diagnostic.Kind.PARSER, "expected ("+sb+") found ("+token+")", token.position()));
 
         error++;
-        lastErrorToken = token;
+        lastErrorIndex = tokens.index();
     }
 
     /*
      * Look ahead the i^th element from the stream of token.
      * i should be >= 1
      */
-    private Token lookAhead(int i) {
-        // ensures the buffer has the element we want to look ahead
-        while (buffer.size() < i)
-            buffer.add(tokeniser.nextToken());
-        assert buffer.size() >= i;
-
-        int cnt=1;
-        for (Token t : buffer) {
-            if (cnt == i)
-                return t;
-            cnt++;
-        }
-
-        assert false; // should never reach this
-        return null;
+    private TokenClass lookAhead(int i) {
+        return tokens.kind(i);
     }
 
 
@@ -85,10 +84,8 @@ public class ParserPart1 {
      * Consumes the next token from the tokeniser or the buffer if not empty.
      */
     private void nextToken() {
-        if (!buffer.isEmpty())
-            token = buffer.remove();
-        else
-            token = tokeniser.nextToken();
+        tokens.advance();
+        tokenClass = tokens.kind(0);
     }
 
     /*
@@ -97,8 +94,8 @@ public class ParserPart1 {
      */
     private Token expect(TokenClass... expected) {
         for (TokenClass e : expected) {
-            if (e == token.tokenClass) {
-                Token cur = token;
+            if (e == tokenClass) {
+                Token cur = tokens.token(0);
                 nextToken();
                 return cur;
             }
@@ -114,7 +111,7 @@ public class ParserPart1 {
     private boolean accept(TokenClass... expected) {
         boolean result = false;
         for (TokenClass e : expected)
-            result |= (e == token.tokenClass);
+            result |= (e == tokenClass);
         return result;
     }
 
@@ -129,18 +126,15 @@ public class ParserPart1 {
 
     // includes are ignored, so does not need to return an AST node
     private void parseIncludes() {
-        if (accept(TokenClass.INCLUDE)) {
+        while (accept(TokenClass.INCLUDE)) {
             nextToken();
             expect(TokenClass.STRING_LITERAL);
-            parseIncludes();
         }
     }
 
     private void parseStructDecls() {
-        // to be completed ...
-        if (accept(TokenClass.STRUCT)) {
+        while (accept(TokenClass.STRUCT)) {
             parseStructDecl();
-            parseStructDecls();
         }
     }
 
@@ -158,11 +152,8 @@ public class ParserPart1 {
     }
 
     private void parseVarDecls() {
-        TokenClass lookAheadToken = lookAhead(2).tokenClass;
-        boolean isNotFundecl = lookAheadToken != TokenClass.LPAR;
-        if (isNotFundecl && isTypeToken()) {
+        while (lookAhead(2) != TokenClass.LPAR && isTypeToken()) {
             parseVarDecl();
-            parseVarDecls();
         }
     }
 
@@ -181,11 +172,11 @@ public class ParserPart1 {
     }
 
     private void parseFunDecls() {
-        TokenClass lookAheadToken = lookAhead(2).tokenClass;
-        boolean isFunDecl = lookAheadToken == TokenClass.LPAR;
-        if (isFunDecl) {
+        while (lookAhead(2) == TokenClass.LPAR) {
+            int start = tokens.index();
             parseFuncDecl();
-            parseFunDecls();
+            if (tokens.index() == start)
+                break; // not a declaration at all, the error has already been reported
         }
     }
 
@@ -199,13 +190,12 @@ public class ParserPart1 {
     }
 
     private void parseParams() {
-        if (isTypeToken()) {
+        while (isTypeToken()) {
             parseType();
             expect(TokenClass.IDENTIFIER);
-            if (accept(TokenClass.COMMA)) {
-                expect(TokenClass.COMMA);
-                parseParams();
-            }
+            if (!accept(TokenClass.COMMA))
+                break;
+            expect(TokenClass.COMMA);
         }
     }
 
@@ -219,14 +209,13 @@ public class ParserPart1 {
     }
 
     private void parseStmts() {
-        if (isCurrTokenStmtFirst()) {
+        while (isCurrTokenStmtFirst()) {
             parseStmt();
-            parseStmts();
         }
     }
 
     private void parseStmt() {
-        switch (token.tokenClass) {
+        switch (tokenClass) {
             case LBRA:
                 parseBlock();
                 break;
@@ -267,8 +256,8 @@ public class ParserPart1 {
 
     private void parseExp() {
         if (isCurrTokenExpAble()){
-            TokenClass lookAheadTokenClass = lookAhead(1).tokenClass;
-            switch (token.tokenClass) {
+            TokenClass lookAheadTokenClass = lookAhead(1);
+            switch (tokenClass) {
                 case LPAR:
                     if (isTypeToken(lookAheadTokenClass)) {
                         parseTypeCast();
@@ -335,9 +324,9 @@ public class ParserPart1 {
                         nextToken();
                     }
                     if (isCurrTokenExpAble()){
-                        if (token.tokenClass == TokenClass.ASTERIX){
+                        if (tokenClass == TokenClass.ASTERIX){
                             parseValueAt();
-                        } else if (token.tokenClass == TokenClass.SIZEOF) {
+                        } else if (tokenClass == TokenClass.SIZEOF) {
                             parseSizeOf();
                         }
                         parseExp();
@@ -348,7 +337,7 @@ public class ParserPart1 {
     }
 
     private boolean isTypeToken() {
-        TokenClass tokenClass = token.tokenClass;
+        TokenClass tokenClass = this.tokenClass;
         if (tokenClass == TokenClass.INT ||
                 tokenClass == TokenClass.CHAR ||
                 tokenClass == tokenClass.VOID ||
@@ -373,7 +362,7 @@ public class ParserPart1 {
     }
 
     private void parseOprator() {
-        switch (token.tokenClass) {
+        switch (tokenClass) {
             case LT:
                 nextToken();
                 break;
@@ -417,7 +406,7 @@ public class ParserPart1 {
     }
 
     private boolean isOperatorToken() {
-        switch (token.tokenClass) {
+        switch (tokenClass) {
             case LT:
             case GT:
             case AND:
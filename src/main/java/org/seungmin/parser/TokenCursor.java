@@ -0,0 +1,128 @@
+package org.seungmin.parser;
+
+import org.seungmin.lexer.Token;
+import org.seungmin.lexer.Token.TokenClass;
+import org.seungmin.lexer.TokenStream;
+import org.seungmin.lexer.Tokeniser;
+
+/**
+ * The parsers' view of the token stream: the current token (offset 0) plus lookahead (offset >= 1).
+ * Tokens either come one at a time from a Tokeniser or from a pre-lexed TokenStream.
+ */
+abstract class TokenCursor {
+
+    static TokenCursor of(Tokeniser tokeniser) {
+        return new Streaming(tokeniser);
+    }
+
+    static TokenCursor of(TokenStream tokens) {
+        return new Indexed(tokens);
+    }
+
+    /*
+     * Class of the token i positions ahead of the current one.
+     */
+    abstract TokenClass kind(int i);
+
+    /*
+     * The token i positions ahead of the current one.
+     */
+    abstract Token token(int i);
+
+    /*
+     * Moves to the next token.
+     */
+    abstract void advance();
+
+    /*
+     * Number of tokens consumed so far, i.e. the index of the current token.
+     */
+    abstract int index();
+
+
+    private static class Streaming extends TokenCursor {
+
+        // maximum lookahead supported, including the current token; must be a power of two
+        private static final int CAPACITY = 8;
+        private static final int MASK = CAPACITY - 1;
+
+        private final Tokeniser tokeniser;
+        private int index = -1;
+
+        // circular buffer holding the current token at head followed by the lookahead tokens,
+        // used for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
+        private final Token[] ring = new Token[CAPACITY];
+        private int head = 0;
+        private int count = 0;
+
+        Streaming(Tokeniser tokeniser) {
+            this.tokeniser = tokeniser;
+        }
+
+        TokenClass kind(int i) {
+            return token(i).tokenClass;
+        }
+
+        /*
+         * Look ahead the i^th element from the stream of token.
+         */
+        Token token(int i) {
+            if (i >= CAPACITY)
+                throw new IllegalArgumentException("cannot look ahead more than " + (CAPACITY - 1) + " tokens");
+
+            // ensures the buffer has the element we want to look ahead
+            while (count <= i) {
+                ring[(head + count) & MASK] = tokeniser.nextToken();
+                count++;
+            }
+            return ring[(head + i) & MASK];
+        }
+
+        /*
+         * Drops the current token and moves to the next one, reading it from the tokeniser if the buffer is empty.
+         */
+        void advance() {
+            if (count > 0) {
+                ring[head] = null;
+                head = (head + 1) & MASK;
+                count--;
+            }
+            if (count == 0) {
+                ring[head] = tokeniser.nextToken();
+                count = 1;
+            }
+            index++;
+        }
+
+        int index() {
+            return index;
+        }
+    }
+
+
+    private static class Indexed extends TokenCursor {
+
+        private final TokenStream tokens;
+        private int cursor = -1;
+
+        Indexed(TokenStream tokens) {
+            this.tokens = tokens;
+        }
+
+        TokenClass kind(int i) {
+            return tokens.kind(cursor + i);
+        }
+
+        Token token(int i) {
+            return tokens.token(cursor + i);
+        }
+
+        void advance() {
+            cursor++;
+        }
+
+        int index() {
+            return cursor;
+        }
+    }
+}
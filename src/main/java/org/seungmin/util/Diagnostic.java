@@ -0,0 +1,35 @@
+package org.seungmin.util;
+
+/**
+ * An error reported by one of the compiler stages.
+ */
+public class Diagnostic {
+
+    public enum Kind {
+        LEXER, PARSER, SEMANTIC
+    }
+
+    public final Kind kind;
+    public final String message;
+    public final Position position; // null when the stage does not track positions
+
+    public Diagnostic(Kind kind, String message, Position position) {
+        this.kind = kind;
+        this.message = message;
+        this.position = position;
+    }
+
+    /*
+     * The line the command line driver prints for this diagnostic.
+     */
+    @Override
+    public String toString() {
+        String prefix;
+        switch (kind) {
+            case LEXER:  prefix = "Lexing error: "; break;
+            case PARSER: prefix = "Parsing error: "; break;
+            default:     prefix = "semantic error: "; break;
+        }
+        return prefix + message + (position == null ? "" : " at " + position);
+    }
+}
@@ -0,0 +1,22 @@
+package org.seungmin.util;
+
+import java.io.PrintStream;
+
+/**
+ * Receives the errors reported by the lexer, the parsers and the semantic visitors.
+ * A sink may be called from several threads if it is shared by concurrent compilations.
+ */
+public interface Diagnostics {
+
+    void report(Diagnostic diagnostic);
+
+    /*
+     * Prints lexing and parsing errors on System.out and semantic errors on System.err,
+     * which is what the stages used to do themselves.
+     */
+    Diagnostics CONSOLE = printingTo(System.out, System.err);
+
+    static Diagnostics printingTo(PrintStream out, PrintStream err) {
+        return d -> (d.kind == Diagnostic.Kind.SEMANTIC ? err : out).println(d);
+    }
+}
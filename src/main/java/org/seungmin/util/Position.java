@@ -14,6 +14,21 @@ public class Position {
         this.column = column;
     }
 
+    /*
+     * Packs a line and a column into a single long, line in the high 32 bits.
+     */
+    public static long pack(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    public static int line(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int column(long packed) {
+        return (int) packed;
+    }
+
     public int getLine() {
         return line;
     }
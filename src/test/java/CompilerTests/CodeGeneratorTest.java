@@ -0,0 +1,106 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.gen.CodeGenerator.Allocator;
+import org.seungmin.gen.RegisterAllocationError;
+
+import java.io.IOException;
+
+import static CompilerTests.Fixtures.generate;
+import static CompilerTests.Fixtures.resource;
+import static CompilerTests.Fixtures.simulate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CodeGeneratorTest {
+
+    /*
+     * Runs the program under every allocator, checks they agree and returns the output.
+     */
+    private static String run(String source, String input) throws IOException {
+        String expected = null;
+        for (Allocator allocator : Allocator.values()) {
+            String output = simulate(source, allocator).run(input);
+            if (expected != null)
+                assertEquals(expected, output, allocator.toString());
+            expected = output;
+        }
+        return expected;
+    }
+
+    @Test
+    public void testFibonacci() throws IOException {
+        String fibonacci = resource("fibonacci.c");
+        assertEquals("First 10 terms of Fibonacci series are : 0 1 1 2 3 5 8 13 21 34 ", run(fibonacci, "10"));
+
+        MipsSimulator stack = simulate(fibonacci, Allocator.FREE_STACK);
+        stack.run("20");
+        MipsSimulator coloring = simulate(fibonacci, Allocator.GRAPH_COLORING);
+        coloring.run("20");
+        MipsSimulator linear = simulate(fibonacci, Allocator.LINEAR_SCAN);
+        linear.run("20");
+        assertTrue(coloring.getInstructionCount() < stack.getInstructionCount());
+        assertTrue(linear.getInstructionCount() < stack.getInstructionCount());
+    }
+
+    @Test
+    public void testTictactoe() throws IOException {
+        String output = run(resource("tictactoe.c"), "a1 b1 a2 b2 a3 y a1 b2 a2 a3 c1 b1 b3 c2 c3 n");
+        assertTrue(output.contains("Player 1 has won!"));
+        assertTrue(output.contains("It's a draw!"));
+    }
+
+    @Test
+    public void testRecursionAndStackArguments() throws IOException {
+        assertEquals("55 21", run("int fib(int n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                + "int sum(int a, int b, int c, int d, int e, int f) { return a + b + c + d + e + f; }\n"
+                + "void main() { print_i(fib(10)); print_c(' '); print_i(sum(1, 2, 3, 4, 5, 6)); }", ""));
+    }
+
+    @Test
+    public void testMemory() throws IOException {
+        assertEquals("12 ab 7 3 -1 1", run("struct point { int x; char c; int y; };\n"
+                + "int g[4];\n"
+                + "struct point p;\n"
+                + "int total(int* a, int n) { int i; int s; i = 0; s = 0; while (i < n) { s = s + a[i]; i = i + 1; } return s; }\n"
+                + "struct point make(int x) { struct point q; q.x = x; q.c = 'b'; q.y = x / 2; return q; }\n"
+                + "void main() {\n"
+                + "  char s[3]; int* h; struct point q;\n"
+                + "  g[0] = 3; g[1] = 4; g[2] = 5; print_i(total((int*) g, 3)); print_c(' ');\n"
+                + "  s[0] = 'a'; s[1] = 'b'; print_c(s[0]); print_c(s[1]); print_c(' ');\n"
+                + "  q = make(7); p = q; print_i(p.x); print_c(' '); print_i(p.y); print_c(' ');\n"
+                + "  h = (int*) mcmalloc(8); *h = 0 - 1; print_i(*h); print_c(' ');\n"
+                + "  print_i(p.c == 'b' && p.x >= 7 || 1 / 0);\n"
+                + "}", ""));
+    }
+
+    /*
+     * Twenty values live at once: more than the free register stack holds, so only the
+     * allocators that can spill get through.
+     */
+    @Test
+    public void testRegisterPressure() throws IOException {
+        StringBuilder decls = new StringBuilder();
+        StringBuilder inits = new StringBuilder();
+        StringBuilder sum = new StringBuilder();
+        StringBuilder close = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            decls.append("int v").append(i).append("; ");
+            inits.append("v").append(i).append(" = n + ").append(i).append("; ");
+            sum.append("v").append(i).append(" + (");
+            close.append(")");
+        }
+        // n keeps the values from being folded into constants
+        String source = "void f(int n) { " + decls + inits
+                + "print_i(" + sum + "0" + close + "); print_i(" + sum + "1" + close + "); }\n"
+                + "void main() { f(0); }";
+
+        assertThrows(RegisterAllocationError.class, () -> generate(source, Allocator.FREE_STACK));
+        for (Allocator allocator : new Allocator[]{Allocator.GRAPH_COLORING, Allocator.LINEAR_SCAN}) {
+            String asm = generate(source, allocator);
+            assertTrue(asm.contains("($fp)"));
+            assertEquals("190191", new MipsSimulator(asm).run(""), allocator.toString());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.seungmin.CompilationCache;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.SemanticAnalyzer;
+import org.seungmin.gen.CodeGenerator.Allocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CompilationCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File write(String name, String content) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, content);
+        return file.toFile();
+    }
+
+    @Test
+    public void testKeyDependsOnIncludedHeaders() throws IOException {
+        CompilationCache cache = CompilationCache.open(tempDir.resolve("cache").toFile(), 1 << 20);
+        File header = write("lib.h", "void print_i(int i);");
+        File source = write("main.c", "#include \"lib.h\"\nvoid main() {}");
+
+        String before = cache.key(Stage.GEN, source, null);
+        assertEquals(before, cache.key(Stage.GEN, source, null));
+        assertEquals(before, cache.key(Stage.GEN, source, "#include \"lib.h\"\nvoid main() {}"));
+        assertNotEquals(before, cache.key(Stage.SEMANTICANALYSIS, source, null));
+        assertNotEquals(before, cache.key(Stage.GEN, "LINEAR_SCAN", source, null));
+
+        Files.writeString(header.toPath(), "void print_c(char c);");
+        assertNotEquals(before, cache.key(Stage.GEN, source, null));
+    }
+
+    @Test
+    public void testBuildHashCoversEveryClass() throws IOException {
+        Path classes = tempDir.resolve("classes");
+        Files.createDirectories(classes.resolve("org/seungmin/gen"));
+        Files.write(classes.resolve("org/seungmin/Compiler.class"), new byte[] { 1, 2, 3 });
+        Files.write(classes.resolve("org/seungmin/gen/Peephole.class"), new byte[] { 4, 5 });
+        Files.writeString(classes.resolve("notes.txt"), "not a class");
+
+        byte[] before = CompilationCache.hashBuild(classes);
+        assertArrayEquals(before, CompilationCache.hashBuild(classes));
+        Files.writeString(classes.resolve("notes.txt"), "still not a class");
+        assertArrayEquals(before, CompilationCache.hashBuild(classes));
+
+        // a changed generator gets keys of its own, as does a class moved or added
+        Files.write(classes.resolve("org/seungmin/gen/Peephole.class"), new byte[] { 4, 6 });
+        byte[] changed = CompilationCache.hashBuild(classes);
+        assertFalse(Arrays.equals(before, changed));
+        Files.move(classes.resolve("org/seungmin/gen/Peephole.class"), classes.resolve("org/seungmin/Peephole.class"));
+        assertFalse(Arrays.equals(changed, CompilationCache.hashBuild(classes)));
+        changed = CompilationCache.hashBuild(classes);
+        Files.write(classes.resolve("org/seungmin/Inliner.class"), new byte[0]);
+        assertFalse(Arrays.equals(changed, CompilationCache.hashBuild(classes)));
+    }
+
+    @Test
+    public void testKeyDependsOnFrontEndOptions() throws IOException {
+        CompilationCache cache = CompilationCache.open(tempDir.resolve("cache").toFile(), 1 << 20);
+        File source = write("main.c", "void main() {}");
+        for (Stage stage : new Stage[] { Stage.SEMANTICANALYSIS, Stage.GEN }) {
+            String before = cache.key(stage, new Compiler.Options().variant(stage), source, null);
+            Compiler.Options table = new Compiler.Options();
+            table.tableLexer = true;
+            Compiler.Options prelex = new Compiler.Options();
+            prelex.prelex = true;
+            Compiler.Options fused = new Compiler.Options();
+            fused.semantics = SemanticAnalyzer.Mode.FUSED;
+            for (Compiler.Options options : new Compiler.Options[] { table, prelex, fused })
+                assertNotEquals(before, cache.key(stage, options.variant(stage), source, null), stage.toString());
+        }
+
+        // the back end options only matter to code generation
+        Compiler.Options linear = new Compiler.Options();
+        linear.allocator = Allocator.LINEAR_SCAN;
+        assertEquals(new Compiler.Options().variant(Stage.SEMANTICANALYSIS), linear.variant(Stage.SEMANTICANALYSIS));
+        assertNotEquals(new Compiler.Options().variant(Stage.GEN), linear.variant(Stage.GEN));
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        File dir = tempDir.resolve("cache").toFile();
+        CompilationCache cache = CompilationCache.open(dir, 1 << 20);
+        assertNull(cache.get("k"));
+        cache.put("k", new CompilationCache.Entry(0, "out", "err", "asm"));
+        CompilationCache.Entry entry = cache.get("k");
+        assertNotNull(entry);
+        assertEquals("asm", entry.product);
+        assertEquals("err", entry.err);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        CompilationCache cache = CompilationCache.open(tempDir.resolve("cache").toFile(), 100);
+        String padding = "x".repeat(30);
+        cache.put("a", new CompilationCache.Entry(0, "", "", padding));
+        cache.put("b", new CompilationCache.Entry(0, "", "", padding));
+        cache.get("a");
+        cache.put("c", new CompilationCache.Entry(0, "", "", padding));
+
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+}
@@ -0,0 +1,84 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.CompilationResult;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.util.Diagnostic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompilerTest {
+
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private final Compiler compiler = new Compiler(new Compiler.Options(), diagnostics::add);
+
+    @Test
+    public void testLexerOutput() throws IOException {
+        StringBuilder out = new StringBuilder();
+        CompilationResult result = compiler.compile(Stage.LEXER, "int x;", out);
+        assertTrue(result.succeeded());
+        assertEquals(Stage.LEXER, result.reached);
+        assertEquals("INT\nIDENTIFIER(x)\nSC\n", out.toString());
+    }
+
+    @Test
+    public void testASTOutput() throws IOException {
+        StringBuilder out = new StringBuilder();
+        CompilationResult result = compiler.compile(Stage.AST, "int x;", out);
+        assertTrue(result.succeeded());
+        assertNotNull(result.program);
+        assertEquals("Program(VarDecl(INT,x))", out.toString());
+        assertTrue(diagnostics.isEmpty());
+    }
+
+    @Test
+    public void testLexingErrorsGoToTheSink() throws IOException {
+        CompilationResult result = compiler.compile(Stage.LEXER, "int @;", new StringBuilder());
+        assertFalse(result.succeeded());
+        assertEquals(1, result.errors);
+        assertEquals(1, diagnostics.size());
+        assertEquals(Diagnostic.Kind.LEXER, diagnostics.get(0).kind);
+        assertEquals("Lexing error: unrecognised character (@) at 1:4", diagnostics.get(0).toString());
+    }
+
+    @Test
+    public void testParsingErrorStopsThePipeline() throws IOException {
+        StringBuilder out = new StringBuilder();
+        CompilationResult result = compiler.compile(Stage.GEN, "void main() { return 1 +; }", out);
+        assertFalse(result.succeeded());
+        assertEquals(Stage.PARSER, result.reached);
+        assertEquals(1, diagnostics.size());
+        assertEquals(Diagnostic.Kind.PARSER, diagnostics.get(0).kind);
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    public void testRecogniseOnly() throws IOException {
+        Compiler.Options options = new Compiler.Options();
+        options.recogniseOnly = true;
+        options.prelex = true;
+        CompilationResult result = new Compiler(options, diagnostics::add)
+                .compile(Stage.PARSER, "void main() { while (a < 2) a = a + 1; }", new StringBuilder());
+        assertTrue(result.succeeded());
+        assertNull(result.program);
+        assertEquals(19, result.tokenCount); // including EOF
+    }
+
+    @Test
+    public void testReusable() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder out = new StringBuilder();
+            assertTrue(compiler.compile(Stage.AST, "int g" + i + ";", out).succeeded());
+            assertEquals("Program(VarDecl(INT,g" + i + "))", out.toString());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.ir.BasicBlock;
+import org.seungmin.ir.Bits;
+import org.seungmin.ir.Dataflow;
+import org.seungmin.ir.Dominators;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.Instr;
+import org.seungmin.ir.LiveVariables;
+import org.seungmin.ir.Temp;
+
+import java.io.IOException;
+
+import static CompilerTests.Fixtures.lower;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataflowTest {
+
+    private static final String NESTED = "int f(int n) { int s; int i; int j; s = 0; i = 0;\n"
+            + "  while (i < n) { j = 0;\n"
+            + "    if (i < 3) { while (j < i) { s = s + j; j = j + 1; } } else { s = s - 1; }\n"
+            + "    i = i + 1; }\n"
+            + "  return s; }";
+
+    /*
+     * The blocks dominating every block, forward: the ones dominating all its predecessors, and
+     * itself.
+     */
+    private static Dataflow.Problem dominance(Function f) {
+        return new Dataflow.Problem() {
+            public Dataflow.Direction direction() {
+                return Dataflow.Direction.FORWARD;
+            }
+
+            public Dataflow.Meet meet() {
+                return Dataflow.Meet.INTERSECTION;
+            }
+
+            public int size() {
+                return f.blocks.size();
+            }
+
+            public void transfer(BasicBlock b, long[] in, long[] out) {
+                System.arraycopy(in, 0, out, 0, out.length);
+                Bits.set(out, b.index);
+            }
+        };
+    }
+
+    @Test
+    public void testForwardIntersection() throws IOException {
+        Function f = lower(NESTED);
+        Dataflow dataflow = new Dataflow(f, dominance(f));
+        Dominators dominators = new Dominators(f);
+        for (BasicBlock a : f.blocks)
+            for (BasicBlock b : f.blocks)
+                assertEquals(dominators.dominates(a, b), Bits.get(dataflow.out(b), a.index), a + " " + b);
+        assertTrue(dataflow.visits() < 3 * f.blocks.size());
+    }
+
+    @Test
+    public void testForwardUnion() throws IOException {
+        // the variables that may not have been assigned yet, fed from the entry
+        Function f = lower("int f(int n) { int x; int y; if (n < 0) { x = 1; } y = 2; return x + y; }");
+        long[] locals = Bits.of(f.tempCount());
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions)
+                if (in.dest != null && in.dest.name != null)
+                    Bits.set(locals, in.dest.id);
+        Dataflow dataflow = new Dataflow(f, new Dataflow.Problem() {
+            public Dataflow.Direction direction() {
+                return Dataflow.Direction.FORWARD;
+            }
+
+            public Dataflow.Meet meet() {
+                return Dataflow.Meet.UNION;
+            }
+
+            public int size() {
+                return f.tempCount();
+            }
+
+            public void boundary(BasicBlock b, long[] in) {
+                if (b == f.entry())
+                    Bits.or(in, locals);
+            }
+
+            public void transfer(BasicBlock b, long[] in, long[] out) {
+                System.arraycopy(in, 0, out, 0, out.length);
+                for (Instr i : b.instructions)
+                    if (i.dest != null)
+                        Bits.clear(out, i.dest.id);
+            }
+        });
+        BasicBlock exit = f.blocks.get(f.blocks.size() - 1);
+        Temp x = null, y = null;
+        for (int t = 0; t < f.tempCount(); t++) {
+            if ("x".equals(f.temp(t).name))
+                x = f.temp(t);
+            if ("y".equals(f.temp(t).name))
+                y = f.temp(t);
+        }
+        assertTrue(Bits.get(dataflow.in(exit), x.id));
+        assertFalse(Bits.get(dataflow.out(exit), y.id));
+    }
+
+    @Test
+    public void testLargeFunction() throws IOException {
+        // the loops of a long function in sequence, each needing a single extra pass
+        StringBuilder source = new StringBuilder("int f(int n) { int s; int i; s = 0; i = 0;\n");
+        for (int k = 0; k < 2500; k++)
+            source.append("  while (i < n) { if (s < ").append(k).append(") { s = s + i; } i = i + 1; } i = 0;\n");
+        source.append("  return s; }");
+        Function f = lower(source.toString());
+        assertTrue(f.blocks.size() >= 10000);
+        LiveVariables liveness = new LiveVariables(f);
+        assertTrue(liveness.rounds() <= 3, "rounds " + liveness.rounds());
+        Dataflow dataflow = new Dataflow(f, dominance(f));
+        assertTrue(dataflow.rounds() <= 3, "rounds " + dataflow.rounds());
+    }
+}
@@ -0,0 +1,98 @@
+package CompilerTests;
+
+import org.seungmin.CompilationResult;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.gen.CodeGenerator.Allocator;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.Lowering;
+import org.seungmin.ir.Module;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compiles the programs the CompilerTests look at, lowered to the IR or generated and loaded into
+ * the MipsSimulator. Any diagnostic fails the test.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Module lower(String source, boolean variablesInMemory) throws IOException {
+        CompilationResult result = new Compiler(new Compiler.Options(), d -> {
+            throw new AssertionError(d.toString());
+        }).compile(Stage.SEMANTICANALYSIS, source, new StringBuilder());
+        return new Lowering(variablesInMemory).lower(result.program);
+    }
+
+    /*
+     * The first function of the program, its variables lowered to temporaries.
+     */
+    static Function lower(String source) throws IOException {
+        return lower(source, false).functions.get(0);
+    }
+
+    static String print(Function f) {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        f.print(writer);
+        writer.flush();
+        return out.toString();
+    }
+
+    static String print(Module module) {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        module.print(writer);
+        writer.flush();
+        return out.toString();
+    }
+
+    static Compiler.Options options(Allocator allocator, boolean optimize) {
+        Compiler.Options options = new Compiler.Options();
+        options.allocator = allocator;
+        options.optimize = optimize;
+        return options;
+    }
+
+    static String generate(String source, Compiler.Options options) throws IOException {
+        StringBuilder out = new StringBuilder();
+        CompilationResult result = new Compiler(options, d -> {
+            throw new AssertionError(d.toString());
+        }).compile(Stage.GEN, source, out);
+        assertTrue(result.succeeded());
+        return out.toString();
+    }
+
+    static String generate(String source, Allocator allocator, boolean optimize) throws IOException {
+        return generate(source, options(allocator, optimize));
+    }
+
+    static String generate(String source, Allocator allocator) throws IOException {
+        return generate(source, allocator, true);
+    }
+
+    static MipsSimulator simulate(String source, Compiler.Options options) throws IOException {
+        return new MipsSimulator(generate(source, options));
+    }
+
+    static MipsSimulator simulate(String source, Allocator allocator, boolean optimize) throws IOException {
+        return simulate(source, options(allocator, optimize));
+    }
+
+    static MipsSimulator simulate(String source, Allocator allocator) throws IOException {
+        return simulate(source, allocator, true);
+    }
+
+    static String resource(String name) throws IOException {
+        return new String(Files.readAllBytes(Paths.get("src/main/resources/tests", name)), StandardCharsets.UTF_8);
+    }
+}
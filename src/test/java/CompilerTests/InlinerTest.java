@@ -0,0 +1,117 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.Compiler;
+import org.seungmin.gen.CodeGenerator.Allocator;
+import org.seungmin.ir.BasicBlock;
+import org.seungmin.ir.Call;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.Inliner;
+import org.seungmin.ir.Instr;
+import org.seungmin.ir.Module;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static CompilerTests.Fixtures.lower;
+import static CompilerTests.Fixtures.options;
+import static CompilerTests.Fixtures.resource;
+import static CompilerTests.Fixtures.simulate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InlinerTest {
+
+    private static List<String> functions(Module module) {
+        List<String> names = new ArrayList<>();
+        for (Function f : module.functions)
+            names.add(f.name);
+        return names;
+    }
+
+    private static List<String> calls(Module module, String function) {
+        List<String> calls = new ArrayList<>();
+        for (Function f : module.functions)
+            if (f.name.equals(function))
+                for (BasicBlock b : f.blocks)
+                    for (Instr in : b.instructions)
+                        if (in instanceof Call && !((Call) in).builtin)
+                            calls.add(((Call) in).function);
+        return calls;
+    }
+
+    private static Compiler.Options inlining(Allocator allocator, int inlineSize) {
+        Compiler.Options options = options(allocator, true);
+        options.inlineSize = inlineSize;
+        return options;
+    }
+
+    /*
+     * Runs the program with and without inlining under the allocators that inline, checks the
+     * outputs agree and returns the instructions executed, without then with inlining.
+     */
+    private static long[] run(String source, String input) throws IOException {
+        long[] counts = new long[2];
+        for (Allocator allocator : new Allocator[] { Allocator.GRAPH_COLORING, Allocator.LINEAR_SCAN }) {
+            MipsSimulator plain = simulate(source, inlining(allocator, 0));
+            MipsSimulator inlined = simulate(source, inlining(allocator, Inliner.DEFAULT_SIZE));
+            assertEquals(plain.run(input), inlined.run(input), allocator.toString());
+            counts[0] = plain.getInstructionCount();
+            counts[1] = inlined.getInstructionCount();
+        }
+        return counts;
+    }
+
+    private static final String CALLS = "int leaf(int x) { return x * 2 + 1; }\n"
+            + "int twice(int x) { return leaf(leaf(x)); }\n"
+            + "int down(int n) { if (n < 1) { return 0; } return down(n - 1) + leaf(n); }\n"
+            + "void main() { print_i(twice(3)); print_i(down(4)); }";
+
+    @Test
+    public void testCallGraph() throws IOException {
+        Module module = lower(CALLS, false);
+        assertEquals(4, new Inliner(Inliner.DEFAULT_SIZE, 1000).run(module));
+        // leaf and twice are gone, down calls itself
+        assertEquals(List.of("down", "main"), functions(module));
+        assertEquals(List.of("down"), calls(module, "down"));
+        assertEquals(List.of("down"), calls(module, "main"));
+    }
+
+    @Test
+    public void testLimits() throws IOException {
+        Module module = lower(CALLS, false);
+        assertEquals(0, new Inliner(2, 100).run(module));
+        assertEquals(4, module.functions.size());
+
+        // twice may only double in size, main may not grow at all
+        module = lower(CALLS, false);
+        new Inliner(Inliner.DEFAULT_SIZE, 100).run(module);
+        assertEquals(List.of("leaf"), calls(module, "twice"));
+        module = lower(CALLS, false);
+        assertEquals(0, new Inliner(Inliner.DEFAULT_SIZE, 0).run(module));
+        assertEquals(List.of("twice", "down"), calls(module, "main"));
+    }
+
+    @Test
+    public void testSemantics() throws IOException {
+        assertEquals("1524", simulate(CALLS, inlining(Allocator.GRAPH_COLORING, Inliner.DEFAULT_SIZE)).run(""));
+        run(CALLS, "");
+
+        // frame slots, struct arguments and results, several returns, calls in loops
+        run("struct p { int x; int a[3]; };\n"
+                + "struct p q;\n"
+                + "struct p make(int x) { struct p r; r.x = x; r.a[0] = x + 1; r.a[2] = x * x; return r; }\n"
+                + "int sum(struct p s) { int t[2]; t[0] = s.x; t[1] = s.a[2]; s.x = 0; return t[0] + t[1]; }\n"
+                + "int sign(int x) { if (x < 0) { return 0 - 1; } if (x == 0) { return 0; } return 1; }\n"
+                + "void main() { int i; i = 0 - 3;\n"
+                + "  while (i < 4) { q = make(i); print_i(sum(q)); print_i(q.x); print_i(sign(i)); print_c(' '); i = i + 1; } }", "");
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        run(resource("fibonacci.c"), "20");
+        long[] counts = run(resource("tictactoe.c"), "a1 b1 a2 b2 a3 y a1 b2 a2 a3 c1 b1 b3 c2 c3 n");
+        assertTrue(counts[1] < counts[0], counts[0] + " " + counts[1]);
+    }
+}
@@ -0,0 +1,136 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.CompilationResult;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.gen.CodeGenerator.Allocator;
+import org.seungmin.ir.BasicBlock;
+import org.seungmin.ir.Bits;
+import org.seungmin.ir.DeadCodeElimination;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.Instr;
+import org.seungmin.ir.LiveVariables;
+import org.seungmin.ir.Phi;
+import org.seungmin.ir.SSA;
+import org.seungmin.ir.Temp;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static CompilerTests.Fixtures.lower;
+import static CompilerTests.Fixtures.print;
+import static CompilerTests.Fixtures.resource;
+import static CompilerTests.Fixtures.simulate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LivenessTest {
+
+    @Test
+    public void testBits() {
+        long[] set = Bits.of(130);
+        assertEquals(3, set.length);
+        assertEquals(-1, Bits.next(set, 0));
+        Bits.set(set, 3);
+        Bits.set(set, 64);
+        Bits.set(set, 129);
+        assertEquals(3, Bits.next(set, 0));
+        assertEquals(64, Bits.next(set, 4));
+        assertEquals(129, Bits.next(set, 65));
+        assertEquals(-1, Bits.next(set, 130));
+        Bits.clear(set, 64);
+        assertFalse(Bits.get(set, 64));
+
+        long[] other = Bits.of(130);
+        Bits.set(other, 3);
+        assertFalse(Bits.or(set, other));
+        Bits.set(other, 100);
+        long[] minus = Bits.of(130);
+        Bits.set(minus, 100);
+        assertFalse(Bits.orAndNot(set, other, minus));
+        assertTrue(Bits.or(set, other));
+        assertTrue(Bits.get(set, 100));
+    }
+
+    @Test
+    public void testPrint() throws IOException {
+        Function f = lower("int f(int a, int b) { int x; int y; x = a + b; y = x * 2; if (a < b) { x = y; } return x; }");
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        new LiveVariables(f).print(writer);
+        writer.flush();
+        assertEquals("{%a.0, %b.1}\n"
+                + "{%a.0, %b.1, %t4}\n"
+                + "{%a.0, %b.1, %x.2}\n"
+                + "{%a.0, %b.1, %x.2, %t5}\n"
+                + "{%a.0, %b.1, %x.2, %y.3}\n"
+                + "{%x.2, %y.3, %t6}\n"
+                + "{%y.3}\n"
+                + "{%x.2}\n"
+                + "{%x.2}\n"
+                + "{}\n", out.toString().replace(System.lineSeparator(), "\n"));
+    }
+
+    @Test
+    public void testLoopAndPhis() throws IOException {
+        Function f = lower("int f(int n) { int s; int i; s = 0; i = 0;\n"
+                + "  while (i < n) { s = s + i; i = i + 1; } return s; }");
+        SSA.construct(f);
+        LiveVariables liveness = new LiveVariables(f);
+        Temp n = f.params.get(0);
+        for (BasicBlock b : f.blocks) {
+            // n is read in the loop, so live everywhere but after it
+            assertEquals(!b.successors().isEmpty(), Bits.get(liveness.liveIn(b), n.id));
+            for (Instr in : b.instructions) {
+                if (!(in instanceof Phi))
+                    break;
+                // a phi defines its value at the start of its block and reads in its predecessors
+                Phi phi = (Phi) in;
+                assertFalse(Bits.get(liveness.liveIn(b), phi.dest.id));
+                phi.incoming.forEach((pred, value) -> {
+                    if (value instanceof Temp)
+                        assertTrue(Bits.get(liveness.liveOut(pred), ((Temp) value).id));
+                });
+            }
+        }
+        assertTrue(liveness.rounds() >= 2);
+    }
+
+    @Test
+    public void testDeadCode() throws IOException {
+        Function f = lower("int f(int a, int b) { int x; int y; int z; int q;\n"
+                + "  x = a * 3; z = 0; q = a / b;\n"
+                + "  while (z < a) { y = x + z; z = z + 1; }\n"
+                + "  return z; }");
+        String before = print(f);
+        int removed = DeadCodeElimination.run(f);
+        String after = print(f);
+        assertTrue(removed > 0);
+        // y and x, which it is computed from before the loop, go, but not the division, which may trap
+        assertTrue(before.contains("mul"));
+        assertFalse(after.contains("mul"));
+        assertFalse(after.contains("y.3"));
+        assertTrue(after.contains("div"));
+        assertEquals(0, DeadCodeElimination.run(f));
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        String fibonacci = resource("fibonacci.c");
+        String tictactoe = resource("tictactoe.c");
+        String moves = "a1 b1 a2 b2 a3 y a1 b2 a2 a3 c1 b1 b3 c2 c3 n";
+        for (Allocator allocator : new Allocator[] { Allocator.GRAPH_COLORING, Allocator.LINEAR_SCAN }) {
+            assertEquals(simulate(fibonacci, allocator, false).run("20"), simulate(fibonacci, allocator, true).run("20"));
+            assertEquals(simulate(tictactoe, allocator, false).run(moves), simulate(tictactoe, allocator, true).run(moves));
+        }
+
+        StringBuilder out = new StringBuilder();
+        CompilationResult result = new Compiler().compile(Stage.LIVENESS, fibonacci, out);
+        assertTrue(result.succeeded());
+        assertEquals(Stage.LIVENESS, result.reached);
+        assertTrue(out.toString().trim().endsWith("{}"));
+    }
+}
@@ -0,0 +1,114 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.CompilationResult;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.ir.BasicBlock;
+import org.seungmin.ir.Function;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static CompilerTests.Fixtures.lower;
+import static CompilerTests.Fixtures.print;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoweringTest {
+
+    private static List<String> labels(List<BasicBlock> blocks) {
+        String[] labels = new String[blocks.size()];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = blocks.get(i).label;
+        return Arrays.asList(labels);
+    }
+
+    @Test
+    public void testThreeAddressCode() throws IOException {
+        assertEquals("global g_g 4\n"
+                + "global str_0 \"n=\"\n"
+                + "\n"
+                + "function f(n.0)\n"
+                + "\tframe a 8\n"
+                + "entry_f:\n"
+                + "\tt2 = &a\n"
+                + "\tt3 = mul n.0, 4\n"
+                + "\tt4 = add t2, t3\n"
+                + "\tt5 = sub n.0, 1\n"
+                + "\tt6 = mul t5, 2\n"
+                + "\tstore.w [t4], t6\n"
+                + "\tt7 = &str_0\n"
+                + "\tcall print_s(t7)\n"
+                + "\tt8 = &a\n"
+                + "\tt9 = load.w [t8 + 4]\n"
+                + "\tx.1 = t9\n"
+                + "\tt10 = &g_g\n"
+                + "\tstore.w [t10], x.1\n"
+                + "\treturn x.1\n",
+                print(lower("int g;\n"
+                        + "int f(int n) { int x; int a[2]; a[n] = (n - 1) * 2; print_s((char*) \"n=\"); x = a[1]; g = x; return x; }", false)));
+    }
+
+    @Test
+    public void testControlFlowGraph() throws IOException {
+        Function f = lower("int f(int n) {\n"
+                + "  while (n > 0) { if (n == 3) return 1; n = n - 1; }\n"
+                + "  return 0;\n"
+                + "  n = 2;\n"
+                + "}", false).functions.get(0);
+
+        assertEquals(Arrays.asList("entry_f", "while_0", "do_1", "then_3", "endif_4", "endwhile_2"), labels(f.blocks));
+        BasicBlock test = f.blocks.get(1);
+        assertEquals(Arrays.asList("entry_f", "endif_4"), labels(test.predecessors));
+        assertEquals(Arrays.asList("do_1", "endwhile_2"), labels(test.successors()));
+        assertEquals(Arrays.asList("then_3", "endif_4"), labels(f.blocks.get(2).successors()));
+        // returns end their block, the code after them is gone
+        assertTrue(f.blocks.get(3).successors().isEmpty());
+        assertTrue(f.blocks.get(5).successors().isEmpty());
+        assertEquals(0, f.blocks.get(5).instructions.size());
+    }
+
+    @Test
+    public void testShortCircuit() throws IOException {
+        assertEquals("\n"
+                + "function f(a.0, b.1)\n"
+                + "entry_f:\n"
+                + "\tt2 = ne a.0, 0\n"
+                + "\tbranch t2, endor_1, or_0\n"
+                + "or_0:\n"
+                + "\tt3 = lt b.1, 2\n"
+                + "\tt2 = ne t3, 0\n"
+                + "\tjump endor_1\n"
+                + "endor_1:\n"
+                + "\treturn t2\n",
+                print(lower("int f(int a, int b) { return a || b < 2; }", false)));
+    }
+
+    @Test
+    public void testVariablesInMemory() throws IOException {
+        assertEquals("\n"
+                + "function f(c.0)\n"
+                + "\tframe c 4\n"
+                + "\tframe d 4\n"
+                + "entry_f:\n"
+                + "\tt1 = &c\n"
+                + "\tstore.b [t1], c.0\n"
+                + "\tt2 = &d\n"
+                + "\tt3 = &c\n"
+                + "\tt4 = load.b [t3]\n"
+                + "\tstore.b [t2], t4\n"
+                + "\treturn\n",
+                print(lower("void f(char c) { char d; d = c; }", true)));
+    }
+
+    @Test
+    public void testIRStage() throws IOException {
+        StringBuilder out = new StringBuilder();
+        CompilationResult result = new Compiler().compile(Stage.IR, "void main() { print_i(1 + 2); }", out);
+        assertTrue(result.succeeded());
+        assertEquals(Stage.IR, result.reached);
+        assertEquals("\nfunction main()\nentry_main:\n\tcall print_i(3)\n\treturn\n", out.toString());
+    }
+}
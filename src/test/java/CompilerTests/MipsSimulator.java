@@ -0,0 +1,457 @@
+package CompilerTests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the assembly produced by the code generator, for tests and benchmarks.
+ *
+ * Knows the instructions, pseudo-instructions, directives and system calls of MARS that the
+ * generator uses, counts the instructions executed, a pseudo-instruction counting as one, and
+ * records how deep the stack went. The data segment starts at 0x10010000 with the heap right
+ * after it, the stack grows down from 0x7ffffffc and is bounded, overflowing it is an error.
+ */
+public class MipsSimulator {
+
+    public static class SimulationError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SimulationError(String message) {
+            super(message);
+        }
+    }
+
+    private static final int DATA_BASE = 0x10010000;
+    private static final int STACK_TOP = 0x7ffffffc;
+    private static final int TEXT_BASE = 0x00400000;
+
+    private static final String[] REGISTER_NAMES = {"zero", "at", "v0", "v1", "a0", "a1", "a2", "a3",
+            "t0", "t1", "t2", "t3", "t4", "t5", "t6", "t7", "s0", "s1", "s2", "s3", "s4", "s5", "s6", "s7",
+            "t8", "t9", "k0", "k1", "gp", "sp", "fp", "ra"};
+
+    private enum Op {
+        ADD, SUB, MUL, AND, OR, XOR, NOR, SLT, SLTU, SLLV, SRLV, SRAV,
+        ADDI, ANDI, ORI, XORI, SLTI, SLTIU, SLL, SRL, SRA,
+        DIV, MFLO, MFHI, LI, LA, MOVE, LUI,
+        LW, SW, LB, LBU, SB,
+        BEQ, BNE, BEQZ, BNEZ, BGEZ, BGTZ, BLEZ, BLTZ, B,
+        J, JAL, JR, JALR, SYSCALL, NOP
+    }
+
+    private static final class Insn {
+        final Op op;
+        final int rd, rs, rt, imm;
+        final String line;
+
+        Insn(Op op, int rd, int rs, int rt, int imm, String line) {
+            this.op = op;
+            this.rd = rd;
+            this.rs = rs;
+            this.rt = rt;
+            this.imm = imm;
+            this.line = line;
+        }
+    }
+
+    private final List<Insn> text = new ArrayList<>();
+    private final Map<String, Integer> textLabels = new HashMap<>();
+    private final Map<String, Integer> dataLabels = new HashMap<>();
+    private final byte[] data;
+    private int dataSize = 0;
+    private final byte[] stack;
+
+    private final int[] regs = new int[32];
+    private int hi, lo;
+    private int heap;
+    private long executed;
+    private int lowestSp = STACK_TOP;
+    private long limit = 2_000_000_000L;
+
+    public MipsSimulator(String assembly) {
+        this(assembly, 16 << 20);
+    }
+
+    public MipsSimulator(String assembly, int stackBytes) {
+        data = new byte[16 << 20];
+        stack = new byte[stackBytes];
+        assemble(assembly);
+    }
+
+    public void setInstructionLimit(long limit) {
+        this.limit = limit;
+    }
+
+    public long getInstructionCount() {
+        return executed;
+    }
+
+    /*
+     * The deepest the stack went below its initial top, in bytes.
+     */
+    public int getMaxStackBytes() {
+        return STACK_TOP - lowestSp;
+    }
+
+    /*
+     * Runs the program from main until it exits, reading the whitespace separated input and
+     * returning what it printed.
+     */
+    public String run(String input) {
+        StringBuilder out = new StringBuilder();
+        int inputPos = 0;
+        regs[29] = STACK_TOP;
+        regs[30] = STACK_TOP;
+        regs[28] = DATA_BASE + 0x8000;
+        heap = DATA_BASE + ((dataSize + 7) & ~7);
+        Integer start = textLabels.get("main");
+        if (start == null)
+            throw new SimulationError("no main label");
+        int pc = start;
+
+        while (true) {
+            if (pc < 0 || pc >= text.size())
+                throw new SimulationError("pc out of the text segment: " + pc);
+            if (++executed > limit)
+                throw new SimulationError("more than " + limit + " instructions executed");
+            Insn i = text.get(pc++);
+            switch (i.op) {
+                case ADD: set(i.rd, regs[i.rs] + regs[i.rt]); break;
+                case SUB: set(i.rd, regs[i.rs] - regs[i.rt]); break;
+                case MUL: set(i.rd, regs[i.rs] * regs[i.rt]); break;
+                case AND: set(i.rd, regs[i.rs] & regs[i.rt]); break;
+                case OR: set(i.rd, regs[i.rs] | regs[i.rt]); break;
+                case XOR: set(i.rd, regs[i.rs] ^ regs[i.rt]); break;
+                case NOR: set(i.rd, ~(regs[i.rs] | regs[i.rt])); break;
+                case SLT: set(i.rd, regs[i.rs] < regs[i.rt] ? 1 : 0); break;
+                case SLTU: set(i.rd, Integer.compareUnsigned(regs[i.rs], regs[i.rt]) < 0 ? 1 : 0); break;
+                case SLLV: set(i.rd, regs[i.rs] << regs[i.rt]); break;
+                case SRLV: set(i.rd, regs[i.rs] >>> regs[i.rt]); break;
+                case SRAV: set(i.rd, regs[i.rs] >> regs[i.rt]); break;
+                case ADDI: set(i.rd, regs[i.rs] + i.imm); break;
+                case ANDI: set(i.rd, regs[i.rs] & (i.imm & 0xffff)); break;
+                case ORI: set(i.rd, regs[i.rs] | (i.imm & 0xffff)); break;
+                case XORI: set(i.rd, regs[i.rs] ^ (i.imm & 0xffff)); break;
+                case SLTI: set(i.rd, regs[i.rs] < i.imm ? 1 : 0); break;
+                case SLTIU: set(i.rd, Integer.compareUnsigned(regs[i.rs], i.imm) < 0 ? 1 : 0); break;
+                case SLL: set(i.rd, regs[i.rs] << i.imm); break;
+                case SRL: set(i.rd, regs[i.rs] >>> i.imm); break;
+                case SRA: set(i.rd, regs[i.rs] >> i.imm); break;
+                case DIV:
+                    if (regs[i.rt] == 0)
+                        throw new SimulationError("division by zero at " + i.line);
+                    lo = regs[i.rs] / regs[i.rt];
+                    hi = regs[i.rs] % regs[i.rt];
+                    break;
+                case MFLO: set(i.rd, lo); break;
+                case MFHI: set(i.rd, hi); break;
+                case LI: case LA: set(i.rd, i.imm); break;
+                case MOVE: set(i.rd, regs[i.rs]); break;
+                case LUI: set(i.rd, i.imm << 16); break;
+                case LW: set(i.rd, loadWord(address(i), i)); break;
+                case LB: set(i.rd, loadByte(address(i))); break;
+                case LBU: set(i.rd, loadByte(address(i)) & 0xff); break;
+                case SW: storeWord(address(i), regs[i.rd], i); break;
+                case SB: storeByte(address(i), regs[i.rd]); break;
+                case BEQ: if (regs[i.rs] == regs[i.rt]) pc = i.imm; break;
+                case BNE: if (regs[i.rs] != regs[i.rt]) pc = i.imm; break;
+                case BEQZ: if (regs[i.rs] == 0) pc = i.imm; break;
+                case BNEZ: if (regs[i.rs] != 0) pc = i.imm; break;
+                case BGEZ: if (regs[i.rs] >= 0) pc = i.imm; break;
+                case BGTZ: if (regs[i.rs] > 0) pc = i.imm; break;
+                case BLEZ: if (regs[i.rs] <= 0) pc = i.imm; break;
+                case BLTZ: if (regs[i.rs] < 0) pc = i.imm; break;
+                case B: case J: pc = i.imm; break;
+                case JAL:
+                    regs[31] = TEXT_BASE + 4 * pc;
+                    pc = i.imm;
+                    break;
+                case JALR:
+                    int target = regs[i.rs];
+                    regs[31] = TEXT_BASE + 4 * pc;
+                    pc = (target - TEXT_BASE) / 4;
+                    break;
+                case JR: pc = (regs[i.rs] - TEXT_BASE) / 4; break;
+                case NOP: break;
+                case SYSCALL:
+                    switch (regs[2]) {
+                        case 1: out.append(regs[4]); break;
+                        case 4:
+                            for (int a = regs[4]; loadByte(a) != 0; a++)
+                                out.append((char) loadByte(a));
+                            break;
+                        case 11: out.append((char) (regs[4] & 0xff)); break;
+                        case 5: {
+                            while (inputPos < input.length() && Character.isWhitespace(input.charAt(inputPos)))
+                                inputPos++;
+                            int from = inputPos;
+                            while (inputPos < input.length() && !Character.isWhitespace(input.charAt(inputPos)))
+                                inputPos++;
+                            regs[2] = from == inputPos ? 0 : Integer.parseInt(input.substring(from, inputPos));
+                            break;
+                        }
+                        case 12:
+                            while (inputPos < input.length() && Character.isWhitespace(input.charAt(inputPos)))
+                                inputPos++;
+                            regs[2] = inputPos < input.length() ? input.charAt(inputPos++) : 0;
+                            break;
+                        case 9:
+                            regs[2] = heap;
+                            heap += (regs[4] + 7) & ~7;
+                            if (heap - DATA_BASE > data.length)
+                                throw new SimulationError("out of heap");
+                            break;
+                        case 10: return out.toString();
+                        default: throw new SimulationError("unknown system call " + regs[2]);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void set(int r, int value) {
+        if (r != 0)
+            regs[r] = value;
+        if (r == 29 && value < lowestSp) {
+            lowestSp = value;
+            if (STACK_TOP - value > stack.length)
+                throw new SimulationError("stack overflow: " + (STACK_TOP - value) + " bytes");
+        }
+    }
+
+    private int address(Insn i) {
+        return i.rs < 0 ? i.imm : regs[i.rs] + i.imm;
+    }
+
+    private byte[] region(int address) {
+        if (address >= DATA_BASE && address - DATA_BASE < data.length)
+            return data;
+        if (address <= STACK_TOP + 3 && STACK_TOP + 3 - address < stack.length)
+            return stack;
+        throw new SimulationError("address out of memory: 0x" + Integer.toHexString(address));
+    }
+
+    private int index(byte[] region, int address) {
+        return region == data ? address - DATA_BASE : stack.length - 1 - (STACK_TOP + 3 - address);
+    }
+
+    private int loadByte(int address) {
+        byte[] r = region(address);
+        return r[index(r, address)];
+    }
+
+    private void storeByte(int address, int value) {
+        byte[] r = region(address);
+        r[index(r, address)] = (byte) value;
+    }
+
+    private int loadWord(int address, Insn i) {
+        if ((address & 3) != 0)
+            throw new SimulationError("unaligned load at " + i.line);
+        byte[] r = region(address);
+        int k = index(r, address);
+        return (r[k] & 0xff) | (r[k + 1] & 0xff) << 8 | (r[k + 2] & 0xff) << 16 | r[k + 3] << 24;
+    }
+
+    private void storeWord(int address, int value, Insn i) {
+        if ((address & 3) != 0)
+            throw new SimulationError("unaligned store at " + i.line);
+        byte[] r = region(address);
+        int k = index(r, address);
+        r[k] = (byte) value;
+        r[k + 1] = (byte) (value >> 8);
+        r[k + 2] = (byte) (value >> 16);
+        r[k + 3] = (byte) (value >> 24);
+    }
+
+    /*
+     * Assembling: data is laid out in a first pass along with the text labels, instructions
+     * are decoded in a second pass once every label is known.
+     */
+
+    private void assemble(String assembly) {
+        List<String[]> pending = new ArrayList<>(); // text lines: mnemonic and operands
+        boolean inText = true;
+        for (String raw : assembly.split("\n")) {
+            String line = stripComment(raw).trim();
+            while (!line.isEmpty()) {
+                int colon = labelEnd(line);
+                if (colon < 0)
+                    break;
+                String label = line.substring(0, colon).trim();
+                if (inText)
+                    textLabels.put(label, pending.size());
+                else
+                    dataLabels.put(label, DATA_BASE + dataSize);
+                line = line.substring(colon + 1).trim();
+            }
+            if (line.isEmpty())
+                continue;
+            if (line.startsWith(".")) {
+                String directive = line.split("\\s+", 2)[0];
+                String arg = line.length() > directive.length() ? line.substring(directive.length()).trim() : "";
+                switch (directive) {
+                    case ".data": inText = false; break;
+                    case ".text": inText = true; break;
+                    case ".globl": break;
+                    case ".align":
+                        int a = 1 << Integer.parseInt(arg);
+                        dataSize = (dataSize + a - 1) & -a;
+                        break;
+                    case ".space": dataSize += Integer.parseInt(arg); break;
+                    case ".word":
+                        for (String w : arg.split(",")) {
+                            dataSize = (dataSize + 3) & ~3;
+                            int v = Integer.decode(w.trim());
+                            for (int b = 0; b < 4; b++)
+                                data[dataSize++] = (byte) (v >> (8 * b));
+                        }
+                        break;
+                    case ".asciiz":
+                        for (char c : unescape(arg.substring(1, arg.length() - 1)).toCharArray())
+                            data[dataSize++] = (byte) c;
+                        data[dataSize++] = 0;
+                        break;
+                    default:
+                        throw new SimulationError("unknown directive " + directive);
+                }
+                continue;
+            }
+            String[] parts = line.split("\\s+", 2);
+            String[] operands = parts.length > 1 ? parts[1].split("\\s*,\\s*") : new String[0];
+            String[] insn = new String[operands.length + 2];
+            insn[0] = line;
+            insn[1] = parts[0];
+            System.arraycopy(operands, 0, insn, 2, operands.length);
+            pending.add(insn);
+        }
+        for (String[] insn : pending)
+            text.add(decode(insn));
+    }
+
+    private static String stripComment(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"' && (i == 0 || line.charAt(i - 1) != '\\'))
+                quoted = !quoted;
+            else if (c == '#' && !quoted)
+                return line.substring(0, i);
+        }
+        return line;
+    }
+
+    private static int labelEnd(String line) {
+        int colon = line.indexOf(':');
+        if (colon < 0)
+            return -1;
+        for (int i = 0; i < colon; i++)
+            if (!Character.isLetterOrDigit(line.charAt(i)) && line.charAt(i) != '_' && line.charAt(i) != '.')
+                return -1;
+        return colon;
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                sb.append(c);
+                continue;
+            }
+            char e = s.charAt(++i);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case '0': sb.append('\0'); break;
+                default: sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    private Insn decode(String[] insn) {
+        String line = insn[0];
+        Op op;
+        try {
+            op = Op.valueOf(insn[1].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new SimulationError("unknown instruction: " + line);
+        }
+        String[] o = new String[3];
+        System.arraycopy(insn, 2, o, 0, Math.min(3, insn.length - 2));
+        try {
+            return decode(op, o, line);
+        } catch (RuntimeException e) {
+            throw new SimulationError("cannot assemble " + line + ": " + e.getMessage());
+        }
+    }
+
+    private Insn decode(Op op, String[] o, String line) {
+        switch (op) {
+            case ADD: case SUB: case MUL: case AND: case OR: case XOR: case NOR: case SLT: case SLTU:
+            case SLLV: case SRLV: case SRAV:
+                return new Insn(op, reg(o[0]), reg(o[1]), reg(o[2]), 0, line);
+            case ADDI: case ANDI: case ORI: case XORI: case SLTI: case SLTIU: case SLL: case SRL: case SRA:
+                return new Insn(op, reg(o[0]), reg(o[1]), 0, imm(o[2]), line);
+            case DIV:
+                return new Insn(op, 0, reg(o[0]), reg(o[1]), 0, line);
+            case MFLO: case MFHI:
+                return new Insn(op, reg(o[0]), 0, 0, 0, line);
+            case LI: case LUI:
+                return new Insn(op, reg(o[0]), 0, 0, imm(o[1]), line);
+            case LA:
+                return new Insn(op, reg(o[0]), 0, 0, dataAddress(o[1], line), line);
+            case MOVE:
+                return new Insn(op, reg(o[0]), reg(o[1]), 0, 0, line);
+            case LW: case SW: case LB: case LBU: case SB: {
+                String m = o[1];
+                int paren = m.indexOf('(');
+                if (paren < 0)
+                    return new Insn(op, reg(o[0]), -1, 0, dataAddress(m, line), line);
+                int offset = paren == 0 ? 0 : imm(m.substring(0, paren));
+                return new Insn(op, reg(o[0]), reg(m.substring(paren + 1, m.indexOf(')'))), 0, offset, line);
+            }
+            case BEQ: case BNE:
+                return new Insn(op, 0, reg(o[0]), reg(o[1]), textAddress(o[2], line), line);
+            case BEQZ: case BNEZ: case BGEZ: case BGTZ: case BLEZ: case BLTZ:
+                return new Insn(op, 0, reg(o[0]), 0, textAddress(o[1], line), line);
+            case B: case J: case JAL:
+                return new Insn(op, 0, 0, 0, textAddress(o[0], line), line);
+            case JR: case JALR:
+                return new Insn(op, 0, reg(o[0]), 0, 0, line);
+            default:
+                return new Insn(op, 0, 0, 0, 0, line);
+        }
+    }
+
+    private static int reg(String name) {
+        if (name == null || !name.startsWith("$"))
+            throw new SimulationError("not a register: " + name);
+        String n = name.substring(1);
+        for (int i = 0; i < REGISTER_NAMES.length; i++)
+            if (REGISTER_NAMES[i].equals(n))
+                return i;
+        return Integer.parseInt(n);
+    }
+
+    private static int imm(String s) {
+        return (int) Long.decode(s.trim()).longValue();
+    }
+
+    private int dataAddress(String label, String line) {
+        Integer a = dataLabels.get(label.trim());
+        if (a == null)
+            throw new SimulationError("unknown data label in: " + line);
+        return a;
+    }
+
+    private int textAddress(String label, String line) {
+        Integer a = textLabels.get(label.trim());
+        if (a == null)
+            throw new SimulationError("unknown label in: " + line);
+        return a;
+    }
+}
@@ -0,0 +1,115 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.gen.CodeGenerator.Allocator;
+import org.seungmin.gen.FunctionCode;
+import org.seungmin.gen.Instruction;
+import org.seungmin.gen.Instruction.Opcode;
+import org.seungmin.gen.Peephole;
+import org.seungmin.gen.Register;
+
+import java.io.IOException;
+
+import static CompilerTests.Fixtures.generate;
+import static CompilerTests.Fixtures.resource;
+import static CompilerTests.Fixtures.simulate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PeepholeTest {
+
+    private static String print(FunctionCode f) {
+        StringBuilder sb = new StringBuilder();
+        for (Instruction in : f.instructions)
+            sb.append(in).append('\n');
+        return sb.toString();
+    }
+
+    /*
+     * Runs the program optimised under every allocator, checks the output is the one of the
+     * unoptimised program and returns it.
+     */
+    private static String run(String source, String input) throws IOException {
+        String expected = simulate(source, Allocator.GRAPH_COLORING, false).run(input);
+        for (Allocator allocator : Allocator.values())
+            assertEquals(expected, simulate(source, allocator, true).run(input), allocator.toString());
+        return expected;
+    }
+
+    @Test
+    public void testFolding() {
+        FunctionCode f = new FunctionCode("f");
+        Register x = f.newVirtual(), a = f.newVirtual(), b = f.newVirtual(), c = f.newVirtual(), d = f.newVirtual();
+        f.add(Instruction.op(Opcode.ADDI, -8, a, Register.fp));
+        f.add(Instruction.op(Opcode.ADDI, 4, b, a));
+        f.add(Instruction.load(Opcode.LW, x, 0, b));
+        f.add(Instruction.op(Opcode.LI, 8, c));
+        f.add(Instruction.op(Opcode.MUL, d, c, x));
+        f.add(Instruction.op(Opcode.MOVE, "$a0, {0}", 0, null, d));
+        Peephole.beforeAllocation(f);
+        assertEquals("\tlw %v0, -4($fp)\n"
+                + "\tsll $a0, %v0, 3\n", print(f));
+    }
+
+    @Test
+    public void testWindows() {
+        FunctionCode f = new FunctionCode("f");
+        Register t0 = Register.tmpRegs.get(0), t1 = Register.tmpRegs.get(1);
+        f.add(Instruction.store(Opcode.SW, t0, -4, Register.fp));
+        f.add(Instruction.load(Opcode.LW, t1, -4, Register.fp));   // a move
+        f.add(Instruction.store(Opcode.SW, t1, -4, Register.fp));  // already there
+        f.add(Instruction.op(Opcode.MOVE, t0, t1));                // already equal
+        f.add(Instruction.op(Opcode.ADDI, 1, t1, t0));
+        f.add(Instruction.op(Opcode.ADDI, 2, t1, t1));
+        f.add(Instruction.branch(Opcode.BEQZ, "a", t1));
+        f.add(Instruction.jump("b"));
+        f.add(Instruction.label("a"));
+        f.add(Instruction.jump("c"));
+        f.add(Instruction.label("b"));
+        f.add(Instruction.load(Opcode.LW, t0, -4, Register.fp));   // only reached from the branch
+        f.add(Instruction.jump("c"));
+        f.add(Instruction.label("c"));
+        Peephole.afterAllocation(f);
+        assertEquals("\tsw $t0, -4($fp)\n"
+                + "\tmove $t1, $t0\n"
+                + "\taddi $t1, $t0, 3\n"
+                + "\tbeqz $t1, c\n"
+                + "c:\n", print(f));
+    }
+
+    @Test
+    public void testDivision() throws IOException {
+        String source = "void main() { int x; int i; i = 0;\n"
+                + "  while (i < 6) { x = read_i(); print_i(x / 2); print_c(' '); print_i(x / 8); print_c(' ');\n"
+                + "    print_i(x * 16); print_c(' '); print_i(x % 4); print_c(' '); i = i + 1; } }";
+        assertEquals("3 0 112 3 -3 0 -112 -3 -8 -2 -256 0 -8 -2 -272 -1 8 2 272 1 0 0 0 0 ",
+                run(source, "7 -7 -16 -17 17 0"));
+        String asm = generate(source, Allocator.GRAPH_COLORING, true);
+        assertTrue(asm.contains("sll"));
+        assertTrue(asm.contains("sra"));
+        assertFalse(asm.contains("mul"));
+        assertFalse(asm.contains("mflo"));
+        assertTrue(asm.contains("mfhi"));
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        String fibonacci = resource("fibonacci.c");
+        String tictactoe = resource("tictactoe.c");
+        String moves = "a1 b1 a2 b2 a3 y a1 b2 a2 a3 c1 b1 b3 c2 c3 n";
+        run(fibonacci, "20");
+        run(tictactoe, moves);
+        run("struct p { int x; char c; int a[3]; };\n"
+                + "void main() { struct p s; int a[4]; int i; i = 0;\n"
+                + "  while (i < 4) { a[i] = i * 3; i = i + 1; }\n"
+                + "  s.a[2] = a[3] + a[1]; s.c = 'z'; s.x = s.a[2] / 4; print_i(s.x); print_c(s.c); print_i(a[2]); }", "");
+
+        // free_stack is only changed by the peephole optimiser
+        MipsSimulator plain = simulate(tictactoe, Allocator.FREE_STACK, false);
+        plain.run(moves);
+        MipsSimulator optimised = simulate(tictactoe, Allocator.FREE_STACK, true);
+        optimised.run(moves);
+        assertTrue(optimised.getInstructionCount() < plain.getInstructionCount());
+    }
+}
@@ -0,0 +1,190 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.gen.CodeGenerator.Allocator;
+import org.seungmin.ir.BasicBlock;
+import org.seungmin.ir.ConstantPropagation;
+import org.seungmin.ir.Dominators;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.Instr;
+import org.seungmin.ir.Phi;
+import org.seungmin.ir.SSA;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static CompilerTests.Fixtures.lower;
+import static CompilerTests.Fixtures.print;
+import static CompilerTests.Fixtures.resource;
+import static CompilerTests.Fixtures.simulate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SSATest {
+
+    /*
+     * Runs the program with and without optimisation, checks the outputs agree and returns it.
+     */
+    private static String run(String source, String input) throws IOException {
+        String expected = simulate(source, Allocator.GRAPH_COLORING, false).run(input);
+        for (Allocator allocator : new Allocator[] { Allocator.GRAPH_COLORING, Allocator.LINEAR_SCAN })
+            assertEquals(expected, simulate(source, allocator, true).run(input), allocator.toString());
+        return expected;
+    }
+
+    @Test
+    public void testDominators() throws IOException {
+        Function f = lower("int f(int n) {\n"
+                + "  while (n > 0) { if (n == 3) n = 1; n = n - 1; }\n"
+                + "  return n;\n"
+                + "}");
+        f.computePredecessors();
+        Dominators dominators = new Dominators(f);
+        // entry_f, while_0, do_1, then_3, endif_4, endwhile_2
+        BasicBlock entry = f.blocks.get(0), test = f.blocks.get(1), body = f.blocks.get(2);
+        BasicBlock then = f.blocks.get(3), endif = f.blocks.get(4), exit = f.blocks.get(5);
+        assertNull(dominators.idom(entry));
+        assertSame(entry, dominators.idom(test));
+        assertSame(test, dominators.idom(exit));
+        assertSame(body, dominators.idom(then));
+        assertSame(body, dominators.idom(endif));
+        assertTrue(dominators.dominates(test, endif));
+        assertFalse(dominators.dominates(then, endif));
+        assertEquals(Collections.singleton(endif), dominators.frontier(then));
+        assertEquals(Collections.singleton(test), dominators.frontier(endif));
+        assertEquals(new HashSet<>(Arrays.asList(test)), dominators.frontier(body));
+        assertTrue(dominators.frontier(entry).isEmpty());
+    }
+
+    @Test
+    public void testConstruction() throws IOException {
+        Function f = lower("int f(int n) {\n"
+                + "  int s; int i;\n"
+                + "  s = 0; i = 0;\n"
+                + "  while (i < n) { if (i > 5) s = s + i; i = i + 1; }\n"
+                + "  return s;\n"
+                + "}");
+        SSA.construct(f);
+        assertEquals("function f(n.0)\n"
+                + "entry_f:\n"
+                + "\ts.7 = 0\n"
+                + "\ti.8 = 0\n"
+                + "\tjump while_0\n"
+                + "while_0:\n"
+                + "\ti.9 = phi [entry_f: i.8], [endif_4: i.13]\n"
+                + "\ts.10 = phi [entry_f: s.7], [endif_4: s.12]\n"
+                + "\tt3 = lt i.9, n.0\n"
+                + "\tbranch t3, do_1, endwhile_2\n"
+                + "do_1:\n"
+                + "\tt4 = gt i.9, 5\n"
+                + "\tbranch t4, then_3, endif_4\n"
+                + "then_3:\n"
+                + "\tt5 = add s.10, i.9\n"
+                + "\ts.11 = t5\n"
+                + "\tjump endif_4\n"
+                + "endif_4:\n"
+                + "\ts.12 = phi [do_1: s.10], [then_3: s.11]\n"
+                + "\tt6 = add i.9, 1\n"
+                + "\ti.13 = t6\n"
+                + "\tjump while_0\n"
+                + "endwhile_2:\n"
+                + "\treturn s.10\n", print(f));
+        // every temporary is written once
+        HashSet<Integer> written = new HashSet<>();
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions)
+                if (in.dest != null)
+                    assertTrue(written.add(in.dest.id), in.toString());
+    }
+
+    @Test
+    public void testConstantPropagation() throws IOException {
+        Function f = lower("int f(int n) {\n"
+                + "  int x; int y; int z;\n"
+                + "  x = 3; z = 0;\n"
+                + "  if (x > 2) y = x * 2; else y = n;\n"
+                + "  while (z < y) { if (y != 6) print_i(n); z = z + 1; }\n"
+                + "  return y + 1;\n"
+                + "}");
+        SSA.construct(f);
+        ConstantPropagation.run(f);
+        String ssa = print(f);
+        // y is 6 whatever n, the else and the call never run
+        assertFalse(ssa.contains("else_"), ssa);
+        assertFalse(ssa.contains("print_i"), ssa);
+        assertTrue(ssa.contains("return 7"), ssa);
+        // z is not a constant, its phi stays
+        boolean phi = false;
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions)
+                phi |= in instanceof Phi;
+        assertTrue(phi);
+
+        SSA.destruct(f);
+        for (BasicBlock b : f.blocks)
+            for (Instr in : b.instructions)
+                assertFalse(in instanceof Phi);
+    }
+
+    @Test
+    public void testIRStageFolds() throws IOException {
+        StringBuilder out = new StringBuilder();
+        new Compiler().compile(Stage.IR, "void main() { int x; x = 4; if (x * 2 == 8) print_i(x); else print_i(0); }", out);
+        assertEquals("\nfunction main()\nentry_main:\n\tcall print_i(4)\n\treturn\n", out.toString());
+
+        Compiler.Options options = new Compiler.Options();
+        options.optimize = false;
+        out.setLength(0);
+        new Compiler(options, d -> { }).compile(Stage.IR, "void main() { print_i(1 + 2); }", out);
+        assertTrue(out.toString().contains("add 1, 2"));
+    }
+
+    @Test
+    public void testSwapAndLostCopy() throws IOException {
+        // after copy propagation the phis of a and b read each other, and y outlives the loop
+        assertEquals("21 7 4", run("void main() {\n"
+                + "  int a; int b; int t; int i; int x; int y;\n"
+                + "  a = 3; b = 5; i = 0; x = 0; y = 0;\n"
+                + "  while (i < 5) { t = a; a = b; b = t + b; y = x; x = x + 1; i = i + 1; }\n"
+                + "  a = b - a; print_i(a); print_c(' '); print_i(b - 48); print_c(' '); print_i(y);\n"
+                + "}", ""));
+    }
+
+    @Test
+    public void testShortCircuitAndUndefined() throws IOException {
+        // u is only read where it was assigned, on the other paths it is undefined
+        assertEquals("2 2 1", run("int f(int a, int b) { int u; if (a > 0 || b / a > 1) u = a + 1; return u; }\n"
+                + "void main() { int k; print_i(f(1, 0)); print_c(' ');\n"
+                + "  k = 0; while (k < 2 && 1) k = k + 1; print_i(k); print_c(' '); print_i(f(3, 3) && 2 > 1); }", ""));
+    }
+
+    @Test
+    public void testSamples() throws IOException {
+        String fibonacci = resource("fibonacci.c");
+        String tictactoe = resource("tictactoe.c");
+        String moves = "a1 b1 a2 b2 a3 y a1 b2 a2 a3 c1 b1 b3 c2 c3 n";
+        assertEquals(run(fibonacci, "20"), simulate(fibonacci, Allocator.GRAPH_COLORING, false).run("20"));
+        run(tictactoe, moves);
+
+        // never slower, faster when not all allocators already did well
+        for (Allocator allocator : new Allocator[] { Allocator.GRAPH_COLORING, Allocator.LINEAR_SCAN }) {
+            MipsSimulator plain = simulate(tictactoe, allocator, false);
+            plain.run(moves);
+            MipsSimulator optimised = simulate(tictactoe, allocator, true);
+            optimised.run(moves);
+            assertTrue(optimised.getInstructionCount() < plain.getInstructionCount(), allocator.toString());
+        }
+        MipsSimulator plain = simulate(fibonacci, Allocator.LINEAR_SCAN, false);
+        plain.run("40");
+        MipsSimulator optimised = simulate(fibonacci, Allocator.LINEAR_SCAN, true);
+        optimised.run("40");
+        assertTrue(optimised.getInstructionCount() < plain.getInstructionCount());
+    }
+}
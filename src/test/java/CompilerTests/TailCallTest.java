@@ -0,0 +1,79 @@
+package CompilerTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.Compiler;
+import org.seungmin.gen.CodeGenerator.Allocator;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.TailCalls;
+
+import java.io.IOException;
+
+import static CompilerTests.Fixtures.generate;
+import static CompilerTests.Fixtures.lower;
+import static CompilerTests.Fixtures.options;
+import static CompilerTests.Fixtures.simulate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TailCallTest {
+
+    private static Compiler.Options tailCalls(Allocator allocator, boolean tailCalls) {
+        Compiler.Options options = options(allocator, true);
+        options.tailCalls = tailCalls;
+        return options;
+    }
+
+    private static String loop(int depth) {
+        return "int loop(int n, int acc) { if (n == 0) { return acc; } return loop(n - 1, acc + 2); }\n"
+                + "void main() { print_i(loop(" + depth + ", 0)); }";
+    }
+
+    @Test
+    public void testConstantStack() throws IOException {
+        for (Allocator allocator : new Allocator[] { Allocator.GRAPH_COLORING, Allocator.LINEAR_SCAN }) {
+            MipsSimulator shallow = simulate(loop(10), tailCalls(allocator, true));
+            assertEquals("20", shallow.run(""));
+            MipsSimulator deep = simulate(loop(1000000), tailCalls(allocator, true));
+            assertEquals("2000000", deep.run(""));
+            assertEquals(shallow.getMaxStackBytes(), deep.getMaxStackBytes(), allocator.toString());
+            assertTrue(deep.getMaxStackBytes() < 256);
+
+            // a frame per call otherwise
+            MipsSimulator calls = simulate(loop(1000000), tailCalls(allocator, false));
+            assertThrows(MipsSimulator.SimulationError.class, () -> calls.run(""));
+        }
+    }
+
+    @Test
+    public void testArguments() throws IOException {
+        // the arguments read the parameters they replace
+        String gcd = "struct p { int x; int y; };\n"
+                + "int gcd(int a, int b) { if (b == 0) { return a; } return gcd(b, a % b); }\n"
+                + "void count(int n) { if (n == 0) { return; } print_i(n); count(n - 1); }\n"
+                + "int walk(struct p s, int n) { if (n == 0) { return s.x * 10 + s.y; } s.x = s.x + s.y; return walk(s, n - 1); }\n"
+                + "void main() { struct p s; print_i(gcd(1071, 462)); print_c(' '); count(5); print_c(' ');\n"
+                + "  s.x = 1; s.y = 2; print_i(walk(s, 3)); print_i(s.x); }";
+        for (Allocator allocator : Allocator.values()) {
+            String plain = simulate(gcd, tailCalls(allocator, false)).run("");
+            assertEquals("21 54321 721", plain);
+            assertEquals(plain, simulate(gcd, tailCalls(allocator, true)).run(""), allocator.toString());
+        }
+    }
+
+    @Test
+    public void testTailPositions() throws IOException {
+        Function fact = lower("int fact(int n) { if (n < 2) { return 1; } return n * fact(n - 1); }");
+        assertEquals(0, TailCalls.run(fact));
+        Function down = lower("int down(int n) { if (n < 1) { return 0; } return down(n - 1); }");
+        assertEquals(1, TailCalls.run(down));
+        assertTrue(down.entry().label.startsWith("tail_"));
+        assertTrue(down.entry().predecessors.isEmpty());
+
+        String asm = generate("int f(int n) { if (n < 1) { return 0; } return f(n - 1); }\n"
+                + "void main() { print_i(f(3)); }", tailCalls(Allocator.GRAPH_COLORING, true));
+        // only the call from main is left
+        assertEquals(asm.indexOf("jal fun_f"), asm.lastIndexOf("jal fun_f"));
+        assertTrue(asm.contains("jal fun_f"));
+    }
+}
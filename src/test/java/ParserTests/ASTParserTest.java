@@ -0,0 +1,154 @@
+package ParserTests;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.seungmin.ast.ASTPrinter;
+import org.seungmin.ast.Program;
+import org.seungmin.lexer.Scanner;
+import org.seungmin.lexer.TokenStream;
+import org.seungmin.lexer.Tokeniser;
+import org.seungmin.parser.Parser;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the AST built by Parser through its ASTPrinter output.
+ */
+public class ASTParserTest {
+
+    Parser testParser;
+    @TempDir
+    Path tempDir;
+
+    protected void setupParser(String fileContent) throws FileNotFoundException, IOException {
+        Path tempFile = tempDir.resolve("testFile");
+        Files.writeString(tempFile, fileContent);
+        testParser = new Parser(new Tokeniser(new Scanner(tempFile.toFile())));
+    }
+
+    private String print(Program program) {
+        StringWriter out = new StringWriter();
+        program.accept(new ASTPrinter(new PrintWriter(out)));
+        return out.toString();
+    }
+
+    private void assertAST(String expected, String fileContent) throws IOException {
+        setupParser(fileContent);
+        Program program = testParser.parse();
+        assertEquals(0, testParser.getErrorCount(), "Expected 0 errors");
+        assertEquals(expected, print(program));
+    }
+
+    @Test
+    public void testDeclarations() throws IOException {
+        assertAST("Program(StructTypeDecl(StructType(s),VarDecl(INT,a),VarDecl(PointerType(CHAR),b)),"
+                        + "VarDecl(ArrayType(INT,5),xs),VarDecl(PointerType(StructType(s)),p),"
+                        + "FunDecl(VOID,main,VarDecl(INT,n),VarDecl(StructType(s),v),Block()))",
+                "#include \"io.h\"\nstruct s { int a; char* b; };\nint xs[5];\nstruct s* p;\nvoid main(int n, struct s v) {}");
+    }
+
+    @Test
+    public void testPrecedence() throws IOException {
+        assertAST("Program(FunDecl(INT,f,Block(Return(BinOp(BinOp(IntLiteral(1),ADD,BinOp(IntLiteral(2),MUL,IntLiteral(3))),"
+                        + "LT,BinOp(BinOp(IntLiteral(4),SUB,IntLiteral(5)),SUB,IntLiteral(6)))))))",
+                "int f() { return 1 + 2 * 3 < 4 - 5 - 6; }");
+    }
+
+    @Test
+    public void testLogicalOperators() throws IOException {
+        assertAST("Program(FunDecl(INT,f,Block(Return(BinOp(BinOp(VarExpr(a),AND,BinOp(VarExpr(b),EQ,VarExpr(c))),"
+                        + "OR,BinOp(VarExpr(d),NE,IntLiteral(0)))))))",
+                "int f() { return a && b == c || d != 0; }");
+    }
+
+    @Test
+    public void testUnaryAndPostfix() throws IOException {
+        assertAST("Program(FunDecl(VOID,f,Block("
+                        + "Assign(ValueAtExpr(FieldAccessExpr(ArrayAccessExpr(VarExpr(a),IntLiteral(1)),x)),"
+                        + "BinOp(IntLiteral(0),SUB,TypecastExpr(INT,ChrLiteral(c)))),"
+                        + "ExprStmt(FunCallExpr(print_s,StrLiteral(hi),SizeOfExpr(PointerType(INT)))))))",
+                "void f() { *a[1].x = -(int)'c'; print_s(\"hi\", sizeof(int*)); }");
+    }
+
+    @Test
+    public void testStatements() throws IOException {
+        assertAST("Program(FunDecl(VOID,f,Block(VarDecl(INT,i),"
+                        + "While(BinOp(VarExpr(i),LT,IntLiteral(3)),Block(Assign(VarExpr(i),BinOp(VarExpr(i),ADD,IntLiteral(1))))),"
+                        + "If(VarExpr(i),Return(),Return(VarExpr(i))),If(VarExpr(i),Block()))))",
+                "void f() { int i; while (i < 3) { i = i + 1; } if (i) return; else return i; if (i) {} }");
+    }
+
+    @Test
+    public void testSyntaxError() throws IOException {
+        setupParser("void f() { return 1 +; }");
+        testParser.parse();
+        assertEquals(1, testParser.getErrorCount(), "Expected 1 errors");
+    }
+
+    @Test
+    public void testIntegerLiteralOutOfRange() throws IOException {
+        setupParser("int xs[99999999999];\nint main() { int x; x = 2147483648; return 2147483647; }");
+        Program program = testParser.parse();
+        assertEquals(2, testParser.getErrorCount(), "Expected 2 errors");
+        assertEquals(1, program.funDecls.size());
+    }
+
+    @Test
+    public void testPrelexedSameAST() throws IOException {
+        // the lists are sized from the tokens then, also on malformed input
+        String[] sources = {
+                "struct s { int a; char b[2]; };\nstruct s g; int h;\n"
+                        + "void f(int n) { int i; struct s v; i = 0; while (i < n) { if (i) { i = i + 1; } else i = 2; } { } }",
+                "int f() { int; x = 1; }",
+                "struct s { };\nvoid f() { { { }",
+                "int x; } int y; void f() { }"
+        };
+        for (String source : sources) {
+            setupParser(source);
+            Program streamed = testParser.parse();
+            int errors = testParser.getErrorCount();
+            Parser prelexed = new Parser(TokenStream.lex(new Tokeniser(new Scanner(source))));
+            assertEquals(print(streamed), print(prelexed.parse()), source);
+            assertEquals(errors, prelexed.getErrorCount(), source);
+        }
+    }
+
+    @Test
+    public void testMillionTopLevelDeclarations() throws Throwable {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1_000_000; i++)
+            sb.append("int g").append(i).append(";\n");
+        sb.append("void main() {");
+        for (int i = 0; i < 100_000; i++)
+            sb.append("g").append(i).append(" = ").append(i).append(";\n");
+        sb.append("}");
+        setupParser(sb.toString());
+
+        Program[] program = new Program[1];
+        ParserTest.runWithSmallStack(() -> program[0] = testParser.parse());
+        assertEquals(0, testParser.getErrorCount(), "Expected 0 errors");
+        assertEquals(1_000_000, program[0].varDecls.size());
+        assertEquals(100_000, program[0].funDecls.get(0).block.stmts.size());
+    }
+
+    @Test
+    public void testLongOperatorChain() throws Throwable {
+        StringBuilder sb = new StringBuilder("int f(int a) { return a");
+        for (int i = 1; i < 100_000; i++)
+            sb.append(i % 3 == 0 ? " * " : " - ").append(i % 2 == 0 ? "a" : Integer.toString(i));
+        sb.append("; }");
+        setupParser(sb.toString());
+
+        Program[] program = new Program[1];
+        ParserTest.runWithSmallStack(() -> program[0] = testParser.parse());
+        assertEquals(0, testParser.getErrorCount(), "Expected 0 errors");
+        assertEquals(1, program[0].funDecls.get(0).block.stmts.size());
+    }
+}
@@ -127,4 +127,32 @@ public class ParserTest {
         testParser.parse();
         assertNoParserErrors();
     }
+
+    @Test
+    public void testMillionTopLevelDeclarations() throws Throwable {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1_000_000; i++)
+            sb.append("int g").append(i).append(";\n");
+        setupParser(sb.toString());
+        runWithSmallStack(() -> testParser.parse());
+        assertNoParserErrors();
+    }
+
+    /*
+     * Runs the action on a thread with a 256KB stack, list productions must not recurse per element.
+     */
+    protected static void runWithSmallStack(Runnable action) throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                action.run();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "small-stack-parser", 256 * 1024);
+        thread.start();
+        thread.join();
+        if (failure[0] != null)
+            throw failure[0];
+    }
 }
@@ -0,0 +1,19 @@
+package ParserTests;
+
+import org.seungmin.lexer.TokenStream;
+import org.seungmin.parser.ParserPart1;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Runs the whole ParserTest suite with the file tokenised up front into a TokenStream.
+ */
+public class PrelexedParserTest extends ParserTest {
+
+    @Override
+    protected void setupParser(String fileContent) throws FileNotFoundException, IOException {
+        setupTokenizer(fileContent);
+        testParser = new ParserPart1(TokenStream.lex(testTokeniser));
+    }
+}
@@ -0,0 +1,58 @@
+package SemanticTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.SemanticAnalyzer;
+import org.seungmin.util.Diagnostic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs all of TypeCheckTest with the fused semantic pass, and compares the two modes on
+ * programs mixing name and type errors.
+ */
+public class FusedSemanticTest extends TypeCheckTest {
+
+    @Override
+    protected Compiler.Options options() {
+        Compiler.Options options = new Compiler.Options();
+        options.semantics = SemanticAnalyzer.Mode.FUSED;
+        return options;
+    }
+
+    static List<String> messages(String source, SemanticAnalyzer.Mode mode) throws IOException {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        Compiler.Options options = new Compiler.Options();
+        options.semantics = mode;
+        int errors = new Compiler(options, diagnostics::add).compile(Stage.SEMANTICANALYSIS, source, new StringBuilder()).errors;
+        List<String> messages = new ArrayList<>();
+        for (Diagnostic d : diagnostics)
+            messages.add(d.toString());
+        assertEquals(messages.size(), errors);
+        return messages;
+    }
+
+    @Test
+    public void testSameDiagnosticsAsSeparatePasses() throws IOException {
+        String source = "struct s { int a; int a; struct t b; };\n"
+                + "int g; char g;\n"
+                + "int f(int x) { char c; c = x; { int c; c = y; } return z(c) + 'a'; }\n"
+                + "int f() { return f; }\n"
+                + "void main() { struct s v; int* p; v.a = *p + f(1, 2); if (p) main(); while (v.q) { } }";
+        List<String> separate = messages(source, SemanticAnalyzer.Mode.SEPARATE);
+        assertEquals(separate, messages(source, SemanticAnalyzer.Mode.FUSED));
+        assertEquals(11, separate.size());
+    }
+
+    @Test
+    public void testStructFieldsChecked() throws IOException {
+        String source = "struct s { void x; int y; };\nvoid main() { struct s a; a.y = 1; }";
+        for (SemanticAnalyzer.Mode mode : SemanticAnalyzer.Mode.values())
+            assertEquals(List.of("semantic error: variable x declared void"), messages(source, mode), mode.toString());
+    }
+}
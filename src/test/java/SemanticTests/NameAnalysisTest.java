@@ -0,0 +1,97 @@
+package SemanticTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.CompilationResult;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.Scope;
+import org.seungmin.VarSymbol;
+import org.seungmin.ast.BaseType;
+import org.seungmin.ast.VarDecl;
+import org.seungmin.util.Diagnostic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class NameAnalysisTest {
+
+    protected final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    protected CompilationResult analyse(String source) throws IOException {
+        return new Compiler(new Compiler.Options(), diagnostics::add).compile(Stage.SEMANTICANALYSIS, source, new StringBuilder());
+    }
+
+    protected void assertErrors(String source, String... messages) throws IOException {
+        CompilationResult result = analyse(source);
+        List<String> actual = new ArrayList<>();
+        for (Diagnostic d : diagnostics)
+            actual.add(d.message);
+        assertEquals(List.of(messages), actual);
+        assertEquals(messages.length, result.errors);
+    }
+
+    @Test
+    public void testScopeShadowing() {
+        Scope scope = new Scope();
+        VarSymbol outer = new VarSymbol(new VarDecl(BaseType.INT, "x"));
+        VarSymbol inner = new VarSymbol(new VarDecl(BaseType.CHAR, "x"));
+        scope.put(outer);
+        scope.enter();
+        assertSame(outer, scope.lookup("x"));
+        assertNull(scope.lookupCurrent("x"));
+        scope.put(inner);
+        assertSame(inner, scope.lookup("x"));
+        assertSame(inner, scope.lookupCurrent("x"));
+        scope.enter();
+        scope.put(new VarSymbol(new VarDecl(BaseType.INT, "y")));
+        scope.exit();
+        assertNull(scope.lookup("y"));
+        scope.exit();
+        assertSame(outer, scope.lookup("x"));
+        assertSame(outer, scope.lookupCurrent("x"));
+        assertNull(scope.lookup("z"));
+    }
+
+    @Test
+    public void testValidProgram() throws IOException {
+        assertErrors("struct node { int v; struct node* next; };\n"
+                + "int g;\n"
+                + "int f(int a) { int b; b = a + g; { int a; a = b; } return f(b); }\n"
+                + "void main() { struct node n; print_i(f(read_i())); }");
+    }
+
+    @Test
+    public void testUndeclared() throws IOException {
+        assertErrors("void main() { x = 1; h(); { int y; } y = 2; }",
+                "variable x not declared", "function h not declared", "variable y not declared");
+    }
+
+    @Test
+    public void testDuplicates() throws IOException {
+        assertErrors("struct s { int v; int v; };\nstruct s { char c; };\nint g;\nchar g;\n"
+                        + "void f(int a) { int a; }\nint f() { return 0; }",
+                "field v already declared in struct s", "struct s already declared", "variable g already declared",
+                "variable a already declared", "function f already declared");
+    }
+
+    @Test
+    public void testStructNotDeclared() throws IOException {
+        assertErrors("struct nope n;", "struct nope not declared");
+    }
+
+    @Test
+    public void testDeepNesting() throws IOException {
+        StringBuilder sb = new StringBuilder("void main() { int v0;");
+        for (int i = 1; i < 500; i++)
+            sb.append("{ int v").append(i).append("; v").append(i).append(" = v0 + v").append(i - 1).append(";");
+        for (int i = 1; i < 500; i++)
+            sb.append("}");
+        sb.append(" v1 = 0; }");
+        assertErrors(sb.toString(), "variable v1 not declared");
+    }
+}
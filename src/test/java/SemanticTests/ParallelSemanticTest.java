@@ -0,0 +1,75 @@
+package SemanticTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.Compiler;
+import org.seungmin.SemanticAnalyzer;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs all of TypeCheckTest with the functions analysed in parallel, and checks that the
+ * diagnostics are those of the serial modes, in the same order.
+ */
+public class ParallelSemanticTest extends TypeCheckTest {
+
+    @Override
+    protected Compiler.Options options() {
+        Compiler.Options options = new Compiler.Options();
+        options.semantics = SemanticAnalyzer.Mode.PARALLEL;
+        return options;
+    }
+
+    private static void assertSameAsSerial(String source, int expectedErrors) throws IOException {
+        List<String> separate = FusedSemanticTest.messages(source, SemanticAnalyzer.Mode.SEPARATE);
+        assertEquals(expectedErrors, separate.size());
+        for (int run = 0; run < 5; run++)
+            assertEquals(separate, FusedSemanticTest.messages(source, SemanticAnalyzer.Mode.PARALLEL));
+    }
+
+    @Test
+    public void testFunctionsOnlySeeEarlierFunctions() throws IOException {
+        assertErrors("int f() { return g(); }\nint g() { return f() + g(); }",
+                "function g not declared");
+    }
+
+    @Test
+    public void testDuplicateFunctions() throws IOException {
+        // calls resolve to the first declaration, a global variable takes precedence
+        assertErrors("int x;\nint f(int a) { return a; }\nchar f() { return f(1); }\nvoid x() { }\nvoid main() { f(); }",
+                "function f already declared",
+                "function x already declared",
+                "function f returns CHAR, found INT",
+                "function f expects 1 arguments, found 0");
+    }
+
+    @Test
+    public void testSameDiagnosticsAsSeparatePasses() throws IOException {
+        assertSameAsSerial("struct s { int a; int a; struct t b; };\n"
+                + "int g; char g;\n"
+                + "int f(int x) { char c; c = x; { int c; c = y; } return z(c) + 'a'; }\n"
+                + "int f() { return f; }\n"
+                + "void main() { struct s v; int* p; v.a = *p + f(1, 2); if (p) main(); while (v.q) { } }", 11);
+    }
+
+    @Test
+    public void testInvalidStructFields() throws IOException {
+        assertSameAsSerial("struct s { void x; int y; };\nvoid main() { struct s a; a.y = 1; }", 1);
+        assertSameAsSerial("struct s { void x; int y; void z[2]; int y; };\nstruct t { struct s a; void b; };\n"
+                + "void main() { struct t v; v.a.y = 1; }", 3);
+    }
+
+    @Test
+    public void testManyFunctions() throws IOException {
+        StringBuilder sb = new StringBuilder("int g;\n");
+        for (int i = 0; i < 500; i++) {
+            sb.append("int f").append(i).append("(int a) { char c; c = a; ");
+            if (i % 3 == 0)
+                sb.append("u").append(i).append(" = 1; ");
+            sb.append("return f").append(i + 1).append("(a) + f").append(Math.max(i - 1, 0)).append("(g); }\n");
+        }
+        assertSameAsSerial(sb.toString(), 500 + 500 + 167);
+    }
+}
@@ -0,0 +1,135 @@
+package SemanticTests;
+
+import org.junit.jupiter.api.Test;
+import org.seungmin.CompilationResult;
+import org.seungmin.Compiler;
+import org.seungmin.Compiler.Stage;
+import org.seungmin.ast.ArrayType;
+import org.seungmin.ast.BaseType;
+import org.seungmin.ast.ExprStmt;
+import org.seungmin.ast.FunDecl;
+import org.seungmin.ast.Return;
+import org.seungmin.util.Diagnostic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TypeCheckTest {
+
+    protected final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    protected Compiler.Options options() {
+        return new Compiler.Options();
+    }
+
+    protected CompilationResult analyse(String source) throws IOException {
+        return new Compiler(options(), diagnostics::add).compile(Stage.SEMANTICANALYSIS, source, new StringBuilder());
+    }
+
+    protected void assertErrors(String source, String... messages) throws IOException {
+        CompilationResult result = analyse(source);
+        List<String> actual = new ArrayList<>();
+        for (Diagnostic d : diagnostics)
+            actual.add(d.message);
+        assertEquals(List.of(messages), actual);
+        assertEquals(messages.length, result.errors);
+    }
+
+    @Test
+    public void testValidProgram() throws IOException {
+        assertErrors("struct node { int v; struct node* next; };\n"
+                + "int sum(struct node* n, int k) { int s; s = 0; while (k > 0) { s = s + (*n).v; n = (*n).next; k = k - 1; } return s; }\n"
+                + "void main() { char s[6]; int* p; struct node* n; p = (int*) mcmalloc(sizeof(int));\n"
+                + "  n = (struct node*) mcmalloc(sizeof(struct node)); (*n).next = n;\n"
+                + "  *p = 'a' == 'b'; s[0] = 'x'; (*n).v = -(int) s[0] + (int) s[1]; print_s((char*) \"hello\"); print_i(sum(n, *p)); return; }");
+    }
+
+    @Test
+    public void testExpressionTypes() throws IOException {
+        CompilationResult result = analyse("char* f() { return (char*) \"a\\nb\"; }\nint g(int x) { return x * 2; }");
+        assertEquals(0, result.errors);
+        FunDecl f = result.program.funDecls.get(0);
+        ArrayType literal = (ArrayType) ((org.seungmin.ast.TypecastExpr) ((Return) f.block.stmts.get(0)).expr).expr.type;
+        assertSame(BaseType.CHAR, literal.elemType);
+        assertEquals(4, literal.numElements);
+        assertSame(BaseType.INT, ((Return) result.program.funDecls.get(1).block.stmts.get(0)).expr.type);
+    }
+
+    @Test
+    public void testTypesAreInterned() throws IOException {
+        CompilationResult result = analyse("struct s { int* a; struct s* n; };\nint* p; struct s* q;\n"
+                + "void main() { char* c; c = (char*) \"ab\"; c = (char*) \"cd\"; q = (*q).n; }");
+        assertEquals(0, result.errors);
+        assertSame(result.program.structTypeDecls.get(0).varDecls.get(0).type, result.program.varDecls.get(0).type);
+        assertSame(result.program.structTypeDecls.get(0).varDecls.get(1).type, result.program.varDecls.get(1).type);
+        assertSame(result.program.types.pointer(BaseType.CHAR), result.program.funDecls.get(0).block.vds.get(0).type);
+        assertSame(result.program.types.array(BaseType.CHAR, 3), result.program.types.array(BaseType.CHAR, 3));
+    }
+
+    @Test
+    public void testOperatorsAndConditions() throws IOException {
+        assertErrors("struct s { int a; };\nvoid main() { char c; struct s x; struct s y; int* p;\n"
+                        + "c = c + 1; if (c) print_i(1); while (p) c = 'a'; c = x == y; }",
+                "operator ADD expects int operands, found CHAR and INT",
+                "cannot assign INT to CHAR",
+                "if condition has type CHAR, expected INT",
+                "while condition has type INT*, expected INT",
+                "cannot compare struct s and struct s with EQ",
+                "cannot assign INT to CHAR");
+    }
+
+    @Test
+    public void testCallsAndReturns() throws IOException {
+        assertErrors("int f(int a, char b) { return b; }\nvoid g() { return 1; }\nint h() { return; }\n"
+                        + "void main() { f(1); f('a', 'b'); print_s(\"s\"); }",
+                "function f returns INT, found CHAR",
+                "function g returns VOID, found INT",
+                "function h must return INT",
+                "function f expects 2 arguments, found 1",
+                "argument 1 of f has type CHAR, expected INT",
+                "argument 1 of print_s has type CHAR[2], expected CHAR*");
+    }
+
+    @Test
+    public void testAccessesAndCasts() throws IOException {
+        assertErrors("struct s { int a; };\nvoid v;\nvoid main() { int i; int a[3]; struct s x;\n"
+                        + "i = i[0]; i = *i; i = x.b; i = i.a; a[a] = 1; a = a; i = (int) a; }",
+                "variable v declared void",
+                "cannot index a value of type INT",
+                "cannot dereference a value of type INT",
+                "struct s has no field b",
+                "cannot access field a of a value of type INT",
+                "array index has type INT[3], expected INT",
+                "cannot assign to a value of type INT[3]",
+                "cannot cast INT[3] to INT");
+    }
+
+    @Test
+    public void testNameErrorsDoNotCascade() throws IOException {
+        // unresolved names are reported once, and are not type errors as well
+        assertErrors("void main() { int i; i = x + 1; i = f(x); y.a = i; return i; }",
+                "variable x not declared",
+                "function f not declared",
+                "variable x not declared",
+                "variable y not declared",
+                "function main returns VOID, found INT");
+    }
+
+    @Test
+    public void testInvalidAssignmentTarget() throws IOException {
+        CompilationResult result = analyse("void main() { int i; i + 1 = 2; }");
+        assertEquals(1, result.errors);
+        assertEquals("cannot assign to this expression", diagnostics.get(0).message);
+    }
+
+    @Test
+    public void testExprStmtKeepsType() throws IOException {
+        CompilationResult result = analyse("void main() { read_c(); }");
+        assertEquals(0, result.errors);
+        assertSame(BaseType.CHAR, ((ExprStmt) result.program.funDecls.get(0).block.stmts.get(0)).expr.type);
+    }
+}
@@ -0,0 +1,150 @@
+package benchmarks;
+
+import org.seungmin.ast.Op;
+import org.seungmin.ir.BasicBlock;
+import org.seungmin.ir.Binary;
+import org.seungmin.ir.Bits;
+import org.seungmin.ir.Branch;
+import org.seungmin.ir.Constant;
+import org.seungmin.ir.Dataflow;
+import org.seungmin.ir.Function;
+import org.seungmin.ir.Instr;
+import org.seungmin.ir.Jump;
+import org.seungmin.ir.LiveVariables;
+import org.seungmin.ir.Return;
+import org.seungmin.ir.Temp;
+
+import java.util.Random;
+
+/**
+ * Times Dataflow on functions of a growing number of blocks but a fixed number of variables, so
+ * that the sets keep the same size and the time should grow linearly with the blocks: the
+ * liveness of LiveVariables going backward, and the variables that may not have been assigned
+ * yet going forward. Every function is a sequence of loops, each holding an if and a nested
+ * loop, reading and writing variables picked at random.
+ *
+ * Usage: java benchmarks.DataflowBenchmark [blocks] [variables] [iterations]
+ * The blocks given are the largest function, halved three times for the others.
+ */
+public class DataflowBenchmark {
+
+    public static void main(String[] args) {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 80000;
+        int variables = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            Function f = generate(blocks / 8, variables);
+            for (int it = 0; it < iterations; it++) {
+                new LiveVariables(f);
+                new Dataflow(f, unassigned(variables));
+            }
+        }
+
+        System.out.printf("%d variables, %d iterations%n", variables, iterations);
+        for (int n = blocks / 8; n <= blocks; n *= 2) {
+            Function f = generate(n, variables);
+            long start = System.nanoTime();
+            LiveVariables liveness = null;
+            for (int it = 0; it < iterations; it++)
+                liveness = new LiveVariables(f);
+            long backward = System.nanoTime() - start;
+            start = System.nanoTime();
+            Dataflow dataflow = null;
+            for (int it = 0; it < iterations; it++)
+                dataflow = new Dataflow(f, unassigned(variables));
+            long forward = System.nanoTime() - start;
+            System.out.printf("%7d blocks: liveness %8.2f ms %6.1f ns/block %d rounds, "
+                            + "unassigned %8.2f ms %6.1f ns/block %d rounds %.2f visits/block%n",
+                    f.blocks.size(),
+                    backward / 1e6 / iterations, (double) backward / iterations / f.blocks.size(), liveness.rounds(),
+                    forward / 1e6 / iterations, (double) forward / iterations / f.blocks.size(), dataflow.rounds(),
+                    (double) dataflow.visits() / f.blocks.size());
+        }
+    }
+
+    /*
+     * The variables, by temporary id, that may be read before any assignment.
+     */
+    private static Dataflow.Problem unassigned(int variables) {
+        long[] all = Bits.full(variables);
+        return new Dataflow.Problem() {
+            public Dataflow.Direction direction() {
+                return Dataflow.Direction.FORWARD;
+            }
+
+            public Dataflow.Meet meet() {
+                return Dataflow.Meet.UNION;
+            }
+
+            public int size() {
+                return variables;
+            }
+
+            public void boundary(BasicBlock b, long[] in) {
+                if (b.index == 0) // the entry
+                    Bits.or(in, all);
+            }
+
+            public void transfer(BasicBlock b, long[] in, long[] out) {
+                System.arraycopy(in, 0, out, 0, out.length);
+                for (Instr i : b.instructions)
+                    if (i.dest != null && i.dest.id < variables)
+                        Bits.clear(out, i.dest.id);
+            }
+        };
+    }
+
+    /*
+     * A function of about the number of blocks given, ten per loop.
+     */
+    static Function generate(int blocks, int variables) {
+        Function f = new Function("f", true);
+        Temp[] vars = new Temp[variables];
+        for (int i = 0; i < variables; i++)
+            vars[i] = f.newTemp("v");
+        Random random = new Random(blocks);
+        BasicBlock current = f.newBlock("entry");
+        current.instructions.add(new Binary(vars[0], Op.ADD, Constant.of(0), Constant.of(0)));
+        for (int loop = 0; loop * 10 < blocks; loop++) {
+            BasicBlock head = f.newBlock("head" + loop);
+            BasicBlock body = f.newBlock("body" + loop);
+            BasicBlock then = f.newBlock("then" + loop);
+            BasicBlock join = f.newBlock("join" + loop);
+            BasicBlock innerHead = f.newBlock("inner" + loop);
+            BasicBlock innerBody = f.newBlock("innerBody" + loop);
+            BasicBlock innerExit = f.newBlock("innerExit" + loop);
+            BasicBlock latch = f.newBlock("latch" + loop);
+            BasicBlock exit = f.newBlock("exit" + loop);
+            BasicBlock after = f.newBlock("after" + loop);
+            current.terminator = new Jump(head);
+            head.terminator = new Branch(pick(vars, random), body, exit);
+            body.instructions.add(assign(vars, random));
+            body.terminator = new Branch(pick(vars, random), then, join);
+            then.instructions.add(assign(vars, random));
+            then.terminator = new Jump(join);
+            join.instructions.add(assign(vars, random));
+            join.terminator = new Jump(innerHead);
+            innerHead.terminator = new Branch(pick(vars, random), innerBody, innerExit);
+            innerBody.instructions.add(assign(vars, random));
+            innerBody.terminator = new Jump(innerHead);
+            innerExit.instructions.add(assign(vars, random));
+            innerExit.terminator = new Jump(latch);
+            latch.instructions.add(assign(vars, random));
+            latch.terminator = new Jump(head);
+            exit.instructions.add(assign(vars, random));
+            exit.terminator = new Jump(after);
+            current = after;
+        }
+        current.terminator = new Return(pick(vars, random));
+        return f;
+    }
+
+    private static Temp pick(Temp[] vars, Random random) {
+        return vars[random.nextInt(vars.length)];
+    }
+
+    private static Instr assign(Temp[] vars, Random random) {
+        return new Binary(pick(vars, random), Op.ADD, pick(vars, random), pick(vars, random));
+    }
+}
@@ -0,0 +1,91 @@
+package benchmarks;
+
+import org.seungmin.lexer.Scanner;
+import org.seungmin.lexer.TokenStream;
+import org.seungmin.lexer.Tokeniser;
+import org.seungmin.parser.Parser;
+import org.seungmin.parser.ParserPart1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares the precedence-climbing expression parser of Parser with the recursive parseExp
+ * of ParserPart1 on functions returning one long arithmetic expression each.
+ *
+ * The file is lexed once into a TokenStream and both parsers read it, so only the parsing is
+ * measured. ParserPart1 recurses once per operator, the benchmark therefore runs on a thread
+ * with a large stack.
+ *
+ * Usage: java benchmarks.ExpressionBenchmark [terms] [functions] [iterations]
+ */
+public class ExpressionBenchmark {
+
+    private static final String[] OPERATORS = {" + ", " * ", " - ", " / ", " < ", " % ", " == ", " && "};
+
+    public static void main(String[] args) throws Exception {
+        int terms = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int functions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        Path source = Files.createTempFile("expression-bench", ".c");
+        try {
+            Files.writeString(source, generate(terms, functions));
+            File file = source.toFile();
+            Thread t = new Thread(null, () -> {
+                try {
+                    run(file, iterations);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "expression-bench", 1L << 30);
+            t.start();
+            t.join();
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+    static String generate(int terms, int functions) {
+        StringBuilder sb = new StringBuilder();
+        for (int f = 0; f < functions; f++) {
+            sb.append("int f").append(f).append("(int a) { return a");
+            for (int i = 1; i < terms; i++)
+                sb.append(OPERATORS[i % OPERATORS.length]).append(i % 2 == 0 ? "a" : Integer.toString(i));
+            sb.append("; }\n");
+        }
+        return sb.toString();
+    }
+
+    private static void run(File file, int iterations) throws IOException {
+        TokenStream tokens = TokenStream.lex(new Tokeniser(new Scanner(file)));
+
+        for (int warmup = 0; warmup < 5; warmup++) {
+            new ParserPart1(tokens).parse();
+            new Parser(tokens).parse();
+        }
+
+        long recursive = 0, climbing = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            ParserPart1 part1 = new ParserPart1(tokens);
+            part1.parse();
+            recursive += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            Parser parser = new Parser(tokens);
+            parser.parse();
+            climbing += System.nanoTime() - start;
+
+            if (part1.getErrorCount() != 0 || parser.getErrorCount() != 0)
+                throw new IllegalStateException("synthetic file failed to parse");
+        }
+
+        double perIteration = (double) iterations * tokens.size();
+        System.out.printf("%d tokens, %d iterations%n", tokens.size(), iterations);
+        System.out.printf("recursive parseExp (ParserPart1): %.1f ns/token%n", recursive / perIteration);
+        System.out.printf("precedence climbing (Parser):     %.1f ns/token, builds the AST%n", climbing / perIteration);
+    }
+}
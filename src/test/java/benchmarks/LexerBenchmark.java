@@ -0,0 +1,64 @@
+package benchmarks;
+
+import org.seungmin.lexer.Scanner;
+import org.seungmin.lexer.TableTokeniser;
+import org.seungmin.lexer.Token;
+import org.seungmin.lexer.Tokeniser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Lexes every file of the tests/*.c corpus back to back, many times over, and reports
+ * files/sec and tokens/sec. This is the workload of a build lexing thousands of small
+ * files in one JVM, where the end-of-file path is hit once per file.
+ *
+ * Usage: java benchmarks.LexerBenchmark [corpusDir] [rounds]
+ */
+public class LexerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "src/main/resources/tests");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        File[] corpus = dir.listFiles((d, name) -> name.endsWith(".c"));
+        if (corpus == null || corpus.length == 0)
+            throw new IllegalArgumentException("no .c files in " + dir);
+        Arrays.sort(corpus);
+
+        // lexing errors are reported on stdout, keep them out of the measurement
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+        try {
+            for (boolean table : new boolean[]{false, true}) {
+                run(corpus, rounds / 4, table);   // warm-up
+                long start = System.nanoTime();
+                long tokens = run(corpus, rounds, table);
+                long elapsed = System.nanoTime() - start;
+
+                double seconds = elapsed / 1e9;
+                long files = (long) rounds * corpus.length;
+                out.printf("%s: lexed %d files (%d tokens) in %.3f s%n",
+                        table ? "TableTokeniser" : "Tokeniser", files, tokens, seconds);
+                out.printf("%.0f files/sec, %.0f tokens/sec%n", files / seconds, tokens / seconds);
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static long run(File[] corpus, int rounds, boolean table) throws IOException {
+        long tokens = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (File f : corpus) {
+                Scanner scanner = new Scanner(f);
+                Tokeniser tokeniser = table ? new TableTokeniser(scanner) : new Tokeniser(scanner);
+                for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken())
+                    tokens++;
+            }
+        }
+        return tokens;
+    }
+}
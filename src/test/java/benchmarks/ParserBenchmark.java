@@ -0,0 +1,109 @@
+package benchmarks;
+
+import org.seungmin.lexer.Scanner;
+import org.seungmin.lexer.Token;
+import org.seungmin.lexer.TokenStream;
+import org.seungmin.lexer.Tokeniser;
+import org.seungmin.parser.ParserPart1;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the parser's per-token cost on a synthetic file with many global declarations
+ * followed by as many small functions, which exercises lookAhead(2) at every declaration.
+ *
+ * The file is lexed once. The streaming mode replays the resulting Token objects through a
+ * Tokeniser, the indexed mode parses the pre-lexed TokenStream, so both numbers are the
+ * parser's own cost.
+ *
+ * Usage: java benchmarks.ParserBenchmark [declarations] [iterations]
+ */
+public class ParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int declarations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Path source = Files.createTempFile("parser-bench", ".c");
+        try {
+            Files.writeString(source, generate(declarations));
+            File file = source.toFile();
+            // run on a thread with a large stack, deep declaration lists used to be parsed recursively
+            Thread t = new Thread(null, () -> {
+                try {
+                    run(file, iterations);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }, "parser-bench", 1L << 30);
+            t.start();
+            t.join();
+        } finally {
+            Files.delete(source);
+        }
+    }
+
+    static String generate(int declarations) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#include \"minic-stdlib.h\"\n");
+        for (int i = 0; i < declarations; i++)
+            sb.append("int g").append(i).append(";\n");
+        for (int i = 0; i < declarations; i++)
+            sb.append("int f").append(i).append("(int a, char b) { int x; x = a + g").append(i).append("; return x; }\n");
+        return sb.toString();
+    }
+
+    private static void run(File file, int iterations) throws IOException {
+        Scanner scanner = new Scanner(file);
+        TokenStream tokens = TokenStream.lex(new Tokeniser(scanner));
+        int count = tokens.size();
+        Token[] replay = new Token[count];
+        for (int i = 0; i < count; i++)
+            replay[i] = tokens.token(i);
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            new ParserPart1(new Replay(scanner, replay)).parse();
+            new ParserPart1(tokens).parse();
+        }
+
+        long streaming = 0, indexed = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            ParserPart1 parser = new ParserPart1(new Replay(scanner, replay));
+            parser.parse();
+            streaming += System.nanoTime() - start;
+            if (parser.getErrorCount() != 0)
+                throw new IllegalStateException("synthetic file failed to parse");
+
+            start = System.nanoTime();
+            new ParserPart1(tokens).parse();
+            indexed += System.nanoTime() - start;
+        }
+
+        double perIteration = (double) iterations * count;
+        System.out.printf("%d tokens, %d iterations%n", count, iterations);
+        System.out.printf("streaming parser: %.1f ns/token%n", streaming / perIteration);
+        System.out.printf("indexed parser:   %.1f ns/token%n", indexed / perIteration);
+    }
+
+    /*
+     * A tokeniser handing out already lexed tokens, so that only the parser is measured.
+     */
+    private static class Replay extends Tokeniser {
+        private final Token[] tokens;
+        private int next = 0;
+
+        Replay(Scanner scanner, Token[] tokens) {
+            super(scanner);
+            this.tokens = tokens;
+        }
+
+        @Override
+        public Token nextToken() {
+            return tokens[Math.min(next++, tokens.length - 1)];
+        }
+    }
+}
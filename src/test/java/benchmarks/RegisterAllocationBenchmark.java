@@ -0,0 +1,94 @@
+package benchmarks;
+
+import CompilerTests.MipsSimulator;
+import org.seungmin.Compiler;
+import org.seungmin.gen.CodeGenerator.Allocator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Compares the register allocators on the program of SemanticBenchmark with few, very long
+ * functions: the time to compile it to assembly and the number of instructions emitted, then
+ * the number of instructions executed by fibonacci and tictactoe in MipsSimulator, with and
+ * without the SSA optimisations.
+ *
+ * Usage: java benchmarks.RegisterAllocationBenchmark [functions] [statementsPerFunction] [iterations]
+ */
+public class RegisterAllocationBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int statements = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String program = SemanticBenchmark.generate(functions, statements);
+
+        for (int warmup = 0; warmup < 3; warmup++)
+            for (Allocator allocator : Allocator.values())
+                for (int it = 0; it < iterations / 3 + 1; it++)
+                    compile(program, allocator);
+
+        System.out.printf("%d functions, %d statements each, %d iterations%n", functions, statements, iterations);
+        for (Allocator allocator : Allocator.values()) {
+            long start = System.nanoTime();
+            String asm = null;
+            for (int it = 0; it < iterations; it++)
+                asm = compile(program, allocator);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%-15s %8.2f ms/compile %8d instructions emitted%n",
+                    allocator.toString().toLowerCase() + ":", nanos / 1e6 / iterations, instructions(asm));
+        }
+
+        String fibonacci = resource("fibonacci.c");
+        String tictactoe = resource("tictactoe.c");
+        System.out.println("instructions executed:");
+        for (boolean optimize : new boolean[] { false, true })
+            for (Allocator allocator : Allocator.values())
+                System.out.printf("%-15s %-6s %8d fibonacci(40) %8d tictactoe%n", allocator.toString().toLowerCase() + ":",
+                        optimize ? "-O" : "no-opt",
+                        execute(fibonacci, allocator, optimize, "40"),
+                        execute(tictactoe, allocator, optimize, "a1 b1 a2 b2 a3 y a1 b2 a2 a3 c1 b1 b3 c2 c3 n"));
+    }
+
+    private static String compile(String source, Allocator allocator) throws IOException {
+        return compile(source, allocator, true);
+    }
+
+    private static String compile(String source, Allocator allocator, boolean optimize) throws IOException {
+        Compiler.Options options = new Compiler.Options();
+        options.allocator = allocator;
+        options.optimize = optimize;
+        StringBuilder out = new StringBuilder();
+        new Compiler(options, d -> { throw new IllegalStateException(d.toString()); })
+                .compile(Compiler.Stage.GEN, source, out);
+        return out.toString();
+    }
+
+    private static String resource(String name) throws IOException {
+        return new String(Files.readAllBytes(Paths.get("src/main/resources/tests", name)), StandardCharsets.UTF_8);
+    }
+
+    private static long execute(String source, Allocator allocator, boolean optimize, String input) throws IOException {
+        MipsSimulator simulator = new MipsSimulator(compile(source, allocator, optimize));
+        simulator.run(input);
+        return simulator.getInstructionCount();
+    }
+
+    /*
+     * Instructions of the text segment, labels and directives aside.
+     */
+    private static int instructions(String asm) {
+        int count = 0;
+        boolean text = false;
+        for (String line : asm.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("."))
+                text = trimmed.startsWith(".text") || (text && !trimmed.startsWith(".data"));
+            else if (text && line.startsWith("\t") && !trimmed.isEmpty() && !trimmed.startsWith("#"))
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package benchmarks;
+
+import org.seungmin.Scope;
+import org.seungmin.Symbol;
+import org.seungmin.VarSymbol;
+import org.seungmin.ast.BaseType;
+import org.seungmin.ast.VarDecl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the flat Scope with the naive chain of one HashMap per scope on the access pattern
+ * of name analysis over deeply nested blocks: every block declares a few locals, then uses
+ * variables declared at every level, most of them far out.
+ *
+ * Usage: java benchmarks.ScopeBenchmark [depth] [localsPerBlock] [usesPerBlock] [iterations]
+ */
+public class ScopeBenchmark {
+
+    /*
+     * The chain Scope used to be: a map per scope and a walk outwards on every lookup.
+     */
+    private static class ChainScope {
+        private final ChainScope outer;
+        private final Map<String, Symbol> symbolTable = new HashMap<>();
+
+        ChainScope(ChainScope outer) {
+            this.outer = outer;
+        }
+
+        Symbol lookup(String name) {
+            for (ChainScope s = this; s != null; s = s.outer) {
+                Symbol sym = s.symbolTable.get(name);
+                if (sym != null)
+                    return sym;
+            }
+            return null;
+        }
+
+        Symbol lookupCurrent(String name) {
+            return symbolTable.get(name);
+        }
+
+        void put(Symbol sym) {
+            symbolTable.put(sym.name, sym);
+        }
+    }
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int locals = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int uses = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        // the names as the parser hands them out: one String per distinct identifier
+        Symbol[][] declared = new Symbol[depth][locals];
+        for (int d = 0; d < depth; d++)
+            for (int l = 0; l < locals; l++)
+                declared[d][l] = new VarSymbol(new VarDecl(BaseType.INT, ("v" + d + "_" + l).intern()));
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            chain(declared, uses, iterations / 4);
+            flat(declared, uses, iterations / 4);
+        }
+
+        long start = System.nanoTime();
+        long found = chain(declared, uses, iterations);
+        long chainNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        long foundFlat = flat(declared, uses, iterations);
+        long flatNanos = System.nanoTime() - start;
+        if (found != foundFlat)
+            throw new IllegalStateException("the two scopes disagree");
+
+        long lookups = (long) iterations * depth * (uses + locals);
+        System.out.printf("depth %d, %d locals and %d uses per block, %d lookups%n", depth, locals, uses, lookups);
+        System.out.printf("chain of HashMaps: %.1f ns/lookup%n", (double) chainNanos / lookups);
+        System.out.printf("flat Scope:        %.1f ns/lookup%n", (double) flatNanos / lookups);
+    }
+
+    private static long chain(Symbol[][] declared, int uses, int iterations) {
+        long found = 0;
+        for (int it = 0; it < iterations; it++) {
+            ChainScope scope = new ChainScope(null);
+            for (int d = 0; d < declared.length; d++) {
+                scope = new ChainScope(scope);
+                for (Symbol sym : declared[d]) {
+                    if (scope.lookupCurrent(sym.name) == null)
+                        scope.put(sym);
+                }
+                for (int u = 0; u < uses; u++)
+                    if (scope.lookup(declared[(u * 7) % (d + 1)][u % declared[0].length].name) != null)
+                        found++;
+            }
+        }
+        return found;
+    }
+
+    private static long flat(Symbol[][] declared, int uses, int iterations) {
+        long found = 0;
+        for (int it = 0; it < iterations; it++) {
+            Scope scope = new Scope();
+            for (int d = 0; d < declared.length; d++) {
+                scope.enter();
+                for (Symbol sym : declared[d]) {
+                    if (scope.lookupCurrent(sym.name) == null)
+                        scope.put(sym);
+                }
+                for (int u = 0; u < uses; u++)
+                    if (scope.lookup(declared[(u * 7) % (d + 1)][u % declared[0].length].name) != null)
+                        found++;
+            }
+            for (int d = 0; d < declared.length; d++)
+                scope.exit();
+        }
+        return found;
+    }
+}
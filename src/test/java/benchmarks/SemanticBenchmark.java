@@ -0,0 +1,74 @@
+package benchmarks;
+
+import org.seungmin.Compiler;
+import org.seungmin.SemanticAnalyzer;
+import org.seungmin.ast.Program;
+
+import java.io.IOException;
+
+/**
+ * Compares the semantic analysis modes on a large generated program: many functions, each with
+ * a few locals, loops and long expressions calling the functions declared before it. The
+ * program is parsed once and analysed over and over.
+ *
+ * Usage: java benchmarks.SemanticBenchmark [functions] [statementsPerFunction] [iterations]
+ */
+public class SemanticBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int statements = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        Program program = new Compiler(new Compiler.Options(), d -> { throw new IllegalStateException(d.toString()); })
+                .compile(Compiler.Stage.AST, generate(functions, statements), new StringBuilder()).program;
+
+        for (int warmup = 0; warmup < 3; warmup++)
+            for (SemanticAnalyzer.Mode mode : SemanticAnalyzer.Mode.values())
+                run(program, mode, iterations / 3);
+
+        System.out.printf("%d functions, %d statements each, %d iterations, %d processors%n",
+                functions, statements, iterations, Runtime.getRuntime().availableProcessors());
+        for (SemanticAnalyzer.Mode mode : SemanticAnalyzer.Mode.values()) {
+            long start = System.nanoTime();
+            run(program, mode, iterations);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%-9s %.2f ms/program%n", mode.toString().toLowerCase() + ":", nanos / 1e6 / iterations);
+        }
+    }
+
+    private static void run(Program program, SemanticAnalyzer.Mode mode, int iterations) {
+        for (int it = 0; it < iterations; it++) {
+            int errors = new SemanticAnalyzer(mode).analyze(program, d -> { });
+            if (errors != 0)
+                throw new IllegalStateException(errors + " semantic errors");
+        }
+    }
+
+    public static String generate(int functions, int statements) {
+        StringBuilder sb = new StringBuilder("struct pair { int a; char b; struct pair* next; };\nint counter;\n");
+        for (int f = 0; f < functions; f++) {
+            sb.append("int f").append(f).append("(int x, struct pair* p) {\n");
+            sb.append("  int i; int acc; char c; int buf[8];\n  i = 0; acc = x;\n");
+            for (int s = 0; s < statements; s++) {
+                switch (s % 4) {
+                    case 0:
+                        sb.append("  while (i < ").append(s + 1).append(") { buf[i % 8] = acc * 3 + i; i = i + 1; }\n");
+                        break;
+                    case 1:
+                        sb.append("  if (acc > x || (*p).a == 0 && i != 2) { (*p).a = acc - buf[").append(s % 8).append("]; } else { c = (*p).b; }\n");
+                        break;
+                    case 2:
+                        sb.append("  acc = acc + (int) c + sizeof(struct pair) + ").append(f == 0 ? "counter" : "f" + (f - 1) + "(acc / 2, (*p).next)").append(";\n");
+                        break;
+                    default:
+                        sb.append("  counter = (acc % 7 + i * (x - 1)) / (buf[0] + 1) + counter;\n");
+                }
+            }
+            sb.append("  return acc;\n}\n");
+        }
+        sb.append("void main() { struct pair* p; p = (struct pair*) mcmalloc(sizeof(struct pair)); print_i(f")
+                .append(functions - 1).append("(read_i(), p)); }\n");
+        return sb.toString();
+    }
+}
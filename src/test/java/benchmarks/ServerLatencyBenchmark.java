@@ -0,0 +1,90 @@
+package benchmarks;
+
+import org.seungmin.CompileClient;
+import org.seungmin.CompileServer;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-file latency of one compilation:
+ *   cold   a new JVM running Main, as build scripts do today
+ *   client a new JVM running CompileClient against a warm server
+ *   warm   a request to the warm server from this JVM, i.e. the server side cost alone
+ *
+ * The server runs inside this JVM. The client's own JVM startup is part of its number; it does
+ * not load or warm up the compiler.
+ *
+ * Usage: java benchmarks.ServerLatencyBenchmark [file.c] [pass] [runs]
+ */
+public class ServerLatencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File input = new File(args.length > 0 ? args[0] : "src/main/resources/tests/tictactoe.c");
+        String pass = args.length > 1 ? args[1] : "-java.gen";
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        File output = File.createTempFile("server-bench", ".asm");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classpath = System.getProperty("java.class.path");
+
+        try (CompileServer server = new CompileServer(0, 1)) {
+            Thread serving = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            serving.setDaemon(true);
+            serving.start();
+
+            String[] mainArgs = {pass, input.getAbsolutePath(), output.getAbsolutePath()};
+            List<String> cold = command(java, classpath, "org.seungmin.Main", mainArgs);
+            List<String> client = command(java, classpath, "org.seungmin.CompileClient", mainArgs);
+            client.add(4, "--server-port=" + server.getPort());
+
+            // warm the server up before measuring it
+            for (int i = 0; i < 200; i++)
+                CompileClient.request(server.getPort(), mainArgs, null, OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+
+            report("cold   (java Main)", runs, () -> run(cold));
+            report("client (java CompileClient)", runs, () -> run(client));
+            report("warm   (in-process request)", runs * 100, () ->
+                    CompileClient.request(server.getPort(), mainArgs, null, OutputStream.nullOutputStream(), OutputStream.nullOutputStream()));
+        } finally {
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static List<String> command(String java, String classpath, String mainClass, String[] args) {
+        List<String> command = new ArrayList<>(List.of(java, "-cp", classpath, mainClass));
+        command.addAll(List.of(args));
+        return command;
+    }
+
+    private static void run(List<String> command) throws Exception {
+        Process p = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        p.waitFor();
+    }
+
+    private static void report(String name, int runs, Action action) throws Exception {
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            action.run();
+            long elapsed = System.nanoTime() - start;
+            total += elapsed;
+            best = Math.min(best, elapsed);
+        }
+        System.out.printf("%-30s mean %8.3f ms, best %8.3f ms over %d runs%n", name, total / 1e6 / runs, best / 1e6, runs);
+    }
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import org.seungmin.CompilationResult;
+import org.seungmin.Compiler;
+import org.seungmin.ast.TypeFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures what interning types saves on a big program: the global declarations of tictactoe.c
+ * followed by its functions repeated many times over, renamed in every copy, analysed up to type
+ * checking. Reports how many pointer, array and struct types were asked for against how many
+ * were created, and the bytes allocated by a whole compilation.
+ *
+ * Usage: java benchmarks.TypeInterningBenchmark [file] [copies]
+ */
+public class TypeInterningBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : "src/main/resources/tests/tictactoe.c";
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        String text = new String(Files.readAllBytes(Paths.get(file)), Charset.defaultCharset())
+                .replaceAll("#include[^\n]*", "");
+        StringBuilder source = new StringBuilder(scale(text, copies));
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        CompilationResult result = null;
+        long bytes = 0;
+        for (int round = 0; round < 5; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            result = new Compiler(new Compiler.Options(), d -> { })
+                    .compile(Compiler.Stage.SEMANTICANALYSIS, source, new StringBuilder());
+            bytes = threads.getThreadAllocatedBytes(thread) - before;
+        }
+
+        TypeFactory types = result.program.types;
+        System.out.printf("%s x %d: %d type objects asked for, %d allocated (%.2f%% fewer)%n", file, copies,
+                types.getRequests(), types.getAllocations(),
+                100.0 * (types.getRequests() - types.getAllocations()) / types.getRequests());
+        System.out.printf("%.1f MB allocated per compilation, %d semantic errors%n", bytes / 1e6, result.errors);
+    }
+
+    /*
+     * The declarations up to the first function once, then copies of the functions, each one
+     * with its functions renamed after the copy.
+     */
+    static String scale(String text, int copies) {
+        Matcher m = FUNCTION.matcher(text);
+        if (!m.find())
+            throw new IllegalArgumentException("no function");
+        String globals = text.substring(0, m.start());
+        String functions = text.substring(m.start());
+        List<String> names = new ArrayList<>();
+        m = FUNCTION.matcher(functions);
+        while (m.find())
+            names.add(m.group(1));
+        Pattern name = Pattern.compile("\\b(" + String.join("|", names) + ")\\b");
+
+        StringBuilder sb = new StringBuilder(globals);
+        for (int i = 0; i < copies; i++)
+            sb.append(name.matcher(functions).replaceAll("$1_" + i)).append('\n');
+        return sb.toString();
+    }
+
+    private static final Pattern FUNCTION = Pattern.compile("(?m)^[a-z][\\w ]*\\**\\s+(\\w+)\\s*\\(");
+}
@@ -0,0 +1,23 @@
+package tokenizerTests;
+
+import org.seungmin.lexer.Scanner;
+import org.seungmin.lexer.TableTokeniser;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Runs the whole TokenizerTest suite against the table-driven tokeniser, error paths included,
+ * so both modes are held to the same diagnostics and recovery.
+ */
+public class TableTokenizerTest extends TokenizerTest {
+
+    @Override
+    protected void setupTokenizer(String fileContent) throws FileNotFoundException, IOException {
+        tempFile = tempDir.resolve("testFile");
+        Files.writeString(tempFile,fileContent);
+        testScanner = new Scanner(tempFile.toFile());
+        testTokeniser = new TableTokeniser(testScanner);
+    }
+}
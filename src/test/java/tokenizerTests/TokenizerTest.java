@@ -4,14 +4,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.seungmin.lexer.Scanner;
 import org.seungmin.lexer.Token;
+import org.seungmin.lexer.TokenStream;
 import org.seungmin.lexer.Tokeniser;
 import org.seungmin.lexer.Token.TokenClass;
+import org.seungmin.util.Diagnostic;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -23,6 +26,7 @@ public class TokenizerTest {
     @TempDir
     Path tempDir;
     Path tempFile;
+    final List<Diagnostic> diagnostics = new ArrayList<>();
 
     protected void setupTokenizer(String fileContent) throws FileNotFoundException,IOException {
         tempFile = tempDir.resolve("testFile");
@@ -33,10 +37,12 @@ public class TokenizerTest {
 
     protected void assertTokenizerOutput(Token[] expectedOutput, String input) throws FileNotFoundException, IOException {
         setupTokenizer(input);
+        diagnostics.clear();
+        testTokeniser.setDiagnostics(diagnostics::add);
         ArrayList<Token> currOutput = new ArrayList<Token>();
         for (Token token : expectedOutput) {
             currOutput.add(token);
-            assertTokenEquals("Tokens did not match at: " + token.position.getLine() + ":" + token.position.getColumn(),token, testTokeniser.nextToken());
+            assertTokenEquals("Tokens did not match at: " + token.position().getLine() + ":" + token.position().getColumn(),token, testTokeniser.nextToken());
         }
 
         assertFalse(currOutput.size() < expectedOutput.length,"output is too short, not enough tokens." );
@@ -45,8 +51,8 @@ public class TokenizerTest {
 
     protected void assertTokenEquals(String message,Token expected, Token result){
         assertAll( message,
-                ()->{assertEquals(expected.data, result.data,"Token data did not match");},
-                ()->{assertEquals(expected.position, result.position,"Token position did not match");},
+                ()->{assertEquals(expected.data(), result.data(),"Token data did not match");},
+                ()->{assertEquals(expected.position(), result.position(),"Token position did not match");},
                 ()->{assertEquals(expected.tokenClass, result.tokenClass,"Token class did not match");}
         );
     }
@@ -368,4 +374,153 @@ public class TokenizerTest {
                 new Token(TokenClass.EOF,"",1,38)
         }, "// asdasdasda sdasdas dasd asd asd asd");
     }
+
+    @Test
+    public void testASSIGNFollowedByIdentifier() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.IDENTIFIER,"a",1,0),
+                new Token(TokenClass.ASSIGN,"",1,1),
+                new Token(TokenClass.IDENTIFIER,"b",1,2),
+                new Token(TokenClass.EOF,"",1,3)
+        }, "a=b");
+    }
+
+    @Test
+    public void testUnterminatedSTRING_LITERAL() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.INVALID,"",1,0),
+                new Token(TokenClass.EOF,"",1,4)
+        }, "\"abc");
+        assertEquals(1, testTokeniser.getErrorCount());
+        assertDiagnostics("Lexing error: unrecognised character (\") at 1:0");
+    }
+
+    protected void assertDiagnostics(String... expected) {
+        List<String> messages = new ArrayList<>();
+        for (Diagnostic d : diagnostics)
+            messages.add(d.toString());
+        assertEquals(List.of(expected), messages);
+        assertEquals(expected.length, testTokeniser.getErrorCount());
+    }
+
+    @Test
+    public void testSingleAmpersandReportedAtItself() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.IDENTIFIER,"a",1,0),
+                new Token(TokenClass.AND,"",1,2),
+                new Token(TokenClass.IDENTIFIER,"b",1,4),
+                new Token(TokenClass.EOF,"",1,5)
+        }, "a & b");
+        assertDiagnostics("Lexing error: unrecognised character (&) at 1:2");
+    }
+
+    @Test
+    public void testSingleBarReportedAtItself() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.OR,"",1,0),
+                new Token(TokenClass.EOF,"",1,1)
+        }, "|");
+        assertDiagnostics("Lexing error: unrecognised character (|) at 1:0");
+    }
+
+    @Test
+    public void testBangConsumesTheOffendingCharacter() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.IDENTIFIER,"x",1,0),
+                new Token(TokenClass.ASSIGN,"",1,2),
+                new Token(TokenClass.NE,"",1,4),
+                new Token(TokenClass.SC,"",1,6),
+                new Token(TokenClass.EOF,"",1,7)
+        }, "x = !y;");
+        assertDiagnostics("Lexing error: unrecognised character (!) at 1:4");
+    }
+
+    @Test
+    public void testMisspelledInclude() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.INCLUDE,"",1,0),
+                new Token(TokenClass.IDENTIFIER,"e",1,6),
+                new Token(TokenClass.STRING_LITERAL,"\"x\"",1,8),
+                new Token(TokenClass.EOF,"",1,11)
+        }, "#inclde \"x\"");
+        assertDiagnostics("Lexing error: unrecognised character (#) at 1:0");
+    }
+
+    @Test
+    public void testMalformedCHAR_LITERAL() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.CHAR_LITERAL,"'ab",1,0),
+                new Token(TokenClass.CHAR_LITERAL,"' x",1,3),
+                new Token(TokenClass.EOF,"",1,6)
+        }, "'ab' x");
+        assertDiagnostics("Lexing error: unrecognised character (') at 1:0",
+                "Lexing error: unrecognised character (') at 1:3");
+    }
+
+    @Test
+    public void testUnrecognisedCharacter() throws FileNotFoundException, IOException {
+        assertTokenizerOutput(new Token[]{
+                new Token(TokenClass.IDENTIFIER,"a",1,0),
+                new Token(TokenClass.INVALID,"",1,2),
+                new Token(TokenClass.IDENTIFIER,"b",1,4),
+                new Token(TokenClass.EOF,"",1,5)
+        }, "a $ b");
+        assertDiagnostics("Lexing error: unrecognised character ($) at 1:2");
+    }
+
+    @Test
+    public void testIdentifiersAreInterned() throws FileNotFoundException, IOException {
+        setupTokenizer("abc x abc");
+        Token first = testTokeniser.nextToken();
+        Token other = testTokeniser.nextToken();
+        Token second = testTokeniser.nextToken();
+        assertEquals(first.symbol, second.symbol);
+        assertNotEquals(first.symbol, other.symbol);
+        assertSame(first.data(), second.data());
+        assertEquals("abc", testTokeniser.getSymbolTable().name(first.symbol));
+    }
+
+    @Test
+    public void testKeywordsNotInterned() throws FileNotFoundException, IOException {
+        setupTokenizer("int x; while (y) return x;");
+        Token t;
+        do {
+            t = testTokeniser.nextToken();
+        } while (t.tokenClass != TokenClass.EOF);
+        assertEquals(-1, testTokeniser.getSymbolTable().lookup("int"));
+        assertEquals(-1, testTokeniser.getSymbolTable().lookup("while"));
+        assertEquals(-1, testTokeniser.getSymbolTable().lookup("return"));
+        // so identifiers get the same ids in both modes
+        assertEquals(0, testTokeniser.getSymbolTable().lookup("x"));
+        assertEquals(1, testTokeniser.getSymbolTable().lookup("y"));
+    }
+
+    @Test
+    public void testPrelexedLiteralsNotInterned() throws FileNotFoundException, IOException {
+        setupTokenizer("x = \"abc\"; y = 'c'; z = 42; x = \"abc\";");
+        TokenStream tokens = TokenStream.lex(testTokeniser);
+        assertEquals(-1, tokens.getSymbolTable().lookup("\"abc\""));
+        assertEquals(-1, tokens.getSymbolTable().lookup("'c'"));
+        assertEquals(-1, tokens.getSymbolTable().lookup("42"));
+        assertEquals("\"abc\"", tokens.token(2).data());
+        assertEquals("'c'", tokens.token(6).data());
+        assertEquals("42", tokens.token(10).data());
+        assertEquals(tokens.token(0).symbol, tokens.token(12).symbol);
+        assertEquals("\"abc\"", tokens.text(14));
+        assertEquals("42", tokens.text(10));
+    }
+
+    @Test
+    public void testPrelexedManyLiterals() throws FileNotFoundException, IOException {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            source.append(i).append(" \"s").append(i).append("\" ");
+        setupTokenizer(source.toString());
+        TokenStream tokens = TokenStream.lex(testTokeniser);
+        assertEquals(2001, tokens.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(String.valueOf(i), tokens.text(2 * i));
+            assertEquals("\"s" + i + "\"", tokens.token(2 * i + 1).data());
+        }
+    }
 }